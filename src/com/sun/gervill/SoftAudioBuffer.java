@@ -41,6 +41,7 @@ public final class SoftAudioBuffer {
     private AudioFormat format;
     private AudioFloatConverter converter;
     private byte[] converter_buffer;
+    private boolean converter_buffer_silent = false;
 
     public SoftAudioBuffer(int size, AudioFormat format) {
         this.size = size;
@@ -56,6 +57,7 @@ public final class SoftAudioBuffer {
         AudioFormat bak_format = format;
         AudioFloatConverter bak_converter = converter;
         byte[] bak_converter_buffer = converter_buffer;
+        boolean bak_converter_buffer_silent = converter_buffer_silent;
 
         size = swap.size;
         buffer = swap.buffer;
@@ -63,6 +65,7 @@ public final class SoftAudioBuffer {
         format = swap.format;
         converter = swap.converter;
         converter_buffer = swap.converter_buffer;
+        converter_buffer_silent = swap.converter_buffer_silent;
 
         swap.size = bak_size;
         swap.buffer = bak_buffer;
@@ -70,6 +73,7 @@ public final class SoftAudioBuffer {
         swap.format = bak_format;
         swap.converter = bak_converter;
         swap.converter_buffer = bak_converter_buffer;
+        swap.converter_buffer_silent = bak_converter_buffer_silent;
     }
 
     public AudioFormat getFormat() {
@@ -102,13 +106,23 @@ public final class SoftAudioBuffer {
 
         int framesize_pc = (format.getFrameSize() / format.getChannels());
         int c_len = size * framesize_pc;
-        if (converter_buffer == null || converter_buffer.length < c_len)
+        if (converter_buffer == null || converter_buffer.length < c_len) {
             converter_buffer = new byte[c_len];
+            converter_buffer_silent = false;
+        }
+
+        // An empty buffer contains only zeros. Reading it must not mark it
+        // as used, and the zeros need to be converted only once.
+        if (this.buffer == null)
+            this.buffer = new float[size];
+        if (!empty || !converter_buffer_silent) {
+            converter.toByteArray(this.buffer, size, converter_buffer);
+            converter_buffer_silent = empty;
+        }
 
         if (format.getChannels() == 1) {
-            converter.toByteArray(array(), size, buffer);
+            System.arraycopy(converter_buffer, 0, buffer, 0, c_len);
         } else {
-            converter.toByteArray(array(), size, converter_buffer);
             if (channel >= format.getChannels())
                 return;
             int z_stepover = format.getChannels() * framesize_pc;
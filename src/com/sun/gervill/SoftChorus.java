@@ -144,6 +144,10 @@ public final class SoftChorus implements SoftAudioProcessor {
             this.phase = phase;
         }
 
+        public void advance(long blocks) {
+            phase = (phase + blocks * phase_step) % (Math.PI * 2);
+        }
+
         public void setFeedBack(float feedback) {
             vdelay.setFeedBack(feedback);
         }
@@ -189,6 +193,7 @@ public final class SoftChorus implements SoftAudioProcessor {
     private float dirty_vdelay1L_reverbsendgain;
     private float dirty_vdelay1R_reverbsendgain;
     private float controlrate;
+    private long lfo_offset = 0;
 
     public void init(float samplerate, float controlrate) {
         this.controlrate = controlrate;
@@ -282,8 +287,22 @@ public final class SoftChorus implements SoftAudioProcessor {
             vdelay1R.setFeedBack(dirty_vdelay1R_feedback);
             vdelay1L.setReverbSendGain(dirty_vdelay1L_reverbsendgain);
             vdelay1R.setReverbSendGain(dirty_vdelay1R_reverbsendgain);
+            if (lfo_offset != 0) {
+                vdelay1L.advance(lfo_offset);
+                vdelay1R.advance(lfo_offset);
+                lfo_offset = 0;
+            }
         }
     }
+
+    /**
+     * Advances the LFO phase by the given number of control blocks, as if
+     * the chorus had been processing since then. Applied together with the
+     * first modulation rate.
+     */
+    public void setLFOOffset(long blocks) {
+        lfo_offset = blocks;
+    }
     double silentcounter = 1000;
 
     public void processAudio() {
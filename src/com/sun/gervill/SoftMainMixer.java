@@ -709,7 +709,9 @@ public final class SoftMainMixer {
             last_volume_left = volume_left;
             last_volume_right = volume_right;
 
-        } else {
+        } else if (!buffers[CHANNEL_LEFT].isSilent()
+                || !buffers[CHANNEL_RIGHT].isSilent()) {
+            // silent buffers stay silent and are not marked as used
             if (volume_left != 1.0 || volume_right != 1.0) {
                 float[] left = buffers[CHANNEL_LEFT].array();
                 float[] right = buffers[CHANNEL_RIGHT].array();
@@ -831,6 +833,7 @@ public final class SoftMainMixer {
         float controlrate = synth.getControlRate();
         reverb.init(samplerate, controlrate);
         chorus.init(samplerate, controlrate);
+        ((SoftChorus) chorus).setLFOOffset(synth.chorus_lfo_offset);
         agc.init(samplerate, controlrate);
 
         reverb.setLightMode(synth.reverb_light);
@@ -868,6 +871,7 @@ public final class SoftMainMixer {
                         .getSampleSizeInBits() / 8)
                     * nrofchannels];
             private int bbuffer_pos = 0;
+            private boolean bbuffer_silent = false;
             private final byte[] single = new byte[1];
 
             public void fillBuffer() {
@@ -878,8 +882,14 @@ public final class SoftMainMixer {
                 }
                 if(!pusher_silent2)*/
                 processAudioBuffers();
+                // a silent block only needs to be converted once
+                boolean silent = true;
                 for (int i = 0; i < nrofchannels; i++)
-                    buffers[i].get(bbuffer, i);
+                    silent &= buffers[i].isSilent();
+                if (!silent || !bbuffer_silent)
+                    for (int i = 0; i < nrofchannels; i++)
+                        buffers[i].get(bbuffer, i);
+                bbuffer_silent = silent;
                 bbuffer_pos = 0;
             }
 
@@ -892,10 +902,10 @@ public final class SoftMainMixer {
                     if (available() == 0)
                         fillBuffer();
                     else {
-                        int bbuffer_pos = this.bbuffer_pos;
-                        while (off < offlen && bbuffer_pos < bbuffer_len)
-                            b[off++] = bbuffer[bbuffer_pos++];
-                        this.bbuffer_pos = bbuffer_pos;
+                        int count = Math.min(offlen - off, bbuffer_len - bbuffer_pos);
+                        System.arraycopy(bbuffer, bbuffer_pos, b, off, count);
+                        off += count;
+                        bbuffer_pos += count;
                         if (!readfully)
                             return off - orgoff;
                     }
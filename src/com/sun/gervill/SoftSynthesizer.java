@@ -195,6 +195,7 @@ public final class SoftSynthesizer implements AudioSynthesizer,
     boolean reverb_light = true;
     boolean reverb_on = true;
     boolean chorus_on = true;
+    long chorus_lfo_offset = 0;
     boolean agc_on = true;
 
     SoftChannel[] channels;
@@ -352,6 +353,7 @@ public final class SoftSynthesizer implements AudioSynthesizer,
         jitter_correction = (Boolean)items[11].value;
         reverb_light = (Boolean)items[12].value;
         load_default_soundbank = (Boolean)items[13].value;
+        chorus_lfo_offset = (Long)items[14].value;
     }
 
     private String patchToString(Patch patch) {
@@ -954,6 +956,10 @@ public final class SoftSynthesizer implements AudioSynthesizer,
         item.description = "Enabled/disable loading default soundbank";
         list.add(item);
 
+        item = new AudioSynthesizerPropertyInfo("chorus lfo offset", o?chorus_lfo_offset:0L);
+        item.description = "Number of control blocks the chorus LFO is advanced at start";
+        list.add(item);
+
         AudioSynthesizerPropertyInfo[] items;
         items = list.toArray(new AudioSynthesizerPropertyInfo[list.size()]);
 
@@ -27,6 +27,9 @@
  */
 package com.sun.kh;
 
+import java.util.Map;
+import java.util.PriorityQueue;
+
 import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiMessage;
@@ -34,11 +37,15 @@ import javax.sound.midi.Receiver;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.Soundbank;
 import javax.sound.midi.Track;
+import javax.sound.midi.VoiceStatus;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 
 import com.sun.gervill.SoftSynthesizer;
 
+import org.midica.file.write.TailDetectingStream;
+import org.midica.midi.TempoMap;
+
 /**
  * This class can be used to create an audio stream from a MIDI sequence
  * using a user-defined soundfont.
@@ -51,12 +58,36 @@ public class MidiToAudioRenderer {
 
 	/*
 	 * Render sequence using selected or default soundbank into an audio stream.
+	 * The stream ends when all voices have been released and the sound has
+	 * fallen below the silence level (in dB below full scale), but at the
+	 * latest maxTail seconds after the last event.
 	 */
 	public static AudioInputStream render(Soundbank soundbank, Sequence sequence,
-			AudioFormat format, SoftSynthesizer synth) throws Exception {
+			AudioFormat format, SoftSynthesizer synth, float silenceLevel,
+			float maxTail) throws Exception {
+		
+		// Open AudioStream from AudioSynthesizer.
+		AudioInputStream stream = open(soundbank, format, synth, null);
+		
+		// Play Sequence into AudioSynthesizer Receiver.
+		double total = send(sequence, synth.getReceiver());
+
+		// Stop after the tail.
+		long eventFrames = getFrameLength(stream.getFormat(), total);
+		return new TailDetectingStream(stream, eventFrames, silenceLevel,
+				maxTail, () -> hasActiveVoices(synth));
+	}
+
+	/*
+	 * Open an audio stream from the synthesizer, using the given synthesizer
+	 * properties (or the default properties, if info is null), and load the
+	 * selected or default soundbank.
+	 */
+	public static AudioInputStream open(Soundbank soundbank, AudioFormat format,
+			SoftSynthesizer synth, Map<String, Object> info) throws Exception {
 		
 		// Open AudioStream from AudioSynthesizer.
-		AudioInputStream stream = synth.openStream(format, null);
+		AudioInputStream stream = synth.openStream(format, info);
 
 		// Load user-selected Soundbank into AudioSynthesizer.
 		if (soundbank != null) {
@@ -66,67 +97,111 @@ public class MidiToAudioRenderer {
 			synth.loadAllInstruments(soundbank);
 		}
 		
-		// Play Sequence into AudioSynthesizer Receiver.
-		double total = send(sequence, synth.getReceiver());
-
-		// Calculate how many frames the file must have.
-		long targetFrames = (long) (stream.getFormat().getFrameRate() * (total + 4));
-		stream = new AudioInputStream(stream, stream.getFormat(), targetFrames);
-		
 		return stream;
 	}
 
+	/*
+	 * Calculate how many frames are needed to reach the end of a sequence
+	 * of the given length in seconds. The tail is not included.
+	 */
+	public static long getFrameLength(AudioFormat format, double total) {
+		return (long) Math.ceil(format.getFrameRate() * total);
+	}
+
+	/*
+	 * Check if any voice of the synthesizer is still sounding.
+	 */
+	public static boolean hasActiveVoices(SoftSynthesizer synth) {
+		for (VoiceStatus voice : synth.getVoiceStatus())
+			if (voice.active)
+				return true;
+		return false;
+	}
+
+	/*
+	 * Receives the events of a sequence together with their ticks.
+	 */
+	public interface EventReceiver {
+		void send(MidiMessage msg, long tick, long timeStamp);
+	}
+
 	/*
 	 * Send MIDI Sequence to Receiver using timestamps.
+	 * Returns the time of the last event in seconds.
 	 */
-	private static double send(Sequence seq, Receiver recv) {
-		float divtype = seq.getDivisionType();
-		assert (seq.getDivisionType() == Sequence.PPQ);
+	public static double send(Sequence seq, Receiver recv) {
+		if (recv == null)
+			return send(seq, (EventReceiver) null);
+		return send(seq, (msg, tick, timeStamp) -> recv.send(msg, timeStamp));
+	}
+
+	/*
+	 * Send MIDI Sequence to EventReceiver using ticks and timestamps.
+	 * Returns the time of the last event in seconds.
+	 *
+	 * The tracks are merged by a priority queue of track cursors, ordered
+	 * by tick and track number. The timestamps are calculated exactly by
+	 * the tempo map, that is also used by the player.
+	 */
+	public static double send(Sequence seq, EventReceiver recv) {
+		TempoMap tempoMap = new TempoMap(seq);
 		Track[] tracks = seq.getTracks();
-		int[] trackspos = new int[tracks.length];
-		int mpq = 500000;
-		int seqres = seq.getResolution();
-		long lasttick = 0;
+		PriorityQueue<TrackCursor> queue = new PriorityQueue<TrackCursor>(Math.max(1, tracks.length));
+		for (int i = 0; i < tracks.length; i++) {
+			TrackCursor cursor = new TrackCursor(tracks[i], i);
+			if (cursor.tick >= 0)
+				queue.add(cursor);
+		}
 		long curtime = 0;
-		while (true) {
-			MidiEvent selevent = null;
-			int seltrack = -1;
-			for (int i = 0; i < tracks.length; i++) {
-				int trackpos = trackspos[i];
-				Track track = tracks[i];
-				if (trackpos < track.size()) {
-					MidiEvent event = track.get(trackpos);
-					if (selevent == null
-							|| event.getTick() < selevent.getTick()) {
-						selevent = event;
-						seltrack = i;
-					}
-				}
-			}
-			if (seltrack == -1)
-				break;
-			trackspos[seltrack]++;
-			long tick = selevent.getTick();
-			if (divtype == Sequence.PPQ)
-				curtime += ((tick - lasttick) * mpq) / seqres;
-			else
-				curtime = (long) ((tick * 1000000.0 * divtype) / seqres);
-			lasttick = tick;
+		while (!queue.isEmpty()) {
+			TrackCursor cursor = queue.poll();
+			MidiEvent selevent = cursor.track.get(cursor.pos);
+			long tick = cursor.tick;
+			if (cursor.next())
+				queue.add(cursor);
+			curtime = tempoMap.getMicroseconds(tick);
 			MidiMessage msg = selevent.getMessage();
-			if (msg instanceof MetaMessage) {
-				if (divtype == Sequence.PPQ)
-					if (((MetaMessage) msg).getType() == 0x51) {
-						byte[] data = ((MetaMessage) msg).getData();
-						mpq = ((data[0] & 0xff) << 16)
-								| ((data[1] & 0xff) << 8) | (data[2] & 0xff);
-					}
-			}
-			else {
+			if (!(msg instanceof MetaMessage)) {
 				if (recv != null)
-					recv.send(msg, curtime);
+					recv.send(msg, tick, curtime);
 			}
 		}
 		return curtime / 1000000.0;
 	}
 
+	/*
+	 * Position in a track, ordered by the tick of the current event
+	 * and then by the track number.
+	 */
+	private static class TrackCursor implements Comparable<TrackCursor> {
+		private final Track track;
+		private final int trackNum;
+		private int pos = 0;
+		private long tick = -1;
+
+		private TrackCursor(Track track, int trackNum) {
+			this.track = track;
+			this.trackNum = trackNum;
+			if (track.size() > 0)
+				tick = track.get(0).getTick();
+		}
+
+		/*
+		 * Move to the next event. Returns false at the end of the track.
+		 */
+		private boolean next() {
+			pos++;
+			if (pos >= track.size())
+				return false;
+			tick = track.get(pos).getTick();
+			return true;
+		}
+
+		public int compareTo(TrackCursor other) {
+			if (tick != other.tick)
+				return tick < other.tick ? -1 : 1;
+			return Integer.compare(trackNum, other.trackNum);
+		}
+	}
+
 }
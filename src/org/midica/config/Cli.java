@@ -8,10 +8,12 @@
 package org.midica.config;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.midica.file.read.ParseProfiler;
 import org.midica.file.read.SoundbankParser;
 import org.midica.file.write.AudioExporter;
 import org.midica.midi.MidiDevices;
@@ -54,6 +56,7 @@ public class Cli {
 	private static String  exportPathAbc    = null;
 	private static String  exportPathLy     = null;
 	private static String  exportPathMscore = null;
+	private static String  profilePath      = null;
 	
 	/**
 	 * This class is only used statically so a public constructor is not needed.
@@ -70,6 +73,7 @@ public class Cli {
 		Pattern patImport      = Pattern.compile("^\\-\\-(import|import\\-.+?)=(.+)$");
 		Pattern patExport      = Pattern.compile("^\\-\\-(export|export\\-.+?)=(.+)$");
 		Pattern patSoundbank   = Pattern.compile("^\\-\\-(soundbank)=(.+)$");
+		Pattern patProfile     = Pattern.compile("^\\-\\-profile=(.+)$");
 		Pattern patInvalidPath = Pattern.compile("^\\-\\-((im|ex)port(\\-[\\w-]+?)|soundbank)(=|$)$");
 		
 		for (String arg : args) {
@@ -86,6 +90,15 @@ public class Cli {
 			else if ("--help".equals(arg)) {
 				help(true, null);
 			}
+			else if ("--profile".equals(arg)) {
+				ParseProfiler.setEnabled(true);
+			}
+			else if (patProfile.matcher(arg).matches()) {
+				Matcher m = patProfile.matcher(arg);
+				m.matches();
+				profilePath = m.group(1);
+				ParseProfiler.setEnabled(true);
+			}
 			else if (patSoundbank.matcher(arg).matches()) {
 				if (useSoundbank) {
 					help(false, "More than one soundbank is not allowed!");
@@ -240,6 +253,10 @@ public class Cli {
 		msg.append("                        Without this argument the config is read from and\n");
 		msg.append("                        written into the file '.midica.conf' in the current\n");
 		msg.append("                        user's home directory.\n");
+		msg.append("--profile             : Collect timing information while parsing MidicaPL.\n");
+		msg.append("                        The result is shown in the info view.\n");
+		msg.append("--profile=PATH        : Like --profile. Additionally writes a report into the\n");
+		msg.append("                        specified file after importing.\n");
 		msg.append("--soundbank=PATH      : Use the specified soundbank file (.sf2 or .dls).\n");
 		msg.append("--soundbank=URL       : Use the specified soundbank URL (SF2 or DLS).\n");
 		msg.append("--import=PATH         : Import from the specified MidicaPL file.\n");
@@ -357,6 +374,16 @@ public class Cli {
 			if ( ! MidiDevices.isSequenceSet() ) {
 				help(false, "Failed to import from: " + importPath);
 			}
+			
+			// write profiling report
+			if (profilePath != null && ParseProfiler.hasReport()) {
+				try {
+					ParseProfiler.writeReport(new File(profilePath));
+				}
+				catch (IOException e) {
+					help(false, "Failed to write profiling report: " + profilePath + "\n" + e.getMessage());
+				}
+			}
 		}
 	}
 	
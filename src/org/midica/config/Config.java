@@ -228,6 +228,9 @@ public class Config {
 	public static final String AU_SAMPLE_RATE      = "au_sample_rate";
 	public static final String AU_CHANNELS         = "au_channels";
 	public static final String AU_IS_BIG_ENDIAN    = "au_is_big_endian";
+	public static final String AU_RENDER_MODE      = "au_render_mode";
+	public static final String AU_SILENCE_LEVEL    = "au_silence_level";
+	public static final String AU_MAX_TAIL         = "au_max_tail";
 	
 	// private constants
 	private static File configFile;
@@ -267,6 +270,24 @@ public class Config {
 		initLocale();
 	}
 	
+	/**
+	 * Returns a cache directory inside of **~/.midica.d**.
+	 * 
+	 * If the directory doesn't exist yet, it will be created.
+	 * 
+	 * @param name  name of the sub directory, e.g. **sound_cache**
+	 * @return cache directory
+	 */
+	public static File getCacheDir(String name) {
+		
+		String cacheDirStr = System.getProperty("user.home")
+			+ File.separator + ".midica.d" + File.separator + name;
+		File cacheDir = new File(cacheDirStr);
+		cacheDir.mkdirs();
+		
+		return cacheDir;
+	}
+	
 	/**
 	 * Sets the current configuration to the default configuration.
 	 * Must be public because we must be able to call it from test classes as well.
@@ -400,6 +421,9 @@ public class Config {
 		auDefaults.put( AU_SAMPLE_RATE,      "" + AudioExporter.DEFAULT_SAMPLE_RATE      );
 		auDefaults.put( AU_CHANNELS,         "" + AudioExporter.DEFAULT_CHANNELS         );
 		auDefaults.put( AU_IS_BIG_ENDIAN,    "" + AudioExporter.DEFAULT_IS_BIG_ENDIAN    );
+		auDefaults.put( AU_RENDER_MODE,      "" + AudioExporter.DEFAULT_RENDER_MODE      );
+		auDefaults.put( AU_SILENCE_LEVEL,    "" + AudioExporter.DEFAULT_SILENCE_LEVEL    );
+		auDefaults.put( AU_MAX_TAIL,         "" + AudioExporter.DEFAULT_MAX_TAIL         );
 		
 		return auDefaults;
 	}
@@ -924,6 +948,9 @@ public class Config {
 		addDefaultKeyBinding( Dict.KEY_AU_CONF_FLD_SAMPLE_RATE,      KeyEvent.VK_S,        alt                );
 		addDefaultKeyBinding( Dict.KEY_AU_CONF_CHANNELS,             KeyEvent.VK_C,        alt                );
 		addDefaultKeyBinding( Dict.KEY_AU_CONF_IS_BIG_ENDIAN,        KeyEvent.VK_B,        ctrl               );
+		addDefaultKeyBinding( Dict.KEY_AU_CONF_RENDER_MODE,          KeyEvent.VK_R,        alt                );
+		addDefaultKeyBinding( Dict.KEY_AU_CONF_FLD_SILENCE_LEVEL,    KeyEvent.VK_L,        alt                );
+		addDefaultKeyBinding( Dict.KEY_AU_CONF_FLD_MAX_TAIL,         KeyEvent.VK_T,        alt                );
 		addDefaultKeyBinding( Dict.KEY_EXPORT_RESULT_CLOSE,          KeyEvent.VK_ESCAPE,   0                  );
 		addDefaultKeyBinding( Dict.KEY_EXPORT_RESULT_SHORT,          KeyEvent.VK_S,        0                  );
 		addDefaultKeyBinding( Dict.KEY_EXPORT_RESULT_META,           KeyEvent.VK_M,        0                  );
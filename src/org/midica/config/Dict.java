@@ -771,6 +771,9 @@ public class Dict {
 	public static final String KEY_AU_CONF_FLD_SAMPLE_RATE      = "key_au_conf_fld_sample_rate";
 	public static final String KEY_AU_CONF_CHANNELS             = "key_au_conf_channels";
 	public static final String KEY_AU_CONF_IS_BIG_ENDIAN        = "key_au_conf_is_big_endian";
+	public static final String KEY_AU_CONF_RENDER_MODE          = "key_au_conf_render_mode";
+	public static final String KEY_AU_CONF_FLD_SILENCE_LEVEL    = "key_au_conf_fld_silence_level";
+	public static final String KEY_AU_CONF_FLD_MAX_TAIL         = "key_au_conf_fld_max_tail";
 	public static final String KEY_EXPORT_RESULT_CLOSE          = "key_export_result_close";
 	public static final String KEY_EXPORT_RESULT_SHORT          = "key_export_result_short";
 	public static final String KEY_EXPORT_RESULT_META           = "key_export_result_meta";
@@ -935,10 +938,19 @@ public class Dict {
 	public static final String AUDIO_CHANNELS               = "audio_channels";
 	public static final String AUDIO_IS_BIG_ENDIAN          = "audio_is_big_endian";
 	public static final String AUDIO_IS_BIG_ENDIAN_D        = "audio_is_big_endian_d";
+	public static final String AUDIO_RENDER_MODE            = "audio_render_mode";
+	public static final String AUDIO_RENDER_MODE_D          = "audio_render_mode_d";
+	public static final String AUDIO_SILENCE_LEVEL          = "audio_silence_level";
+	public static final String AUDIO_SILENCE_LEVEL_D        = "audio_silence_level_d";
+	public static final String AUDIO_MAX_TAIL               = "audio_max_tail";
+	public static final String AUDIO_MAX_TAIL_D             = "audio_max_tail_d";
 	public static final String AUDIO_FILE_TYPE              = "audio_file_type";
 	public static final String AUDIO_FILE_TYPE_D            = "audio_file_type_d";
 	public static final String AU_MONO                      = "au_mono";
 	public static final String AU_STEREO                    = "au_stereo";
+	public static final String AU_RENDER_SERIAL             = "au_render_serial";
+	public static final String AU_RENDER_CHANNELS           = "au_render_channels";
+	public static final String AU_RENDER_SEGMENTS           = "au_render_segments";
 	
 	// InfoView
 	public static final String TITLE_INFO_VIEW             = "title_info_view";
@@ -971,6 +983,7 @@ public class Dict {
 	public static final String RESOLUTION                  = "resolution";
 	public static final String RESOLUTION_UNIT             = "resolution_unit";
 	public static final String NUMBER_OF_TRACKS            = "number_of_tracks";
+	public static final String PARSER_PROFILE              = "parser_profile";
 	public static final String TEMPO_BPM                   = "tempo_bpm";
 	public static final String TEMPO_MPQ                   = "tempo_mpq";
 	public static final String AVERAGE                     = "average";
@@ -1522,7 +1535,6 @@ public class Dict {
 	// SequenceParser
 	public static final String ERROR_NOTE_TOO_BIG          = "error_note_too_big";
 	public static final String ERROR_NOTE_TOO_SMALL        = "error_note_too_small";
-	public static final String ERROR_ANALYZE_POSTPROCESS   = "error_analyze_postprocess";
 	
 	// MidiParser
 	public static final String ERROR_ONLY_PPQ_SUPPORTED    = "error_only_ppq_supported";
@@ -1743,6 +1755,9 @@ public class Dict {
 	public static final String WAIT_REPARSE                     = "wait_reparse";
 	public static final String WAIT_SETUP_DEVICES               = "wait_setup_devices";
 	public static final String WAIT_EXPORT                      = "wait_export";
+	public static final String WAIT_EXPORT_AU_PROGRESS          = "wait_export_au_progress";
+	public static final String WAIT_EXPORT_AU_TAIL              = "wait_export_au_tail";
+	public static final String WAIT_CANCEL                      = "wait_cancel";
 	
 	// ExportResultView
 	public static final String TITLE_EXPORT_RESULT              = "title_export_result";
@@ -2303,6 +2318,9 @@ public class Dict {
 		set( KEY_AU_CONF_FLD_SAMPLE_RATE,      "Focus field: Sample Rate"                                                    );
 		set( KEY_AU_CONF_CHANNELS,             "Open Selection: Channels"                                                    );
 		set( KEY_AU_CONF_IS_BIG_ENDIAN,        "Toggle Checkbox: Big Endian"                                                 );
+		set( KEY_AU_CONF_RENDER_MODE,          "Open Selection: Rendering"                                                   );
+		set( KEY_AU_CONF_FLD_SILENCE_LEVEL,    "Focus field: Silence Level"                                                  );
+		set( KEY_AU_CONF_FLD_MAX_TAIL,         "Focus field: Maximum Tail"                                                   );
 		set( KEY_EXPORT_RESULT_CLOSE,          "Close the Export Result Window"                                              );
 		set( KEY_EXPORT_RESULT_SHORT,          "Toggle Checkbox: Show Ignored Short Message"                                 );
 		set( KEY_EXPORT_RESULT_META,           "Toggle Checkbox: Show Ignored Meta Message"                                  );
@@ -2537,11 +2555,23 @@ public class Dict {
 		set( AUDIO_CHANNELS,                   "Channels"                                                  );
 		set( AUDIO_IS_BIG_ENDIAN,              "Big Endian"                                                );
 		set( AUDIO_IS_BIG_ENDIAN_D,            "<html><b>Big endian</b> (if checked) or <b>Little endian</b> (otherwise)" );
+		set( AUDIO_RENDER_MODE,                "Rendering"                                                 );
+		set( AUDIO_RENDER_MODE_D,              "<html>Parallel rendering uses several processor cores.<br>"
+		                                     + "Split by channels: may differ from serial rendering if the polyphony limit is reached.<br>"
+		                                     + "Split by time segments: long notes may differ slightly at the segment boundaries." );
+		set( AUDIO_SILENCE_LEVEL,              "Silence Level"                                             );
+		set( AUDIO_SILENCE_LEVEL_D,            "<html>dB below full scale.<br>"
+		                                     + "The export ends when all notes are released and the sound is quieter." );
+		set( AUDIO_MAX_TAIL,                   "Maximum Tail"                                              );
+		set( AUDIO_MAX_TAIL_D,                 "Maximum length after the last event, in seconds"           );
 		set( AUDIO_FILE_TYPE,                  "File Type"                                                 );
 		set( AUDIO_FILE_TYPE_D,                "The file type will be chosen based on the file extension.<br>"
 		                                     + "The operating system supports the following file types:"   );
 		set( AU_MONO,                          "Mono"                                                      );
 		set( AU_STEREO,                        "Stereo"                                                    );
+		set( AU_RENDER_SERIAL,                 "Serial"                                                    );
+		set( AU_RENDER_CHANNELS,               "Parallel (split by channels)"                              );
+		set( AU_RENDER_SEGMENTS,               "Parallel (split by time segments)"                         );
 		
 		// InfoView
 		set( TITLE_INFO_VIEW,                        "Midica Info"                   );
@@ -2573,6 +2603,7 @@ public class Dict {
 		set( RESOLUTION,                             "Resolution"                    );
 		set( RESOLUTION_UNIT,                        "Ticks / Quarter Note"          );
 		set( NUMBER_OF_TRACKS,                       "Number of tracks"              );
+		set( PARSER_PROFILE,                         "Parser profile"                );
 		set( TEMPO_BPM,                              "Tempo in BPM (Beats per Minute or Quarter Notes per Minute)" );
 		set( TEMPO_MPQ,                              "Tempo in MPQ (Microseconds per Quarter Note)"                );
 		set( AVERAGE,                                "Average"                       );
@@ -3244,7 +3275,6 @@ public class Dict {
 		// SequenceParser
 		set( ERROR_NOTE_TOO_BIG,                  "note number too big: "                                             );
 		set( ERROR_NOTE_TOO_SMALL,                "note number too small: "                                           );
-		set( ERROR_ANALYZE_POSTPROCESS,           "Error while postprocessing the sequence"                           );
 		
 		// MidiParser
 		set( ERROR_ONLY_PPQ_SUPPORTED,            "Only MIDI files with division type PPQ are supported." );
@@ -3467,6 +3497,9 @@ public class Dict {
 		set( WAIT_REPARSE,                        "Reloading the File"                                                );
 		set( WAIT_SETUP_DEVICES,                  "Setting up MIDI devices and loading Soundbank"                     );
 		set( WAIT_EXPORT,                         "Exporting the file..."                                             );
+		set( WAIT_EXPORT_AU_PROGRESS,             "%.1f of %.1f seconds rendered (%.1fx real time)"                   );
+		set( WAIT_EXPORT_AU_TAIL,                 "%.1f seconds rendered, fading out (%.1fx real time)"               );
+		set( WAIT_CANCEL,                         "Cancel"                                                            );
 		
 		// ExportResultView
 		set( TITLE_EXPORT_RESULT,                 "Export Result"                                                     );
@@ -11,7 +11,6 @@ import java.io.File;
 import java.io.IOException;
 
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
 
 import org.midica.config.Config;
@@ -119,14 +118,12 @@ public class AldaImporter extends MidiParser {
 					throw new ParseException(Dict.get(Dict.ERROR_ALDA_MIDI_FILE_EMPTY));
 			}
 			
-			// get MIDI from tempfile
-			Sequence sequence = MidiSystem.getSequence(tempfile);
+			// read and transform the MIDI from tempfile
+			Sequence sequence = readSequence(tempfile);
 			
 			// delete tempfile
 			Foreign.deleteTempFile(tempfile);
 			
-			// transform and analyze the sequence
-			createSequence(sequence);
 			postprocessSequence(sequence, chosenCharset); // analyze the original sequence
 		}
 		catch (ForeignException | InvalidMidiDataException | IOException | InterruptedException e) {
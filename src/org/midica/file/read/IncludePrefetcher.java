@@ -0,0 +1,222 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.read;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Pattern;
+
+/**
+ * This class reads the files included by a MidicaPL source file in the background,
+ * while the MidicaPL parser is still busy with the define parsing run.
+ * 
+ * Each file that is read is also cleaned and scanned for further INCLUDE
+ * commands. Files found that way are read in parallel as well.
+ * 
+ * The included files are still parsed by the MidicaPL parser in the order of
+ * their declaration. Only the lines are prepared in advance. If a file is
+ * needed by the parser before it has been read in the background, the parser
+ * reads it itself.
+ * 
+ * The INCLUDE command and the comment symbols are taken at the beginning of
+ * the parsing process. Files that are included using redefined commands are
+ * not prefetched but read by the parser as usual.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class IncludePrefetcher {
+	
+	private static ExecutorService executor = null;
+	
+	private Charset charset         = null;
+	private String  include         = null;
+	private String  comment         = null;
+	private String  originalComment = null;
+	private Pattern commentPattern  = null;
+	
+	private ConcurrentHashMap<String, FutureTask<ArrayList<TokenizedLine>>> tasks = new ConcurrentHashMap<>();
+	
+	/**
+	 * Creates a new prefetcher for one parsing process.
+	 * 
+	 * @param charset          the charset of the source files
+	 * @param include          the INCLUDE command
+	 * @param comment          the comment symbol
+	 * @param originalComment  the original comment symbol
+	 */
+	public IncludePrefetcher(Charset charset, String include, String comment, String originalComment) {
+		this.charset         = charset;
+		this.include         = include;
+		this.comment         = comment;
+		this.originalComment = originalComment;
+		this.commentPattern  = MidicaPLParser.getCommentPattern(comment, originalComment);
+	}
+	
+	/**
+	 * Returns the lines of the given file.
+	 * 
+	 * If the file is already read in the background, waits for the result.
+	 * If reading has not yet been started, the file is read in the current thread.
+	 * 
+	 * @param file          the source file
+	 * @param useDiskCache  **true** to look for the file in the include cache directory as well
+	 * @return the lines of the file.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public ArrayList<TokenizedLine> getLines(File file, boolean useDiskCache) throws IOException {
+		FutureTask<ArrayList<TokenizedLine>> task = claim(file, useDiskCache);
+		
+		// not yet started? - read it in the current thread
+		task.run();
+		
+		try {
+			return task.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+	}
+	
+	/**
+	 * Waits until all background tasks of this parsing process are finished.
+	 * 
+	 * Tasks can start new tasks for nested files. So the waiting is repeated
+	 * until no more tasks have been added.
+	 */
+	public void awaitAll() {
+		int count = -1;
+		while (count != tasks.size()) {
+			count = tasks.size();
+			for (FutureTask<ArrayList<TokenizedLine>> task : tasks.values()) {
+				try {
+					task.get();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				catch (ExecutionException e) {
+					// ignore - the parser reports errors when it includes the file
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the task for reading the given file.
+	 * Creates the task, if not yet done.
+	 * 
+	 * Each file is read only once per parsing process.
+	 * 
+	 * @param file          the source file
+	 * @param useDiskCache  **true** to look for the file in the include cache directory as well
+	 * @return the task.
+	 * @throws IOException if the canonical path cannot be calculated.
+	 */
+	private FutureTask<ArrayList<TokenizedLine>> claim(File file, boolean useDiskCache) throws IOException {
+		String path = file.getCanonicalPath();
+		FutureTask<ArrayList<TokenizedLine>> task = tasks.get(path);
+		if (task != null)
+			return task;
+		
+		task = new FutureTask<>(() -> read(file, useDiskCache));
+		FutureTask<ArrayList<TokenizedLine>> existing = tasks.putIfAbsent(path, task);
+		if (existing != null)
+			return existing;
+		
+		return task;
+	}
+	
+	/**
+	 * Starts reading the given file in the background, if not yet done.
+	 * 
+	 * @param file  the included file
+	 */
+	private void prefetch(File file) {
+		try {
+			String path = file.getCanonicalPath();
+			if (tasks.containsKey(path))
+				return;
+			FutureTask<ArrayList<TokenizedLine>> task = claim(file, true);
+			getExecutor().execute(task);
+		}
+		catch (IOException e) {
+			// ignore - the parser reports errors when it includes the file
+		}
+	}
+	
+	/**
+	 * Reads and cleans the given file and starts prefetching the files included by it.
+	 * 
+	 * @param file          the source file
+	 * @param useDiskCache  **true** to look for the file in the include cache directory as well
+	 * @return the lines of the file.
+	 * @throws IOException if the file cannot be read.
+	 */
+	private ArrayList<TokenizedLine> read(File file, boolean useDiskCache) throws IOException {
+		ArrayList<TokenizedLine> lines = SourceCache.getLines(file, charset, useDiskCache);
+		
+		// included files are cleaned in the const run - prepare that
+		if (useDiskCache)
+			MidicaPLParser.cleanLines(lines, comment, originalComment);
+		
+		// look for included files
+		File dir = file.getCanonicalFile().getParentFile();
+		for (TokenizedLine line : lines) {
+			String raw = line.getRaw();
+			if (! raw.contains(include))
+				continue;
+			
+			String   cleaned = MidicaPLParser.cleanLine(raw, commentPattern);
+			String[] tokens  = cleaned.split("\\s+", 3);
+			if (2 == tokens.length && include.equals(tokens[0])) {
+				File inclFile = new File(tokens[1]);
+				if (! inclFile.isAbsolute())
+					inclFile = new File(dir, tokens[1]);
+				if (inclFile.isFile())
+					prefetch(inclFile);
+			}
+		}
+		
+		return lines;
+	}
+	
+	/**
+	 * Returns the thread pool for reading files in the background.
+	 * Creates the pool, if not yet done.
+	 * 
+	 * @return the thread pool.
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (null == executor) {
+			int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+			executor = Executors.newFixedThreadPool(threads, runnable -> {
+				Thread thread = new Thread(runnable, "midica-include-prefetcher");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.read;
+
+/**
+ * This class represents one precompiled line of a function body, used by the MidicaPL parser.
+ * 
+ * A function body is compiled only once, when the function is defined.
+ * The line is split into the tokens that are needed for its command.
+ * Tokens that reference variables or parameters are compiled into slots
+ * ({@link VariableTemplate} objects).
+ * 
+ * Each CALL only binds the arguments and fills the slots.
+ * The line doesn't need to be tokenized or searched for references again.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class Instruction {
+	
+	private TokenizedLine      line   = null;
+	private String[]           tokens = null;
+	private VariableTemplate[] slots  = null; // one slot per token, or **null** if no token has references
+	
+	/**
+	 * Creates a new instruction.
+	 * 
+	 * @param line    the function line
+	 * @param tokens  the tokens of the line, as needed for its command
+	 * @param slots   one template for each token that must be filled with
+	 *                variables or parameters, or **null** for each token that can be used
+	 *                unchanged; or **null** if no token must be filled
+	 */
+	public Instruction(TokenizedLine line, String[] tokens, VariableTemplate[] slots) {
+		this.line   = line;
+		this.tokens = tokens;
+		this.slots  = slots;
+	}
+	
+	/**
+	 * Returns the function line of this instruction.
+	 * 
+	 * @return the function line.
+	 */
+	public TokenizedLine getLine() {
+		return line;
+	}
+	
+	/**
+	 * Returns the line content.
+	 * 
+	 * @return line content.
+	 */
+	public String getContent() {
+		return line.getContent();
+	}
+	
+	/**
+	 * Returns the tokens of the instruction.
+	 * 
+	 * The returned array is a copy and can be changed by the caller.
+	 * 
+	 * @return the tokens.
+	 */
+	public String[] getTokens() {
+		return tokens.clone();
+	}
+	
+	/**
+	 * Indicates if one or more tokens must be filled with variables or parameters.
+	 * 
+	 * @return **true**, if there are slots to be filled, otherwise **false**.
+	 */
+	public boolean hasSlots() {
+		return slots != null;
+	}
+	
+	/**
+	 * Returns the slot of the token with the given index.
+	 * 
+	 * @param i  token index
+	 * @return the template to be filled, or **null** if the token can be used unchanged.
+	 */
+	public VariableTemplate getSlot(int i) {
+		return slots[i];
+	}
+}
@@ -0,0 +1,520 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.read;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.TreeSet;
+
+/**
+ * This class holds the definitions of an included MidicaPL library.
+ * 
+ * The definitions are recorded by the MidicaPL parser while the library is
+ * parsed. Later parsing processes can apply them again instead of parsing the
+ * library. These definitions are:
+ * 
+ * - redefined commands (DEFINE)
+ * - constants (CONST)
+ * - chords (CHORD)
+ * - compiled functions and patterns
+ * 
+ * Only libraries consisting of nothing but definitions are recorded.
+ * Anything else (e.g. INSTRUMENTS blocks, channel commands or INCLUDE) depends
+ * on the state of the including file and is executed in the default parsing run.
+ * 
+ * The definitions are only valid for the syntax and the note, percussion and
+ * instrument configuration they have been recorded with. This is described
+ * by two keys: one for the syntax at the time of the INCLUDE (needed for the
+ * DEFINE commands of the library) and one for the syntax after all DEFINE
+ * commands (needed for everything else).
+ * 
+ * Values of constants and chords, and the validity of function bodies may also
+ * depend on constants, chords, functions and patterns that are defined in
+ * other files. So all names that have been looked up while parsing the
+ * library are recorded together with the result. The definitions can only be
+ * applied again if all lookups still have the same result.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class LibraryDefinitions {
+	
+	private String key      = null;
+	private String finalKey = null;
+	
+	private ArrayList<Definition> defines   = new ArrayList<>();
+	private ArrayList<Definition> constants = new ArrayList<>();
+	private ArrayList<Definition> chords    = new ArrayList<>();
+	private ArrayList<Block>      blocks    = new ArrayList<>();
+	
+	private HashMap<String, String>  constantLookups = new HashMap<>(); // value or **null**, if undefined
+	private HashMap<String, Boolean> chordLookups    = new HashMap<>();
+	private HashMap<String, Boolean> functionLookups = new HashMap<>();
+	private HashMap<String, Boolean> patternLookups  = new HashMap<>();
+	
+	private HashSet<String> ownConstants = new HashSet<>(); // only needed while recording
+	
+	/**
+	 * Creates a new object for recording the definitions of a library.
+	 * 
+	 * @param key  syntax and configuration at the time of the INCLUDE
+	 */
+	public LibraryDefinitions(String key) {
+		this.key = key;
+	}
+	
+	/**
+	 * Returns the syntax and configuration at the time of the INCLUDE.
+	 * 
+	 * @return the key.
+	 */
+	public String getKey() {
+		return key;
+	}
+	
+	/**
+	 * Returns the syntax and configuration after all DEFINE commands.
+	 * 
+	 * @return the final key.
+	 */
+	public String getFinalKey() {
+		return finalKey;
+	}
+	
+	/**
+	 * Sets the syntax and configuration after all DEFINE commands.
+	 * 
+	 * @param finalKey  the final key
+	 */
+	public void setFinalKey(String finalKey) {
+		this.finalKey = finalKey;
+	}
+	
+	/**
+	 * Records a redefined command.
+	 * 
+	 * @param lineNumber  line number of the DEFINE command
+	 * @param cmdId       ID of the redefined command
+	 * @param cmdName     new name of the command
+	 */
+	public void addDefine(int lineNumber, String cmdId, String cmdName) {
+		defines.add(new Definition(lineNumber, cmdId, cmdName));
+	}
+	
+	/**
+	 * Records a constant definition.
+	 * 
+	 * @param lineNumber  line number of the CONST command
+	 * @param name        constant name
+	 * @param value       constant value, before replacing other constants
+	 */
+	public void addConstant(int lineNumber, String name, String value) {
+		constants.add(new Definition(lineNumber, name, value));
+		ownConstants.add(name);
+	}
+	
+	/**
+	 * Records a chord definition.
+	 * 
+	 * @param lineNumber  line number of the CHORD command
+	 * @param name        chord name
+	 * @param notes       note numbers of the chord
+	 */
+	public void addChord(int lineNumber, String name, TreeSet<Integer> notes) {
+		StringBuilder value = new StringBuilder();
+		for (int note : notes) {
+			if (value.length() > 0)
+				value.append(',');
+			value.append(note);
+		}
+		chords.add(new Definition(lineNumber, name, value.toString()));
+	}
+	
+	/**
+	 * Records a function or pattern definition.
+	 * 
+	 * The body is added later by {@link Block#setBody(ArrayList)}, when the
+	 * function or pattern is complete.
+	 * 
+	 * @param lineNumber  line number of the FUNCTION or PATTERN command
+	 * @param name        function or pattern name
+	 * @param isPattern   **true** for a pattern, **false** for a function
+	 */
+	public void addBlock(int lineNumber, String name, boolean isPattern) {
+		blocks.add(new Block(lineNumber, name, isPattern));
+	}
+	
+	/**
+	 * Records the value of a constant that has been looked up outside of
+	 * the const parsing run.
+	 * 
+	 * Constants defined by the library itself are not recorded.
+	 * 
+	 * @param name   constant name
+	 * @param value  constant value or **null**, if not defined
+	 */
+	public void lookupConstant(String name, String value) {
+		if (! ownConstants.contains(name))
+			constantLookups.putIfAbsent(name, value);
+	}
+	
+	/**
+	 * Records if a chord name has been found.
+	 * 
+	 * @param name     chord name
+	 * @param isFound  **true**, if the chord is defined
+	 */
+	public void lookupChord(String name, boolean isFound) {
+		chordLookups.putIfAbsent(name, isFound);
+	}
+	
+	/**
+	 * Records if a function name has been found.
+	 * 
+	 * @param name     function name
+	 * @param isFound  **true**, if the function is defined
+	 */
+	public void lookupFunction(String name, boolean isFound) {
+		functionLookups.putIfAbsent(name, isFound);
+	}
+	
+	/**
+	 * Records if a pattern name has been found.
+	 * 
+	 * @param name     pattern name
+	 * @param isFound  **true**, if the pattern is defined
+	 */
+	public void lookupPattern(String name, boolean isFound) {
+		patternLookups.putIfAbsent(name, isFound);
+	}
+	
+	/**
+	 * Returns the redefined commands.
+	 * 
+	 * @return the redefinitions with command ID as name and command name as value.
+	 */
+	public ArrayList<Definition> getDefines() {
+		return defines;
+	}
+	
+	/**
+	 * Returns the constant definitions.
+	 * 
+	 * @return the constants.
+	 */
+	public ArrayList<Definition> getConstants() {
+		return constants;
+	}
+	
+	/**
+	 * Returns the chord definitions.
+	 * 
+	 * @return the chords with the comma-separated note numbers as value.
+	 */
+	public ArrayList<Definition> getChords() {
+		return chords;
+	}
+	
+	/**
+	 * Returns the function and pattern definitions.
+	 * 
+	 * @return the functions and patterns.
+	 */
+	public ArrayList<Block> getBlocks() {
+		return blocks;
+	}
+	
+	/**
+	 * Returns the constants that have been looked up outside of the const
+	 * parsing run.
+	 * 
+	 * @return constant names and values (or **null**, if not defined).
+	 */
+	public HashMap<String, String> getConstantLookups() {
+		return constantLookups;
+	}
+	
+	/**
+	 * Returns the chord names that have been looked up.
+	 * 
+	 * @return chord names and the information if they have been found.
+	 */
+	public HashMap<String, Boolean> getChordLookups() {
+		return chordLookups;
+	}
+	
+	/**
+	 * Returns the function names that have been looked up.
+	 * 
+	 * @return function names and the information if they have been found.
+	 */
+	public HashMap<String, Boolean> getFunctionLookups() {
+		return functionLookups;
+	}
+	
+	/**
+	 * Returns the pattern names that have been looked up.
+	 * 
+	 * @return pattern names and the information if they have been found.
+	 */
+	public HashMap<String, Boolean> getPatternLookups() {
+		return patternLookups;
+	}
+	
+	/**
+	 * Writes the definitions into a cache file.
+	 * 
+	 * @param out  the output stream
+	 * @throws IOException if the definitions cannot be written.
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		SourceCache.writeString(out, key);
+		SourceCache.writeString(out, finalKey);
+		writeDefinitions(out, defines);
+		writeDefinitions(out, constants);
+		writeDefinitions(out, chords);
+		out.writeInt(blocks.size());
+		for (Block block : blocks) {
+			out.writeInt(block.getLineNumber());
+			SourceCache.writeString(out, block.getName());
+			out.writeBoolean(block.isPattern());
+			out.writeInt(block.getBody().size());
+			for (String line : block.getBody()) {
+				SourceCache.writeString(out, line);
+			}
+		}
+		out.writeInt(constantLookups.size());
+		for (Entry<String, String> lookup : constantLookups.entrySet()) {
+			SourceCache.writeString(out, lookup.getKey());
+			out.writeBoolean(lookup.getValue() != null);
+			if (lookup.getValue() != null)
+				SourceCache.writeString(out, lookup.getValue());
+		}
+		writeLookups(out, chordLookups);
+		writeLookups(out, functionLookups);
+		writeLookups(out, patternLookups);
+	}
+	
+	/**
+	 * Reads definitions from a cache file.
+	 * 
+	 * @param in  the input stream
+	 * @return the definitions.
+	 * @throws IOException if the definitions cannot be read.
+	 */
+	public static LibraryDefinitions read(DataInputStream in) throws IOException {
+		LibraryDefinitions library = new LibraryDefinitions(SourceCache.readString(in));
+		library.finalKey = SourceCache.readString(in);
+		readDefinitions(in, library.defines);
+		readDefinitions(in, library.constants);
+		readDefinitions(in, library.chords);
+		int blockCount = in.readInt();
+		for (int i = 0; i < blockCount; i++) {
+			Block block = new Block(in.readInt(), SourceCache.readString(in), in.readBoolean());
+			int lineCount = in.readInt();
+			ArrayList<String> body = new ArrayList<>(lineCount);
+			for (int j = 0; j < lineCount; j++) {
+				body.add(SourceCache.readString(in));
+			}
+			block.setBody(body);
+			library.blocks.add(block);
+		}
+		int lookupCount = in.readInt();
+		for (int i = 0; i < lookupCount; i++) {
+			String name = SourceCache.readString(in);
+			library.constantLookups.put(name, in.readBoolean() ? SourceCache.readString(in) : null);
+		}
+		readLookups(in, library.chordLookups);
+		readLookups(in, library.functionLookups);
+		readLookups(in, library.patternLookups);
+		
+		return library;
+	}
+	
+	/**
+	 * Writes a list of simple definitions.
+	 * 
+	 * @param out          the output stream
+	 * @param definitions  the definitions to be written
+	 * @throws IOException if the definitions cannot be written.
+	 */
+	private static void writeDefinitions(DataOutputStream out, ArrayList<Definition> definitions) throws IOException {
+		out.writeInt(definitions.size());
+		for (Definition definition : definitions) {
+			out.writeInt(definition.getLineNumber());
+			SourceCache.writeString(out, definition.getName());
+			SourceCache.writeString(out, definition.getValue());
+		}
+	}
+	
+	/**
+	 * Reads a list of simple definitions.
+	 * 
+	 * @param in           the input stream
+	 * @param definitions  the list to be filled
+	 * @throws IOException if the definitions cannot be read.
+	 */
+	private static void readDefinitions(DataInputStream in, ArrayList<Definition> definitions) throws IOException {
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			definitions.add(new Definition(in.readInt(), SourceCache.readString(in), SourceCache.readString(in)));
+		}
+	}
+	
+	/**
+	 * Writes the looked up names of chords, functions or patterns.
+	 * 
+	 * @param out      the output stream
+	 * @param lookups  names and lookup results
+	 * @throws IOException if the lookups cannot be written.
+	 */
+	private static void writeLookups(DataOutputStream out, HashMap<String, Boolean> lookups) throws IOException {
+		out.writeInt(lookups.size());
+		for (Entry<String, Boolean> lookup : lookups.entrySet()) {
+			SourceCache.writeString(out, lookup.getKey());
+			out.writeBoolean(lookup.getValue());
+		}
+	}
+	
+	/**
+	 * Reads the looked up names of chords, functions or patterns.
+	 * 
+	 * @param in       the input stream
+	 * @param lookups  the map to be filled
+	 * @throws IOException if the lookups cannot be read.
+	 */
+	private static void readLookups(DataInputStream in, HashMap<String, Boolean> lookups) throws IOException {
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			lookups.put(SourceCache.readString(in), in.readBoolean());
+		}
+	}
+	
+	/**
+	 * A simple definition, consisting of a name and a value.
+	 */
+	public static class Definition {
+		
+		private int    lineNumber = 0;
+		private String name       = null;
+		private String value      = null;
+		
+		/**
+		 * Creates a new definition.
+		 * 
+		 * @param lineNumber  line number of the definition
+		 * @param name        name
+		 * @param value       value
+		 */
+		private Definition(int lineNumber, String name, String value) {
+			this.lineNumber = lineNumber;
+			this.name       = name;
+			this.value      = value;
+		}
+		
+		/**
+		 * Returns the line number of the definition.
+		 * 
+		 * @return the line number.
+		 */
+		public int getLineNumber() {
+			return lineNumber;
+		}
+		
+		/**
+		 * Returns the defined name.
+		 * 
+		 * @return the name.
+		 */
+		public String getName() {
+			return name;
+		}
+		
+		/**
+		 * Returns the defined value.
+		 * 
+		 * @return the value.
+		 */
+		public String getValue() {
+			return value;
+		}
+	}
+	
+	/**
+	 * A function or pattern definition.
+	 */
+	public static class Block {
+		
+		private int               lineNumber = 0;
+		private String            name       = null;
+		private boolean           isPattern  = false;
+		private ArrayList<String> body       = null; // content of the compiled lines
+		
+		/**
+		 * Creates a new function or pattern definition.
+		 * 
+		 * @param lineNumber  line number of the FUNCTION or PATTERN command
+		 * @param name        function or pattern name
+		 * @param isPattern   **true** for a pattern, **false** for a function
+		 */
+		private Block(int lineNumber, String name, boolean isPattern) {
+			this.lineNumber = lineNumber;
+			this.name       = name;
+			this.isPattern  = isPattern;
+		}
+		
+		/**
+		 * Returns the line number of the FUNCTION or PATTERN command.
+		 * 
+		 * @return the line number.
+		 */
+		public int getLineNumber() {
+			return lineNumber;
+		}
+		
+		/**
+		 * Returns the function or pattern name.
+		 * 
+		 * @return the name.
+		 */
+		public String getName() {
+			return name;
+		}
+		
+		/**
+		 * Indicates if this is a pattern or a function.
+		 * 
+		 * @return **true** for a pattern, **false** for a function.
+		 */
+		public boolean isPattern() {
+			return isPattern;
+		}
+		
+		/**
+		 * Returns the compiled lines of the function or pattern.
+		 * 
+		 * @return the lines.
+		 */
+		public ArrayList<String> getBody() {
+			return body;
+		}
+		
+		/**
+		 * Sets the compiled lines of the function or pattern.
+		 * 
+		 * @param body  the lines.
+		 */
+		public void setBody(ArrayList<String> body) {
+			this.body = body;
+		}
+	}
+}
@@ -14,7 +14,6 @@ import java.util.ArrayList;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiEvent;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.Track;
 
@@ -83,7 +82,7 @@ public class LilypondImporter extends MidiParser {
 			ArrayList<Sequence> sequences = new ArrayList<>();
 			Integer resolution = null;
 			for (File f : files) {
-				Sequence s = MidiSystem.getSequence(f);
+				Sequence s = SmfReader.read(f);
 				
 				// check sequence (only PPQ with the same resolution)
 				if (s.getDivisionType() != Sequence.PPQ)
@@ -15,7 +15,6 @@ import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiMessage;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.SysexMessage;
@@ -63,7 +62,16 @@ public class MidiParser extends SequenceParser {
 	 * @param fileAsObj  MIDI file to be parsed.
 	 */
 	public void parse(Object fileAsObj) throws ParseException {
-		File file = (File) fileAsObj;
+		parseFile((File) fileAsObj);
+	}
+	
+	/**
+	 * Parses a MIDI file.
+	 * 
+	 * @param file  MIDI file to be parsed.
+	 * @throws ParseException if the file cannot be parsed.
+	 */
+	private void parseFile(File file) throws ParseException {
 		
 		// reset file name and file type
 		preprocess(file);
@@ -77,8 +85,7 @@ public class MidiParser extends SequenceParser {
 		chosenCharset = chosenOption.getIdentifier();
 		
 		try {
-			Sequence sequence = MidiSystem.getSequence(file);
-			createSequence(sequence);
+			Sequence sequence = readSequence(file);
 			postprocessSequence(sequence, chosenCharset); // we want to analyze the loaded sequence - not the created one
 			
 			// Many MIDI files out there contain channel volume messages.
@@ -117,6 +124,53 @@ public class MidiParser extends SequenceParser {
 	 * @throws InvalidMidiDataException  If the created sequence is invalid.
 	 */
 	protected void createSequence(Sequence sequence) throws ParseException, InvalidMidiDataException {
+		initSequence(sequence);
+		int trackNum = 0;
+		for (Track t : sequence.getTracks()) {
+			for (int i=0; i < t.size(); i++) {
+				MidiEvent event = t.get(i);
+				processMessage(event.getMessage(), event.getTick(), trackNum);
+			}
+			trackNum++;
+		}
+	}
+	
+	/**
+	 * Reads a MIDI file and passes each event to {@link SequenceCreator}
+	 * while the file is read.
+	 * 
+	 * Has the same effect as reading the file and calling {@link #createSequence(Sequence)}
+	 * afterwards, but needs only one pass.
+	 * 
+	 * @param  file                      The MIDI file.
+	 * @return the original MIDI sequence.
+	 * @throws ParseException            If the input file can not be parsed correctly.
+	 * @throws InvalidMidiDataException  If the MIDI file or the created sequence is invalid.
+	 * @throws IOException               If the file can not be read.
+	 */
+	protected Sequence readSequence(File file) throws ParseException, InvalidMidiDataException, IOException {
+		return SmfReader.read(file, new SmfReader.Handler() {
+			
+			@Override
+			public void begin(Sequence sequence) throws ParseException, InvalidMidiDataException {
+				initSequence(sequence);
+			}
+			
+			@Override
+			public void event(MidiMessage msg, long tick, int track) throws ParseException, InvalidMidiDataException {
+				processMessage(msg, tick, track);
+			}
+		});
+	}
+	
+	/**
+	 * Checks the global parameters of the original sequence and initializes
+	 * the sequence to create.
+	 * 
+	 * @param  sequence        The original MIDI sequence.
+	 * @throws ParseException  If the sequence is not supported.
+	 */
+	private void initSequence(Sequence sequence) throws ParseException {
 		
 		// process global parameters and initialize the sequence to create
 		float divisionType = sequence.getDivisionType();
@@ -124,34 +178,35 @@ public class MidiParser extends SequenceParser {
 			throw new ParseException(Dict.get(Dict.ERROR_ONLY_PPQ_SUPPORTED));
 		int resolution = sequence.getResolution();
 		try {
-			SequenceCreator.reset(resolution, chosenCharset, getImportFormat());
+			creator = new SequenceCreator(resolution, chosenCharset, getImportFormat());
 			// init percussion channel comment
-			SequenceCreator.initChannel(9, 0, Dict.get(Dict.PERCUSSION_CHANNEL), SequenceCreator.NOW);
+			creator.initChannel(9, 0, Dict.get(Dict.PERCUSSION_CHANNEL), SequenceCreator.NOW);
 		}
 		catch (InvalidMidiDataException e) {
 			throw new ParseException(e.getMessage());
 		}
-		
-		int trackNum = 0;
-		for (Track t : sequence.getTracks()) {
-			for (int i=0; i < t.size(); i++) {
-				MidiEvent   event = t.get(i);
-				long        tick  = event.getTick();
-				MidiMessage msg   = event.getMessage();
-				
-				if (msg instanceof MetaMessage) {
-					processMetaMessage((MetaMessage) msg, tick, trackNum);
-				}
-				else if (msg instanceof ShortMessage) {
-					processShortMessage((ShortMessage) msg, tick);
-				}
-				else if (msg instanceof SysexMessage) {
-					processSysexMessage((SysexMessage) msg, tick);
-				}
-				else {
-				}
-			}
-			trackNum++;
+	}
+	
+	/**
+	 * Processes one message from the input sequence.
+	 * 
+	 * @param msg       Message from the input sequence.
+	 * @param tick      Tickstamp of the message's occurrence.
+	 * @param trackNum  Original track number.
+	 * @throws InvalidMidiDataException
+	 * @throws ParseException
+	 */
+	private void processMessage(MidiMessage msg, long tick, int trackNum) throws InvalidMidiDataException, ParseException {
+		if (msg instanceof MetaMessage) {
+			processMetaMessage((MetaMessage) msg, tick, trackNum);
+		}
+		else if (msg instanceof ShortMessage) {
+			processShortMessage((ShortMessage) msg, tick);
+		}
+		else if (msg instanceof SysexMessage) {
+			processSysexMessage((SysexMessage) msg, tick);
+		}
+		else {
 		}
 	}
 	
@@ -210,7 +265,7 @@ public class MidiParser extends SequenceParser {
 		}
 		
 		// add the message to the right track
-		SequenceCreator.addMessageToTrack(msg, track, tick);
+		creator.addMessageToTrack(msg, track, tick);
 		
 		// charset switch in a TEXT or LYRICS event?
 		if (MidiListener.META_LYRICS == type || MidiListener.META_TEXT == type) {
@@ -232,7 +287,7 @@ public class MidiParser extends SequenceParser {
 	 * @param tick  Tickstamp of the message's occurrence.
 	 */
 	private void processSysexMessage(SysexMessage msg, long tick) {
-		SequenceCreator.addMessageGeneric(msg, tick);
+		creator.addMessageGeneric(msg, tick);
 	}
 	
 	/**
@@ -256,7 +311,7 @@ public class MidiParser extends SequenceParser {
 		int velocity = msg.getData2();
 		if (channel < 0 || channel > 15) {
 			// not a channel command
-			SequenceCreator.addMessageGeneric(msg, tick);
+			creator.addMessageGeneric(msg, tick);
 			return;
 		}
 		
@@ -264,18 +319,18 @@ public class MidiParser extends SequenceParser {
 			
 			// note on
 			note = transpose(note, channel);
-			SequenceCreator.addMessageNoteON(channel, note, tick, velocity);
+			creator.addMessageNoteON(channel, note, tick, velocity);
 		}
 		else if (ShortMessage.NOTE_OFF == cmd || (ShortMessage.NOTE_ON == cmd && 0 == velocity)) {
 			
 			// note off
 			note = transpose(note, channel);
-			SequenceCreator.addMessageNoteOFF(channel, note, tick);
+			creator.addMessageNoteOFF(channel, note, tick);
 		}
 		
 		else {
 			// another channel command
-			SequenceCreator.addMessageGeneric(msg, channel, tick);
+			creator.addMessageGeneric(msg, channel, tick);
 		}
 	}
 	
@@ -300,7 +355,7 @@ public class MidiParser extends SequenceParser {
 	 */
 	protected void replaceChannelVolume() throws InvalidMidiDataException {
 		
-		Sequence seq = SequenceCreator.getSequence();
+		Sequence seq = creator.getCreatedSequence();
 		for (Track track : seq.getTracks()) {
 			for (int i=0; i < track.size(); i++) {
 				MidiEvent   event        = track.get(i);
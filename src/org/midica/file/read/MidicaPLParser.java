@@ -7,12 +7,9 @@
 
 package org.midica.file.read;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
@@ -23,19 +20,25 @@ import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
 
 import org.midica.Midica;
 import org.midica.config.Config;
 import org.midica.config.Dict;
 import org.midica.file.Instrument;
+import org.midica.file.read.LibraryDefinitions.Block;
+import org.midica.file.read.LibraryDefinitions.Definition;
 import org.midica.midi.LyricUtil;
 import org.midica.midi.MidiDevices;
 import org.midica.midi.SequenceCreator;
@@ -103,196 +106,212 @@ public class MidicaPLParser extends SequenceParser {
 	private static final int MAX_RECURSION_DEPTH_PATTERN  =    5;
 	private static final int MAX_RECURSION_DEPTH_CONST    = 1000;
 	private static final int MAX_RECURSION_DEPTH_VAR      = 1000;
+	private static final int MAX_CACHED_TEMPLATES         = 10000;
+	private static final int MAX_CACHED_OPTIONS           = 10000;
+	private static final int MAX_CACHED_DURATIONS         = 10000;
 	
 	/* *****************
-	 * class fields
+	 * parsing state
 	 *******************/
 	
-	public static String BANK_SEP           = null;
-	public static String TEMPO              = null;
-	public static String TIME_SIG           = null;
-	public static String TIME_SIG_SLASH     = null;
-	public static String KEY_SIG            = null;
-	public static String KEY_SEPARATOR      = null;
-	public static String KEY_MAJ            = null;
-	public static String KEY_MIN            = null;
-	public static String PARTIAL_SYNC_RANGE = null;
-	public static String PARTIAL_SYNC_SEP   = null;
-	public static String CHORD              = null;
-	public static String CHORD_ASSIGNER     = null;
-	public static String CHORD_SEPARATOR    = null;
-	public static String COMPACT_CHANNEL    = null;
-	public static String COMPACT_NOTE_SEP   = null;
-	public static String COMPACT_OPT_OPEN   = null;
-	public static String COMPACT_OPT_CLOSE  = null;
-	public static String COMMENT            = null;
-	public static String CONST              = null;
-	public static String VAR                = null;
-	public static String VAR_ASSIGNER       = null;
-	public static String VAR_SYMBOL         = null;
-	public static String DEFINE             = null;
-	public static String DOT                = null;
-	public static String END                = null;
-	public static String BLOCK_OPEN         = null;
-	public static String BLOCK_CLOSE        = null;
-	public static String GLOBAL             = null;
-	public static String CALL               = null;
-	public static String INCLUDE            = null;
-	public static String SOUNDBANK          = null;
-	public static String SOUNDFONT          = null; // TODO: delete in a later version
-	public static String INSTRUMENT         = null;
-	public static String INSTRUMENTS        = null;
-	public static String META               = null;
-	public static String META_COPYRIGHT     = null;
-	public static String META_TITLE         = null;
-	public static String META_COMPOSER      = null;
-	public static String META_LYRICIST      = null;
-	public static String META_ARTIST        = null;
-	public static String META_SOFT_KARAOKE  = null;
-	public static String META_SK_VERSION    = null;
-	public static String META_SK_LANG       = null;
-	public static String META_SK_TITLE      = null;
-	public static String META_SK_AUTHOR     = null;
-	public static String META_SK_COPYRIGHT  = null;
-	public static String META_SK_INFO       = null;
-	public static String LENGTH             = null;
-	public static String LENGTH_ZERO        = null;
-	public static String LENGTH_32          = null;
-	public static String LENGTH_16          = null;
-	public static String LENGTH_8           = null;
-	public static String LENGTH_4           = null;
-	public static String LENGTH_2           = null;
-	public static String LENGTH_1           = null;
-	public static String LENGTH_M1          = null;
-	public static String LENGTH_M2          = null;
-	public static String LENGTH_M4          = null;
-	public static String LENGTH_M8          = null;
-	public static String LENGTH_M16         = null;
-	public static String LENGTH_M32         = null;
-	public static String L                  = null;
-	public static String LYRICS             = null;
-	public static String LYRICS_SPACE       = null;
-	public static String LYRICS_CR          = null;
-	public static String LYRICS_LF          = null;
-	public static String LYRICS_COMMA       = null;
-	public static String FUNCTION           = null;
-	public static String PATTERN            = null;
-	public static String PATTERN_INDEX_SEP  = null;
-	public static String PARAM_OPEN         = null;
-	public static String PARAM_CLOSE        = null;
-	public static String PARAM_SEPARATOR    = null;
-	public static String PARAM_ASSIGNER     = null;
-	public static String PARAM_NAMED_OPEN   = null;
-	public static String PARAM_NAMED_CLOSE  = null;
-	public static String PARAM_INDEX_OPEN   = null;
-	public static String PARAM_INDEX_CLOSE  = null;
-	public static String MAGIC_VAR_ALL      = null;
-	public static String MAGIC_VAR_NC       = null;
-	public static String MAGIC_VAR_REV      = null;
-	public static String M                  = null;
-	public static String MULTIPLE           = null;
-	public static String OPT_ASSIGNER       = null;
-	public static String OPT_SEPARATOR      = null;
-	public static String P                  = null;
-	public static String BAR_LINE           = null;
-	public static String REST               = null;
-	public static String S                  = null;
-	public static String SHIFT              = null;
-	public static String IF                 = null;
-	public static String ELSIF              = null;
-	public static String ELSE               = null;
-	public static String COND_EQ            = null;
-	public static String COND_NEQ           = null;
-	public static String COND_NDEF          = null;
-	public static String COND_LT            = null;
-	public static String COND_LE            = null;
-	public static String COND_GT            = null;
-	public static String COND_GE            = null;
-	public static String COND_IN            = null;
-	public static String COND_IN_SEP        = null;
-	public static String PROG_BANK_SEP      = null;
-	public static String Q                  = null;
-	public static String QUANTITY           = null;
-	public static String D                  = null;
-	public static String DURATION           = null;
-	public static String DURATION_PERCENT   = null;
-	public static String TR                 = null;
-	public static String TREMOLO            = null;
-	public static String T                  = null;
-	public static String TUPLET             = null;
-	public static String V                  = null;
-	public static String VELOCITY           = null;
-	public static String TRIPLET            = null;
-	public static String TUPLET_INTRO       = null;
-	public static String TUPLET_FOR         = null;
-	public static String LENGTH_PLUS        = null;
-	
-	public static String ORIGINAL_DEFINE  = null;
-	public static String ORIGINAL_INCLUDE = null;
-	public static String ORIGINAL_COMMENT = null;
-	
-	protected static ArrayList<Instrument> instruments = null;
+	public String BANK_SEP           = null;
+	public String TEMPO              = null;
+	public String TIME_SIG           = null;
+	public String TIME_SIG_SLASH     = null;
+	public String KEY_SIG            = null;
+	public String KEY_SEPARATOR      = null;
+	public String KEY_MAJ            = null;
+	public String KEY_MIN            = null;
+	public String PARTIAL_SYNC_RANGE = null;
+	public String PARTIAL_SYNC_SEP   = null;
+	public String CHORD              = null;
+	public String CHORD_ASSIGNER     = null;
+	public String CHORD_SEPARATOR    = null;
+	public String COMPACT_CHANNEL    = null;
+	public String COMPACT_NOTE_SEP   = null;
+	public String COMPACT_OPT_OPEN   = null;
+	public String COMPACT_OPT_CLOSE  = null;
+	public String COMMENT            = null;
+	public String CONST              = null;
+	public String VAR                = null;
+	public String VAR_ASSIGNER       = null;
+	public String VAR_SYMBOL         = null;
+	public String DEFINE             = null;
+	public String DOT                = null;
+	public String END                = null;
+	public String BLOCK_OPEN         = null;
+	public String BLOCK_CLOSE        = null;
+	public String GLOBAL             = null;
+	public String CALL               = null;
+	public String INCLUDE            = null;
+	public String SOUNDBANK          = null;
+	public String SOUNDFONT          = null; // TODO: delete in a later version
+	public String INSTRUMENT         = null;
+	public String INSTRUMENTS        = null;
+	public String META               = null;
+	public String META_COPYRIGHT     = null;
+	public String META_TITLE         = null;
+	public String META_COMPOSER      = null;
+	public String META_LYRICIST      = null;
+	public String META_ARTIST        = null;
+	public String META_SOFT_KARAOKE  = null;
+	public String META_SK_VERSION    = null;
+	public String META_SK_LANG       = null;
+	public String META_SK_TITLE      = null;
+	public String META_SK_AUTHOR     = null;
+	public String META_SK_COPYRIGHT  = null;
+	public String META_SK_INFO       = null;
+	public String LENGTH             = null;
+	public String LENGTH_ZERO        = null;
+	public String LENGTH_32          = null;
+	public String LENGTH_16          = null;
+	public String LENGTH_8           = null;
+	public String LENGTH_4           = null;
+	public String LENGTH_2           = null;
+	public String LENGTH_1           = null;
+	public String LENGTH_M1          = null;
+	public String LENGTH_M2          = null;
+	public String LENGTH_M4          = null;
+	public String LENGTH_M8          = null;
+	public String LENGTH_M16         = null;
+	public String LENGTH_M32         = null;
+	public String L                  = null;
+	public String LYRICS             = null;
+	public String LYRICS_SPACE       = null;
+	public String LYRICS_CR          = null;
+	public String LYRICS_LF          = null;
+	public String LYRICS_COMMA       = null;
+	public String FUNCTION           = null;
+	public String PATTERN            = null;
+	public String PATTERN_INDEX_SEP  = null;
+	public String PARAM_OPEN         = null;
+	public String PARAM_CLOSE        = null;
+	public String PARAM_SEPARATOR    = null;
+	public String PARAM_ASSIGNER     = null;
+	public String PARAM_NAMED_OPEN   = null;
+	public String PARAM_NAMED_CLOSE  = null;
+	public String PARAM_INDEX_OPEN   = null;
+	public String PARAM_INDEX_CLOSE  = null;
+	public String MAGIC_VAR_ALL      = null;
+	public String MAGIC_VAR_NC       = null;
+	public String MAGIC_VAR_REV      = null;
+	public String M                  = null;
+	public String MULTIPLE           = null;
+	public String OPT_ASSIGNER       = null;
+	public String OPT_SEPARATOR      = null;
+	public String P                  = null;
+	public String BAR_LINE           = null;
+	public String REST               = null;
+	public String S                  = null;
+	public String SHIFT              = null;
+	public String IF                 = null;
+	public String ELSIF              = null;
+	public String ELSE               = null;
+	public String COND_EQ            = null;
+	public String COND_NEQ           = null;
+	public String COND_NDEF          = null;
+	public String COND_LT            = null;
+	public String COND_LE            = null;
+	public String COND_GT            = null;
+	public String COND_GE            = null;
+	public String COND_IN            = null;
+	public String COND_IN_SEP        = null;
+	public String PROG_BANK_SEP      = null;
+	public String Q                  = null;
+	public String QUANTITY           = null;
+	public String D                  = null;
+	public String DURATION           = null;
+	public String DURATION_PERCENT   = null;
+	public String TR                 = null;
+	public String TREMOLO            = null;
+	public String T                  = null;
+	public String TUPLET             = null;
+	public String V                  = null;
+	public String VELOCITY           = null;
+	public String TRIPLET            = null;
+	public String TUPLET_INTRO       = null;
+	public String TUPLET_FOR         = null;
+	public String LENGTH_PLUS        = null;
+	
+	public String ORIGINAL_DEFINE  = null;
+	public String ORIGINAL_INCLUDE = null;
+	public String ORIGINAL_COMMENT = null;
+	
+	protected ArrayList<Instrument> instruments = null;
 	
 	private static LyricUtil lyricUtil = LyricUtil.getInstance();
 	
 	private static Pattern whitespace = Pattern.compile("\\s+");
 	
-	private   static HashMap<String, ArrayList<String>> fileCache             = null;
-	private   static HashMap<String, ArrayList<String>> functions             = null;
-	private   static HashMap<String, File>              functionToFile        = null;
-	private   static HashMap<String, Integer>           functionToLineOffset  = null;
-	public    static HashMap<String, ArrayList<String>> patterns              = null;
-	private   static HashMap<String, File>              patternToFile         = null;
-	private   static HashMap<String, Integer>           patternToLineOffset   = null;
-	private   static TreeMap<String, TreeSet<Integer>>  chords                = null;
-	private   static boolean                            instrumentsParsed     = false;
-	private   static HashMap<String, StringBuilder>     metaInfo              = null;
-	private   static HashMap<String, ArrayList<String>> softKaraokeInfo       = null;
-	private   static boolean                            frstInstrBlkOver      = false;
-	private   static String                             chosenCharset         = null;
-	private   static HashSet<String>                    definedFunctionNames  = null;
-	private   static HashSet<String>                    definedPatternNames   = null;
-	private   static int                                nestableBlkDepth      = 0;
-	private   static Deque<NestableBlock>               nestableBlkStack      = null;
-	private   static Deque<StackTraceElement>           stackTrace            = null;
-	private   static Deque<String>                      functionNameStack     = null;
-	private   static Deque<Integer>                     functionLineStack     = null;
-	private   static Deque<File>                        functionFileStack     = null;
-	private   static Deque<HashMap<String, String>>     paramStackNamed       = null;
-	private   static Deque<ArrayList<String>>           paramStackIndexed     = null;
-	private   static Deque<HashMap<String, String>>     magicVarStack         = null;
-	private   static Deque<String>                      patternNameStack      = null;
-	private   static Deque<Integer>                     patternLineStack      = null;
-	private   static Deque<File>                        patternFileStack      = null;
-	private   static HashSet<String>                    redefinitions         = null;
-	private   static boolean                            soundbankParsed       = false;
-	protected static HashMap<String, String>            constants             = null;
-	protected static HashMap<String, String>            variables             = null;
-	private   static Pattern                            varPattern            = null;
-	private   static Pattern                            callPattern           = null;
-	private   static Pattern                            barLinePattern        = null;
-	private   static Pattern                            condPattern           = null;
-	private   static Pattern                            condInPattern         = null;
-	private   static Pattern                            crlfSkPattern         = null;
-	private   static Pattern                            sharpPattern          = null;
-	private   static Pattern                            flatPattern           = null;
-	private   static Pattern                            optAssignPattern      = null;
-	private   static Pattern                            chordAssignPattern    = null;
-	private   static Pattern                            varAssignPattern      = null;
-	private   static Pattern                            chordSepPattern       = null;
-	private   static Pattern                            compactChannelPattern = null;
-	private   static Pattern                            invalidNoteIdxPattern = null;
-	private   static boolean                            isSoftKaraoke         = false;
-	public    static boolean                            isPlayingTupletBlock  = false;
-	private   static TreeMap<Long, Long>                measureLengthHistory  = null;
-	
-	private static boolean isDefineParsRun     = false; // parsing run for define commands
-	private static boolean isConstParsRun      = false; // parsing run for constant definitions
-	private static boolean isChInstMetaParsRun = false; // parsing run for chords, meta, instruments and block nesting
-	private static boolean isFuncNameParsRun   = false; // parsing run for defined function and pattern names
-	private static boolean isFuncParsRun       = false; // parsing run for functions and patterns
-	private static boolean isCondCheckParsRun  = false; // parsing run for pre-checks of if/elsif conditions
-	private static boolean isDefaultParsRun    = false; // final parsing run
+	private   HashMap<String, ArrayList<TokenizedLine>> fileCache      = null;
+	private   IdentityHashMap<TokenizedLine, TokenizedLine> resolvedLines = null;
+	private   HashMap<String, ArrayList<Instruction>>   functions      = null;
+	private   HashMap<String, File>              functionToFile        = null;
+	private   HashMap<String, Integer>           functionToLineOffset  = null;
+	public    HashMap<String, ArrayList<TokenizedLine>> patterns       = null;
+	private   HashMap<String, File>              patternToFile         = null;
+	private   HashMap<String, Integer>           patternToLineOffset   = null;
+	private   TreeMap<String, TreeSet<Integer>>  chords                = null;
+	private   boolean                            instrumentsParsed     = false;
+	private   HashMap<String, StringBuilder>     metaInfo              = null;
+	private   HashMap<String, ArrayList<String>> softKaraokeInfo       = null;
+	private   boolean                            frstInstrBlkOver      = false;
+	private   String                             chosenCharset         = null;
+	private   HashSet<String>                    definedFunctionNames  = null;
+	private   HashSet<String>                    definedPatternNames   = null;
+	private   int                                nestableBlkDepth      = 0;
+	private   Deque<NestableBlock>               nestableBlkStack      = null;
+	private   Deque<StackTraceElement>           stackTrace            = null;
+	private   Deque<String>                      functionNameStack     = null;
+	private   Deque<Integer>                     functionLineStack     = null;
+	private   Deque<File>                        functionFileStack     = null;
+	private   Deque<HashMap<String, String>>     paramStackNamed       = null;
+	private   Deque<ArrayList<String>>           paramStackIndexed     = null;
+	private   Deque<HashMap<String, String>>     magicVarStack         = null;
+	private   Deque<String>                      patternNameStack      = null;
+	private   Deque<Integer>                     patternLineStack      = null;
+	private   Deque<File>                        patternFileStack      = null;
+	private   TreeMap<String, String>            redefinitions         = null;
+	private   boolean                            soundbankParsed       = false;
+	protected HashMap<String, String>            constants             = null;
+	protected HashMap<String, String>            variables             = null;
+	private   Pattern                            varPattern            = null;
+	private   HashMap<String, VariableTemplate>  templates             = null;
+	private   HashMap<String, List<CommandOption>> optionsCache        = new HashMap<>();
+	private   HashMap<String, int[]>             durationCache         = new HashMap<>();
+	private   IncludePrefetcher                  prefetcher            = null;
+	private   HashSet<String>                    libraryPaths          = null;
+	private   HashMap<String, LibraryDefinitions> libraryReplays       = null;
+	private   HashMap<String, LibraryDefinitions> libraryRecords       = null;
+	private   LibraryDefinitions                 recording             = null;
+	private   String                             finalLibraryKey       = null;
+	private   Pattern                            callPattern           = null;
+	private   Pattern                            barLinePattern        = null;
+	private   Pattern                            condPattern           = null;
+	private   Pattern                            condInPattern         = null;
+	private   Pattern                            crlfSkPattern         = null;
+	private   Pattern                            sharpPattern          = null;
+	private   Pattern                            flatPattern           = null;
+	private   Pattern                            optAssignPattern      = null;
+	private   Pattern                            chordAssignPattern    = null;
+	private   Pattern                            varAssignPattern      = null;
+	private   Pattern                            chordSepPattern       = null;
+	private   Pattern                            compactChannelPattern = null;
+	private   Pattern                            invalidNoteIdxPattern = null;
+	private   boolean                            isSoftKaraoke         = false;
+	public    boolean                            isPlayingTupletBlock  = false;
+	private   int                                blockShift            = 0;
+	private   int                                blockTupletFactor     = 1;
+	private   int                                blockTupletDivisor    = 1;
+	private   TreeMap<Long, Long>                measureLengthHistory  = null;
+	
+	private boolean isDefineParsRun     = false; // parsing run for define commands
+	private boolean isConstParsRun      = false; // parsing run for constant definitions
+	private boolean isChInstMetaParsRun = false; // parsing run for chords, meta, instruments and block nesting
+	private boolean isFuncNameParsRun   = false; // parsing run for defined function and pattern names
+	private boolean isFuncParsRun       = false; // parsing run for functions and patterns
+	private boolean isCondCheckParsRun  = false; // parsing run for pre-checks of if/elsif conditions
+	private boolean isDefaultParsRun    = false; // final parsing run
 	
 	/* *******************
 	 * instance fields
@@ -303,37 +322,32 @@ public class MidicaPLParser extends SequenceParser {
 	private String            currentLineContent  = null;
 	private int               currentMode         = MODE_DEFAULT;
 	private String            currentFunctionName = null;
-	private ArrayList<String> currentFunction     = null;
+	private ArrayList<Instruction>   currentFunction = null;
 	private String            currentPatternName  = null;
-	private ArrayList<String> currentPattern      = null;
+	private ArrayList<TokenizedLine> currentPattern  = null;
 	private boolean           condChainOpened     = false; // current / last block had an if or elsif
 	private boolean           condChainHit        = false; // if / elsif chain had a hit
 	
 	/**
-	 * Indicates if the current parser object parses the file chosen by the user.  
-	 * Otherwise it parses an included file.
+	 * Indicates if the file chosen by the user is currently parsed.
+	 * Otherwise an included file is parsed.
 	 */
 	private boolean isRootParser = false;
 	
 	/**
 	 * Creates a new MidicaPL parser.
 	 * 
-	 * @param isRootParser  **true**, if the parser object is created in order to parse a
-	 *                      user-defined file.
-	 *                      **false**, if the parser object is created in order to parse a
-	 *                      file which has been included by another MidicaPL file.
+	 * Each parser object holds its own parsing state. Included files are
+	 * parsed by the same object as the file including them.
 	 */
-	public MidicaPLParser(boolean isRootParser) {
-		this.isRootParser = isRootParser;
-		if (isRootParser) {
-			refreshSyntax();
-		}
+	public MidicaPLParser() {
+		refreshSyntax();
 	}
 	
 	/**
 	 * Restores the configured MidicaPL keywords and symbols.
 	 */
-	public static void refreshSyntax() {
+	public void refreshSyntax() {
 		BANK_SEP           = Dict.getSyntax( Dict.SYNTAX_BANK_SEP           );
 		TEMPO              = Dict.getSyntax( Dict.SYNTAX_TEMPO              );
 		TIME_SIG           = Dict.getSyntax( Dict.SYNTAX_TIME_SIG           );
@@ -458,47 +472,117 @@ public class MidicaPLParser extends SequenceParser {
 		ORIGINAL_DEFINE  = DEFINE;
 		ORIGINAL_INCLUDE = INCLUDE;
 		ORIGINAL_COMMENT = COMMENT;
+		
+		clearSyntaxCaches();
+	}
+	
+	/**
+	 * Discards all cached options and durations.
+	 * 
+	 * Called whenever the syntax may have been changed, because the cached
+	 * results depend on the option names and length symbols.
+	 */
+	private void clearSyntaxCaches() {
+		optionsCache.clear();
+		durationCache.clear();
 	}
 	
 	/**
 	 * Parses a MidicaPL source file. Creates a MIDI sequence from that file.
 	 * 
+	 * The created sequence is analyzed and published to the player.
+	 * 
 	 * @param fileAsObj  MidicaPL source file.
 	 */
 	public void parse(Object fileAsObj) throws ParseException {
-		this.file = (File) fileAsObj;
+		File file      = (File) fileAsObj;
+		long startTime = ParseProfiler.start();
 		
 		// clean up and make parser ready for parsing
-		if (isRootParser) {
-			preprocess(file);
-			reset();
-		}
+		preprocess(file);
 		
 		// get charset
-		chosenCharset = ((ComboboxStringOption)
+		String charset = ((ComboboxStringOption)
 			ConfigComboboxModel.getModel(Config.CHARSET_MPL).getSelectedItem()
 		).getIdentifier();
-		Charset charset = Charset.forName(chosenCharset);
 		
+		Sequence seq = compile(file, charset);
+		
+		// EOF has been reached
+		postprocessSequence(seq, charset);
+		if (ParseProfiler.isEnabled()) {
+			long events = 0;
+			for (Track track : seq.getTracks())
+				events += track.size();
+			ParseProfiler.stopParsing(file, events, startTime);
+		}
+	}
+	
+	/**
+	 * Compiles a MidicaPL source file into a MIDI sequence.
+	 * 
+	 * In contrast to {@link #parse(Object)} the sequence is only returned.
+	 * It's neither analyzed nor published to the player.
+	 * 
+	 * The whole parsing state (defines, constants, functions, patterns,
+	 * nestable blocks and the created sequence) belongs to this parser object.
+	 * So different parser objects can compile different files in different
+	 * threads at the same time.
+	 * 
+	 * @param file     MidicaPL source file.
+	 * @param charset  Charset of the source file and its included files.
+	 * @return the created sequence.
+	 * @throws ParseException if the file cannot be parsed.
+	 */
+	public Sequence compile(File file, String charset) throws ParseException {
+		this.file     = file;
+		isRootParser  = true;
+		chosenCharset = charset;
+		reset();
+		
+		// start reading included files in the background
+		prefetcher = new IncludePrefetcher(Charset.forName(chosenCharset), INCLUDE, COMMENT, ORIGINAL_COMMENT);
+		
+		boolean isCompiled = false;
 		try {
-			String            filePath = file.getCanonicalPath();
-			ArrayList<String> lines    = fileCache.get(filePath);
+			parseFile(file);
+			
+			// allow an empty sequence?
+			postprocessInstrumentsIfNotYetDone();
+			isCompiled = true;
+		}
+		finally {
+			// don't let prefetching tasks survive the parsing process
+			prefetcher.awaitAll();
+			
+			persistLibraries(isCompiled);
+		}
+		
+		return creator.getCreatedSequence();
+	}
+	
+	/**
+	 * Parses a MidicaPL source file.
+	 * 
+	 * For the root file all parsing runs are executed.
+	 * For an included file only the current parsing run is executed.
+	 * 
+	 * @param file  MidicaPL source file.
+	 * @throws ParseException if the file cannot be parsed.
+	 */
+	private void parseFile(File file) throws ParseException {
+		try {
+			String                   filePath = file.getCanonicalPath();
+			ArrayList<TokenizedLine> lines    = fileCache.get(filePath);
 			
 			// file not yet cached?
 			if (null == lines) {
 				
-				// open file for reading
-				FileInputStream   fis = new FileInputStream(file);
-				InputStreamReader ir  = new InputStreamReader(fis, charset);
-				BufferedReader    br  = new BufferedReader(ir);
-				String            line;
-				
 				// get lines from file
-				lines = new ArrayList<>();
-				while (null != (line = br.readLine())) {
-					lines.add(line);
-				}
-				br.close();
+				// (unchanged since the last parsing? - reuse the tokenized lines)
+				// (included file? - use the persistent cache as well)
+				// (already read in the background? - take these lines)
+				lines = prefetcher.getLines(file, ! isRootParser);
 				
 				// cache file (not neccessary for the root parser)
 				if (! isRootParser) {
@@ -512,8 +596,10 @@ public class MidicaPLParser extends SequenceParser {
 				parsingRun(lines);
 				isDefineParsRun = false;
 				
-				// now the comment symbol cannot change any more.
+				// now the syntax cannot change any more.
+				finalLibraryKey = getLibraryKey();
 				cleanLines(lines);
+				SourceCache.update(filePath, lines);
 				
 				// compile regex patterns that are needed after the
 				// define run is finished.
@@ -560,15 +646,36 @@ public class MidicaPLParser extends SequenceParser {
 				// Not the root parser.
 				// This is called for each INCLUDE command and parsing run.
 				// So the parsing run has to be executed only once here.
-				// For which run it's called is obvious because the according fields are static.
+				// For which run it's called is obvious because the run flags are shared
+				// with the including file.
+				
+				// parse the file or apply cached definitions?
+				if (isDefineParsRun)
+					prepareLibrary(filePath);
+				recording = libraryRecords.get(filePath);
 				
 				if (isConstParsRun) {
 					// The comment symbol cannot change any more.
 					// Clean the lines for all following parsing runs.
 					cleanLines(lines);
+					
+					if (recording != null)
+						recording.setFinalKey(finalLibraryKey);
 				}
 				
+				// apply cached definitions
+				LibraryDefinitions library = libraryReplays.get(filePath);
+				if (library != null && canApply(library)) {
+					applyDefinitions(library, lines);
+					return;
+				}
+				libraryReplays.remove(filePath);
+				
 				parsingRun(lines);
+				
+				// remember the compiled functions and patterns
+				if (isFuncParsRun && recording != null)
+					recordBlockBodies(recording);
 			}
 		}
 		catch (FileNotFoundException e) {
@@ -578,15 +685,327 @@ public class MidicaPLParser extends SequenceParser {
 			e.printStackTrace();
 			throw new ParseException(e.toString());
 		}
+	}
+	
+	/**
+	 * Parses an included file.
+	 * 
+	 * The included file is parsed by the same parser object so that it shares
+	 * the parsing state with the including file. Only the fields describing
+	 * the current file and line are saved before and restored afterwards.
+	 * 
+	 * @param inclFile  the included file
+	 * @throws ParseException if the file cannot be parsed.
+	 */
+	private void parseIncludedFile(File inclFile) throws ParseException {
+		
+		// remember the state of the including file
+		File                     outerFile         = file;
+		int                      outerLineNumber   = currentLineNumber;
+		String                   outerLineContent  = currentLineContent;
+		int                      outerMode         = currentMode;
+		String                   outerFunctionName = currentFunctionName;
+		ArrayList<Instruction>   outerFunction     = currentFunction;
+		String                   outerPatternName  = currentPatternName;
+		ArrayList<TokenizedLine> outerPattern      = currentPattern;
+		boolean                  outerChainOpened  = condChainOpened;
+		boolean                  outerChainHit     = condChainHit;
+		boolean                  outerIsRoot       = isRootParser;
+		LibraryDefinitions       outerRecording    = recording;
+		
+		file                = inclFile;
+		currentLineNumber   = 0;
+		currentLineContent  = null;
+		currentMode         = MODE_DEFAULT;
+		currentFunctionName = null;
+		currentFunction     = null;
+		currentPatternName  = null;
+		currentPattern      = null;
+		condChainOpened     = false;
+		condChainHit        = false;
+		isRootParser        = false;
 		
-		// allow an empty sequence?
-		if (isRootParser) {
-			postprocessInstrumentsIfNotYetDone();
+		try {
+			parseFile(inclFile);
+		}
+		finally {
+			file                = outerFile;
+			currentLineNumber   = outerLineNumber;
+			currentLineContent  = outerLineContent;
+			currentMode         = outerMode;
+			currentFunctionName = outerFunctionName;
+			currentFunction     = outerFunction;
+			currentPatternName  = outerPatternName;
+			currentPattern      = outerPattern;
+			condChainOpened     = outerChainOpened;
+			condChainHit        = outerChainHit;
+			isRootParser        = outerIsRoot;
+			recording           = outerRecording;
 		}
+	}
+	
+	/**
+	 * Decides if an included file is parsed or if the definitions of a previous
+	 * parsing process can be applied instead.
+	 * 
+	 * This is called in the define parsing run, before the file is parsed.
+	 * 
+	 * If no definitions are cached for the current syntax, they are recorded
+	 * while the file is parsed.
+	 * 
+	 * @param path  canonical path of the included file
+	 */
+	private void prepareLibrary(String path) {
 		
-		// EOF has been reached
-		if (isRootParser) {
-			postprocessSequence(SequenceCreator.getSequence(), chosenCharset);
+		// included more than once? - don't record
+		if (! libraryPaths.add(path)) {
+			libraryRecords.remove(path);
+			return;
+		}
+		
+		String             key     = getLibraryKey();
+		LibraryDefinitions library = SourceCache.getDefinitions(path, key);
+		if (library != null)
+			libraryReplays.put(path, library);
+		else
+			libraryRecords.put(path, new LibraryDefinitions(key));
+	}
+	
+	/**
+	 * Returns a key describing the current syntax and the configuration that
+	 * is needed to parse a library.
+	 * 
+	 * @return the key.
+	 */
+	private String getLibraryKey() {
+		StringBuilder key = new StringBuilder();
+		String[] configKeys = {
+			Config.SYNTAX, Config.NOTE, Config.HALF_TONE, Config.SHARP_FLAT,
+			Config.OCTAVE, Config.PERCUSSION, Config.INSTRUMENT,
+		};
+		for (String configKey : configKeys) {
+			key.append(configKey + "=" + Config.get(configKey) + "\n");
+		}
+		for (Entry<String, String> redefinition : redefinitions.entrySet()) {
+			key.append(redefinition.getKey() + "=" + redefinition.getValue() + "\n");
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * Checks if the cached definitions of a library can be applied in the
+	 * current parsing run.
+	 * 
+	 * That's the case if everything that has been looked up while recording the
+	 * definitions is still the same.
+	 * 
+	 * @param library  the cached definitions
+	 * @return **true** if the definitions can be applied, otherwise **false**.
+	 */
+	private boolean canApply(LibraryDefinitions library) {
+		if (isDefineParsRun)
+			return true;
+		
+		// syntax changed after the INCLUDE?
+		if (! finalLibraryKey.equals(library.getFinalKey()))
+			return false;
+		if (isConstParsRun)
+			return true;
+		
+		for (Entry<String, String> lookup : library.getConstantLookups().entrySet()) {
+			if (! Objects.equals(lookup.getValue(), constants.get(lookup.getKey())))
+				return false;
+		}
+		if (! isFuncParsRun)
+			return true;
+		
+		// function bodies have been checked with the chords, functions and
+		// patterns of the including files
+		for (Entry<String, Boolean> lookup : library.getChordLookups().entrySet()) {
+			if (lookup.getValue() != chords.containsKey(lookup.getKey()))
+				return false;
+		}
+		for (Entry<String, Boolean> lookup : library.getFunctionLookups().entrySet()) {
+			if (lookup.getValue() != definedFunctionNames.contains(lookup.getKey()))
+				return false;
+		}
+		for (Entry<String, Boolean> lookup : library.getPatternLookups().entrySet()) {
+			if (lookup.getValue() != definedPatternNames.contains(lookup.getKey()))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Applies the cached definitions of a library, instead of parsing it.
+	 * 
+	 * Does the same as {@link #parsingRun(ArrayList)} for the library,
+	 * including the checks for definitions that already exist.
+	 * 
+	 * @param library  the cached definitions
+	 * @param lines    the lines of the library (needed for error messages)
+	 * @throws ParseException if a definition cannot be applied.
+	 */
+	private void applyDefinitions(LibraryDefinitions library, ArrayList<TokenizedLine> lines) throws ParseException {
+		currentLineNumber = 0;
+		try {
+			if (isDefineParsRun) {
+				for (Definition define : library.getDefines()) {
+					setCurrentLine(define.getLineNumber(), lines);
+					applyDefine(define.getName(), define.getValue());
+				}
+			}
+			else if (isConstParsRun) {
+				for (Definition constant : library.getConstants()) {
+					setCurrentLine(constant.getLineNumber(), lines);
+					defineConstant(constant.getName(), constant.getValue());
+				}
+			}
+			else if (isChInstMetaParsRun) {
+				for (Definition chord : library.getChords()) {
+					setCurrentLine(chord.getLineNumber(), lines);
+					if (chords.containsKey(chord.getName())) {
+						throw new ParseException(Dict.get(Dict.ERROR_CHORD_ALREADY_DEFINED) + chord.getName());
+					}
+					TreeSet<Integer> notes = new TreeSet<>();
+					for (String note : chord.getValue().split(",")) {
+						notes.add(Integer.parseInt(note));
+					}
+					chords.put(chord.getName(), notes);
+				}
+			}
+			else if (isFuncNameParsRun) {
+				for (Block block : library.getBlocks()) {
+					if (block.isPattern())
+						definedPatternNames.add(block.getName());
+					else
+						definedFunctionNames.add(block.getName());
+				}
+			}
+			else if (isFuncParsRun) {
+				for (Block block : library.getBlocks()) {
+					setCurrentLine(block.getLineNumber(), lines);
+					String name = block.getName();
+					if (block.isPattern()) {
+						if (patterns.containsKey(name)) {
+							throw new ParseException(Dict.get(Dict.ERROR_PATTERN_ALREADY_DEFINED) + name);
+						}
+						ArrayList<TokenizedLine> pattern = new ArrayList<>();
+						for (String content : block.getBody()) {
+							pattern.add(new TokenizedLine(new String[] {content}));
+						}
+						patterns.put(name, pattern);
+						patternToFile.put(name, file);
+						patternToLineOffset.put(name, block.getLineNumber());
+					}
+					else {
+						if (functions.containsKey(name)) {
+							throw new ParseException(Dict.get(Dict.ERROR_FUNCTION_ALREADY_DEFINED) + name);
+						}
+						ArrayList<Instruction> function = new ArrayList<>();
+						for (String content : block.getBody()) {
+							function.add(compileInstruction(new String[] {content}));
+						}
+						functions.put(name, function);
+						functionToFile.put(name, file);
+						functionToLineOffset.put(name, block.getLineNumber());
+					}
+				}
+			}
+			
+			// nothing to do in the other parsing runs
+		}
+		catch (ParseException e) {
+			addErrorContext(e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Sets the current line number and content, needed for error messages.
+	 * 
+	 * @param lineNumber  line number
+	 * @param lines       all lines of the current file
+	 */
+	private void setCurrentLine(int lineNumber, ArrayList<TokenizedLine> lines) {
+		currentLineNumber  = lineNumber;
+		currentLineContent = lineNumber > 0 && lineNumber <= lines.size() ? lines.get(lineNumber - 1).getContent() : null;
+	}
+	
+	/**
+	 * Adds the compiled lines of the recorded functions and patterns to the
+	 * recorded definitions.
+	 * 
+	 * This is called after the function parsing run of the recorded library.
+	 * 
+	 * @param library  the recorded definitions
+	 */
+	private void recordBlockBodies(LibraryDefinitions library) {
+		for (Block block : library.getBlocks()) {
+			ArrayList<String> body = new ArrayList<>();
+			if (block.isPattern()) {
+				for (TokenizedLine line : patterns.get(block.getName()))
+					body.add(line.getContent());
+			}
+			else {
+				for (Instruction instruction : functions.get(block.getName()))
+					body.add(instruction.getContent());
+			}
+			block.setBody(body);
+		}
+	}
+	
+	/**
+	 * Indicates if the given file is a pure library, consisting of nothing
+	 * but definitions.
+	 * 
+	 * Only the definitions of pure libraries can be applied without parsing them.
+	 * Everything else depends on the state of the including file.
+	 * 
+	 * @param lines  the (already parsed) lines of the file
+	 * @return **true** for a pure library, otherwise **false**.
+	 */
+	private boolean isLibrary(ArrayList<TokenizedLine> lines) {
+		boolean isInBlock = false;
+		for (TokenizedLine line : lines) {
+			TokenizedLine resolved = resolvedLines.get(line);
+			if (null == resolved)
+				return false;
+			String cmd = resolved.getCommand();
+			
+			// inside of a function or pattern
+			if (isInBlock) {
+				if (END.equals(cmd))
+					isInBlock = false;
+			}
+			else if (FUNCTION.equals(cmd) || PATTERN.equals(cmd)) {
+				isInBlock = true;
+			}
+			
+			// root level
+			else if (! "".equals(cmd) && ! DEFINE.equals(cmd) && ! ORIGINAL_DEFINE.equals(cmd)
+				&& ! CONST.equals(cmd) && ! CHORD.equals(cmd)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Stores the cleaned lines of all included files and the definitions of
+	 * the recorded libraries in the source cache and the include cache, for
+	 * the next parsing process.
+	 * 
+	 * @param isCompiled  **true** if the parsing process has been successful,
+	 *                    otherwise only the lines are stored
+	 */
+	private void persistLibraries(boolean isCompiled) {
+		for (Entry<String, ArrayList<TokenizedLine>> entry : fileCache.entrySet()) {
+			String             path    = entry.getKey();
+			LibraryDefinitions library = libraryRecords.get(path);
+			if (! isCompiled || (library != null && ! isLibrary(entry.getValue())))
+				library = null;
+			SourceCache.persist(path, entry.getValue(), library);
 		}
 	}
 	
@@ -715,25 +1134,54 @@ public class MidicaPLParser extends SequenceParser {
 	 * @throws ParseException  If the line cannot be parsed.
 	 */
 	public void parseLine(String line) throws ParseException {
+		parseLine(new TokenizedLine(0, line));
+	}
+	
+	/**
+	 * Parses one single pre-tokenized line of a MidicaPL source file.
+	 * The line is expected to be cleaned already from comments and leading/trailing whitespaces.
+	 * 
+	 * After the const parsing run, constants are replaced only once per line.
+	 * The resolved line is stored in this parser and reused in all following
+	 * parsing runs. It's not stored inside of the given line because source
+	 * lines are shared with other parsers that may use different constants.
+	 * 
+	 * Can also be called from a {@link NestableBlock}.
+	 * 
+	 * @param line             The line to be parsed.
+	 * @throws ParseException  If the line cannot be parsed.
+	 */
+	public void parseLine(TokenizedLine line) throws ParseException {
 		
 		// replace constants
-		if (! isDefineParsRun && ! isConstParsRun) {
-			line = replaceConstants(line);
+		if (! isDefineParsRun && ! isConstParsRun && ! line.isResolved()) {
+			TokenizedLine resolved = resolvedLines.get(line);
+			if (null == resolved) {
+				String content  = line.getContent();
+				String replaced = replaceConstants(content);
+				if (replaced.equals(content))
+					resolved = line;
+				else
+					resolved = new TokenizedLine(line.getLineNumber(), replaced);
+				resolvedLines.put(line, resolved);
+			}
+			line = resolved;
 		}
 		
-		currentLineContent = line;
+		String content = line.getContent();
+		currentLineContent = content;
 		
 		// replace variables in stack traces
 		// (the real replacement will be later)
-		if (isDefaultParsRun                  // only in the default run
-			&& MODE_DEFAULT == currentMode    // not inside of functions
-			&& 0 == nestableBlkDepth          // not inside of a block
-			&& line.startsWith(VAR_SYMBOL)) { // not for VAR definitions
+		if (isDefaultParsRun                     // only in the default run
+			&& MODE_DEFAULT == currentMode       // not inside of functions
+			&& 0 == nestableBlkDepth             // not inside of a block
+			&& content.startsWith(VAR_SYMBOL)) { // not for VAR definitions
 			
 			currentLineContent = replaceVariables(currentLineContent);
 		}
 		
-		String[] tokens = line.split("\\s+", 3);
+		String[] tokens = line.getTokens(3);
 		
 		if ("".equals(tokens[0])) {
 			// empty line or only comments
@@ -743,21 +1191,21 @@ public class MidicaPLParser extends SequenceParser {
 		
 		// only 2 tokens for meta or call commands, and for compact syntax
 		if (isChInstMetaParsRun && isMetaCmd(tokens[0])) {
-			tokens = line.split("\\s+", 2);
+			tokens = line.getTokens(2);
 		}
 		else if (CALL.equals(tokens[0])) {
-			tokens = line.split("\\s+", 2);
+			tokens = line.getTokens(2);
 		}
 		else if (isCompactCmd(tokens[0])) {
-			tokens = line.split("\\s+", 2);
+			tokens = line.getTokens(2);
 		}
 		
 		// only 2 tokens for constant or variable definitions
 		else if (isConstParsRun && CONST.equals(tokens[0])) {
-			tokens = line.split("\\s+", 2);
+			tokens = line.getTokens(2);
 		}
 		else if ((isDefaultParsRun || isFuncParsRun) && VAR.equals(tokens[0])) {
-			tokens = line.split("\\s+", 2);
+			tokens = line.getTokens(2);
 		}
 		
 		parseTokens(tokens);
@@ -855,18 +1303,22 @@ public class MidicaPLParser extends SequenceParser {
 	 * @throws ParseException if one of the lines cannot be parsed.
 	 * @throws IOException    if the file path cannot be calculated.
 	 */
-	private void parsingRun(ArrayList<String> lines) throws ParseException, IOException {
+	private void parsingRun(ArrayList<TokenizedLine> lines) throws ParseException, IOException {
+		long startTime = ParseProfiler.start();
 		currentLineNumber = 0;
 		try {
-			for (String line : lines) {
+			for (TokenizedLine line : lines) {
 				currentLineNumber++;
 				
 				// In the define parsing run, the lines are not yet cleaned because
 				// the comment symbol may change any time. So we need to do that here.
 				if (isDefineParsRun) {
-					line = cleanLine(line);
+					String cleanedLine = cleanLine(line.getRaw());
+					currentLineContent = cleanedLine;
+					parseLine(cleanedLine);
+					continue;
 				}
-				currentLineContent = line;
+				currentLineContent = line.getContent();
 				
 				parseLine(line);
 			}
@@ -878,20 +1330,19 @@ public class MidicaPLParser extends SequenceParser {
 			// In case of wrong block nesting make sure that the correct
 			// error message and line number is shown
 			nestableBlkDepth = 0;
+			
+			// profiling
+			if (isRootParser)
+				ParseProfiler.stopRun(getParsingRunName(), startTime);
+			else
+				ParseProfiler.stopFile(file, startTime);
 		}
 		catch (ParseException e) {
 			// Add file name and line number to exception and throw it again
 			// but only if this is not yet done.
 			// If this information is already available than it comes from
 			// another parser instance. In this case we must not overwrite it.
-			if (0 == e.getLineNumber()) {
-				e.setLineNumber(currentLineNumber);
-			}
-			if (null == e.getFile()) {
-				e.setFile(file);
-			}
-			e.setStackTrace(stackTrace);
-			e.setLineContentIfNotYetDone(currentLineContent);
+			addErrorContext(e);
 			throw e;
 		}
 		catch (Exception e) {
@@ -906,6 +1357,39 @@ public class MidicaPLParser extends SequenceParser {
 		}
 	}
 	
+	/**
+	 * Adds file name, line number, stack trace and line content to an exception.
+	 * File name and line number are only added if not yet done.
+	 * 
+	 * @param e  the exception
+	 */
+	private void addErrorContext(ParseException e) {
+		if (0 == e.getLineNumber()) {
+			e.setLineNumber(currentLineNumber);
+		}
+		if (null == e.getFile()) {
+			e.setFile(file);
+		}
+		e.setStackTrace(stackTrace);
+		e.setLineContentIfNotYetDone(currentLineContent);
+	}
+	
+	/**
+	 * Returns the name of the current parsing run.
+	 * Needed for profiling.
+	 * 
+	 * @return the name of the parsing run.
+	 */
+	private String getParsingRunName() {
+		if (isDefineParsRun)     return "define";
+		if (isConstParsRun)      return "constants";
+		if (isChInstMetaParsRun) return "chords, instruments, meta";
+		if (isFuncNameParsRun)   return "function names";
+		if (isFuncParsRun)       return "functions, patterns";
+		if (isCondCheckParsRun)  return "condition checks";
+		return "default";
+	}
+	
 	/**
 	 * Parses the tokens of one MidicaPL command.
 	 * 
@@ -935,6 +1419,18 @@ public class MidicaPLParser extends SequenceParser {
 			}
 		}
 		
+		parseReplacedTokens(tokens);
+	}
+	
+	/**
+	 * Parses the tokens of one line after variables in channel commands
+	 * have been replaced.
+	 * 
+	 * @param tokens             Token array.
+	 * @throws ParseException    If the tokens cannot be parsed.
+	 */
+	private void parseReplacedTokens(String[] tokens) throws ParseException {
+		
 		// reset if/elsif/else conditions in blocks
 		if (isDefaultParsRun
 			&& 0 == nestableBlkDepth
@@ -984,9 +1480,9 @@ public class MidicaPLParser extends SequenceParser {
 		// empty line?
 		if ("".equals(tokens[0])) {
 			if (isFunct)
-				currentFunction.add(String.join(" ", tokens)); // add to function
+				currentFunction.add(compileInstruction(tokens)); // add to function
 			else if (isBlock)
-				nestableBlkStack.peek().add(tokens); // add to block
+				nestableBlkStack.peek().add(new TokenizedLine(tokens)); // add to block
 		}
 		
 		// global command?
@@ -996,10 +1492,10 @@ public class MidicaPLParser extends SequenceParser {
 				throw new ParseException(Dict.get(Dict.ERROR_GLOBALS_IN_INSTR_DEF));
 			}
 			else if (isFunct) {
-				currentFunction.add(String.join(" ", tokens)); // add to function
+				currentFunction.add(compileInstruction(tokens)); // add to function
 			}
 			else if (isBlock) {
-				nestableBlkStack.peek().add(tokens); // add to block
+				nestableBlkStack.peek().add(new TokenizedLine(tokens)); // add to block
 			}
 			parseGlobalCmd(tokens, isFake);
 		}
@@ -1024,11 +1520,11 @@ public class MidicaPLParser extends SequenceParser {
 				if (patCallMatcher.matches()) {
 					patternName = patCallMatcher.group(1);
 				}
-				if (patternName != null && definedPatternNames.contains(patternName)) {
+				if (patternName != null && isPatternDefined(patternName)) {
 					if (isFunct)
-						currentFunction.add(String.join(" ", tokens)); // add to function
+						currentFunction.add(compileInstruction(tokens)); // add to function
 					else if (isBlock)
-						nestableBlkStack.peek().add(tokens); // add to block
+						nestableBlkStack.peek().add(new TokenizedLine(tokens)); // add to block
 					parsePatternCall(tokens, isFake);
 					return;
 				}
@@ -1041,9 +1537,9 @@ public class MidicaPLParser extends SequenceParser {
 			
 			// channel command with a single note
 			if (isFunct)
-				currentFunction.add(String.join(" ", tokens)); // add to function
+				currentFunction.add(compileInstruction(tokens)); // add to function
 			else if (isBlock) {
-				nestableBlkStack.peek().add(tokens); // add to block
+				nestableBlkStack.peek().add(new TokenizedLine(tokens)); // add to block
 			}
 			
 			// apply or fake command
@@ -1053,18 +1549,18 @@ public class MidicaPLParser extends SequenceParser {
 		// compact (multi-note) channel command
 		else if (isCompactCmd(tokens[0])) {
 			if (isFunct)
-				currentFunction.add(String.join(" ", tokens)); // add to function
+				currentFunction.add(compileInstruction(tokens)); // add to function
 			else if (isBlock)
-				nestableBlkStack.peek().add(tokens); // add to block
+				nestableBlkStack.peek().add(new TokenizedLine(tokens)); // add to block
 			parseCompactCmd(tokens, isFake);
 		}
 		
 		// variable definition / assignment
 		else if (VAR.equals(tokens[0])) {
 			if (isFunct)
-				currentFunction.add(String.join(" ", tokens)); // add to function
+				currentFunction.add(compileInstruction(tokens)); // add to function
 			else if (isBlock)
-				nestableBlkStack.peek().add(tokens); // add to block
+				nestableBlkStack.peek().add(new TokenizedLine(tokens)); // add to block
 			parseVAR(tokens, isFake);
 		}
 		
@@ -1072,9 +1568,9 @@ public class MidicaPLParser extends SequenceParser {
 		// (Don't check this in the define parsing run, when varPattern is not yet initialized.)
 		else if (varPattern != null && varPattern.matcher(tokens[0]).matches()) {
 			if (isFunct)
-				currentFunction.add(String.join(" ", tokens)); // add to function
+				currentFunction.add(compileInstruction(tokens)); // add to function
 			else if (isBlock)
-				nestableBlkStack.peek().add(tokens); // add to block
+				nestableBlkStack.peek().add(new TokenizedLine(tokens)); // add to block
 			else
 				throw new ParseException(Dict.get(Dict.ERROR_VAR_NOT_ALLOWED) + tokens[0]);
 		}
@@ -1088,9 +1584,9 @@ public class MidicaPLParser extends SequenceParser {
 			
 			// only remember the line?
 			if (isFunct)
-				currentFunction.add(String.join(" ", tokens)); // add to function
+				currentFunction.add(compileInstruction(tokens)); // add to function
 			else if (isBlock)
-				nestableBlkStack.peek().add(tokens); // add to block
+				nestableBlkStack.peek().add(new TokenizedLine(tokens)); // add to block
 			
 			parseSingleLineInstrumentSwitch(tokens, isFake);
 		}
@@ -1101,9 +1597,9 @@ public class MidicaPLParser extends SequenceParser {
 			// only remember the line?
 			if (! isCondCheckParsRun) {
 				if (isFunct)
-					currentFunction.add(String.join(" ", tokens)); // add to function
+					currentFunction.add(compileInstruction(tokens)); // add to function
 				else if (isBlock)
-					nestableBlkStack.peek().add(tokens); // add to block
+					nestableBlkStack.peek().add(new TokenizedLine(tokens)); // add to block
 			}
 			
 			parseCALL(tokens, isFake);
@@ -1115,7 +1611,7 @@ public class MidicaPLParser extends SequenceParser {
 			
 			// only remember the line?
 			if (isFunct)
-				currentFunction.add(String.join(" ", tokens));
+				currentFunction.add(compileInstruction(tokens));
 			
 			parseBLOCK(tokens, isFunct);
 		}
@@ -1645,32 +2141,80 @@ public class MidicaPLParser extends SequenceParser {
 	 * @return   The duration of the note in ticks.
 	 * @throws ParseException  If the duration string cannot be parsed.
 	 */
-	public static int parseDuration(String s) throws ParseException {
+	public int parseDuration(String s) throws ParseException {
+		return parseDuration(s, 1, 1);
+	}
+	
+	/**
+	 * Parses the duration string from a channel command and calculates the
+	 * duration in ticks, with an additional tuplet factor applied to each summand.
+	 * 
+	 * Used for lines inside of tuplet blocks. The result is the same as if the
+	 * block's tuplet modifiers were appended to each summand of the duration string.
+	 * 
+	 * The summands of each duration string are parsed only once. After that,
+	 * only the ticks are calculated.
+	 * 
+	 * @param s              The duration string, extracted from the MidicaPL line.
+	 * @param tupletFactor   Additional factor, calculated by {@link #parseTuplets(String)}.
+	 * @param tupletDivisor  Additional divisor, calculated by {@link #parseTuplets(String)}.
+	 * @return   The duration of the note in ticks.
+	 * @throws ParseException  If the duration string cannot be parsed.
+	 */
+	public int parseDuration(String s, int tupletFactor, int tupletDivisor) throws ParseException {
 		
 		if (LENGTH_ZERO.equals(s)) {
 			return 0;
 		}
 		
-		String[] summands = s.split(Pattern.quote(LENGTH_PLUS), -1);
-		int      duration = 0;
-		for (String summand : summands) {
-			if ("".equals(summand))
-				throw new ParseException(Dict.get(Dict.ERROR_EMPTY_LENGTH_SUMMAND) + s);
-			duration += parseDurationSummand(summand);
+		// factors and divisors of all summands
+		int[] fractions = durationCache.get(s);
+		if (null == fractions) {
+			String[] summands = s.split(Pattern.quote(LENGTH_PLUS), -1);
+			fractions = new int[summands.length * 2];
+			for (int i = 0; i < summands.length; i++) {
+				if ("".equals(summands[i]))
+					throw new ParseException(Dict.get(Dict.ERROR_EMPTY_LENGTH_SUMMAND) + s);
+				int[] fraction       = parseDurationSummand(summands[i]);
+				fractions[i * 2]     = fraction[0];
+				fractions[i * 2 + 1] = fraction[1];
+			}
+			if (durationCache.size() < MAX_CACHED_DURATIONS)
+				durationCache.put(s, fractions);
+		}
+		
+		int duration = 0;
+		for (int i = 0; i < fractions.length; i += 2) {
+			duration += toTicks(fractions[i] * tupletFactor, fractions[i + 1] * tupletDivisor);
 		}
 		
 		return duration;
 	}
 	
+	/**
+	 * Calculates the ticks of a note length fraction, based on a full note.
+	 * 
+	 * @param factor   the numerator of the fraction
+	 * @param divisor  the denominator of the fraction
+	 * @return the length in ticks.
+	 */
+	private int toTicks(int factor, int divisor) {
+		int resolution = SequenceCreator.DEFAULT_RESOLUTION;
+		
+		// Theoretically: duration = resolution * factor / divisor
+		// But integer divisions are always rounded down and we want to round mathematically
+		return (resolution * factor * 10 + divisor * 5) / (divisor * 10);
+	}
+	
 	/**
 	 * Parses the duration string from one duration summand channel command
-	 * and calculates the duration in ticks.
+	 * and calculates the resulting fraction of a full note.
 	 * 
 	 * @param s  One duration summand, extracted from the MidicaPL line.
-	 * @return   The duration of the summand in ticks.
+	 * @return   factor (index 0) and divisor (index 1) of the summand.
 	 * @throws ParseException  If the duration summand cannot be parsed.
 	 */
-	private static int parseDurationSummand(String s) throws ParseException {
+	private int[] parseDurationSummand(String s) throws ParseException {
 		Pattern pattern = Pattern.compile(
 			  "^(\\d+|.+?)"                // basic divisor (basic note length)
 			+ "(("                         // open capturing group for modifiers
@@ -1738,51 +2282,82 @@ public class MidicaPLParser extends SequenceParser {
 				divisor   = divisor * power;
 			}
 			
-			// parse modifications by (nested) tuplets
-			// this must be before the triplet parsing to support the same symbol
-			// for tuplets and triplets
-			Pattern tupletPattern = Pattern.compile(
-				".*" + Pattern.quote(TUPLET_INTRO) + "(\\d+)" + Pattern.quote(TUPLET_FOR) + "(\\d+)" + ".*"
-			);
-			TUPLET:
-			while (postfix.matches(tupletPattern.toString())) {
-				Matcher tupletMatcher = tupletPattern.matcher(postfix);
-				if (tupletMatcher.matches()) {
-					int count    = toInt(tupletMatcher.group(1), true);
-					int countFor = toInt(tupletMatcher.group(2), true);
-					// cut away the matched tuplet
-					postfix = postfix.replaceFirst(
-						Pattern.quote(TUPLET_INTRO) + count + Pattern.quote(TUPLET_FOR) + countFor,
-						""
-					);
-					// a tuplet a:b (a for b) modifies the note length by the factor b/a
-					factor  *= countFor;
-					divisor *= count;
-				}
-			}
-			
-			// parse modifications by (nested) triplets
-			TRIPLET:
-			while (postfix.matches(".*" + Pattern.quote(TRIPLET) + ".*")) {
-				// cut away the matched triplet
-				postfix = postfix.replaceFirst(Pattern.quote(TRIPLET), "");
-				// nested triplets modify the note length by 2/3 for each nesting
-				factor  *= 2;
-				divisor *= 3;
-			}
-			
-			int resolution = SequenceCreator.DEFAULT_RESOLUTION;
+			// parse modifications by (nested) tuplets and triplets
+			int[] tuplets = parseTuplets(postfix);
+			factor  *= tuplets[0];
+			divisor *= tuplets[1];
 			
-			// Theoretically: duration = resolution * factor / divisor
-			// But integer divisions are always rounded down and we want to round mathematically
-			int duration = (resolution * factor * 10 + divisor * 5) / (divisor * 10);
-			return duration;
+			return new int[] {factor, divisor};
 		}
 		else
 			// pattern doesn't match
 			throw new ParseException(Dict.get(Dict.ERROR_NOTE_LENGTH_INVALID) + s);
 	}
 	
+	/**
+	 * Parses the (nested) tuplets and triplets of a duration summand or tuplet block.
+	 * 
+	 * @param postfix  the tuplet and triplet modifiers, without dots
+	 * @return factor (index 0) and divisor (index 1) resulting from all modifiers.
+	 * @throws ParseException  If a tuplet number cannot be parsed.
+	 */
+	public int[] parseTuplets(String postfix) throws ParseException {
+		int factor  = 1;
+		int divisor = 1;
+		
+		// parse modifications by (nested) tuplets
+		// this must be before the triplet parsing to support the same symbol
+		// for tuplets and triplets
+		Pattern tupletPattern = Pattern.compile(
+			".*" + Pattern.quote(TUPLET_INTRO) + "(\\d+)" + Pattern.quote(TUPLET_FOR) + "(\\d+)" + ".*"
+		);
+		TUPLET:
+		while (postfix.matches(tupletPattern.toString())) {
+			Matcher tupletMatcher = tupletPattern.matcher(postfix);
+			if (tupletMatcher.matches()) {
+				int count    = toInt(tupletMatcher.group(1), true);
+				int countFor = toInt(tupletMatcher.group(2), true);
+				// cut away the matched tuplet
+				postfix = postfix.replaceFirst(
+					Pattern.quote(TUPLET_INTRO) + count + Pattern.quote(TUPLET_FOR) + countFor,
+					""
+				);
+				// a tuplet a:b (a for b) modifies the note length by the factor b/a
+				factor  *= countFor;
+				divisor *= count;
+			}
+		}
+		
+		// parse modifications by (nested) triplets
+		TRIPLET:
+		while (postfix.matches(".*" + Pattern.quote(TRIPLET) + ".*")) {
+			// cut away the matched triplet
+			postfix = postfix.replaceFirst(Pattern.quote(TRIPLET), "");
+			// nested triplets modify the note length by 2/3 for each nesting
+			factor  *= 2;
+			divisor *= 3;
+		}
+		
+		return new int[] {factor, divisor};
+	}
+	
+	/**
+	 * Sets the shift and tuplet modifiers of the nestable block that is currently played.
+	 * 
+	 * These modifiers are applied numerically to the next channel commands,
+	 * instead of rewriting the command strings.
+	 * Must be reset to (0, 1, 1) after the block line is parsed.
+	 * 
+	 * @param shift          the sum of all shifts
+	 * @param tupletFactor   factor resulting from all tuplets
+	 * @param tupletDivisor  divisor resulting from all tuplets
+	 */
+	public void setBlockModifiers(int shift, int tupletFactor, int tupletDivisor) {
+		blockShift         = shift;
+		blockTupletFactor  = tupletFactor;
+		blockTupletDivisor = tupletDivisor;
+	}
+	
 	/**
 	 * Parses a mode command.
 	 * 
@@ -1942,6 +2517,8 @@ public class MidicaPLParser extends SequenceParser {
 			// real function parsing run
 			currentFunction = new ArrayList<>();
 			functions.put(currentFunctionName, currentFunction);
+			if (recording != null)
+				recording.addBlock(currentLineNumber, currentFunctionName, false);
 			
 			// add to stack
 			functionToFile.put(currentFunctionName, file);
@@ -1978,6 +2555,8 @@ public class MidicaPLParser extends SequenceParser {
 			// real function parsing run
 			currentPattern = new ArrayList<>();
 			patterns.put(currentPatternName, currentPattern);
+			if (recording != null)
+				recording.addBlock(currentLineNumber, currentPatternName, true);
 			
 			// add to stack
 			patternToFile.put(currentPatternName, file);
@@ -2076,7 +2655,7 @@ public class MidicaPLParser extends SequenceParser {
 		boolean mustCheckChain = isDefaultParsRun && nestableBlkDepth == 0;
 		if (optionsStr.length() > 0) {
 			
-			ArrayList<CommandOption> options = parseOptions(optionsStr, isFake);
+			List<CommandOption> options = parseOptions(optionsStr, isFake);
 			for (CommandOption opt : options) {
 				
 				String optName = opt.getName();
@@ -2312,12 +2891,87 @@ public class MidicaPLParser extends SequenceParser {
 			chord.add(noteVal);
 		}
 		chords.put(chordName, chord);
+		if (recording != null)
+			recording.addChord(currentLineNumber, chordName, chord);
 		
 		// don't allow mixing notes and percussion in the same chord
 		if (hasNotes && hasPercussion)
 			throw new ParseException(Dict.get(Dict.ERROR_CHORD_WITH_NOTES_AND_PERC) + chordName);
 	}
 	
+	/**
+	 * Compiles one line of a function body into an instruction.
+	 * 
+	 * Called while the function is defined. The line is split into the same
+	 * tokens that {@link #parseLine(TokenizedLine)} would use in the default
+	 * parsing run. For channel commands the tokens that
+	 * {@link #parseTokens(String[])} would replace are compiled into slots.
+	 * 
+	 * @param tokens  the tokens of the function line (constants and shortcuts already replaced)
+	 * @return the instruction.
+	 */
+	private Instruction compileInstruction(String[] tokens) {
+		TokenizedLine line = new TokenizedLine(tokens);
+		String        cmd  = line.getCommand();
+		
+		// only 2 tokens for call commands, compact syntax and variable definitions
+		String[] instrTokens;
+		if (CALL.equals(cmd) || isCompactCmd(cmd) || VAR.equals(cmd))
+			instrTokens = line.getTokens(2);
+		else
+			instrTokens = line.getTokens(3);
+		
+		// normal or compact channel command?
+		boolean isChannelCmd = isCompactCmd(cmd);
+		if (instrTokens.length > 2 && (cmd.matches("^\\d{1,2}$") || cmd.contains(VAR_SYMBOL)))
+			isChannelCmd = true;
+		if (! isChannelCmd)
+			return new Instruction(line, instrTokens, null);
+		
+		// compile channel and note(s)/chord(s)
+		VariableTemplate[] slots    = new VariableTemplate[instrTokens.length];
+		boolean            hasSlots = false;
+		for (int i = 0; i < 2 && i < instrTokens.length; i++) {
+			VariableTemplate template = getTemplate(instrTokens[i]);
+			if (template.getReferenceCount() > 0) {
+				slots[i] = template;
+				hasSlots = true;
+			}
+		}
+		
+		return new Instruction(line, instrTokens, hasSlots ? slots : null);
+	}
+	
+	/**
+	 * Executes one instruction of a called function.
+	 * 
+	 * Does the same as {@link #parseLine(TokenizedLine)} for the according
+	 * function line, but the line is not tokenized again, and only the
+	 * precompiled slots are filled with the bound arguments and variables.
+	 * 
+	 * @param instruction  the instruction to be executed
+	 * @throws ParseException if the instruction cannot be executed.
+	 */
+	private void runInstruction(Instruction instruction) throws ParseException {
+		String[] tokens = instruction.getTokens();
+		currentLineContent = instruction.getContent();
+		
+		// replace variables in stack traces
+		if (isDefaultParsRun && MODE_DEFAULT == currentMode && 0 == nestableBlkDepth && currentLineContent.startsWith(VAR_SYMBOL))
+			currentLineContent = replaceVariables(currentLineContent);
+		
+		// fill the slots
+		if (instruction.hasSlots() && isDefaultParsRun && MODE_DEFAULT == currentMode) {
+			for (int i = 0; i < tokens.length; i++) {
+				VariableTemplate slot = instruction.getSlot(i);
+				if (slot != null)
+					tokens[i] = replaceVariables(slot);
+			}
+		}
+		
+		parseReplacedTokens(tokens);
+	}
+	
 	/**
 	 * Parses a CALL command.
 	 * A CALL command calls a previously defined FUNCTION.
@@ -2356,7 +3010,7 @@ public class MidicaPLParser extends SequenceParser {
 		String  condIf   = null;
 		if (optionString != null && ! "".equals(optionString)) {
 			
-			ArrayList<CommandOption> options = parseOptions(optionString, isFake);
+			List<CommandOption> options = parseOptions(optionString, isFake);
 			for (CommandOption opt : options) {
 				
 				String optName = opt.getName();
@@ -2386,7 +3040,7 @@ public class MidicaPLParser extends SequenceParser {
 		if (functionName.equals(currentFunctionName)) {
 			throw new ParseException(Dict.get(Dict.ERROR_FUNCTION_RECURSION));
 		}
-		if (! definedFunctionNames.contains(functionName)) {
+		if (! isFunctionDefined(functionName)) {
 			throw new ParseException(Dict.get(Dict.ERROR_FUNCTION_UNDEFINED));
 		}
 		
@@ -2408,14 +3062,14 @@ public class MidicaPLParser extends SequenceParser {
 		ArrayList<Long> tickstamps = rememberTickstamps();
 		
 		// fetch the right function
-		ArrayList<String> function = functions.get(functionName);
+		ArrayList<Instruction> function = functions.get(functionName);
 		
 		// add params to call stack
 		File              file       = functionToFile.get(functionName);
 		int               lineOffset = functionToLineOffset.get(functionName);
 		StackTraceElement traceElem  = new StackTraceElement(file, lineOffset);
 		traceElem.setFunctionName(functionName);
-		traceElem.setParams(paramString);
+		traceElem.setParams(paramString, PARAM_OPEN, PARAM_CLOSE);
 		traceElem.setOptions(optionString);
 		stackTrace.push(traceElem);
 		functionNameStack.push(functionName);
@@ -2430,6 +3084,7 @@ public class MidicaPLParser extends SequenceParser {
 		}
 		
 		// apply all lines of the called function
+		long startTime = ParseProfiler.start();
 		for (int i = 0; i < quantity; i++) {
 			
 			// reset line in stacks
@@ -2437,7 +3092,7 @@ public class MidicaPLParser extends SequenceParser {
 			functionLineStack.pop();
 			functionLineStack.push(0);
 			
-			for (String functionLine : function) {
+			for (Instruction instruction : function) {
 				
 				// increment line in stacks
 				traceElem.incrementLine();
@@ -2446,18 +3101,26 @@ public class MidicaPLParser extends SequenceParser {
 				
 				// apply shift, if needed
 				if (shift != 0) {
-					if (! functionLine.startsWith(VAR)) {
-						functionLine = replaceVariables(functionLine);
-						String[] functionTokens = functionLine.split("\\s+", 3);
+					TokenizedLine functionLine = instruction.getLine();
+					String        content      = functionLine.getContent();
+					if (! content.startsWith(VAR)) {
+						String[] functionTokens;
+						if (content.contains(VAR_SYMBOL))
+							functionTokens = replaceVariables(content).split("\\s+", 3);
+						else
+							functionTokens = functionLine.getTokens(3);
 						functionTokens = addShift(functionTokens, shift);
-						functionLine   = String.join(" ", functionTokens);
+						parseLine(new TokenizedLine(functionTokens));
+						continue;
 					}
 				}
 				
-				parseLine(functionLine);
+				runInstruction(instruction);
 			}
 		}
 		
+		ParseProfiler.stopFunction(functionName, startTime);
+		
 		// restore tickstamps, if needed
 		if (multiple) {
 			restoreTickstamps(tickstamps);
@@ -2509,8 +3172,8 @@ public class MidicaPLParser extends SequenceParser {
 		}
 		
 		// get channel and pattern content
-		int               channel      = toChannel(tokens[0]);
-		ArrayList<String> patternLines = patterns.get(patternName);
+		int                      channel      = toChannel(tokens[0]);
+		ArrayList<TokenizedLine> patternLines = patterns.get(patternName);
 		
 		// init instruments if not yet done
 		postprocessInstrumentsIfNotYetDone();
@@ -2530,7 +3193,7 @@ public class MidicaPLParser extends SequenceParser {
 		String  outerSyllable = null;
 		if (outerOptStr != null) {
 			
-			ArrayList<CommandOption> callOptions = parseOptions(outerOptStr, false);
+			List<CommandOption> callOptions = parseOptions(outerOptStr, false);
 			for (CommandOption opt : callOptions) {
 				
 				String optName = opt.getName();
@@ -2592,7 +3255,7 @@ public class MidicaPLParser extends SequenceParser {
 		int               lineOffset = patternToLineOffset.get(patternName);
 		StackTraceElement traceElem  = new StackTraceElement(file, lineOffset);
 		traceElem.setPatternName(patternName);
-		traceElem.setParams(paramString);
+		traceElem.setParams(paramString, PARAM_OPEN, PARAM_CLOSE);
 		traceElem.setOptions(outerOptStr);
 		stackTrace.push(traceElem);
 		patternNameStack.push(patternName);
@@ -2621,6 +3284,7 @@ public class MidicaPLParser extends SequenceParser {
 		
 		// apply pattern lines
 		// OUTER_QUANTITY:
+		long startTime = ParseProfiler.start();
 		for (int i = 0; i < outerQuantity; i++) {
 			
 			// reset line in stacks
@@ -2633,7 +3297,7 @@ public class MidicaPLParser extends SequenceParser {
 			}
 			
 			PATTERN_LINE:
-			for (String patternLine : patternLines) {
+			for (TokenizedLine patternLineObj : patternLines) {
 				
 				// increment line in stacks
 				traceElem.incrementLine();
@@ -2641,18 +3305,20 @@ public class MidicaPLParser extends SequenceParser {
 				patternLineStack.push(lineNum + 1);
 				
 				// replace variables
+				String patternLine = patternLineObj.getContent();
 				currentLineContent = patternLine;
-				String[] rawPatLineTokens = whitespace.split(patternLine);
-				if (BLOCK_OPEN.equals(rawPatLineTokens[0]) || BLOCK_CLOSE.equals(rawPatLineTokens[0])) {
+				String[] patLineTokens = patternLineObj.getAllTokens();
+				if (BLOCK_OPEN.equals(patLineTokens[0]) || BLOCK_CLOSE.equals(patLineTokens[0])) {
 					// variables will be replaced later
 				}
-				else {
-					patternLine = replaceVariables(patternLine);
+				else if (patternLine.contains(VAR_SYMBOL)) {
+					patternLine    = replaceVariables(patternLine);
+					patternLineObj = new TokenizedLine(0, patternLine);
+					patLineTokens  = patternLineObj.getAllTokens();
 				}
 				currentLineContent = patternLine;
 				
 				// special line inside the pattern?
-				String[] patLineTokens = whitespace.split(patternLine);
 				if (patLineTokens.length > 0) {
 					
 					// empty line?
@@ -2702,7 +3368,7 @@ public class MidicaPLParser extends SequenceParser {
 				}
 				
 				// from now on assume a normal pattern line, beginning with indices
-				String[] patternTokens      = patternLine.split("\\s+", 3);
+				String[] patternTokens      = patternLineObj.getTokens(3);
 				patternTokens               = reorganizePatternCallTokens(patternTokens, 1); // for nested pattern calls
 				ArrayList<String> lineNotes = new ArrayList<String>();
 				
@@ -2714,7 +3380,7 @@ public class MidicaPLParser extends SequenceParser {
 				String  innerTremolo  = null;
 				if (patternTokens.length > 2) {
 					
-					ArrayList<CommandOption> patternOptions = parseOptions(patternTokens[2], false);
+					List<CommandOption> patternOptions = parseOptions(patternTokens[2], false);
 					for (CommandOption opt : patternOptions) {
 						
 						String optName = opt.getName();
@@ -2793,6 +3459,8 @@ public class MidicaPLParser extends SequenceParser {
 			}
 		}
 		
+		ParseProfiler.stopPattern(patternName, startTime);
+		
 		// reset ticks, if needed
 		if (! isFake) {
 			if (outerMultiple)
@@ -2975,7 +3643,7 @@ public class MidicaPLParser extends SequenceParser {
 				// check options
 				if (tokens.length > 2) {
 					
-					ArrayList<CommandOption> patternOptions = parseOptions(tokens[2], true);
+					List<CommandOption> patternOptions = parseOptions(tokens[2], true);
 					for (CommandOption opt : patternOptions) {
 						
 						String optName = opt.getName();
@@ -2994,7 +3662,7 @@ public class MidicaPLParser extends SequenceParser {
 		}
 		
 		// add line to pattern
-		currentPattern.add(String.join(" ", tokens));
+		currentPattern.add(new TokenizedLine(tokens));
 	}
 	
 	/**
@@ -3069,7 +3737,7 @@ public class MidicaPLParser extends SequenceParser {
 			String options     = patCallMatcher.group(4);
 			
 			// unknown pattern name? (maybe a length)
-			if (! definedPatternNames.contains(patternName)) {
+			if (! isPatternDefined(patternName)) {
 				
 				// parameters? - not existing pattern name
 				if (paramString != null)
@@ -3117,9 +3785,9 @@ public class MidicaPLParser extends SequenceParser {
 		
 		try {
 			if (isSoftKaraoke)
-				SequenceCreator.addMessageText(syllable, tick, 2);
+				creator.addMessageText(syllable, tick, 2);
 			else
-				SequenceCreator.addMessageLyrics(syllable, tick, false);
+				creator.addMessageLyrics(syllable, tick, false);
 		}
 		catch (InvalidMidiDataException e) {
 			throw new ParseException(Dict.get(Dict.ERROR_MIDI_PROBLEM) + e.getMessage());
@@ -3244,15 +3912,15 @@ public class MidicaPLParser extends SequenceParser {
 	 */
 	public String[] addShift(String[] tokens, int shift) throws ParseException {
 		
-		String shiftOptionStr = MidicaPLParser.SHIFT + MidicaPLParser.OPT_ASSIGNER + shift;
+		String shiftOptionStr = SHIFT + OPT_ASSIGNER + shift;
 		String line           = String.join(" ", (String[]) tokens);
 		
 		// call command?
-		if (MidicaPLParser.CALL.equals(tokens[0])) {
+		if (CALL.equals(tokens[0])) {
 			if (tokens.length < 3)
 				line += " " + shiftOptionStr;
 			else
-				line += MidicaPLParser.OPT_SEPARATOR + shiftOptionStr;
+				line += OPT_SEPARATOR + shiftOptionStr;
 			return line.split("\\s+", 3);
 		}
 		
@@ -3315,17 +3983,17 @@ public class MidicaPLParser extends SequenceParser {
 			// no exception --> channel command
 			
 			// rest? - ignore
-			if (MidicaPLParser.REST.equals(tokens[1])) {
+			if (REST.equals(tokens[1])) {
 				return tokens;
 			}
 			
 			// note or chord
 			if (whitespace.matcher(tokens[2]).find())
-				line += MidicaPLParser.OPT_SEPARATOR + shiftOptionStr;
+				line += OPT_SEPARATOR + shiftOptionStr;
 			else
 				line += " " + shiftOptionStr;
 			return line.split("\\s+", 3);
-				
+		
 		}
 		catch (ParseException e) {
 			// not a channel command
@@ -3336,8 +4004,8 @@ public class MidicaPLParser extends SequenceParser {
 	
 	/**
 	 * Parses an INCLUDE command.
-	 * An INCLUDE command parses another MidicaPL source file. Therefore
-	 * another parser instance of this class is created.
+	 * An INCLUDE command parses another MidicaPL source file with the
+	 * same parsing state.
 	 * 
 	 * @param tokens             Token array.
 	 * @throws ParseException    If the command cannot be parsed.
@@ -3356,7 +4024,7 @@ public class MidicaPLParser extends SequenceParser {
 						inclPath                       // child
 					);
 				}
-
+				
 				// make it canonical
 				inclFile = inclFile.getCanonicalFile();
 				
@@ -3369,8 +4037,7 @@ public class MidicaPLParser extends SequenceParser {
 					throw new ParseException(Dict.get(Dict.ERROR_FILE_READABLE) + inclFile.getCanonicalPath());
 				
 				// parse it
-				MidicaPLParser parser = new MidicaPLParser(false);
-				parser.parse(inclFile);
+				parseIncludedFile(inclFile);
 			}
 			catch (IOException e) {
 				throw new ParseException(Dict.get(Dict.ERROR_FILE_IO) + e.getMessage());
@@ -3506,11 +4173,25 @@ public class MidicaPLParser extends SequenceParser {
 		if (! cmdName.matches("^\\S+$"))
 			throw new ParseException(Dict.get(Dict.ERROR_DEFINE_NUM_OF_ARGS));
 		
+		applyDefine(cmdId, cmdName);
+	}
+	
+	/**
+	 * Redefines a command.
+	 * 
+	 * @param cmdId    ID of the command to be redefined
+	 * @param cmdName  new name of the command
+	 * @throws ParseException    If the command cannot be redefined.
+	 */
+	private void applyDefine(String cmdId, String cmdName) throws ParseException {
+		
 		// only one redefinition allowed per command
-		if (redefinitions.contains(cmdId)) {
+		if (redefinitions.containsKey(cmdId)) {
 			throw new ParseException(Dict.get(Dict.ERROR_ALREADY_REDEFINED) + cmdId);
 		}
-		redefinitions.add(cmdId);
+		redefinitions.put(cmdId, cmdName);
+		if (recording != null)
+			recording.addDefine(currentLineNumber, cmdId, cmdName);
 		
 		if      ( Dict.SYNTAX_BANK_SEP.equals(cmdId)           ) BANK_SEP           = cmdName;
 		else if ( Dict.SYNTAX_TEMPO.equals(cmdId)              ) TEMPO              = cmdName;
@@ -3633,6 +4314,8 @@ public class MidicaPLParser extends SequenceParser {
 		else {
 			throw new ParseException(Dict.get(Dict.ERROR_UNKNOWN_COMMAND_ID) + cmdId);
 		}
+		
+		clearSyntaxCaches();
 	}
 	
 	/**
@@ -3655,9 +4338,19 @@ public class MidicaPLParser extends SequenceParser {
 			throw new ParseException(Dict.get(Dict.ERROR_CONST_NUM_OF_ARGS));
 		}
 		
-		// constant name already defined?
-		String name  = assignParts[0];
-		String value = assignParts[1];
+		defineConstant(assignParts[0], assignParts[1]);
+	}
+	
+	/**
+	 * Defines a constant.
+	 * 
+	 * @param name   constant name
+	 * @param value  constant value, may contain other constants
+	 * @throws ParseException    If the constant cannot be defined.
+	 */
+	private void defineConstant(String name, String value) throws ParseException {
+		if (recording != null)
+			recording.addConstant(currentLineNumber, name, value);
 		
 		// recursion not allowed
 		if (name.equals(value)) {
@@ -3667,6 +4360,7 @@ public class MidicaPLParser extends SequenceParser {
 		// the value could contain other constants as well
 		value = replaceConstants(value);
 		
+		// constant name already defined?
 		if (constants.containsKey(name)) {
 			throw new ParseException(Dict.get(Dict.ERROR_CONST_ALREADY_DEFINED) + name);
 		}
@@ -3766,6 +4460,25 @@ public class MidicaPLParser extends SequenceParser {
 		}
 	}
 	
+	/**
+	 * Returns the precompiled template for the given string.
+	 * 
+	 * Templates are cached so that each source line is searched for
+	 * constants and variables only once.
+	 * 
+	 * @param str  the string to be compiled
+	 * @return the template.
+	 */
+	private VariableTemplate getTemplate(String str) {
+		VariableTemplate template = templates.get(str);
+		if (null == template) {
+			template = new VariableTemplate(str, varPattern, VAR_SYMBOL);
+			if (templates.size() < MAX_CACHED_TEMPLATES)
+				templates.put(str, template);
+		}
+		return template;
+	}
+	
 	/**
 	 * Replaces all constants in the given string by their values.
 	 * 
@@ -3776,7 +4489,8 @@ public class MidicaPLParser extends SequenceParser {
 	private String replaceConstants(String str) throws ParseException {
 		
 		// no constant/variable found?
-		if (! varPattern.matcher(str).find()) {
+		VariableTemplate template = getTemplate(str);
+		if (0 == template.getReferenceCount()) {
 			return str;
 		}
 		
@@ -3785,25 +4499,25 @@ public class MidicaPLParser extends SequenceParser {
 		while (mustSearchAgain) {
 			recursionCount++;
 			mustSearchAgain = false;
-			Matcher constMatcher = varPattern.matcher(str);
-			StringBuffer resultingLine = new StringBuffer();
 			
-			// find and replace the next constant
-			while (constMatcher.find()) {
-				String constName  = constMatcher.group(1);
-				String constValue = constants.get(constName);
-				
-				// constant (not a variable)? - replace it
-				if (constValue != null) {
+			// find and replace all constants (not variables)
+			int      count  = template.getReferenceCount();
+			String[] values = new String[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = constants.get(template.getName(i));
+				if (values[i] != null)
 					mustSearchAgain = true;
-					constMatcher.appendReplacement(resultingLine, Matcher.quoteReplacement(constValue));
-				}
+				if (recording != null && ! isConstParsRun)
+					recording.lookupConstant(template.getName(i), values[i]);
 			}
 			
 			// replace, if necessary
+			// (search again only if a value can have brought in new references)
 			if (mustSearchAgain) {
-				constMatcher.appendTail(resultingLine);
-				str = resultingLine.toString();
+				str             = template.fill(values);
+				mustSearchAgain = template.mustRescan(values);
+				if (mustSearchAgain)
+					template = new VariableTemplate(str, varPattern, VAR_SYMBOL);
 			}
 			
 			// recursion depth too high?
@@ -3823,9 +4537,21 @@ public class MidicaPLParser extends SequenceParser {
 	 * @throws ParseException    if an undefined variable is found or the recursion depth is too high.
 	 */
 	public String replaceVariables(String str) throws ParseException {
+		return replaceVariables(getTemplate(str));
+	}
+	
+	/**
+	 * Replaces all variables (or parameters) in the given precompiled string by their values.
+	 * 
+	 * @param template  The precompiled string to be replaced.
+	 * @return          The resulting string.
+	 * @throws ParseException    if an undefined variable is found or the recursion depth is too high.
+	 */
+	private String replaceVariables(VariableTemplate template) throws ParseException {
 		
 		// no variable found?
-		if (! varPattern.matcher(str).find()) {
+		String str = template.getSource();
+		if (0 == template.getReferenceCount()) {
 			return str;
 		}
 		
@@ -3833,21 +4559,22 @@ public class MidicaPLParser extends SequenceParser {
 		boolean mustSearchAgain = true;
 		while (mustSearchAgain) {
 			recursionCount++;
-			mustSearchAgain = false;
-			Matcher varMatcher = varPattern.matcher(str);
-			StringBuffer resultingLine = new StringBuffer();
-			
-			// find and replace the next variable
-			while (varMatcher.find()) {
-				mustSearchAgain        = true;
-				String varName         = varMatcher.group(1);
-				boolean isIndexedParam = varMatcher.group(5) != null;
-				boolean isNamedParam   = varMatcher.group(6) != null;
+			int count       = template.getReferenceCount();
+			mustSearchAgain = count > 0;
+			
+			// find and replace all variables
+			String[] values = new String[count];
+			for (int i = 0; i < count; i++) {
+				String  varName        = template.getName(i);
+				String  indexStr       = template.getParamIndex(i);
+				String  paramName      = template.getParamName(i);
+				boolean isIndexedParam = indexStr  != null;
+				boolean isNamedParam   = paramName != null;
 				
 				String varValue = null;
 				try {
 					if (isIndexedParam) {
-						int index = toInt(varMatcher.group(5));
+						int index = toInt(indexStr);
 						ArrayList<String> params = paramStackIndexed.peek();
 						if (null == params) {
 							throw new ParseException(Dict.get(Dict.ERROR_PARAM_OUTSIDE_FUNCTION) + varName);
@@ -3857,12 +4584,11 @@ public class MidicaPLParser extends SequenceParser {
 						}
 					}
 					else if (isNamedParam) {
-						String name = varMatcher.group(6);
 						HashMap<String, String> params = paramStackNamed.peek();
 						if (null == params) {
 							throw new ParseException(Dict.get(Dict.ERROR_PARAM_OUTSIDE_FUNCTION) + varName);
 						}
-						varValue = params.get(name);
+						varValue = params.get(paramName);
 					}
 					else {
 						
@@ -3891,14 +4617,16 @@ public class MidicaPLParser extends SequenceParser {
 						throw new ParseException(Dict.get(Dict.ERROR_VAR_NOT_DEFINED) + varName);
 				}
 				
-				// replace
-				varMatcher.appendReplacement(resultingLine, Matcher.quoteReplacement(varValue));
+				values[i] = varValue;
 			}
 			
 			// replace, if necessary
+			// (search again only if a value can have brought in new references)
 			if (mustSearchAgain) {
-				varMatcher.appendTail(resultingLine);
-				str = resultingLine.toString();
+				str             = template.fill(values);
+				mustSearchAgain = template.mustRescan(values);
+				if (mustSearchAgain)
+					template = new VariableTemplate(str, varPattern, VAR_SYMBOL);
 			}
 			
 			// recursion depth too high?
@@ -4027,12 +4755,12 @@ public class MidicaPLParser extends SequenceParser {
 				
 				// bank select, if necessary
 				if (isChanged[0])
-					SequenceCreator.setBank(channel, bankTick, bankMSB, false);
+					creator.setBank(channel, bankTick, bankMSB, false);
 				if (isChanged[1])
-					SequenceCreator.setBank(channel, bankTick, bankLSB, true);
+					creator.setBank(channel, bankTick, bankLSB, true);
 				
 				// program change and instrument name
-				SequenceCreator.initChannel(channel, instrNum, instrName, tick);
+				creator.initChannel(channel, instrNum, instrName, tick);
 			}
 			catch (InvalidMidiDataException e) {
 				throw new ParseException(Dict.get(Dict.ERROR_MIDI_PROBLEM) + e.getMessage());
@@ -4201,7 +4929,7 @@ public class MidicaPLParser extends SequenceParser {
 			if (cmd.equals(TEMPO)) {
 				int bpm = toInt(value, true);
 				if (! isFake) {
-					SequenceCreator.addMessageTempo(bpm, currentTicks);
+					creator.addMessageTempo(bpm, currentTicks);
 				}
 			}
 			
@@ -4215,10 +4943,11 @@ public class MidicaPLParser extends SequenceParser {
 					
 					// set the time signature message
 					if (! isFake) {
-						SequenceCreator.addMessageTimeSignature(numerator, denominator, currentTicks);
+						creator.addMessageTimeSignature(numerator, denominator, currentTicks);
 						
 						// prepare for bar line checks
-						long measureLength = numerator * parseDurationSummand(denominator + "");
+						int[] fraction      = parseDurationSummand(denominator + "");
+						long  measureLength = numerator * toTicks(fraction[0], fraction[1]);
 						measureLengthHistory.put(currentTicks, measureLength);
 					}
 				}
@@ -4260,7 +4989,7 @@ public class MidicaPLParser extends SequenceParser {
 							preferFlat = false;
 						else if (flatPattern.matcher(noteName).find())
 							preferFlat = true;
-						SequenceCreator.addMessageKeySignature(note, isMajor, currentTicks, preferFlat);
+						creator.addMessageKeySignature(note, isMajor, currentTicks, preferFlat);
 					}
 				}
 				else {
@@ -4375,7 +5104,7 @@ public class MidicaPLParser extends SequenceParser {
 				boolean  mustApplyOto   = false;
 				
 				// option: (name=value)?
-				ArrayList<CommandOption> options = parseCompactOptions(compactElement, isFake);
+				List<CommandOption> options = parseCompactOptions(compactElement, isFake);
 				if (options != null) {
 					
 					// check options
@@ -4545,7 +5274,7 @@ public class MidicaPLParser extends SequenceParser {
 		if (patCallMatcher.matches()) {
 			String patternName = patCallMatcher.group(1);
 			String paramString = patCallMatcher.group(3);
-			if (paramString != null || definedPatternNames.contains(patternName)) {
+			if (paramString != null || isPatternDefined(patternName)) {
 				return true;
 			}
 		}
@@ -4565,7 +5294,7 @@ public class MidicaPLParser extends SequenceParser {
 		
 		if (fromTupletBlock) {
 			if (length != null) {
-				MidicaPLParser.instruments.get(channel).setNaturalLength(length);
+				instruments.get(channel).setNaturalLength(length);
 			}
 		}
 		else {
@@ -4615,7 +5344,7 @@ public class MidicaPLParser extends SequenceParser {
 			if (invalidNoteIdxPattern.matcher(tokens[1]).matches()) {
 				return;
 			}
-			
+		
 		}
 		
 		int note = parseNote(tokens[1], channel);
@@ -4640,14 +5369,14 @@ public class MidicaPLParser extends SequenceParser {
 				duration = 0;
 			}
 			else {
-				duration = parseDuration(durationStr);
+				duration = parseDuration(durationStr, blockTupletFactor, blockTupletDivisor);
 			}
 		}
 		else if (patterns.containsKey(durationStr)) {
 			return;
 		}
 		else {
-			duration = parseDuration(durationStr);
+			duration = parseDuration(durationStr, blockTupletFactor, blockTupletDivisor);
 		}
 		
 		// illegal zero-length duration?
@@ -4666,7 +5395,7 @@ public class MidicaPLParser extends SequenceParser {
 		String  syllable = null;
 		if (2 == subTokens.length) {
 			
-			ArrayList<CommandOption> options = parseOptions(subTokens[1], isFake);
+			List<CommandOption> options = parseOptions(subTokens[1], isFake);
 			for (CommandOption opt : options) {
 				
 				String optName = opt.getName();
@@ -4713,7 +5442,7 @@ public class MidicaPLParser extends SequenceParser {
 		
 		// transpose by source code
 		if (note != REST_VALUE)
-			note += shift;
+			note += shift + blockShift;
 		
 		// get instrument
 		Instrument instr = instruments.get(channel);
@@ -4776,7 +5505,7 @@ public class MidicaPLParser extends SequenceParser {
 						if (tickToCorrect != null) {
 							long targetTick = startTicks - 1;
 							try {
-								SequenceCreator.moveNoteOffMessage(channel, newNote, tickToCorrect, targetTick);
+								creator.moveNoteOffMessage(channel, newNote, tickToCorrect, targetTick);
 							}
 							catch (Exception e) {
 								throw new ParseException(e.getMessage());
@@ -4784,7 +5513,7 @@ public class MidicaPLParser extends SequenceParser {
 						}
 						
 						// create and add messages
-						SequenceCreator.addMessageKeystroke(channel, newNote, startTicks, endTicks, velocity);
+						creator.addMessageKeystroke(channel, newNote, startTicks, endTicks, velocity);
 					}
 				}
 			}
@@ -4809,11 +5538,11 @@ public class MidicaPLParser extends SequenceParser {
 	 * @return the options with their values, or **null** if the given element doesn't contain options.
 	 * @throws ParseException if the options cannot be parsed.
 	 */
-	public ArrayList<CommandOption> parseCompactOptions(String compactElement, boolean isFake) throws ParseException {
+	public List<CommandOption> parseCompactOptions(String compactElement, boolean isFake) throws ParseException {
 		
 		if (hasCompactOptions(compactElement)) {
-			String optStr = compactElement.replaceFirst("^" + Pattern.quote(COMPACT_OPT_OPEN), "");
-			optStr = optStr.replaceFirst(Pattern.quote(COMPACT_OPT_CLOSE) + "$", "");
+			int    end    = Math.max(COMPACT_OPT_OPEN.length(), compactElement.length() - COMPACT_OPT_CLOSE.length());
+			String optStr = compactElement.substring(COMPACT_OPT_OPEN.length(), end);
 			return parseOptions(optStr, isFake);
 		}
 		
@@ -4838,13 +5567,25 @@ public class MidicaPLParser extends SequenceParser {
 	 * These are replaced or left as-is. This depends on the current parsing run,
 	 * the given **isFake** parameter, and other criteria.
 	 * 
+	 * In the default parsing run, the results of option strings without
+	 * variables are cached. The returned list is therefore unmodifiable and
+	 * the options inside must not be changed.
+	 * 
 	 * @param optString  The raw options string of the command to be parsed.
 	 * @param isFake     **true**, if this is called inside a function definition, pattern definition or block.
 	 * @return           All options and their values that have been found in the
 	 *                   provided options string.
 	 * @throws ParseException if the options cannot be parsed.
 	 */
-	private ArrayList<CommandOption> parseOptions(String optString, boolean isFake) throws ParseException {
+	private List<CommandOption> parseOptions(String optString, boolean isFake) throws ParseException {
+		
+		// already parsed?
+		boolean isCacheable = isDefaultParsRun && ! optString.contains(VAR_SYMBOL);
+		if (isCacheable) {
+			List<CommandOption> cached = optionsCache.get(optString);
+			if (cached != null)
+				return cached;
+		}
 		
 		// split (raw) option string (variables are not yet replaced)
 		ArrayList<String[]> rawOptTokens = new ArrayList<>();
@@ -4900,7 +5641,11 @@ public class MidicaPLParser extends SequenceParser {
 			optNames.add(optName);
 		}
 		
-		return options;
+		List<CommandOption> result = Collections.unmodifiableList(options);
+		if (isCacheable && optionsCache.size() < MAX_CACHED_OPTIONS)
+			optionsCache.put(optString, result);
+		
+		return result;
 	}
 	
 	/**
@@ -5131,7 +5876,7 @@ public class MidicaPLParser extends SequenceParser {
 	 * @throws ParseException if one of the notes cannot be parsed.
 	 */
 	private ArrayList<Integer> parseChord(String token) throws ParseException {
-		if (token.matches(".*" + Pattern.quote(CHORD_SEPARATOR) + ".*") || chords.containsKey(token)) {
+		if (token.matches(".*" + Pattern.quote(CHORD_SEPARATOR) + ".*") || isChord(token)) {
 			ArrayList<Integer> chordElements = new ArrayList<>();
 			
 			// collect comma-separated inline chord parts
@@ -5139,7 +5884,7 @@ public class MidicaPLParser extends SequenceParser {
 			for (String inlineElement : inlineElements) {
 				
 				// collect predefined chord elements
-				if (chords.containsKey(inlineElement)) {
+				if (isChord(inlineElement)) {
 					for (int note : chords.get(inlineElement)) {
 						chordElements.add(note);
 					}
@@ -5160,6 +5905,45 @@ public class MidicaPLParser extends SequenceParser {
 		return null;
 	}
 	
+	/**
+	 * Checks if a chord with the given name is defined.
+	 * 
+	 * @param name  chord name
+	 * @return **true** if the chord is defined, otherwise **false**.
+	 */
+	private boolean isChord(String name) {
+		boolean isFound = chords.containsKey(name);
+		if (recording != null)
+			recording.lookupChord(name, isFound);
+		return isFound;
+	}
+	
+	/**
+	 * Checks if a function with the given name is defined somewhere.
+	 * 
+	 * @param name  function name
+	 * @return **true** if the function is defined, otherwise **false**.
+	 */
+	private boolean isFunctionDefined(String name) {
+		boolean isFound = definedFunctionNames.contains(name);
+		if (recording != null)
+			recording.lookupFunction(name, isFound);
+		return isFound;
+	}
+	
+	/**
+	 * Checks if a pattern with the given name is defined somewhere.
+	 * 
+	 * @param name  pattern name
+	 * @return **true** if the pattern is defined, otherwise **false**.
+	 */
+	private boolean isPatternDefined(String name) {
+		boolean isFound = definedPatternNames.contains(name);
+		if (recording != null)
+			recording.lookupPattern(name, isFound);
+		return isFound;
+	}
+	
 	/**
 	 * Splits a channel command with a chord into the single notes and applies one channel command for each note.
 	 * 
@@ -5226,7 +6010,7 @@ public class MidicaPLParser extends SequenceParser {
 		
 		// Options already available.
 		// Multiple option already set? ==> don't add it again
-		ArrayList<CommandOption> options = parseOptions(optStr, true);
+		List<CommandOption> options = parseOptions(optStr, true);
 		for (CommandOption option : options) {
 			if (OPT_MULTIPLE.equals(option.getName()))
 				return original;
@@ -5290,7 +6074,7 @@ public class MidicaPLParser extends SequenceParser {
 				throw new ParseException(message);
 		}
 	}
-
+	
 	/**
 	 * Synchronizes all channels according to the given channel description.
 	 * Sets the current ticks of each of these channels to the value of the
@@ -5397,12 +6181,12 @@ public class MidicaPLParser extends SequenceParser {
 				instr.reset();
 				if (! instr.autoChannel) {
 					if (bankMSB != 0) {
-						SequenceCreator.setBank(channel, 0L, bankMSB, false);
+						creator.setBank(channel, 0L, bankMSB, false);
 					}
 					if (bankLSB != 0) {
-						SequenceCreator.setBank(channel, 0L, bankLSB, true);
+						creator.setBank(channel, 0L, bankLSB, true);
 					}
-					SequenceCreator.initChannel(channel, instrNum, instrComment, SequenceCreator.NOW);
+					creator.initChannel(channel, instrNum, instrComment, SequenceCreator.NOW);
 				}
 			}
 		}
@@ -5425,7 +6209,7 @@ public class MidicaPLParser extends SequenceParser {
 			// copyright
 			StringBuilder copyright = metaInfo.get("copyright");
 			if (copyright != null) {
-				SequenceCreator.addMessageCopyright(copyright.toString());
+				creator.addMessageCopyright(copyright.toString());
 			}
 			
 			// RP-026 messages
@@ -5437,30 +6221,30 @@ public class MidicaPLParser extends SequenceParser {
 					rp26.append("{#" + key + "=" + value + "}");
 				}
 			}
-
+			
 			// add midica version
 			rp26.append("{#" + LyricUtil.SOFTWARE + "=" + "Midica " + Midica.VERSION + "}");
 			
 			// add end tag and write RP-026 tags
 			rp26.append("{#}");
-			SequenceCreator.addMessageLyrics(rp26.toString(), 0, true);
+			creator.addMessageLyrics(rp26.toString(), 0, true);
 			
 			// postprocess soft karaoke
 			if (isSoftKaraoke) {
-				SequenceCreator.addMessageText("@KMIDI KARAOKE FILE", 0, 1);
+				creator.addMessageText("@KMIDI KARAOKE FILE", 0, 1);
 				if (softKaraokeInfo.containsKey("sk_version")) {
 					String version = softKaraokeInfo.get("sk_version").get(0);
-					SequenceCreator.addMessageText("@V" + version, 0, 1);
+					creator.addMessageText("@V" + version, 0, 1);
 				}
 				if (softKaraokeInfo.containsKey("sk_info")) {
 					ArrayList<String> infos = softKaraokeInfo.get("sk_info");
 					for (String info : infos) {
-						SequenceCreator.addMessageText("@I" + info, 0, 1);
+						creator.addMessageText("@I" + info, 0, 1);
 					}
 				}
 				if (softKaraokeInfo.containsKey("sk_lang")) {
 					String language = softKaraokeInfo.get("sk_lang").get(0);
-					SequenceCreator.addMessageText("@L" + language, 0, 2);
+					creator.addMessageText("@L" + language, 0, 2);
 				}
 				int tFieldCount  = 0;
 				String[] tFields = {"", "", ""};
@@ -5477,7 +6261,7 @@ public class MidicaPLParser extends SequenceParser {
 					tFields[2]  = softKaraokeInfo.get("sk_copyright").get(0);
 				}
 				for (int i = 0; i < tFieldCount; i++) {
-					SequenceCreator.addMessageText("@T" + tFields[i], 0, 2);
+					creator.addMessageText("@T" + tFields[i], 0, 2);
 				}
 			}
 		}
@@ -5555,7 +6339,7 @@ public class MidicaPLParser extends SequenceParser {
 	 * @param input    The string to be cleaned.
 	 * @return         Resulting string without leading or trailing whitespaces.
 	 */
-	private String clean(String input) {
+	private static String clean(String input) {
 		input = input.replaceFirst("^\\s+", ""); // eliminate leading whitespaces
 		input = input.replaceFirst("\\s+$", ""); // eliminate trailing whitespaces
 		return input;
@@ -5568,9 +6352,20 @@ public class MidicaPLParser extends SequenceParser {
 	 * @return  the cleaned line.
 	 */
 	private String cleanLine(String line) {
+		return cleanLine(line, getCommentPattern(COMMENT, ORIGINAL_COMMENT));
+	}
+	
+	/**
+	 * Removes comments and leding and trailing whitespaces from a source code line.
+	 * 
+	 * @param line            The source code line.
+	 * @param commentPattern  Pattern matching the beginning of a comment.
+	 * @return  the cleaned line.
+	 */
+	static String cleanLine(String line, Pattern commentPattern) {
 		
 		// cut away comments
-		String cleanedLine = line.split(Pattern.quote(COMMENT) + "|" + Pattern.quote(ORIGINAL_COMMENT) + "|$", 2)[0];
+		String cleanedLine = commentPattern.split(line, 2)[0];
 		
 		// eliminate leading and trailing whitespaces
 		cleanedLine = clean(cleanedLine);
@@ -5578,17 +6373,53 @@ public class MidicaPLParser extends SequenceParser {
 		return cleanedLine;
 	}
 	
+	/**
+	 * Creates a pattern matching the beginning of a comment or the end of a line.
+	 * 
+	 * @param comment          The current comment symbol.
+	 * @param originalComment  The original comment symbol.
+	 * @return the pattern.
+	 */
+	static Pattern getCommentPattern(String comment, String originalComment) {
+		return Pattern.compile(Pattern.quote(comment) + "|" + Pattern.quote(originalComment) + "|$");
+	}
+	
 	/**
 	 * Removes comments and leding and trailing whitespaces from a whole list of
 	 * source code lines.
 	 * 
 	 * @param lines  The source code lines to be cleaned.
 	 */
-	private void cleanLines(ArrayList<String> lines) {
+	private void cleanLines(ArrayList<TokenizedLine> lines) {
+		cleanLines(lines, COMMENT, ORIGINAL_COMMENT);
+	}
+	
+	/**
+	 * Removes comments and leding and trailing whitespaces from a whole list of
+	 * source code lines, using the given comment symbols.
+	 * 
+	 * The lines themselves are not changed. Each line that needs to be cleaned
+	 * is replaced by a cleaned copy.
+	 * 
+	 * Also called by the {@link IncludePrefetcher} from another thread.
+	 * 
+	 * @param lines            The source code lines to be cleaned.
+	 * @param comment          The comment symbol.
+	 * @param originalComment  The original comment symbol.
+	 */
+	static void cleanLines(ArrayList<TokenizedLine> lines, String comment, String originalComment) {
+		String  cleanedWith    = comment + " " + originalComment;
+		Pattern commentPattern = null;
 		for (int i = 0; i < lines.size(); i++) {
-			String line = lines.get(i);
-			line = cleanLine(line);
-			lines.set(i, line);
+			TokenizedLine line = lines.get(i);
+			
+			// already cleaned with the same comment symbols?
+			if (cleanedWith.equals(line.getCleanedWith()))
+				continue;
+			
+			if (null == commentPattern)
+				commentPattern = getCommentPattern(comment, originalComment);
+			lines.set(i, line.clean(cleanLine(line.getRaw(), commentPattern), cleanedWith));
 		}
 	}
 	
@@ -5679,7 +6510,7 @@ public class MidicaPLParser extends SequenceParser {
 		
 		if (isRootParser) {
 			try {
-				SequenceCreator.reset(chosenCharset);
+				creator = new SequenceCreator(chosenCharset);
 			}
 			catch (InvalidMidiDataException e) {
 				throw new ParseException(e.toString());
@@ -5699,6 +6530,7 @@ public class MidicaPLParser extends SequenceParser {
 			definedFunctionNames = new HashSet<>();
 			definedPatternNames  = new HashSet<>();
 			fileCache            = new HashMap<>();
+			resolvedLines        = new IdentityHashMap<>();
 			functions            = new HashMap<>();
 			functionToFile       = new HashMap<>();
 			functionToLineOffset = new HashMap<>();
@@ -5718,20 +6550,28 @@ public class MidicaPLParser extends SequenceParser {
 			patternNameStack     = new ArrayDeque<>();
 			patternLineStack     = new ArrayDeque<>();
 			patternFileStack     = new ArrayDeque<>();
-			redefinitions        = new HashSet<>();
+			redefinitions        = new TreeMap<>();
+			libraryPaths         = new HashSet<>();
+			libraryReplays       = new HashMap<>();
+			libraryRecords       = new HashMap<>();
+			recording            = null;
+			finalLibraryKey      = null;
 			soundbankParsed      = false;
 			isSoftKaraoke        = false;
 			isPlayingTupletBlock = false;
+			blockShift           = 0;
+			blockTupletFactor    = 1;
+			blockTupletDivisor   = 1;
 			measureLengthHistory = new TreeMap<>();
 			constants            = new HashMap<>();
 			variables            = new HashMap<>();
 			varPattern           = null;
+			templates            = new HashMap<>();
 			callPattern          = null;
 			condPattern          = null;
 			condInPattern        = null;
 			crlfSkPattern        = null;
 			refreshSyntax();
-			NestableBlock.reset();
 			measureLengthHistory.put(SequenceCreator.NOW, SequenceCreator.DEFAULT_RESOLUTION * 4L); // 4/4
 		}
 	}
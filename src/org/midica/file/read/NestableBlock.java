@@ -10,6 +10,7 @@ package org.midica.file.read;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import org.midica.config.Dict;
@@ -17,14 +18,24 @@ import org.midica.config.Dict;
 /**
  * This class represents a nestable block, used by the MidicaPL parser.
  * 
+ * Before a block is played the first time, each of its lines is compiled into
+ * a replay mode. Normal channel commands inside of blocks with tuplets or shifts
+ * are replayed unchanged while the parser applies the tuplet factor and shift
+ * numerically. Only more complex lines (compact commands, calls, pattern calls
+ * and lines with variables) are still rewritten before parsing.
+ * 
  * @author Jan Trukenmüller
  */
 public class NestableBlock {
 	
-	private static Pattern plus        = null;
+	private static final int REPLAY_UNCHANGED = 0; // no shift or tuplet needed
+	private static final int REPLAY_NUMERIC   = 1; // shift and tuplet applied by the parser
+	private static final int REPLAY_REWRITE   = 2; // shift and tuplet applied to the tokens
+	
 	private static Pattern whitespaces = Pattern.compile("\\s+");
 	
 	private MidicaPLParser    parser      = null;
+	private Pattern           plus        = null;
 	private boolean           multiple    = false;
 	private int               quantity    = 1;
 	private String            tuplet      = null;
@@ -33,6 +44,9 @@ public class NestableBlock {
 	private String            condition   = null;
 	private String            openingLine = null;
 	private String            closingLine = null;
+	private int[]             replayModes = null;
+	private int               tupFactor   = 1;
+	private int               tupDivisor  = 1;
 	
 	private boolean condChainOpened = false;
 	private boolean condChainHit    = false;
@@ -57,13 +71,6 @@ public class NestableBlock {
 		this.elements    = new ArrayList<Object>();
 	}
 	
-	/**
-	 * Resets the precompiled PLUS pattern because in the next compile run it could be redefined.
-	 */
-	public static void reset() {
-		plus = null;
-	}
-	
 	/**
 	 * Sets the content of the block closing line.
 	 * 
@@ -258,7 +265,7 @@ public class NestableBlock {
 			return tokens;
 		
 		if (null == plus)
-			plus = Pattern.compile( Pattern.quote(MidicaPLParser.LENGTH_PLUS) );
+			plus = Pattern.compile( Pattern.quote(parser.LENGTH_PLUS) );
 		
 		// compact channel command?
 		if (parser.isCompactCmd(tokens[0])) {
@@ -279,7 +286,7 @@ public class NestableBlock {
 				String newNoteLength = getLengthFromCompactElement(compactElement);
 				if (newNoteLength != null)
 					parser.adjustCompactNoteLength(channel, newNoteLength, true);
-				String noteLength = MidicaPLParser.instruments.get(channel).getNaturalLength();
+				String noteLength = parser.instruments.get(channel).getNaturalLength();
 				
 				// apply tuplet (if necessary)
 				noteLength = addTupletToLength(noteLength);
@@ -306,11 +313,11 @@ public class NestableBlock {
 			// separate duration from options
 			String[] durationAndOptions = whitespaces.split(tokens[2], 2);
 			
-			if (MidicaPLParser.LENGTH_ZERO.equals(durationAndOptions[0])) {
+			if (parser.LENGTH_ZERO.equals(durationAndOptions[0])) {
 				// zero-length - ignore tuplets
 				return tokens;
 			}
-			else if (MidicaPLParser.patterns.containsKey(durationAndOptions[0])) {
+			else if (parser.patterns.containsKey(durationAndOptions[0])) {
 				// pattern - ignore tuplets
 			}
 			else {
@@ -344,7 +351,7 @@ public class NestableBlock {
 	 * @throws ParseException if compact options cannot be parsed
 	 */
 	public String getLengthFromCompactElement(String compactElement) throws ParseException {
-		String[] parts = compactElement.split(Pattern.quote(MidicaPLParser.COMPACT_NOTE_SEP), 2);
+		String[] parts = compactElement.split(Pattern.quote(parser.COMPACT_NOTE_SEP), 2);
 		
 		// note:... or chord:pattern(...)
 		if (parts.length > 1) {
@@ -358,7 +365,7 @@ public class NestableBlock {
 		}
 		
 		// (...,length=...,...)
-		ArrayList<CommandOption> options = parser.parseCompactOptions(parts[0], false);
+		List<CommandOption> options = parser.parseCompactOptions(parts[0], false);
 		if (options != null) {
 			
 			// (name=value,name2=value2) ==> name=value,name2=value2
@@ -384,7 +391,7 @@ public class NestableBlock {
 	 */
 	public String tupletizeCompactElement(String compactElement, String tupletizedLength) throws ParseException {
 		
-		String[] parts = compactElement.split(Pattern.quote(MidicaPLParser.COMPACT_NOTE_SEP), 2);
+		String[] parts = compactElement.split(Pattern.quote(parser.COMPACT_NOTE_SEP), 2);
 		
 		// has a length definition or pattern?
 		if (parts.length > 1) {
@@ -394,11 +401,11 @@ public class NestableBlock {
 				return compactElement;
 			
 			// normal length definition - tupletize it
-			return parts[0] + MidicaPLParser.COMPACT_NOTE_SEP + tupletizedLength;
+			return parts[0] + parser.COMPACT_NOTE_SEP + tupletizedLength;
 		}
 		
 		// option(s)? : (name=value,name2=value2)
-		ArrayList<CommandOption> options = parser.parseCompactOptions(parts[0], false);
+		List<CommandOption> options = parser.parseCompactOptions(parts[0], false);
 		if (options != null) {
 			
 			// tupletize length=... but leave other options unchanged
@@ -406,23 +413,23 @@ public class NestableBlock {
 			for (CommandOption opt : options) {
 				String optName = opt.getName();
 				if (MidicaPLParser.OPT_LENGTH.equals(optName))
-					tupletizedOptions.add(optName + MidicaPLParser.OPT_ASSIGNER + tupletizedLength);
+					tupletizedOptions.add(optName + parser.OPT_ASSIGNER + tupletizedLength);
 				else
-					tupletizedOptions.add(optName + MidicaPLParser.OPT_ASSIGNER + opt.getRawValue());
+					tupletizedOptions.add(optName + parser.OPT_ASSIGNER + opt.getRawValue());
 			}
 			
 			// re-build (name=value,name2=value2)
-			return MidicaPLParser.COMPACT_OPT_OPEN
-				+ String.join(MidicaPLParser.OPT_SEPARATOR, tupletizedOptions)
-				+ MidicaPLParser.COMPACT_OPT_CLOSE;
+			return parser.COMPACT_OPT_OPEN
+				+ String.join(parser.OPT_SEPARATOR, tupletizedOptions)
+				+ parser.COMPACT_OPT_CLOSE;
 		}
 		
 		// bar line?
-		else if (compactElement.startsWith(MidicaPLParser.BAR_LINE)) {
+		else if (compactElement.startsWith(parser.BAR_LINE)) {
 			return compactElement;
 		}
 		
-		return parts[0] + MidicaPLParser.COMPACT_NOTE_SEP + tupletizedLength;
+		return parts[0] + parser.COMPACT_NOTE_SEP + tupletizedLength;
 	}
 	
 	/**
@@ -439,7 +446,7 @@ public class NestableBlock {
 		for (int j=0; j < atoms.length; j++) {
 			atoms[j] += tuplet;
 		}
-		lengthStr = String.join(MidicaPLParser.LENGTH_PLUS, atoms);
+		lengthStr = String.join(parser.LENGTH_PLUS, atoms);
 		
 		return lengthStr;
 	}
@@ -448,7 +455,7 @@ public class NestableBlock {
 	 * Adds a new content element to this block.
 	 * The content to be added can be one of the following objects:
 	 * 
-	 * - an array of strings belonging to one source code line
+	 * - a tokenized source code line
 	 * - another (nested) block
 	 * 
 	 * @param element the content to be added
@@ -498,7 +505,12 @@ public class NestableBlock {
 			tickstamps = parser.rememberTickstamps();
 		}
 		
+		// compile the block content, if not yet done
+		if (null == replayModes)
+			compile();
+		
 		// apply the block content
+		long startTime = ParseProfiler.start();
 		for (int i = 0; i < quantity; i++) {
 			
 			// reset line
@@ -509,7 +521,9 @@ public class NestableBlock {
 			condChainOpened = false;
 			condChainHit    = false;
 			
+			int elemIndex = 0;
 			for (Object element : elements) {
+				int replayMode = replayModes[elemIndex++];
 				
 				// increment line
 				lineNumber++;
@@ -581,37 +595,50 @@ public class NestableBlock {
 						condChainHit    = condChainHit || mustPlay;
 					}
 				}
-				else if (element instanceof String[]) {
+				else if (element instanceof TokenizedLine) {
 					
 					// add line to call stack
 					StackTraceElement lineTraceElem = new StackTraceElement(file, lineNumber);
 					callStack.push(lineTraceElem);
 					
 					// reset conditions
-					String[] tokens = (String[]) element;
-					if (! "".equals(tokens[0])) {
+					TokenizedLine blockLine = (TokenizedLine) element;
+					String        command   = blockLine.getCommand();
+					if (! "".equals(command)) {
 						condChainOpened = false;
 						condChainHit    = false;
 					}
 					
 					// parse line
-					String line;
-					if (shift != 0 || tuplet != null) {
-						if (! MidicaPLParser.VAR.equals(tokens[0])) {
-							line = String.join(" ", tokens);
-							line = parser.replaceVariables(line);
-							tokens = line.split("\\s+", 3);
-						}
+					if (REPLAY_UNCHANGED == replayMode) {
+						
+						// the line is unchanged - reuse the tokens
+						parser.parseLine(blockLine);
 					}
-					if (shift != 0) {
-						tokens = parser.addShift(tokens, shift);
+					else if (REPLAY_NUMERIC == replayMode) {
+						
+						// the parser applies shift and tuplet - reuse the tokens
+						parser.isPlayingTupletBlock = tuplet != null;
+						parser.setBlockModifiers(shift, tupFactor, tupDivisor);
+						parser.parseLine(blockLine);
+						parser.setBlockModifiers(0, 1, 1);
 					}
-					if (tuplet != null) {
-						MidicaPLParser.isPlayingTupletBlock = true;
-						tokens = addTuplets(tokens);
+					else {
+						String[] tokens = blockLine.getTokens(3);
+						if (! parser.VAR.equals(command)) {
+							String line = parser.replaceVariables(blockLine.getContent());
+							tokens = line.split("\\s+", 3);
+						}
+						if (shift != 0) {
+							tokens = parser.addShift(tokens, shift);
+						}
+						if (tuplet != null) {
+							parser.isPlayingTupletBlock = true;
+							tokens = addTuplets(tokens);
+						}
+						parser.parseLine(new TokenizedLine(tokens));
 					}
-					parser.parseLine(String.join(" ", tokens));
-					MidicaPLParser.isPlayingTupletBlock = false;
+					parser.isPlayingTupletBlock = false;
 					
 					// remove line from call stack
 					callStack.pop();
@@ -622,6 +649,8 @@ public class NestableBlock {
 			}
 		}
 		
+		ParseProfiler.stopBlock(file, lineNumberOpen, startTime);
+		
 		// restore tickstamps, if needed
 		if (multiple) {
 			parser.restoreTickstamps(tickstamps);
@@ -634,6 +663,65 @@ public class NestableBlock {
 		parser.assertNoOpenOTO(Dict.ERROR_OTO_AT_END_OF_BLOCK, closingLine, lineNumberClose);
 	}
 	
+	/**
+	 * Decides for each element of the block how it has to be replayed.
+	 * Also calculates the numeric tuplet factor.
+	 * 
+	 * Called before the block is played the first time. At this time the
+	 * tuplets and shifts of all parent blocks have already been applied.
+	 * 
+	 * @throws ParseException if the tuplet cannot be parsed.
+	 */
+	private void compile() throws ParseException {
+		if (tuplet != null) {
+			int[] tuplets = parser.parseTuplets(tuplet);
+			tupFactor  = tuplets[0];
+			tupDivisor = tuplets[1];
+		}
+		
+		int[] modes = new int[elements.size()];
+		for (int i = 0; i < modes.length; i++) {
+			Object element = elements.get(i);
+			if (element instanceof TokenizedLine)
+				modes[i] = getReplayMode((TokenizedLine) element);
+		}
+		replayModes = modes;
+	}
+	
+	/**
+	 * Determines how the given block line has to be replayed.
+	 * 
+	 * Numeric replay is only possible for normal channel commands without
+	 * variables that don't call a pattern.
+	 * 
+	 * @param line  the block line
+	 * @return the replay mode.
+	 */
+	private int getReplayMode(TokenizedLine line) {
+		if (0 == shift && null == tuplet)
+			return REPLAY_UNCHANGED;
+		if (line.getContent().contains(parser.VAR_SYMBOL))
+			return REPLAY_REWRITE;
+		
+		String[] tokens = line.getTokens(3);
+		if (tokens.length < 3)
+			return REPLAY_REWRITE;
+		try {
+			parser.toChannel(tokens[0]);
+		}
+		catch (ParseException e) {
+			// not a channel command
+			return REPLAY_REWRITE;
+		}
+		
+		// pattern call?
+		String duration = whitespaces.split(tokens[2], 2)[0];
+		if (parser.patterns.containsKey(duration) || parser.isCompactPatternCall(duration))
+			return REPLAY_REWRITE;
+		
+		return REPLAY_NUMERIC;
+	}
+	
 	/**
 	 * Returns the resulting options string for the current block so that it can
 	 * be used in a stack trace.
@@ -643,16 +731,16 @@ public class NestableBlock {
 	private String getOptionsForStackTrace() {
 		ArrayList<String> options = new ArrayList<>();
 		if (quantity != 1) {
-			options.add(MidicaPLParser.Q + MidicaPLParser.OPT_ASSIGNER + quantity);
+			options.add(parser.Q + parser.OPT_ASSIGNER + quantity);
 		}
 		if (multiple) {
-			options.add(MidicaPLParser.M);
+			options.add(parser.M);
 		}
 		if (tuplet != null) {
-			options.add(MidicaPLParser.T + MidicaPLParser.OPT_ASSIGNER + tuplet);
+			options.add(parser.T + parser.OPT_ASSIGNER + tuplet);
 		}
 		if (shift != 0) {
-			options.add(MidicaPLParser.S + MidicaPLParser.OPT_ASSIGNER + shift);
+			options.add(parser.S + parser.OPT_ASSIGNER + shift);
 		}
 		if (isIf) {
 			options.add(MidicaPLParser.OPT_IF + " " + condition);
@@ -664,7 +752,7 @@ public class NestableBlock {
 			options.add(MidicaPLParser.OPT_ELSE);
 		}
 		
-		return String.join(MidicaPLParser.OPT_SEPARATOR + " ", options);
+		return String.join(parser.OPT_SEPARATOR + " ", options);
 	}
 	
 	/**
@@ -679,7 +767,7 @@ public class NestableBlock {
 			if (element instanceof NestableBlock) {
 				count += ((NestableBlock) element).getNumberOfLines();
 			}
-			else if (element instanceof String[]) {
+			else if (element instanceof TokenizedLine) {
 				count++;
 			}
 		}
@@ -0,0 +1,263 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.read;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * This class collects timing information while parsing a MidicaPL file.
+ * 
+ * Profiling is disabled by default. It can be enabled by the command line
+ * argument **--profile**. Then the following information is collected:
+ * 
+ * - wall time of each parsing run
+ * - time per included file (summed up over all parsing runs)
+ * - number of calls and time per function, pattern and nestable block
+ * - number of MIDI events in the resulting sequence
+ * 
+ * The times of functions, patterns and blocks are inclusive. That means, if a
+ * function calls another function, the time of the inner function is also
+ * contained in the time of the outer function.
+ * 
+ * The collected data is shown in the info view and can be written into a
+ * report file.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class ParseProfiler {
+	
+	private static boolean enabled = false;
+	
+	private static String                     fileName  = null;
+	private static long                       total     = 0;
+	private static long                       events    = -1;
+	private static LinkedHashMap<String, Long> runs      = new LinkedHashMap<>();
+	private static TreeMap<String, long[]>     files     = new TreeMap<>();
+	private static TreeMap<String, long[]>     functions = new TreeMap<>();
+	private static TreeMap<String, long[]>     patterns  = new TreeMap<>();
+	private static TreeMap<String, long[]>     blocks    = new TreeMap<>();
+	
+	/**
+	 * This class is only used statically so a public constructor is not needed.
+	 */
+	private ParseProfiler() {
+	}
+	
+	/**
+	 * Enables or disables profiling.
+	 * 
+	 * @param enable  **true** to enable profiling, **false** to disable it
+	 */
+	public static void setEnabled(boolean enable) {
+		enabled = enable;
+	}
+	
+	/**
+	 * Indicates if profiling is enabled.
+	 * 
+	 * @return **true** if profiling is enabled, otherwise **false**.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Discards all collected data.
+	 * Called before a new file is parsed.
+	 */
+	public static synchronized void reset() {
+		fileName = null;
+		total    = 0;
+		events   = -1;
+		runs.clear();
+		files.clear();
+		functions.clear();
+		patterns.clear();
+		blocks.clear();
+	}
+	
+	/**
+	 * Returns the start time of a measurement.
+	 * 
+	 * @return the current time in nanoseconds, or **0** if profiling is disabled.
+	 */
+	public static long start() {
+		if (! enabled)
+			return 0;
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Finishes the measurement of a parsing run.
+	 * 
+	 * @param run        name of the parsing run
+	 * @param startTime  return value of {@link #start()}
+	 */
+	public static synchronized void stopRun(String run, long startTime) {
+		if (! enabled)
+			return;
+		runs.merge(run, System.nanoTime() - startTime, Long::sum);
+	}
+	
+	/**
+	 * Finishes the measurement of one parsing run of an included file.
+	 * 
+	 * @param file       the included file
+	 * @param startTime  return value of {@link #start()}
+	 */
+	public static void stopFile(File file, long startTime) {
+		if (! enabled)
+			return;
+		add(files, file.getAbsolutePath(), startTime);
+	}
+	
+	/**
+	 * Finishes the measurement of a function call.
+	 * 
+	 * @param name       function name
+	 * @param startTime  return value of {@link #start()}
+	 */
+	public static void stopFunction(String name, long startTime) {
+		if (! enabled)
+			return;
+		add(functions, name, startTime);
+	}
+	
+	/**
+	 * Finishes the measurement of a pattern call.
+	 * 
+	 * @param name       pattern name
+	 * @param startTime  return value of {@link #start()}
+	 */
+	public static void stopPattern(String name, long startTime) {
+		if (! enabled)
+			return;
+		add(patterns, name, startTime);
+	}
+	
+	/**
+	 * Finishes the measurement of a nestable block execution.
+	 * 
+	 * @param file       file containing the block
+	 * @param line       line number where the block is opened
+	 * @param startTime  return value of {@link #start()}
+	 */
+	public static void stopBlock(File file, int line, long startTime) {
+		if (! enabled)
+			return;
+		String name = (null == file ? "-" : file.getName()) + ":" + line;
+		add(blocks, name, startTime);
+	}
+	
+	/**
+	 * Finishes the measurement of a whole parsing process.
+	 * 
+	 * @param file       the parsed root file
+	 * @param numEvents  number of MIDI events in the resulting sequence
+	 * @param startTime  return value of {@link #start()}
+	 */
+	public static synchronized void stopParsing(File file, long numEvents, long startTime) {
+		if (! enabled)
+			return;
+		fileName = file.getAbsolutePath();
+		events   = numEvents;
+		total    = System.nanoTime() - startTime;
+	}
+	
+	/**
+	 * Indicates if a profiling report is available.
+	 * 
+	 * @return **true** if the last parsing process has been profiled, otherwise **false**.
+	 */
+	public static boolean hasReport() {
+		return enabled && fileName != null;
+	}
+	
+	/**
+	 * Creates the report of the last parsing process.
+	 * 
+	 * @return the report.
+	 */
+	public static synchronized String getReport() {
+		StringBuilder report = new StringBuilder();
+		report.append("File:   " + fileName + "\n");
+		report.append("Total:  " + formatTime(total) + "\n");
+		report.append("Events: " + events + "\n");
+		
+		report.append("\nParsing runs:\n");
+		for (Entry<String, Long> entry : runs.entrySet()) {
+			report.append(String.format("  %-26s %s\n", entry.getKey(), formatTime(entry.getValue())));
+		}
+		appendStats(report, "Included files", files);
+		appendStats(report, "Functions",      functions);
+		appendStats(report, "Patterns",       patterns);
+		appendStats(report, "Blocks",         blocks);
+		
+		return report.toString();
+	}
+	
+	/**
+	 * Writes the report of the last parsing process into the given file.
+	 * 
+	 * @param file  the report file
+	 * @throws IOException if the file cannot be written.
+	 */
+	public static void writeReport(File file) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			writer.write(getReport());
+		}
+	}
+	
+	/**
+	 * Adds one call and the elapsed time to the given statistics.
+	 * 
+	 * @param stats      the statistics (call count and time by name)
+	 * @param name       the name of the measured element
+	 * @param startTime  return value of {@link #start()}
+	 */
+	private static synchronized void add(TreeMap<String, long[]> stats, String name, long startTime) {
+		long[] values = stats.computeIfAbsent(name, k -> new long[2]);
+		values[0]++;
+		values[1] += System.nanoTime() - startTime;
+	}
+	
+	/**
+	 * Appends the given statistics to the report.
+	 * 
+	 * @param report    the report
+	 * @param headline  the headline of the statistics
+	 * @param stats     the statistics (call count and time by name)
+	 */
+	private static void appendStats(StringBuilder report, String headline, TreeMap<String, long[]> stats) {
+		if (stats.isEmpty())
+			return;
+		report.append("\n" + headline + " (calls, time):\n");
+		for (Entry<String, long[]> entry : stats.entrySet()) {
+			long[] values = entry.getValue();
+			report.append(String.format("  %-26s %8d %s\n", entry.getKey(), values[0], formatTime(values[1])));
+		}
+	}
+	
+	/**
+	 * Formats a time in nanoseconds as milliseconds.
+	 * 
+	 * @param nanos  the time in nanoseconds
+	 * @return the formatted time.
+	 */
+	private static String formatTime(long nanos) {
+		return String.format("%12.3f ms", nanos / 1000000.0);
+	}
+}
@@ -44,6 +44,14 @@ public abstract class SequenceParser implements IParser {
 	/** The file to be parsed. */
 	private static File currentFile = null;
 	
+	/**
+	 * Creates the sequence of the current parsing process.
+	 * 
+	 * Each parser object uses its own creator. The created sequence is
+	 * only published by {@link #postprocessSequence(Sequence, String)}.
+	 */
+	protected SequenceCreator creator = null;
+	
 	/**
 	 * Returns the transpose level. This is the value which defines how much the
 	 * input has to be transposed before creating the MIDI stream.
@@ -106,6 +114,8 @@ public abstract class SequenceParser implements IParser {
 	protected void preprocess(File file) {
 		sequenceFile = null;
 		currentFile  = file;
+		ParseProfiler.reset();
+		SequenceCreator.reset();
 		SequenceAnalyzer.reset();
 		MidiDevices.setSequence(null);
 	}
@@ -131,6 +141,9 @@ public abstract class SequenceParser implements IParser {
 	 */
 	protected void postprocessSequence(Sequence seq, String charset) throws ParseException {
 		
+		// the analyzer needs the created sequence
+		SequenceCreator.publish(creator);
+		
 		// analyze sequence and add marker events
 		SequenceAnalyzer.analyze(seq, charset);
 		
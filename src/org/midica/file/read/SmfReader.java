@@ -0,0 +1,368 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.read;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+/**
+ * This class reads Standard MIDI Files.
+ * 
+ * It replaces **MidiSystem.getSequence()**, which reads the file through a
+ * chain of input streams, byte by byte.
+ * This reader decodes the whole file from one buffer. Large files are
+ * memory-mapped. Small files (like the temporary files of the importers)
+ * are read into the heap, so that they can be deleted immediately.
+ * 
+ * The events are decoded in one pass. Each event is added to the resulting
+ * sequence and, at the same time, passed to a {@link Handler}, if available.
+ * So the caller doesn't need to iterate through the sequence again.
+ * 
+ * The resulting sequence is the same as the one created by the JDK:
+ * 
+ * - unknown chunks are skipped
+ * - a truncated track chunk at the end of the file is ignored
+ * - reading a track stops at its END-OF-TRACK event
+ * - an event that exceeds the end of its track chunk is invalid
+ * - running status is supported for channel messages
+ * - the data bytes of short messages are not validated
+ * 
+ * @author Jan Trukenmüller
+ */
+public class SmfReader {
+	
+	private static final int  MAP_THRESHOLD = 1024 * 1024; // files from this size are memory-mapped
+	private static final int  CHUNK_MTHD    = 0x4D546864;  // "MThd"
+	private static final int  CHUNK_MTRK    = 0x4D54726B;  // "MTrk"
+	private static final int  META_EOT      = 0x2F;
+	
+	private ByteBuffer buffer        = null;
+	private Handler    handler       = null;
+	private int        runningStatus = -1;
+	
+	/**
+	 * Receives the decoded events while the file is read.
+	 */
+	public interface Handler {
+		
+		/**
+		 * Called after the header chunk has been read, before the first event
+		 * is decoded.
+		 * 
+		 * @param sequence  the (still empty) sequence
+		 * @throws ParseException            if the sequence is not supported.
+		 * @throws InvalidMidiDataException  if the sequence cannot be processed.
+		 */
+		public void begin(Sequence sequence) throws ParseException, InvalidMidiDataException;
+		
+		/**
+		 * Called for each event, in the same order as the events are contained in the tracks.
+		 * The last event of each track is its END-OF-TRACK event.
+		 * 
+		 * @param msg    the MIDI message
+		 * @param tick   tickstamp of the event
+		 * @param track  track number
+		 * @throws ParseException            if the event cannot be processed.
+		 * @throws InvalidMidiDataException  if the event cannot be processed.
+		 */
+		public void event(MidiMessage msg, long tick, int track) throws ParseException, InvalidMidiDataException;
+	}
+	
+	/**
+	 * Creates a reader for the given buffer.
+	 * 
+	 * @param buffer   the complete file content
+	 * @param handler  event handler (or **null**)
+	 */
+	private SmfReader(ByteBuffer buffer, Handler handler) {
+		this.buffer  = buffer;
+		this.handler = handler;
+	}
+	
+	/**
+	 * Reads the given MIDI file.
+	 * 
+	 * @param file  the MIDI file
+	 * @return the sequence.
+	 * @throws InvalidMidiDataException  if the file is not a valid MIDI file.
+	 * @throws IOException               if the file cannot be read.
+	 */
+	public static Sequence read(File file) throws InvalidMidiDataException, IOException {
+		try {
+			return read(file, null);
+		}
+		catch (ParseException e) {
+			// cannot happen without a handler
+			throw new InvalidMidiDataException(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Reads the given MIDI file and passes each event to the given handler.
+	 * 
+	 * @param file     the MIDI file
+	 * @param handler  event handler (or **null**)
+	 * @return the sequence.
+	 * @throws ParseException            if the handler cannot process the sequence.
+	 * @throws InvalidMidiDataException  if the file is not a valid MIDI file.
+	 * @throws IOException               if the file cannot be read.
+	 */
+	public static Sequence read(File file, Handler handler) throws ParseException, InvalidMidiDataException, IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("File too big: " + file.getAbsolutePath());
+			if (size >= MAP_THRESHOLD) {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			else {
+				buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				}
+				buffer.flip();
+			}
+		}
+		
+		try {
+			return new SmfReader(buffer, handler).readSequence();
+		}
+		catch (BufferUnderflowException e) {
+			throw new InvalidMidiDataException("Unexpected end of file: " + file.getName());
+		}
+	}
+	
+	/**
+	 * Reads the header chunk and all track chunks.
+	 * 
+	 * @return the sequence.
+	 * @throws ParseException            if the handler cannot process the sequence.
+	 * @throws InvalidMidiDataException  if the file is not a valid MIDI file.
+	 */
+	private Sequence readSequence() throws ParseException, InvalidMidiDataException {
+		
+		// header chunk
+		if (buffer.remaining() < 14 || buffer.getInt() != CHUNK_MTHD)
+			throw new InvalidMidiDataException("Not a Standard MIDI File.");
+		int headerLength = buffer.getInt();
+		if (headerLength < 6)
+			throw new InvalidMidiDataException("Invalid header length: " + headerLength);
+		int format    = buffer.getShort() & 0xFFFF;
+		int numTracks = buffer.getShort() & 0xFFFF;
+		int division  = buffer.getShort() & 0xFFFF;
+		if (format > 2)
+			throw new InvalidMidiDataException("Unsupported MIDI file format: " + format);
+		buffer.position(buffer.position() + headerLength - 6);
+		
+		// division type and resolution
+		Sequence sequence;
+		if (0 == (division & 0x8000)) {
+			sequence = new Sequence(Sequence.PPQ, division);
+		}
+		else {
+			int   frames = -(byte) (division >> 8);
+			float divisionType;
+			if (24 == frames)
+				divisionType = Sequence.SMPTE_24;
+			else if (25 == frames)
+				divisionType = Sequence.SMPTE_25;
+			else if (29 == frames)
+				divisionType = Sequence.SMPTE_30DROP;
+			else if (30 == frames)
+				divisionType = Sequence.SMPTE_30;
+			else
+				throw new InvalidMidiDataException("Unknown frame code: " + frames);
+			sequence = new Sequence(divisionType, division & 0xFF);
+		}
+		if (handler != null)
+			handler.begin(sequence);
+		
+		// track chunks
+		int trackNum = 0;
+		while (trackNum < numTracks && buffer.remaining() >= 8) {
+			int chunkType   = buffer.getInt();
+			int chunkLength = buffer.getInt();
+			
+			// a truncated chunk is ignored
+			if (chunkLength < 0 || chunkLength > buffer.remaining())
+				break;
+			int chunkEnd = buffer.position() + chunkLength;
+			if (CHUNK_MTRK == chunkType) {
+				readTrack(sequence.createTrack(), trackNum, chunkEnd);
+				trackNum++;
+			}
+			buffer.position(chunkEnd);
+		}
+		
+		return sequence;
+	}
+	
+	/**
+	 * Reads the events of one track chunk.
+	 * 
+	 * @param track     the track to be filled
+	 * @param trackNum  track number
+	 * @param chunkEnd  buffer position after the end of the chunk
+	 * @throws ParseException            if the handler cannot process an event.
+	 * @throws InvalidMidiDataException  if the track contains invalid data.
+	 */
+	private void readTrack(Track track, int trackNum, int chunkEnd) throws ParseException, InvalidMidiDataException {
+		long tick     = 0;
+		runningStatus = -1;
+		
+		// don't read beyond the chunk
+		int limit = buffer.limit();
+		buffer.limit(chunkEnd);
+		try {
+			while (buffer.hasRemaining()) {
+				tick += readVarInt();
+				MidiMessage msg = readMessage(trackNum);
+				track.add(new MidiEvent(msg, tick));
+				if (msg instanceof MetaMessage && META_EOT == ((MetaMessage) msg).getType())
+					break;
+				if (handler != null)
+					handler.event(msg, tick, trackNum);
+			}
+		}
+		catch (BufferUnderflowException e) {
+			throw new InvalidMidiDataException("Unexpected end of track " + trackNum);
+		}
+		finally {
+			buffer.limit(limit);
+		}
+		
+		// Adding an END-OF-TRACK event doesn't create a second one. It only moves
+		// the track's own END-OF-TRACK event to a later tick, if necessary.
+		// A track without an END-OF-TRACK event in the file has one as well.
+		// So the handler always gets the track's own (last) event.
+		if (handler != null) {
+			MidiEvent eot = track.get(track.size() - 1);
+			handler.event(eot.getMessage(), eot.getTick(), trackNum);
+		}
+	}
+	
+	/**
+	 * Reads the status byte (if available) and the data of one event.
+	 * 
+	 * @param trackNum  track number
+	 * @return the message.
+	 * @throws InvalidMidiDataException  if the event is invalid.
+	 */
+	private MidiMessage readMessage(int trackNum) throws InvalidMidiDataException {
+		
+		// status byte or running status
+		int status = buffer.get() & 0xFF;
+		int data1  = -1;
+		if (status < 0x80) {
+			if (runningStatus < 0)
+				throw new InvalidMidiDataException("Data byte without status byte in track " + trackNum);
+			data1  = status;
+			status = runningStatus;
+		}
+		else if (status < 0xF0) {
+			runningStatus = status;
+		}
+		
+		switch (status & 0xF0) {
+			
+			// two data bytes
+			case 0x80:
+			case 0x90:
+			case 0xA0:
+			case 0xB0:
+			case 0xE0:
+				if (data1 < 0)
+					data1 = buffer.get() & 0xFF;
+				return new RawShortMessage(new byte[] {(byte) status, (byte) data1, buffer.get()});
+			
+			// one data byte
+			case 0xC0:
+			case 0xD0:
+				if (data1 < 0)
+					data1 = buffer.get() & 0xFF;
+				return new RawShortMessage(new byte[] {(byte) status, (byte) data1});
+		}
+		
+		// SysEx
+		if (0xF0 == status || 0xF7 == status) {
+			byte[] data = readBytes(readVarInt(), trackNum);
+			return new SysexMessage(status, data, data.length);
+		}
+		
+		// meta
+		if (0xFF == status) {
+			int    type = buffer.get() & 0xFF;
+			byte[] data = readBytes(readVarInt(), trackNum);
+			return new MetaMessage(type, data, data.length);
+		}
+		
+		throw new InvalidMidiDataException("Invalid status byte: " + status);
+	}
+	
+	/**
+	 * Reads a variable-length quantity.
+	 * 
+	 * @return the value.
+	 * @throws InvalidMidiDataException if the value is longer than 4 bytes.
+	 */
+	private int readVarInt() throws InvalidMidiDataException {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			int b = buffer.get() & 0xFF;
+			value = (value << 7) | (b & 0x7F);
+			if (b < 0x80)
+				return value;
+		}
+		throw new InvalidMidiDataException("Invalid variable-length quantity.");
+	}
+	
+	/**
+	 * Reads the given number of bytes.
+	 * 
+	 * @param length    number of bytes
+	 * @param trackNum  track number
+	 * @return the bytes.
+	 * @throws InvalidMidiDataException if the bytes exceed the track chunk.
+	 */
+	private byte[] readBytes(int length, int trackNum) throws InvalidMidiDataException {
+		if (length > buffer.remaining())
+			throw new InvalidMidiDataException("Event length " + length + " exceeds the end of track " + trackNum);
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * A short message that is created from the raw bytes of the file without
+	 * validation, like the short messages created by the JDK's reader.
+	 */
+	private static class RawShortMessage extends ShortMessage {
+		
+		/**
+		 * Creates the message.
+		 * 
+		 * @param data  status byte and data bytes
+		 */
+		private RawShortMessage(byte[] data) {
+			super(data);
+		}
+	}
+}
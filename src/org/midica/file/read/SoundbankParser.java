@@ -33,6 +33,7 @@ import javax.sound.midi.SoundbankResource;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 
+import org.midica.config.Config;
 import org.midica.config.Dict;
 import org.midica.midi.MidiDevices;
 
@@ -311,16 +312,9 @@ public class SoundbankParser implements IParser {
 	 * If the directory doesn't exist yet, it will be created.
 	 * 
 	 * @return cache directory
-	 * @throws IOException
 	 */
 	public static File getUrlCacheDir() {
-		
-		String cacheDirStr = System.getProperty("user.home")
-			+ File.separator + ".midica.d" + File.separator + "sound_cache";
-		File cacheDir = new File(cacheDirStr);
-		cacheDir.mkdirs();
-		
-		return cacheDir;
+		return Config.getCacheDir("sound_cache");
 	}
 	
 	/**
@@ -0,0 +1,536 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.read;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.midica.config.Config;
+
+/**
+ * This class caches the tokenized lines of MidicaPL source files across
+ * several parsing processes.
+ * 
+ * Each time a file is parsed, its modification time and size are compared
+ * with the cached version. Only if they differ, the file is read and its
+ * content hash is compared with the hash of the cached version. If the file
+ * has not changed, the already tokenized lines are reused. So reparsing a
+ * project after a small change only needs to read, decode and tokenize the
+ * files that have actually been changed.
+ * 
+ * The parsing runs are still executed for the root file and for all included
+ * files that are not pure libraries, because each command depends on the state
+ * created by the preceding lines of the including files.
+ * 
+ * Only the most recently used files are kept in memory.
+ * 
+ * Included files are also cached on disk, inside of the include cache
+ * directory, together with the definitions recorded while parsing them
+ * (see {@link LibraryDefinitions}). So even a new Midica process doesn't need
+ * to decode, clean or parse a library that has not been changed since the last
+ * time. Cache files that have not been used for a long time are deleted.
+ * 
+ * Files may be read from several threads at the same time. The cached lines are
+ * immutable, and each caller gets its own list of them. Cleaned lines replace
+ * the list elements instead of changing the lines. After cleaning, the list
+ * can be stored in the cache again (see {@link #update(String, ArrayList)}).
+ * 
+ * @author Jan Trukenmüller
+ */
+public class SourceCache {
+	
+	private static final int  DISK_CACHE_VERSION = 2;
+	private static final int  MAX_ENTRIES        = 256;
+	private static final int  MAX_DISK_ENTRIES   = 1000;
+	private static final long MAX_DISK_AGE       = 30L * 24 * 60 * 60 * 1000; // 30 days
+	private static final long MTIME_RESOLUTION   = 2000; // coarsest timestamp resolution of common file systems
+	
+	/** cached files, in access order */
+	private static LinkedHashMap<String, SourceCache> cache = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SourceCache> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	
+	private static boolean isDiskCachePruned = false;
+	
+	private String                   hash        = null;
+	private String                   charset     = null;
+	private long                     modified    = 0; // modification time of the file
+	private long                     size        = 0; // size of the file
+	private long                     checked     = 0; // time when the content hash has been calculated
+	private ArrayList<TokenizedLine> lines       = null;
+	private LibraryDefinitions       definitions = null;
+	private String                   persisted   = null; // comment symbols of the persisted lines
+	
+	/**
+	 * Creates a new cache entry.
+	 * 
+	 * @param hash      content hash of the file
+	 * @param charset   charset used to decode the file
+	 * @param modified  modification time of the file
+	 * @param size      size of the file
+	 * @param checked   time when the content hash has been calculated
+	 * @param lines     the lines of the file
+	 */
+	private SourceCache(String hash, String charset, long modified, long size, long checked, ArrayList<TokenizedLine> lines) {
+		this.hash     = hash;
+		this.charset  = charset;
+		this.modified = modified;
+		this.size     = size;
+		this.checked  = checked;
+		this.lines    = lines;
+	}
+	
+	/**
+	 * Returns the lines of the given file.
+	 * 
+	 * If the file content and charset are the same as in the last call for the
+	 * same file, the cached lines are returned. Otherwise the file is decoded and
+	 * cached again.
+	 * 
+	 * The returned list belongs to the caller. Only the lines are shared.
+	 * 
+	 * The file is not read at all if its modification time and size are the
+	 * same as before. A modification time that is too close to the time when the
+	 * content hash has been calculated is not trusted because a second change
+	 * within the timestamp resolution would not be visible.
+	 * 
+	 * @param file          the source file
+	 * @param charset       the charset to be used for decoding
+	 * @param useDiskCache  **true** to look for the file in the include cache directory as well
+	 * @return the lines of the file.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public static ArrayList<TokenizedLine> getLines(File file, Charset charset, boolean useDiskCache) throws IOException {
+		String path     = file.getCanonicalPath();
+		long   modified = file.lastModified();
+		long   size     = file.length();
+		
+		// unchanged since the last time?
+		SourceCache entry = get(path);
+		if (entry != null && entry.isUnchanged(modified, size, charset.name())) {
+			return entry.getLines();
+		}
+		
+		// cached on disk?
+		if (useDiskCache && null == entry) {
+			entry = readDiskCache(path, charset.name());
+			if (entry != null && entry.isUnchanged(modified, size, charset.name())) {
+				put(path, entry);
+				return entry.getLines();
+			}
+		}
+		
+		// read file
+		long checked = System.currentTimeMillis();
+		byte[] content;
+		try (FileInputStream fis = new FileInputStream(file)) {
+			content = fis.readAllBytes();
+		}
+		String hash = getHash(content);
+		
+		// only touched?
+		if (entry != null && entry.hash.equals(hash) && entry.charset.equals(charset.name())) {
+			entry.touch(modified, size, checked);
+			put(path, entry);
+			return entry.getLines();
+		}
+		
+		// get lines from file
+		ArrayList<TokenizedLine> lines = new ArrayList<>();
+		ByteArrayInputStream bis = new ByteArrayInputStream(content);
+		BufferedReader       br  = new BufferedReader(new InputStreamReader(bis, charset));
+		String               line;
+		while (null != (line = br.readLine())) {
+			lines.add(new TokenizedLine(lines.size() + 1, line));
+		}
+		br.close();
+		
+		put(path, new SourceCache(hash, charset.name(), modified, size, checked, lines));
+		
+		return new ArrayList<>(lines);
+	}
+	
+	/**
+	 * Stores the cleaned lines of the given file in the memory cache so that
+	 * the next parsing process doesn't need to clean or tokenize them again.
+	 * 
+	 * Nothing is stored if the cached file has changed since the lines have
+	 * been read.
+	 * 
+	 * @param path   canonical path of the source file
+	 * @param lines  the cleaned lines, as returned by {@link #getLines(File, Charset, boolean)}
+	 */
+	public static void update(String path, ArrayList<TokenizedLine> lines) {
+		SourceCache entry = get(path);
+		if (entry != null)
+			entry.setLines(lines);
+	}
+	
+	/**
+	 * Returns the library definitions of the given file, if they have been
+	 * recorded with the given key.
+	 * 
+	 * This must be called after {@link #getLines(File, Charset, boolean)} so that
+	 * the cached entry belongs to the current version of the file.
+	 * 
+	 * @param path  canonical path of the source file
+	 * @param key   syntax and configuration at the time of the INCLUDE
+	 * @return the definitions, or **null** if not available.
+	 */
+	public static LibraryDefinitions getDefinitions(String path, String key) {
+		SourceCache entry = get(path);
+		if (null == entry)
+			return null;
+		synchronized (entry) {
+			if (entry.definitions != null && entry.definitions.getKey().equals(key))
+				return entry.definitions;
+		}
+		return null;
+	}
+	
+	/**
+	 * Stores the cleaned lines of the given file in the memory cache and writes
+	 * them into the include cache directory, if not yet done.
+	 * 
+	 * Nothing is stored if the cached file has changed since the lines have
+	 * been read.
+	 * 
+	 * The cache file is written into a temporary file first, and then moved.
+	 * So other processes never read a half-written cache file.
+	 * 
+	 * Errors are ignored because the disk cache is only an optimization.
+	 * 
+	 * @param path         canonical path of the source file
+	 * @param lines        the cleaned lines, as returned by {@link #getLines(File, Charset, boolean)}
+	 * @param definitions  definitions recorded while parsing the file, or **null**
+	 *                     if no new definitions have been recorded
+	 */
+	public static void persist(String path, ArrayList<TokenizedLine> lines, LibraryDefinitions definitions) {
+		SourceCache entry = get(path);
+		if (null == entry || lines.isEmpty())
+			return;
+		
+		synchronized (entry) {
+			if (! entry.setLines(lines))
+				return;
+			if (definitions != null) {
+				entry.definitions = definitions;
+				entry.persisted   = null;
+			}
+			
+			// lines not cleaned or already persisted?
+			String cleanedWith = entry.lines.get(0).getCleanedWith();
+			if (null == cleanedWith || cleanedWith.equals(entry.persisted))
+				return;
+			
+			try {
+				File cacheFile = getCacheFile(path);
+				Path tmpPath   = Files.createTempFile(cacheFile.getParentFile().toPath(), cacheFile.getName(), ".tmp");
+				try {
+					try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+						out.writeInt(DISK_CACHE_VERSION);
+						writeString(out, entry.hash);
+						writeString(out, entry.charset);
+						out.writeLong(entry.modified);
+						out.writeLong(entry.size);
+						out.writeLong(entry.checked);
+						writeString(out, cleanedWith);
+						out.writeInt(entry.lines.size());
+						for (TokenizedLine line : entry.lines) {
+							writeString(out, line.getRaw());
+							writeString(out, line.getContent());
+						}
+						out.writeBoolean(entry.definitions != null);
+						if (entry.definitions != null)
+							entry.definitions.write(out);
+					}
+					Files.move(tmpPath, cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				}
+				finally {
+					Files.deleteIfExists(tmpPath);
+				}
+				entry.persisted = cleanedWith;
+			}
+			catch (IOException | NoSuchAlgorithmException e) {
+				// ignore - the file will be decoded again next time
+			}
+		}
+		
+		pruneDiskCache();
+	}
+	
+	/**
+	 * Returns the include cache directory.
+	 * 
+	 * If the directory doesn't exist yet, it will be created.
+	 * 
+	 * @return cache directory
+	 */
+	public static File getIncludeCacheDir() {
+		return Config.getCacheDir("include_cache");
+	}
+	
+	/**
+	 * Indicates if the file is unchanged, according to its modification time and size.
+	 * 
+	 * @param modified  current modification time of the file
+	 * @param size      current size of the file
+	 * @param charset   charset to be used for decoding
+	 * @return **true** if the cached lines can be used without reading the file.
+	 */
+	private synchronized boolean isUnchanged(long modified, long size, String charset) {
+		return this.modified == modified
+			&& this.size == size
+			&& modified + MTIME_RESOLUTION < checked
+			&& this.charset.equals(charset);
+	}
+	
+	/**
+	 * Updates modification time and size of a file whose content has not changed.
+	 * 
+	 * @param modified  current modification time of the file
+	 * @param size      current size of the file
+	 * @param checked   time when the content hash has been calculated
+	 */
+	private synchronized void touch(long modified, long size, long checked) {
+		this.modified  = modified;
+		this.size      = size;
+		this.checked   = checked;
+		this.persisted = null;
+	}
+	
+	/**
+	 * Returns a copy of the list of cached lines.
+	 * 
+	 * @return the lines.
+	 */
+	private synchronized ArrayList<TokenizedLine> getLines() {
+		return new ArrayList<>(lines);
+	}
+	
+	/**
+	 * Replaces the cached lines by the given (cleaned) lines, if they have
+	 * been created from the cached lines.
+	 * 
+	 * @param newLines  the new lines
+	 * @return **true** if the lines have been replaced, otherwise **false**.
+	 */
+	private synchronized boolean setLines(ArrayList<TokenizedLine> newLines) {
+		if (newLines.size() != lines.size())
+			return false;
+		for (int i = 0; i < lines.size(); i++) {
+			
+			// cleaned lines share the raw content with the original lines
+			if (newLines.get(i).getRaw() != lines.get(i).getRaw())
+				return false;
+		}
+		lines = new ArrayList<>(newLines);
+		return true;
+	}
+	
+	/**
+	 * Reads the cached lines of a file from the include cache directory.
+	 * 
+	 * The cache file's modification time is updated so that it's not pruned
+	 * as long as it's used.
+	 * 
+	 * @param path     canonical path of the source file
+	 * @param charset  charset used to decode the source file
+	 * @return the cache entry, or **null** if the file is not cached with this charset.
+	 */
+	private static SourceCache readDiskCache(String path, String charset) {
+		try {
+			File cacheFile = getCacheFile(path);
+			if (! cacheFile.exists())
+				return null;
+			
+			SourceCache entry;
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+				if (in.readInt() != DISK_CACHE_VERSION)
+					return null;
+				String hash = readString(in);
+				if (! charset.equals(readString(in)))
+					return null;
+				long   modified    = in.readLong();
+				long   size        = in.readLong();
+				long   checked     = in.readLong();
+				String cleanedWith = readString(in);
+				int    count       = in.readInt();
+				
+				ArrayList<TokenizedLine> lines = new ArrayList<>(count);
+				for (int i = 1; i <= count; i++) {
+					String raw = readString(in);
+					lines.add(new TokenizedLine(i, raw, readString(in), cleanedWith));
+				}
+				
+				entry = new SourceCache(hash, charset, modified, size, checked, lines);
+				entry.persisted = cleanedWith;
+				if (in.readBoolean())
+					entry.definitions = LibraryDefinitions.read(in);
+			}
+			cacheFile.setLastModified(System.currentTimeMillis());
+			
+			return entry;
+		}
+		catch (IOException | NoSuchAlgorithmException e) {
+			// corrupt or unreadable - decode the source file instead
+			return null;
+		}
+	}
+	
+	/**
+	 * Deletes cache files that have not been used for a long time, and the
+	 * least recently used files if there are too many.
+	 * 
+	 * This is done only once per process.
+	 */
+	private static void pruneDiskCache() {
+		synchronized (SourceCache.class) {
+			if (isDiskCachePruned)
+				return;
+			isDiskCachePruned = true;
+		}
+		
+		File[] files = getIncludeCacheDir().listFiles();
+		if (null == files)
+			return;
+		
+		// sort by last usage, newest first
+		HashMap<File, Long> lastUsed = new HashMap<>();
+		for (File file : files) {
+			lastUsed.put(file, file.lastModified());
+		}
+		Arrays.sort(files, (a, b) -> Long.compare(lastUsed.get(b), lastUsed.get(a)));
+		
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < files.length; i++) {
+			if (i >= MAX_DISK_ENTRIES || now - lastUsed.get(files[i]) > MAX_DISK_AGE)
+				files[i].delete();
+		}
+	}
+	
+	/**
+	 * Returns the file inside of the include cache directory, belonging to the
+	 * given source file.
+	 * 
+	 * @param path  canonical path of the source file
+	 * @return the cache file.
+	 * @throws NoSuchAlgorithmException if SHA-256 is not supported by the JVM.
+	 */
+	private static File getCacheFile(String path) throws NoSuchAlgorithmException {
+		return new File(getIncludeCacheDir(), sha256(path.getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	/**
+	 * Writes a length-prefixed UTF-8 string.
+	 * 
+	 * @param out  the output stream
+	 * @param str  the string to be written
+	 * @throws IOException if the string cannot be written.
+	 */
+	static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Reads a length-prefixed UTF-8 string.
+	 * 
+	 * @param in  the input stream
+	 * @return the string.
+	 * @throws IOException if the string cannot be read.
+	 */
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Returns the cache entry of the given file.
+	 * 
+	 * @param path  canonical path of the source file
+	 * @return the cache entry or **null**, if not cached.
+	 */
+	private static SourceCache get(String path) {
+		synchronized (cache) {
+			return cache.get(path);
+		}
+	}
+	
+	/**
+	 * Stores the cache entry of the given file.
+	 * 
+	 * @param path   canonical path of the source file
+	 * @param entry  the cache entry
+	 */
+	private static void put(String path, SourceCache entry) {
+		synchronized (cache) {
+			cache.put(path, entry);
+		}
+	}
+	
+	/**
+	 * Calculates the hash of the given file content.
+	 * 
+	 * @param content  the file content
+	 * @return the hash value as a hex string.
+	 * @throws IOException if SHA-256 is not supported by the JVM.
+	 */
+	private static String getHash(byte[] content) throws IOException {
+		try {
+			return sha256(content);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IOException("SHA-256 not supported");
+		}
+	}
+	
+	/**
+	 * Calculates the SHA-256 hash of the given bytes.
+	 * 
+	 * @param bytes  the bytes to be hashed
+	 * @return the hash value as a hex string.
+	 * @throws NoSuchAlgorithmException if SHA-256 is not supported by the JVM.
+	 */
+	private static String sha256(byte[] bytes) throws NoSuchAlgorithmException {
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		byte[] digest = md.digest(bytes);
+		StringBuilder hexStr = new StringBuilder();
+		for (byte b : digest) {
+			hexStr.append(String.format("%02x", b));
+		}
+		return hexStr.toString();
+	}
+}
@@ -23,6 +23,8 @@ public class StackTraceElement {
 	private String functionName   = null;
 	private String patternName    = null;
 	private String paramStr       = "";
+	private String paramOpen      = "";
+	private String paramClose     = "";
 	private String optionStr      = "";
 	private File   file           = null;
 	private int    lineOffset     = 0;
@@ -66,11 +68,18 @@ public class StackTraceElement {
 	 * Sets the parameter string.
 	 * Only needed for function calls.
 	 * 
+	 * The brackets are passed as well because they may have been
+	 * redefined in the parsed file.
+	 * 
 	 * @param paramString the parameter string of the function call.
+	 * @param open        the opening bracket of the parameter list
+	 * @param close       the closing bracket of the parameter list
 	 */
-	public void setParams(String paramString) {
+	public void setParams(String paramString, String open, String close) {
 		if (paramString != null) {
-			paramStr = paramString;
+			paramStr   = paramString;
+			paramOpen  = open;
+			paramClose = close;
 		}
 	}
 	
@@ -146,7 +155,7 @@ public class StackTraceElement {
 		else if (functionName != null) {
 			action = Dict.get(Dict.STACK_TRACE_FUNCTION) + functionName;
 			if ( ! "".equals(paramStr) ) {
-				optsOrParams += Dict.get(Dict.STACK_TRACE_PARAMS) + MidicaPLParser.PARAM_OPEN + paramStr + MidicaPLParser.PARAM_CLOSE + "<br>" + indentation;
+				optsOrParams += Dict.get(Dict.STACK_TRACE_PARAMS) + paramOpen + paramStr + paramClose + "<br>" + indentation;
 			}
 			if ( ! "".equals(optionStr) ) {
 				optsOrParams += Dict.get(Dict.STACK_TRACE_OPTIONS) + optionStr + "<br>" + indentation;
@@ -155,7 +164,7 @@ public class StackTraceElement {
 		else if (patternName != null) {
 			action = Dict.get(Dict.STACK_TRACE_PATTERN) + patternName;
 			if ( ! "".equals(paramStr) ) {
-				optsOrParams += Dict.get(Dict.STACK_TRACE_PARAMS) + MidicaPLParser.PARAM_OPEN + paramStr + MidicaPLParser.PARAM_CLOSE + "<br>" + indentation;
+				optsOrParams += Dict.get(Dict.STACK_TRACE_PARAMS) + paramOpen + paramStr + paramClose + "<br>" + indentation;
 			}
 			if ( ! "".equals(optionStr) ) {
 				optsOrParams += Dict.get(Dict.STACK_TRACE_OPTIONS) + optionStr + "<br>" + indentation;
@@ -0,0 +1,199 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.read;
+
+import java.util.regex.Pattern;
+
+/**
+ * This class represents one pre-tokenized line of a MidicaPL source file, used by the MidicaPL parser.
+ * 
+ * The line is split into tokens only once. After that, the same tokens are reused in
+ * each parsing run and each time a nestable block is played or a function or pattern
+ * is called.
+ * 
+ * Lines are immutable (apart from the lazily calculated tokens) so that the
+ * {@link SourceCache} can share them between several parsers. Cleaning a line
+ * creates a new line.
+ * 
+ * The resolved version of a source line (after replacing all constants) is not
+ * stored here but in the parser, because the same source lines can be used by
+ * several parsers with different constants at the same time.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class TokenizedLine {
+	
+	private static Pattern whitespace = Pattern.compile("\\s+");
+	
+	private final    int      lineNumber;
+	private final    String   raw;                // content before cleaning
+	private final    String   content;
+	private final    String   cleanedWith;        // comment symbols used for cleaning
+	private final    boolean  isResolved;
+	private volatile String[] tokens      = null; // split into max. 3 tokens
+	private volatile String[] shortTokens = null; // split into max. 2 tokens
+	private volatile String[] allTokens   = null; // split without limit
+	
+	/**
+	 * Creates a new line from the given content.
+	 * 
+	 * @param lineNumber  line number inside of the source file
+	 * @param content     line content
+	 */
+	public TokenizedLine(int lineNumber, String content) {
+		this(lineNumber, content, content, null);
+	}
+	
+	/**
+	 * Creates a new line that has already been cleaned.
+	 * 
+	 * @param lineNumber   line number inside of the source file
+	 * @param raw          line content before cleaning
+	 * @param content      cleaned line content
+	 * @param cleanedWith  comment symbols used for cleaning
+	 */
+	TokenizedLine(int lineNumber, String raw, String content, String cleanedWith) {
+		this.lineNumber  = lineNumber;
+		this.raw         = raw;
+		this.content     = content;
+		this.cleanedWith = cleanedWith;
+		this.isResolved  = false;
+	}
+	
+	/**
+	 * Creates a new line from already existing tokens.
+	 * Used by nestable blocks.
+	 * 
+	 * The tokens are expected to be resolved already. So the line is its own
+	 * resolved version.
+	 * 
+	 * @param tokens  the tokens of the line
+	 */
+	public TokenizedLine(String[] tokens) {
+		this.lineNumber  = 0;
+		this.content     = String.join(" ", tokens);
+		this.raw         = this.content;
+		this.cleanedWith = null;
+		this.isResolved  = true;
+	}
+	
+	/**
+	 * Returns the line number inside of the source file.
+	 * Returns **0** if the line has not been read from a file.
+	 * 
+	 * @return the line number.
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+	
+	/**
+	 * Returns the original line content, as read from the source file.
+	 * 
+	 * @return raw line content.
+	 */
+	public String getRaw() {
+		return raw;
+	}
+	
+	/**
+	 * Returns the line content.
+	 * 
+	 * @return line content.
+	 */
+	public String getContent() {
+		return content;
+	}
+	
+	/**
+	 * Returns a copy of this line with the given cleaned content.
+	 * 
+	 * The raw content is the same as in this line.
+	 * If the cleaned content is the same as the current one, the tokens are kept.
+	 * 
+	 * @param content      the cleaned line content
+	 * @param cleanedWith  the comment symbols used for cleaning
+	 * @return the cleaned line.
+	 */
+	public TokenizedLine clean(String content, String cleanedWith) {
+		TokenizedLine cleaned = new TokenizedLine(lineNumber, raw, content, cleanedWith);
+		if (content.equals(this.content)) {
+			cleaned.tokens      = tokens;
+			cleaned.shortTokens = shortTokens;
+			cleaned.allTokens   = allTokens;
+		}
+		return cleaned;
+	}
+	
+	/**
+	 * Returns the comment symbols that have been used to clean the line content.
+	 * 
+	 * @return the comment symbols or **null**, if the line has not been cleaned yet.
+	 */
+	public String getCleanedWith() {
+		return cleanedWith;
+	}
+	
+	/**
+	 * Returns the first token of the line, which is either a command or a channel
+	 * or an empty string for an empty line.
+	 * 
+	 * @return the first token.
+	 */
+	public String getCommand() {
+		return getTokens(3)[0];
+	}
+	
+	/**
+	 * Returns the tokens of the line, split by whitespaces.
+	 * 
+	 * The returned array is a copy and can be changed by the caller.
+	 * 
+	 * @param limit  maximum number of tokens (**2** or **3**).
+	 * @return the tokens.
+	 */
+	public String[] getTokens(int limit) {
+		String[] result;
+		if (2 == limit) {
+			result = shortTokens;
+			if (null == result)
+				shortTokens = result = whitespace.split(content, 2);
+		}
+		else {
+			result = tokens;
+			if (null == result)
+				tokens = result = whitespace.split(content, 3);
+		}
+		return result.clone();
+	}
+	
+	/**
+	 * Returns all tokens of the line, split by whitespaces without a limit.
+	 * Needed for pattern lines.
+	 * 
+	 * The returned array is a copy and can be changed by the caller.
+	 * 
+	 * @return the tokens.
+	 */
+	public String[] getAllTokens() {
+		String[] result = allTokens;
+		if (null == result)
+			allTokens = result = whitespace.split(content);
+		return result.clone();
+	}
+	
+	/**
+	 * Indicates if the line has been created from already resolved tokens,
+	 * so that no constants need to be replaced any more.
+	 * 
+	 * @return **true** for a resolved line, otherwise **false**.
+	 */
+	public boolean isResolved() {
+		return isResolved;
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.read;
+
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class represents a precompiled string containing references to
+ * constants, variables or parameters, used by the MidicaPL parser.
+ * 
+ * The string is searched for references only once. It is stored as a list of
+ * literal parts and references in between. Filling the template with values
+ * is then only a matter of concatenating these parts, without any regex matching.
+ * 
+ * The filled string must only be searched again if it can contain new
+ * references. See {@link #mustRescan(String[])}.
+ * 
+ * Each reference can be one of the following:
+ * 
+ * - a constant or variable, e.g. **$name**
+ * - an indexed parameter, e.g. **$[0]**
+ * - a named parameter, e.g. **${name}**
+ * 
+ * @author Jan Trukenmüller
+ */
+public class VariableTemplate {
+	
+	private String   source      = null;
+	private String[] literals    = null; // one more element than references
+	private String[] names       = null; // whole reference, e.g. $name or $[0]
+	private String[] indexes     = null; // index of an indexed parameter, or null
+	private String[] paramNames  = null; // name of a named parameter, or null
+	private String   varSymbol   = null;
+	private boolean  looseSymbol = false; // a literal part contains the variable symbol
+	
+	/**
+	 * Compiles a new template from the given string.
+	 * 
+	 * @param source      the string to be compiled
+	 * @param varPattern  the regex pattern to find constants, variables and parameters
+	 * @param varSymbol   the symbol introducing a constant, variable or parameter
+	 */
+	public VariableTemplate(String source, Pattern varPattern, String varSymbol) {
+		this.source    = source;
+		this.varSymbol = varSymbol;
+		
+		ArrayList<String> literalList = new ArrayList<>();
+		ArrayList<String> nameList    = new ArrayList<>();
+		ArrayList<String> indexList   = new ArrayList<>();
+		ArrayList<String> paramList   = new ArrayList<>();
+		
+		Matcher matcher = varPattern.matcher(source);
+		int     pos     = 0;
+		while (matcher.find()) {
+			literalList.add(source.substring(pos, matcher.start()));
+			nameList.add(matcher.group(1));
+			indexList.add(matcher.group(5));
+			paramList.add(matcher.group(6));
+			pos = matcher.end();
+		}
+		literalList.add(source.substring(pos));
+		
+		literals   = literalList.toArray(new String[0]);
+		names      = nameList.toArray(new String[0]);
+		indexes    = indexList.toArray(new String[0]);
+		paramNames = paramList.toArray(new String[0]);
+		
+		for (String literal : literals) {
+			if (literal.contains(varSymbol))
+				looseSymbol = true;
+		}
+	}
+	
+	/**
+	 * Returns the string that has been compiled.
+	 * 
+	 * @return the source string.
+	 */
+	public String getSource() {
+		return source;
+	}
+	
+	/**
+	 * Returns the number of references inside of the template.
+	 * 
+	 * @return number of references.
+	 */
+	public int getReferenceCount() {
+		return names.length;
+	}
+	
+	/**
+	 * Returns the whole reference with the given index, including the variable symbol.
+	 * E.g. **$name**, **$[0]** or **${name}**.
+	 * 
+	 * @param i  index of the reference
+	 * @return the reference name.
+	 */
+	public String getName(int i) {
+		return names[i];
+	}
+	
+	/**
+	 * Returns the parameter index of the given reference, if it's an indexed parameter.
+	 * 
+	 * @param i  index of the reference
+	 * @return the parameter index as a string, or **null** if it's not an indexed parameter.
+	 */
+	public String getParamIndex(int i) {
+		return indexes[i];
+	}
+	
+	/**
+	 * Returns the parameter name of the given reference, if it's a named parameter.
+	 * 
+	 * @param i  index of the reference
+	 * @return the parameter name, or **null** if it's not a named parameter.
+	 */
+	public String getParamName(int i) {
+		return paramNames[i];
+	}
+	
+	/**
+	 * Fills the template with the given values.
+	 * 
+	 * If a value is **null**, the original reference is kept.
+	 * 
+	 * @param values  one value for each reference
+	 * @return the resulting string.
+	 */
+	public String fill(String[] values) {
+		StringBuilder result = new StringBuilder(source.length() + 16);
+		for (int i = 0; i < names.length; i++) {
+			result.append(literals[i]);
+			result.append(null == values[i] ? names[i] : values[i]);
+		}
+		result.append(literals[names.length]);
+		
+		return result.toString();
+	}
+	
+	/**
+	 * Checks if the string resulting from {@link #fill(String[])} can contain
+	 * references that are not yet contained in this template.
+	 * 
+	 * That's only possible in the following cases:
+	 * 
+	 * - a filled value contains the variable symbol itself
+	 * - a literal part contains the variable symbol, so that it can be
+	 *   completed by the following value
+	 * - a kept reference is directly followed by a filled value, so that
+	 *   the name of the reference is extended
+	 * 
+	 * Otherwise the filled string contains exactly the kept references and
+	 * doesn't need to be compiled again.
+	 * 
+	 * @param values  the same values as passed to {@link #fill(String[])}
+	 * @return **true**, if the filled string must be searched again, otherwise **false**.
+	 */
+	public boolean mustRescan(String[] values) {
+		for (int i = 0; i < names.length; i++) {
+			if (null == values[i])
+				continue;
+			if (looseSymbol || values[i].contains(varSymbol))
+				return true;
+			if (i > 0 && null == values[i - 1] && literals[i].isEmpty())
+				return true;
+		}
+		return false;
+	}
+}
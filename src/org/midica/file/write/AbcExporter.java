@@ -11,8 +11,6 @@ import java.io.File;
 import java.io.IOException;
 
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MidiSystem;
-import javax.sound.midi.Sequence;
 
 import org.midica.config.Config;
 import org.midica.config.Dict;
@@ -57,9 +55,7 @@ public class AbcExporter extends MidiExporter {
 			File tempfile = Foreign.createTempMidiFile();
 			
 			// export the MIDI file
-			Sequence seq = cloneSequence();
-			int[] supportedFileTypes = MidiSystem.getMidiFileTypes(seq);
-			MidiSystem.write(seq, supportedFileTypes[0], tempfile);
+			writeSequence(tempfile);
 			
 			// create the convert command
 			String execPath = Config.get(Config.EXEC_PATH_EXP_ABC);
@@ -8,6 +8,9 @@
 package org.midica.file.write;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -38,12 +41,23 @@ import com.sun.kh.MidiToAudioRenderer;
  */
 public class AudioExporter extends Exporter {
 	
+	// render modes
+	public static final int RENDER_SERIAL   = 0;
+	public static final int RENDER_CHANNELS = 1;
+	public static final int RENDER_SEGMENTS = 2;
+	
+	private static final int  BLOCK_FRAMES    = 16384;              // frames per written block
+	private static final long REPORT_INTERVAL = 200L * 1000 * 1000; // nanoseconds between progress reports
+	
 	// define default values
 	public static final String  DEFAULT_ENCODING         = AudioFormat.Encoding.PCM_SIGNED.toString();
 	public static final int     DEFAULT_SAMPLE_SIZE_BITS = 16;
 	public static final float   DEFAULT_SAMPLE_RATE      = 44100;
 	public static final int     DEFAULT_CHANNELS         = 2;
 	public static final boolean DEFAULT_IS_BIG_ENDIAN    = false;
+	public static final int     DEFAULT_RENDER_MODE      = RENDER_SERIAL;
+	public static final float   DEFAULT_SILENCE_LEVEL    = 90;
+	public static final float   DEFAULT_MAX_TAIL         = 30;
 	
 	// audio configuration
 	public static String  ENCODING         = DEFAULT_ENCODING;
@@ -51,6 +65,9 @@ public class AudioExporter extends Exporter {
 	public static float   SAMPLE_RATE      = DEFAULT_SAMPLE_RATE;
 	public static int     CHANNELS         = DEFAULT_CHANNELS;
 	public static boolean IS_BIG_ENDIAN    = DEFAULT_IS_BIG_ENDIAN;
+	public static int     RENDER_MODE      = DEFAULT_RENDER_MODE;
+	public static float   SILENCE_LEVEL    = DEFAULT_SILENCE_LEVEL;
+	public static float   MAX_TAIL         = DEFAULT_MAX_TAIL;
 	
 	/**
 	 * Creates a new audio exporter.
@@ -126,9 +143,15 @@ public class AudioExporter extends Exporter {
 			);
 			
 			// get audio stream
-			AudioInputStream stream = MidiToAudioRenderer.render(
-				soundbank, seq, format, synth
-			);
+			// (fall back to serial rendering if the sequence cannot be split)
+			AudioInputStream stream = null;
+			int threads = Runtime.getRuntime().availableProcessors();
+			if (RENDER_CHANNELS == RENDER_MODE && threads > 1)
+				stream = ChannelSplitRenderer.render(soundbank, seq, format, threads, SILENCE_LEVEL, MAX_TAIL);
+			else if (RENDER_SEGMENTS == RENDER_MODE && threads > 1)
+				stream = SegmentRenderer.render(soundbank, seq, format, threads, SILENCE_LEVEL, MAX_TAIL);
+			if (null == stream)
+				stream = MidiToAudioRenderer.render(soundbank, seq, format, synth, SILENCE_LEVEL, MAX_TAIL);
 			
 			// check stream
 			if (! AudioSystem.isFileTypeSupported(fileType, stream))
@@ -137,11 +160,21 @@ public class AudioExporter extends Exporter {
 					+ " &nbsp; &#8644; &nbsp; " + stream.getFormat()
 				);
 			
-			// Write audio file to disk.
-			AudioSystem.write(stream, fileType, file);
+			// Write audio file to disk, block by block.
+			boolean isFinished;
+			try {
+				isFinished = write(stream, fileType, file);
+			}
+			finally {
+				
+				// We are finished, close synthesizer(s).
+				stream.close();
+				synth.close();
+			}
 			
-			// We are finished, close synthesizer.
-			synth.close();
+			// cancelled
+			if (! isFinished)
+				return new ExportResult(false);
 		}
 		catch (Exception e) {
 			if (e instanceof ExportException)
@@ -156,6 +189,88 @@ public class AudioExporter extends Exporter {
 		return new ExportResult(true);
 	}
 	
+	@Override
+	public boolean isCancellable() {
+		return true;
+	}
+	
+	/**
+	 * Writes the audio file.
+	 * 
+	 * If the export is cancelled or fails, the incomplete file is deleted.
+	 * 
+	 * @param stream    the audio stream
+	 * @param fileType  the file type
+	 * @param file      the target file
+	 * @return **true** if the file has been written, or **false** if the export has been cancelled.
+	 * @throws IOException if the file cannot be written.
+	 */
+	boolean write(AudioInputStream stream, AudioFileFormat.Type fileType, File file) throws IOException {
+		boolean isFinished = false;
+		try {
+			if (AudioFileFormat.Type.WAVE == fileType)
+				isFinished = writeWav(stream, file);
+			else
+				isFinished = writeOther(stream, fileType, file);
+		}
+		finally {
+			if (! isFinished)
+				file.delete();
+		}
+		return isFinished;
+	}
+	
+	/**
+	 * Writes a WAVE file.
+	 * 
+	 * Converts the stream into the format needed for WAVE files, if necessary.
+	 * 
+	 * @param stream  the audio stream
+	 * @param file    the target file
+	 * @return **true** if the file has been written, or **false** if the export has been cancelled.
+	 * @throws IOException if the file cannot be written.
+	 */
+	private boolean writeWav(AudioInputStream stream, File file) throws IOException {
+		AudioInputStream input  = new AudioInputStream(new ProgressStream(stream), stream.getFormat(), stream.getFrameLength());
+		AudioFormat      format = WavWriter.getFormat(stream.getFormat());
+		if (! format.matches(stream.getFormat()))
+			input = AudioSystem.getAudioInputStream(format, input);
+		byte[] block = new byte[BLOCK_FRAMES * format.getFrameSize()];
+		try (WavWriter writer = new WavWriter(file, format)) {
+			int length;
+			while ((length = input.read(block, 0, block.length)) > 0)
+				writer.write(block, 0, length);
+		}
+		catch (IOException e) {
+			if (isCancelled())
+				return false;
+			throw e;
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes an audio file of a type other than WAVE, using the audio system.
+	 * 
+	 * @param stream    the audio stream
+	 * @param fileType  the file type
+	 * @param file      the target file
+	 * @return **true** if the file has been written, or **false** if the export has been cancelled.
+	 * @throws IOException if the file cannot be written.
+	 */
+	private boolean writeOther(AudioInputStream stream, AudioFileFormat.Type fileType, File file) throws IOException {
+		AudioInputStream input = new AudioInputStream(new ProgressStream(stream), stream.getFormat(), stream.getFrameLength());
+		try {
+			AudioSystem.write(input, fileType, file);
+		}
+		catch (IOException e) {
+			if (isCancelled())
+				return false;
+			throw e;
+		}
+		return true;
+	}
+	
 	/**
 	 * Returns a list with all possible encoding formats.
 	 */
@@ -288,5 +403,85 @@ public class AudioExporter extends Exporter {
 		SAMPLE_RATE      = Float.parseFloat(     sessionConfig.get(Config.AU_SAMPLE_RATE)      );
 		CHANNELS         = Integer.parseInt(     sessionConfig.get(Config.AU_CHANNELS)         );
 		IS_BIG_ENDIAN    = Boolean.parseBoolean( sessionConfig.get(Config.AU_IS_BIG_ENDIAN)    );
+		RENDER_MODE      = Integer.parseInt(     sessionConfig.get(Config.AU_RENDER_MODE)      );
+		SILENCE_LEVEL    = Float.parseFloat(     sessionConfig.get(Config.AU_SILENCE_LEVEL)    );
+		MAX_TAIL         = Float.parseFloat(     sessionConfig.get(Config.AU_MAX_TAIL)         );
+	}
+	
+	/**
+	 * Passes the rendered audio data through, reports the progress and
+	 * stops the export, if it's cancelled.
+	 */
+	private class ProgressStream extends InputStream {
+		
+		private final AudioInputStream stream;
+		private final int              frameSize;
+		private final float            frameRate;
+		private final long             totalFrames; // without the tail, if the length is not known
+		private final boolean          hasTail;
+		private final long             startTime  = System.nanoTime();
+		private       long             lastReport = 0;
+		private       long             bytes      = 0;
+		
+		/**
+		 * Creates the stream.
+		 * 
+		 * @param stream  the rendered audio stream
+		 */
+		private ProgressStream(AudioInputStream stream) {
+			this.stream = stream;
+			frameSize   = stream.getFormat().getFrameSize();
+			frameRate   = stream.getFormat().getFrameRate();
+			hasTail     = stream instanceof TailDetectingStream;
+			if (hasTail)
+				totalFrames = ((TailDetectingStream) stream).getEventFrames();
+			else
+				totalFrames = stream.getFrameLength();
+		}
+		
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (isCancelled())
+				throw new InterruptedIOException("export cancelled");
+			int length = stream.read(b, off, len);
+			if (length > 0)
+				bytes += length;
+			
+			// report progress
+			long now = System.nanoTime();
+			if (hasProgressListener() && (now - lastReport >= REPORT_INTERVAL || length < 0)) {
+				lastReport = now;
+				long   frames  = bytes / frameSize;
+				double seconds = frames / frameRate;
+				double elapsed = (now - startTime) / 1000000000.0;
+				double speed   = elapsed > 0 ? seconds / elapsed : 0;
+				int    percent = totalFrames > 0 ? (int) Math.min(100, frames * 100 / totalFrames) : 0;
+				if (length < 0)
+					percent = 100;
+				else if (hasTail)
+					percent = Math.min(99, percent);
+				
+				// in the tail, the remaining length is unknown
+				if (hasTail && frames > totalFrames)
+					reportProgress(percent, String.format(Dict.get(Dict.WAIT_EXPORT_AU_TAIL), seconds, speed));
+				else
+					reportProgress(percent, String.format(
+						Dict.get(Dict.WAIT_EXPORT_AU_PROGRESS),
+						seconds, totalFrames / frameRate, speed
+					));
+			}
+			return length;
+		}
+		
+		@Override
+		public int available() throws IOException {
+			return stream.available();
+		}
 	}
 }
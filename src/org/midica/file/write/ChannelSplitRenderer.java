@@ -0,0 +1,205 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Soundbank;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.midica.midi.MidiDevices;
+
+import com.sun.kh.MidiToAudioRenderer;
+
+/**
+ * Renders a sequence with several synthesizers concurrently, each of them
+ * playing a group of MIDI channels.
+ * 
+ * Each synthesizer receives the channel messages of its own channels.
+ * SysEx messages are sent to each synthesizer. So global settings
+ * (e.g. master volume, reverb type) are the same in every group.
+ * 
+ * The groups are balanced by the number of notes per channel.
+ * 
+ * The float outputs of the groups are summed up before the limiter is
+ * applied. Apart from the limiter, everything that Gervill does after
+ * rendering the voices (chorus, reverb, master volume) is linear. So the
+ * sum equals the serial rendering, apart from float rounding, with two
+ * exceptions:
+ * 
+ * - Each synthesizer has its own polyphony limit. So notes that would be
+ *   stolen in a serial rendering may keep sounding. Then the tail, and so
+ *   the length of the stream, may differ as well.
+ * - The reverb stops processing when its output falls below 1E-10 per
+ *   group instead of for the sum of all groups.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class ChannelSplitRenderer extends MixingAudioStream {
+	
+	private ArrayList<Source> sources = new ArrayList<>();
+	
+	/**
+	 * Creates the renderer and opens one synthesizer for each group.
+	 * 
+	 * @param soundbank  the soundbank
+	 * @param numGroups  number of channel groups
+	 * @param format     the target format
+	 * @throws Exception if a synthesizer cannot be opened.
+	 */
+	private ChannelSplitRenderer(Soundbank soundbank, int numGroups, AudioFormat format) throws Exception {
+		super(format, numGroups);
+		try {
+			for (int g = 0; g < numGroups; g++)
+				sources.add(new Source(soundbank, floatFormat));
+		}
+		catch (Exception e) {
+			close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Renders the given sequence with up to the given number of synthesizers.
+	 * 
+	 * Returns **null** if the sequence has less than 2 channels with notes.
+	 * In this case the sequence cannot be split.
+	 * 
+	 * The stream ends when the sound has faded out after the last event.
+	 * 
+	 * @param soundbank     the soundbank
+	 * @param seq           the sequence to be rendered
+	 * @param format        the target format
+	 * @param threads       maximum number of synthesizers
+	 * @param silenceLevel  silence level in dB below full scale
+	 * @param maxTail       maximum length after the last event, in seconds
+	 * @return the audio stream, or **null**.
+	 * @throws Exception if the sequence cannot be rendered.
+	 */
+	public static AudioInputStream render(Soundbank soundbank, Sequence seq, AudioFormat format, int threads, float silenceLevel, float maxTail) throws Exception {
+		
+		// count notes per channel
+		int[] notes = new int[MidiDevices.NUMBER_OF_CHANNELS];
+		for (Track track : seq.getTracks()) {
+			for (int i = 0; i < track.size(); i++) {
+				MidiMessage msg = track.get(i).getMessage();
+				if (msg instanceof ShortMessage) {
+					ShortMessage shortMsg = (ShortMessage) msg;
+					if (ShortMessage.NOTE_ON == shortMsg.getCommand() && shortMsg.getData2() > 0)
+						notes[shortMsg.getChannel()]++;
+				}
+			}
+		}
+		int activeChannels = 0;
+		for (int count : notes)
+			if (count > 0)
+				activeChannels++;
+		int numGroups = Math.min(threads, activeChannels);
+		if (numGroups < 2)
+			return null;
+		
+		// assign the busiest remaining channel to the group with the fewest notes
+		int[]     groupOfChannel = new int[MidiDevices.NUMBER_OF_CHANNELS];
+		long[]    groupNotes     = new long[numGroups];
+		boolean[] assigned       = new boolean[MidiDevices.NUMBER_OF_CHANNELS];
+		for (int n = 0; n < MidiDevices.NUMBER_OF_CHANNELS; n++) {
+			int channel = -1;
+			for (int c = 0; c < MidiDevices.NUMBER_OF_CHANNELS; c++)
+				if (! assigned[c] && (channel < 0 || notes[c] > notes[channel]))
+					channel = c;
+			int group = 0;
+			for (int g = 1; g < numGroups; g++)
+				if (groupNotes[g] < groupNotes[group])
+					group = g;
+			assigned[channel]        = true;
+			groupOfChannel[channel]  = group;
+			groupNotes[group]       += notes[channel];
+		}
+		
+		// send the sequence
+		ChannelSplitRenderer renderer  = new ChannelSplitRenderer(soundbank, numGroups, format);
+		Receiver[]           receivers = new Receiver[numGroups];
+		for (int g = 0; g < numGroups; g++)
+			receivers[g] = renderer.sources.get(g).getReceiver();
+		double total = MidiToAudioRenderer.send(seq, new ChannelRouter(receivers, groupOfChannel));
+		
+		AudioInputStream stream = new AudioInputStream(renderer, format, AudioSystem.NOT_SPECIFIED);
+		return new TailDetectingStream(stream, MidiToAudioRenderer.getFrameLength(format, total), silenceLevel, maxTail, renderer::hasActiveVoices);
+	}
+	
+	/**
+	 * Determines if any voice of any group is active.
+	 * 
+	 * @return **true** if a voice is active, otherwise **false**.
+	 */
+	private boolean hasActiveVoices() {
+		for (Source source : sources)
+			if (source.hasActiveVoices())
+				return true;
+		return false;
+	}
+	
+	@Override
+	protected void fillChunk(float[] chunk) throws IOException {
+		readConcurrently(sources, chunkFrames);
+		
+		// sum up in a fixed order, so that the result is reproducible
+		for (Source source : sources) {
+			float[] samples = source.samples;
+			for (int i = 0; i < chunk.length; i++)
+				chunk[i] += samples[i];
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		super.close();
+		for (Source source : sources)
+			source.close();
+	}
+	
+	/**
+	 * Passes each channel message to the synthesizer of the channel's group
+	 * and all other messages to all synthesizers.
+	 */
+	private static class ChannelRouter extends EventDistributor {
+		
+		private final Receiver[] receivers;
+		private final int[]      groupOfChannel;
+		
+		/**
+		 * Creates the router.
+		 * 
+		 * @param receivers       receivers by group
+		 * @param groupOfChannel  group index by channel
+		 */
+		private ChannelRouter(Receiver[] receivers, int[] groupOfChannel) {
+			this.receivers      = receivers;
+			this.groupOfChannel = groupOfChannel;
+		}
+		
+		@Override
+		protected void distribute(MidiMessage msg, long tick, long timeStamp) {
+			if (msg instanceof ShortMessage && ((ShortMessage) msg).getCommand() < 0xF0) {
+				receivers[groupOfChannel[((ShortMessage) msg).getChannel()]].send(msg, timeStamp);
+			}
+			else {
+				for (Receiver receiver : receivers)
+					receiver.send(msg, timeStamp);
+			}
+		}
+	}
+}
@@ -191,6 +191,9 @@ public abstract class Decompiler extends Exporter {
 	protected static ExportResult exportResult     = null;
 	protected static boolean      isSoftKaraoke    = false;
 	
+	/** holds the configured MidicaPL keywords */
+	protected static MidicaPLParser syntax = null;
+	
 	/** stores the current state of each channel */
 	protected static ArrayList<Instrument>       srcInstrByChannel = null;
 	protected static ArrayList<Instrument>       tgtInstrByChannel = null;
@@ -313,7 +316,7 @@ public abstract class Decompiler extends Exporter {
 		// of message-based warnings is filled properly.
 		// Otherwise it only works if the InfoView has been opened before the decompilation.
 		exportResult = new ExportResult(true);
-		MidicaTreeModel model = (MidicaTreeModel) SequenceAnalyzer.getSequenceInfo().get("msg_tree_model");
+		MidicaTreeModel model = SequenceAnalyzer.getMessageTreeModel();
 		model.postprocess();
 		
 		// charset
@@ -363,7 +366,7 @@ public abstract class Decompiler extends Exporter {
 			lyricsChannels = prioritizeChannelsForLyrics();
 			
 			// make sure that the syntax configuration is up to date
-			MidicaPLParser.refreshSyntax();
+			syntax = new MidicaPLParser();
 			
 			// fill the timeline with instrument changes and note events
 			slices = new ArrayList<>();
@@ -836,7 +839,7 @@ public abstract class Decompiler extends Exporter {
 						byte tonality            = data[1];
 						String[] noteAndTonality = MessageClassifier.getKeySignature(sharpsOrFlats, tonality);
 						cmdId = "key";
-						value = noteAndTonality[0] + MidicaPLParser.KEY_SEPARATOR + noteAndTonality[1];
+						value = noteAndTonality[0] + syntax.KEY_SEPARATOR + noteAndTonality[1];
 						if (ALDA == format)
 							value = sharpsOrFlats + "/" + tonality;
 					}
@@ -845,7 +848,7 @@ public abstract class Decompiler extends Exporter {
 						int exp         = data[1];
 						int denominator = (int) Math.pow(2, exp);
 						cmdId           = "time";
-						value           = numerator + MidicaPLParser.TIME_SIG_SLASH + denominator;
+						value           = numerator + syntax.TIME_SIG_SLASH + denominator;
 						
 						// prepare bar line calculation
 						int resolution = SequenceCreator.getResolution();
@@ -1289,7 +1292,7 @@ public abstract class Decompiler extends Exporter {
 				// chord not yet available?
 				String chordName = chords.get(chordKey.toString());
 				if (isPercussion || useInlineChords) {
-					chordName = String.join(MidicaPLParser.CHORD_SEPARATOR, inlineChord);
+					chordName = String.join(syntax.CHORD_SEPARATOR, inlineChord);
 				}
 				else {
 					if (null == chordName) {
@@ -2083,6 +2086,6 @@ public abstract class Decompiler extends Exporter {
 	protected String getCommentSymbol() {
 		if (ALDA == format)
 			return "#";
-		return MidicaPLParser.COMMENT;
+		return syntax.COMMENT;
 	}
 }
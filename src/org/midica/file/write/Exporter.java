@@ -31,6 +31,23 @@ import org.midica.ui.file.ExportResult;
  */
 public abstract class Exporter {
 	
+	private volatile boolean isCancelled      = false;
+	private ProgressListener progressListener = null;
+	
+	/**
+	 * Receives the progress of an export.
+	 */
+	public interface ProgressListener {
+		
+		/**
+		 * Called from time to time while the file is exported.
+		 * 
+		 * @param percent  progress in percent
+		 * @param info     description of the progress
+		 */
+		void progress(int percent, String info);
+	}
+	
 	/**
 	 * Checks and creates the file.
 	 * Checks if the specified file can be created/written or already exists.
@@ -60,13 +77,13 @@ public abstract class Exporter {
     			if (mayOverwrite != JOptionPane.YES_OPTION)
     				return false;
     		}
-    		
+
     		// writable
     		if (! file.canWrite())
     			throw new ExportException(Dict.get(Dict.ERROR_FILE_NOT_WRITABLE));
-    		
+
     		return true;
-    		
+		
 		}
 		catch (IOException e) {
 			throw new ExportException(e.getMessage());
@@ -81,4 +98,61 @@ public abstract class Exporter {
 	 * @throws  ExportException  If the file can not be exported correctly.
 	 */
 	public abstract ExportResult export(File file) throws ExportException;
+	
+	/**
+	 * Determines if the exporter reports its progress and can be cancelled.
+	 * 
+	 * @return **true** if the export can be cancelled, otherwise **false**.
+	 */
+	public boolean isCancellable() {
+		return false;
+	}
+	
+	/**
+	 * Sets the listener that receives the progress of the export.
+	 * 
+	 * @param listener  the progress listener
+	 */
+	public void setProgressListener(ProgressListener listener) {
+		progressListener = listener;
+	}
+	
+	/**
+	 * Requests to cancel the export.
+	 * 
+	 * May be called from any thread. Only has an effect if the exporter is
+	 * cancellable.
+	 */
+	public void cancel() {
+		isCancelled = true;
+	}
+	
+	/**
+	 * Determines if cancelling the export has been requested.
+	 * 
+	 * @return **true** if the export has been cancelled, otherwise **false**.
+	 */
+	protected boolean isCancelled() {
+		return isCancelled;
+	}
+	
+	/**
+	 * Determines if a listener receives the progress of the export.
+	 * 
+	 * @return **true** if there is a progress listener, otherwise **false**.
+	 */
+	protected boolean hasProgressListener() {
+		return progressListener != null;
+	}
+	
+	/**
+	 * Reports the progress of the export to the listener, if there is one.
+	 * 
+	 * @param percent  progress in percent
+	 * @param info     description of the progress
+	 */
+	protected void reportProgress(int percent, String info) {
+		if (progressListener != null)
+			progressListener.progress(percent, info);
+	}
 }
@@ -14,7 +14,6 @@ import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiMessage;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Track;
@@ -75,9 +74,7 @@ public class MidiExporter extends Exporter {
 				return new ExportResult(false);
 			
 			// export the MIDI file
-			Sequence seq = cloneSequence();
-			int[] supportedFileTypes = MidiSystem.getMidiFileTypes(seq);
-			MidiSystem.write(seq, supportedFileTypes[0], file);
+			writeSequence(file);
 			
 		}
 		catch (IOException | InvalidMidiDataException e) {
@@ -100,108 +97,110 @@ public class MidiExporter extends Exporter {
 	}
 	
 	/**
-	 * Creates a modified copy of the loaded sequence.
+	 * Writes a modified version of the loaded sequence into the given MIDI file.
 	 * Adds a meta event for the target charset.
 	 * Removes meta events for all other charset switches.
-	 * Removes meta events for key presses and key releases.
 	 * 
-	 * @return copied and modified MIDI Sequence.
-	 * @throws InvalidMidiDataException if the new MIDI (copied) sequence cannot be created.
+	 * The events are transformed one by one while they are written, so that
+	 * the sequence doesn't need to be copied.
+	 * 
+	 * @param file  the MIDI file to be written.
+	 * @throws InvalidMidiDataException if the sequence cannot be written as a MIDI file.
+	 * @throws IOException if the file cannot be written.
 	 */
-	protected Sequence cloneSequence() throws InvalidMidiDataException {
+	protected void writeSequence(File file) throws InvalidMidiDataException, IOException {
 		
 		// needed for derived classes
 		targetCharset = getTargetCharset();
 		sourceCharset = SequenceCreator.getCharset();
 		
-		Sequence oldSeq = MidiDevices.getSequence();
-		Sequence newSeq = new Sequence(oldSeq.getDivisionType(), oldSeq.getResolution());
-		
-		int trackNum = 0;
-		TRACK:
-		for (Track oldTrack : oldSeq.getTracks()) {
-			
-			Track newTrack = newSeq.createTrack();
-			
-			// add a charset event
-			if (mustIncludeRp026Tags()) {
-				if (0 == trackNum) {
-					String csChange = "{@" + targetCharset + "}";
-					byte[] data     = CharsetUtils.getBytesFromText(csChange, "US-ASCII");
-					MetaMessage msg = new MetaMessage(MidiListener.META_LYRICS, data, data.length);
-					newTrack.add(new MidiEvent(msg, 0));
+		Sequence seq    = MidiDevices.getSequence();
+		Track[]  tracks = seq.getTracks();
+		try (SmfWriter writer = new SmfWriter(file, seq.getDivisionType(), seq.getResolution(), tracks.length)) {
+			int trackNum = 0;
+			for (Track track : tracks) {
+				writer.startTrack();
+				
+				// add a charset event
+				if (mustIncludeRp026Tags()) {
+					if (0 == trackNum) {
+						String csChange = "{@" + targetCharset + "}";
+						byte[] data     = CharsetUtils.getBytesFromText(csChange, "US-ASCII");
+						MetaMessage msg = new MetaMessage(MidiListener.META_LYRICS, data, data.length);
+						writer.write(msg, 0);
+					}
 				}
+				
+				for (int i=0; i < track.size(); i++) {
+					MidiEvent   event = track.get(i);
+					MidiMessage msg   = transformMessage(event.getMessage(), event.getTick(), trackNum);
+					if (msg != null)
+						writer.write(msg, event.getTick());
+				}
+				writer.endTrack();
+				trackNum++;
 			}
+		}
+	}
+	
+	/**
+	 * Transforms a message of the loaded sequence for the export.
+	 * 
+	 * @param msg       the original message
+	 * @param tick      tickstamp of the message
+	 * @param trackNum  track number
+	 * @return the message to be written, or **null** if the message must not be written.
+	 */
+	private MidiMessage transformMessage(MidiMessage msg, long tick, int trackNum) {
+		
+		// illegal short message? - warn and ignore
+		if (msg instanceof ShortMessage) {
+			int data1 = ((ShortMessage) msg).getData1();
+			int data2 = ((ShortMessage) msg).getData2();
+			if (data1 > 0x7F || data2 > 0x7F) {
+				int channel  = ((ShortMessage) msg).getChannel();
+				byte[] bytes = ((ShortMessage) msg).getMessage();
+				String msgStr = "";
+				for (byte b : bytes)
+					msgStr += String.format(" %02X", b);
+				exportResult.addWarning(trackNum, tick, (byte) channel, Dict.get(Dict.WARNING_ILLEGAL_SHORT_MESSAGE));
+				exportResult.setDetailsOfLastWarning(msgStr);
+				return null;
+			}
+		}
+		
+		// manipulate some meta messages
+		if (msg instanceof MetaMessage) {
+			int    type = ((MetaMessage) msg).getType();
+			byte[] data = ((MetaMessage) msg).getData();
 			
-			EVENT:
-			for (int i=0; i < oldTrack.size(); i++) {
-				MidiEvent   event = oldTrack.get(i);
-				MidiMessage msg   = event.getMessage();
+			// convert charset of text-based messages
+			if (type >= 0x01 && type <= 0x0F) {
+				String text = CharsetUtils.getTextFromBytes(data, sourceCharset, fileCharset);
 				
-				// illegal short message? - warn and ignore
-				if (msg instanceof ShortMessage) {
-					int data1 = ((ShortMessage) msg).getData1();
-					int data2 = ((ShortMessage) msg).getData2();
-					if (data1 > 0x7F || data2 > 0x7F) {
-						int channel  = ((ShortMessage) msg).getChannel();
-						byte[] bytes = ((ShortMessage) msg).getMessage();
-						String msgStr = "";
-						for (byte b : bytes)
-							msgStr += String.format(" %02X", b);
-						exportResult.addWarning(trackNum, event.getTick(), (byte) channel, Dict.get(Dict.WARNING_ILLEGAL_SHORT_MESSAGE));
-						exportResult.setDetailsOfLastWarning(msgStr);
-						continue EVENT;
-					}
+				// remove meta info, if needed
+				if (MidiListener.META_LYRICS == type && ! mustIncludeRp026Tags()) {
+					if (0 == trackNum && 0 == tick && text.startsWith("{#"))
+						return null;
 				}
 				
-				// manipulate some meta messages
-				if (msg instanceof MetaMessage) {
-					int    type = ((MetaMessage) msg).getType();
-					byte[] data = ((MetaMessage) msg).getData();
-					
-					// ignore marker messages created by the SequenceCreator
-					if (MidiListener.META_MARKER == type
-					  && data.length > 0
-					  && data.length <= 16) {
-						continue EVENT;
-					}
-					
-					// convert charset of text-based messages
-					else if (type >= 0x01 && type <= 0x0F) {
-						String text = CharsetUtils.getTextFromBytes(data, sourceCharset, fileCharset);
+				// handle charset switches in the sequence
+				msg = convertCharset(msg, text, type, tick, trackNum);
+				if (MidiListener.META_TEXT == type || MidiListener.META_LYRICS == type) {
+					String newCharset = CharsetUtils.findCharsetSwitch(text);
+					if (newCharset != null) {
 						
-						// remove meta info, if needed
-						if (MidiListener.META_LYRICS == type && ! mustIncludeRp026Tags()) {
-							if (0 == trackNum && 0 == event.getTick() && text.startsWith("{#"))
-								continue EVENT;
-						}
+						// remember the new charset
+						fileCharset = newCharset;
 						
-						// handle charset switches in the sequence
-						event = convertCharset(event, text, fileCharset, type, event.getTick(), trackNum);
-						if (MidiListener.META_TEXT == type || MidiListener.META_LYRICS == type) {
-							String newCharset = CharsetUtils.findCharsetSwitch(text);
-							if (newCharset != null) {
-								
-								// remember the new charset
-								fileCharset = newCharset;
-								
-								// remove charset switch from the message
-								event = removeCharsetSwitch(event, text, type, event.getTick(), trackNum);
-								if (null == event) {
-									continue EVENT;
-								}
-							}
-						}
+						// remove charset switch from the message
+						msg = removeCharsetSwitch(msg, text, type, tick, trackNum);
 					}
 				}
-				
-				// copy the event
-				newTrack.add(event);
 			}
-			trackNum++;
 		}
 		
-		return newSeq;
+		return msg;
 	}
 	
 	/**
@@ -219,42 +218,40 @@ public class MidiExporter extends Exporter {
 	/**
 	 * Converts the text of a META message into the target charset.
 	 * 
-	 * @param oldEvent     The original MIDI event.
-	 * @param text         The text of the meta message.
-	 * @param fileCharset  Last charset, specified in the MIDI stream.
-	 * @param type         META message type.
-	 * @param tick         Tickstamp.
-	 * @param trackNum     Track number.
-	 * @return the new meta event with the converted text or the original
-	 *         event, if the text cannot be converted.
+	 * @param oldMsg    The original MIDI message.
+	 * @param text      The text of the meta message.
+	 * @param type      META message type.
+	 * @param tick      Tickstamp.
+	 * @param trackNum  Track number.
+	 * @return the new meta message with the converted text or the original
+	 *         message, if the text cannot be converted.
 	 */
-	private MidiEvent convertCharset(MidiEvent oldEvent, String text, String fileCharset, int type, long tick, int trackNum) {
+	private MidiMessage convertCharset(MidiMessage oldMsg, String text, int type, long tick, int trackNum) {
 		
 		// convert text
 		byte[] data = CharsetUtils.getBytesFromText(text, targetCharset);
 		try {
-			MetaMessage newMsg = new MetaMessage(type, data, data.length);
-			return new MidiEvent(newMsg, tick);
+			return new MetaMessage(type, data, data.length);
 		}
 		catch (InvalidMidiDataException e) {
 			exportResult.addWarning(trackNum, tick, null, e.getMessage());
 			
-			return oldEvent;
+			return oldMsg;
 		}
 	}
 	
 	/**
-	 * Removes all charset switch tags from the event's text.
+	 * Removes all charset switch tags from the message's text.
 	 * 
-	 * @param oldEvent     The original MIDI event.
-	 * @param text         The text of the meta message.
-	 * @param type         META message type.
-	 * @param tick         Tickstamp.
-	 * @param trackNum     Track number.
-	 * @return the new event with the changed text or **null** if the text is
+	 * @param oldMsg    The original MIDI message.
+	 * @param text      The text of the meta message.
+	 * @param type      META message type.
+	 * @param tick      Tickstamp.
+	 * @param trackNum  Track number.
+	 * @return the new message with the changed text or **null** if the text is
 	 *         empty after the changes.
 	 */
-	private MidiEvent removeCharsetSwitch(MidiEvent oldEvent, String text, int type, long tick, int trackNum) {
+	private MidiMessage removeCharsetSwitch(MidiMessage oldMsg, String text, int type, long tick, int trackNum) {
 		
 		// replace text recursively (don't allow nested tags to evaluate to new tags)
 		// e.g. @{UT@{UTF-16}F-8} would otherwise evaluate to @{UTF-16}.
@@ -271,16 +268,15 @@ public class MidiExporter extends Exporter {
 			return null;
 		}
 		
-		// replace the event with a new event using the new text
+		// replace the message with a new message using the new text
 		byte[] data = CharsetUtils.getBytesFromText(text, targetCharset);
 		try {
-			MetaMessage newMsg = new MetaMessage(type, data, data.length);
-			return new MidiEvent(newMsg, tick);
+			return new MetaMessage(type, data, data.length);
 		}
 		catch (InvalidMidiDataException e) {
 			exportResult.addWarning(trackNum, tick, null, e.getMessage());
 			
-			return oldEvent;
+			return oldMsg;
 		}
 	}
 }
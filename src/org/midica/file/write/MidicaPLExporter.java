@@ -18,7 +18,6 @@ import java.util.TreeMap;
 
 import org.midica.config.Dict;
 import org.midica.file.Instrument;
-import org.midica.file.read.MidicaPLParser;
 import org.midica.file.read.ParseException;
 import org.midica.midi.KaraokeAnalyzer;
 import org.midica.midi.LyricUtil;
@@ -169,11 +168,11 @@ public class MidicaPLExporter extends Decompiler {
 						String summandStr = noteLength.get(summand);
 						summandStrings.add(summandStr);
 						incrementStats(STAT_NOTE_SUMMANDS, channel);
-						if (summandStr.endsWith(MidicaPLParser.TRIPLET)) {
+						if (summandStr.endsWith(syntax.TRIPLET)) {
 							incrementStats(STAT_NOTE_TRIPLETS, channel);
 						}
 					}
-					String lengthStr = String.join(MidicaPLParser.LENGTH_PLUS, summandStrings);
+					String lengthStr = String.join(syntax.LENGTH_PLUS, summandStrings);
 					
 					// add note length / duration to timeline
 					params.put( NP_LENGTH,   lengthStr    );
@@ -212,11 +211,11 @@ public class MidicaPLExporter extends Decompiler {
 		String[] fields = {"copyright", "title", "composer", "lyricist", "artist"};
 		String[] values = new String[5];
 		String[] mplIds = {
-			MidicaPLParser.META_COPYRIGHT,
-			MidicaPLParser.META_TITLE,
-			MidicaPLParser.META_COMPOSER,
-			MidicaPLParser.META_LYRICIST,
-			MidicaPLParser.META_ARTIST,
+			syntax.META_COPYRIGHT,
+			syntax.META_TITLE,
+			syntax.META_COMPOSER,
+			syntax.META_LYRICIST,
+			syntax.META_ARTIST,
 		};
 		values[0] = copyright;
 		
@@ -253,11 +252,11 @@ public class MidicaPLExporter extends Decompiler {
 			return;
 		
 		// add block
-		output.append(MidicaPLParser.META + NEW_LINE);
+		output.append(syntax.META + NEW_LINE);
 		for (String line : lines) {
 			output.append(line);
 		}
-		output.append(MidicaPLParser.END + NEW_LINE + NEW_LINE);
+		output.append(syntax.END + NEW_LINE + NEW_LINE);
 	}
 	
 	/**
@@ -271,16 +270,16 @@ public class MidicaPLExporter extends Decompiler {
 		StringBuilder block = new StringBuilder("");
 		
 		// open the block
-		block.append(BLOCK_INDENT + MidicaPLParser.META_SOFT_KARAOKE + NEW_LINE);
+		block.append(BLOCK_INDENT + syntax.META_SOFT_KARAOKE + NEW_LINE);
 		
 		// read single-line fields
 		String[] fields = {"sk_version", "sk_language", "sk_title", "sk_author", "sk_copyright"};
 		String[] mplIds = {
-			MidicaPLParser.META_SK_VERSION,
-			MidicaPLParser.META_SK_LANG,
-			MidicaPLParser.META_SK_TITLE,
-			MidicaPLParser.META_SK_AUTHOR,
-			MidicaPLParser.META_SK_COPYRIGHT,
+			syntax.META_SK_VERSION,
+			syntax.META_SK_LANG,
+			syntax.META_SK_TITLE,
+			syntax.META_SK_AUTHOR,
+			syntax.META_SK_COPYRIGHT,
 		};
 		
 		// process single-line fields
@@ -315,7 +314,7 @@ public class MidicaPLExporter extends Decompiler {
 					// append info line
 					if (! "".equals(infoPart))
 						block.append(
-							  "\t\t" + String.format("%-12s", MidicaPLParser.META_SK_INFO) + " "
+							  "\t\t" + String.format("%-12s", syntax.META_SK_INFO) + " "
 							+ infoPart + NEW_LINE
 						);
 				}
@@ -323,7 +322,7 @@ public class MidicaPLExporter extends Decompiler {
 		}
 		
 		// close the block
-		block.append(BLOCK_INDENT + MidicaPLParser.END + NEW_LINE);
+		block.append(BLOCK_INDENT + syntax.END + NEW_LINE);
 		
 		return block.toString();
 	}
@@ -334,7 +333,7 @@ public class MidicaPLExporter extends Decompiler {
 	private void createInitialInstrumentsBlock() {
 		
 		// open block
-		output.append(MidicaPLParser.INSTRUMENTS + NEW_LINE);
+		output.append(syntax.INSTRUMENTS + NEW_LINE);
 		
 		// add instruments
 		for (byte channel = 0; channel < 16; channel++) {
@@ -342,7 +341,7 @@ public class MidicaPLExporter extends Decompiler {
 		}
 		
 		// close block
-		output.append(MidicaPLParser.END + NEW_LINE + NEW_LINE);
+		output.append(syntax.END + NEW_LINE + NEW_LINE);
 	}
 	
 	/**
@@ -414,7 +413,7 @@ public class MidicaPLExporter extends Decompiler {
 		}
 		else {
 			// program change at a tick > 0
-			cmd         = MidicaPLParser.INSTRUMENT;
+			cmd         = syntax.INSTRUMENT;
 			instrConfig = chInstrHist.get(tick);
 			
 			// no program change at this tick?
@@ -432,15 +431,15 @@ public class MidicaPLExporter extends Decompiler {
 		Instrument instr = new Instrument(channel, prog, null, isAutoChannel);
 		
 		// get the strings to write into the instrument line
-		String channelStr = 9 == channel ? MidicaPLParser.P : channel + "";
+		String channelStr = 9 == channel ? syntax.P : channel + "";
 		String programStr = instr.instrumentName;
 		if (Dict.get(Dict.UNKNOWN_DRUMKIT_NAME).equals(programStr)) {
 			programStr = prog + "";
 		}
 		if (msb != 0 || lsb != 0) {
-			programStr += MidicaPLParser.PROG_BANK_SEP + msb;
+			programStr += syntax.PROG_BANK_SEP + msb;
 			if (lsb != 0) {
-				programStr += MidicaPLParser.BANK_SEP + lsb;
+				programStr += syntax.BANK_SEP + lsb;
 			}
 		}
 		String commentStr    = instr.instrumentName;
@@ -503,7 +502,7 @@ public class MidicaPLExporter extends Decompiler {
 			// chords
 			for (String notesStr : noteChords) {
 				String chordName = chords.get(notesStr);
-				output.append(MidicaPLParser.CHORD + " " + String.format("%-12s", chordName)  + " ");
+				output.append(syntax.CHORD + " " + String.format("%-12s", chordName)  + " ");
 				
 				// notes
 				String[]          noteNumbers = notesStr.split("\\,");
@@ -512,7 +511,7 @@ public class MidicaPLExporter extends Decompiler {
 					String noteName = Dict.getNote(Integer.parseInt(noteNumber));
 					noteNames.add(noteName);
 				}
-				output.append( String.join(MidicaPLParser.CHORD_SEPARATOR, noteNames) );
+				output.append( String.join(syntax.CHORD_SEPARATOR, noteNames) );
 				output.append(NEW_LINE);
 			}
 		}
@@ -546,7 +545,7 @@ public class MidicaPLExporter extends Decompiler {
 		TreeMap<String, String> globalCmds = slice.getGlobalCommands();
 		if (0 == globalCmds.size()) {
 			if (slice.getBeginTick() > 0) {
-				output.append(MidicaPLParser.GLOBAL + NEW_LINE + NEW_LINE);
+				output.append(syntax.GLOBAL + NEW_LINE + NEW_LINE);
 			}
 		}
 		else {
@@ -554,22 +553,22 @@ public class MidicaPLExporter extends Decompiler {
 				String value = globalCmds.get(cmdId);
 				
 				// get global command
-				String globalCmd = MidicaPLParser.TEMPO;
+				String globalCmd = syntax.TEMPO;
 				if ("time".equals(cmdId))
-					globalCmd = MidicaPLParser.TIME_SIG;
+					globalCmd = syntax.TIME_SIG;
 				else if ("key".equals(cmdId))
-					globalCmd = MidicaPLParser.KEY_SIG;
+					globalCmd = syntax.KEY_SIG;
 				
 				// append command
 				output.append(
-					  MidicaPLParser.GLOBAL + " "
+					  syntax.GLOBAL + " "
 					+ String.format("%-7s", globalCmd) + " "
 					+ value + NEW_LINE
 				);
 				
 				// update measure length, if needed
 				if ("time".equals(cmdId)) {
-					Pattern pattern = Pattern.compile("^(\\d+)" + Pattern.quote(MidicaPLParser.TIME_SIG_SLASH) + "(\\d+)$");
+					Pattern pattern = Pattern.compile("^(\\d+)" + Pattern.quote(syntax.TIME_SIG_SLASH) + "(\\d+)$");
 					Matcher matcher = pattern.matcher(value);
 					if (matcher.matches()) {
 						int numerator      = Integer.parseInt(matcher.group(1));
@@ -606,7 +605,7 @@ public class MidicaPLExporter extends Decompiler {
 		// open the block
 		createCompactLineCloseIfPossible(channel);
 		resetTickCommentLineLength();
-		output.append(MidicaPLParser.BLOCK_OPEN + " " + MidicaPLParser.M);
+		output.append(syntax.BLOCK_OPEN + " " + syntax.M);
 		output.append(NEW_LINE);
 		isInBlock = true;
 		
@@ -647,7 +646,7 @@ public class MidicaPLExporter extends Decompiler {
 		isInBlock = false;
 		createCompactLineCloseIfPossible(channel);
 		resetTickCommentLineLength();
-		output.append(MidicaPLParser.BLOCK_CLOSE);
+		output.append(syntax.BLOCK_CLOSE);
 		output.append(NEW_LINE);
 		
 		// restore current ticks
@@ -683,7 +682,7 @@ public class MidicaPLExporter extends Decompiler {
 		// open the block
 		createCompactLineCloseIfPossible(channel);
 		resetTickCommentLineLength();
-		String lineOpen = MidicaPLParser.BLOCK_OPEN + " " + MidicaPLParser.M;
+		String lineOpen = syntax.BLOCK_OPEN + " " + syntax.M;
 		output.append(lineOpen);
 		createTickComment(tick, beginTgtTicks);
 		output.append(NEW_LINE);
@@ -730,7 +729,7 @@ public class MidicaPLExporter extends Decompiler {
 		isInBlock = false;
 		createCompactLineCloseIfPossible(channel);
 		resetTickCommentLineLength();
-		output.append(MidicaPLParser.BLOCK_CLOSE);
+		output.append(syntax.BLOCK_CLOSE);
 		output.append(NEW_LINE);
 		
 		// restore current ticks
@@ -889,7 +888,7 @@ public class MidicaPLExporter extends Decompiler {
 		{
 			// multiple
 			if (noteOrCrd.containsKey(NP_MULTIPLE)) {
-				options.add(MidicaPLParser.M);
+				options.add(syntax.M);
 				incrementStats(STAT_NOTE_MULTIPLE, channel);
 			}
 			
@@ -905,7 +904,7 @@ public class MidicaPLExporter extends Decompiler {
 					durationPercentStr = "0.5";
 					duration = 0.005f;
 				}
-				options.add(MidicaPLParser.D + MidicaPLParser.OPT_ASSIGNER + durationPercentStr + MidicaPLParser.DURATION_PERCENT);
+				options.add(syntax.D + syntax.OPT_ASSIGNER + durationPercentStr + syntax.DURATION_PERCENT);
 				instr.setDurationRatio(duration);
 				incrementStats(STAT_NOTE_DURATIONS, channel);
 			}
@@ -914,7 +913,7 @@ public class MidicaPLExporter extends Decompiler {
 			int velocity    = Integer.parseInt( noteOrCrd.get(NP_VELOCITY) );
 			int oldVelocity = instr.getVelocity();
 			if (velocity != oldVelocity) {
-				options.add(MidicaPLParser.V + MidicaPLParser.OPT_ASSIGNER + velocity);
+				options.add(syntax.V + syntax.OPT_ASSIGNER + velocity);
 				instr.setVelocity(velocity);
 				incrementStats(STAT_NOTE_VELOCITIES, channel);
 			}
@@ -923,21 +922,21 @@ public class MidicaPLExporter extends Decompiler {
 			if (noteOrCrd.containsKey(NP_LYRICS)) {
 				String syllable = noteOrCrd.get(NP_LYRICS);
 				syllable = escapeSyllable(syllable);
-				options.add(MidicaPLParser.L + MidicaPLParser.OPT_ASSIGNER + syllable);
+				options.add(syntax.L + syntax.OPT_ASSIGNER + syllable);
 			}
 		}
 		
 		// options
 		if (options.size() > 0) {
 			if (isLowlevelSyntax) {
-				String optionsStr = String.join(MidicaPLParser.OPT_SEPARATOR + " ", options);
+				String optionsStr = String.join(syntax.OPT_SEPARATOR + " ", options);
 				output.append(" " + optionsStr);
 			}
 			else {
-				String optionsStr = String.join(MidicaPLParser.OPT_SEPARATOR, options);
-				output.append(" " + MidicaPLParser.COMPACT_OPT_OPEN);
+				String optionsStr = String.join(syntax.OPT_SEPARATOR, options);
+				output.append(" " + syntax.COMPACT_OPT_OPEN);
 				output.append(optionsStr);
-				output.append(MidicaPLParser.COMPACT_OPT_CLOSE);
+				output.append(syntax.COMPACT_OPT_CLOSE);
 			}
 		}
 		
@@ -980,11 +979,11 @@ public class MidicaPLExporter extends Decompiler {
 		
 		// open line, if needed
 		if (!usedInSlice.contains(channel)) {
-			String channelStr = 9 == channel ? MidicaPLParser.P : channel + "";
+			String channelStr = 9 == channel ? syntax.P : channel + "";
 			usedInSlice.add(channel);
 			if (isInBlock)
 				output.append(BLOCK_INDENT);
-			output.append(channelStr + MidicaPLParser.COMPACT_CHANNEL);
+			output.append(channelStr + syntax.COMPACT_CHANNEL);
 			lineBeginTickSrc = srcInstrByChannel.get(channel).getCurrentTicks();
 			lineBeginTickTgt = tgtInstrByChannel.get(channel).getCurrentTicks();
 			createBarlineIfNeeded(channel);
@@ -1058,7 +1057,7 @@ public class MidicaPLExporter extends Decompiler {
 		}
 		
 		// create bar line
-		String barline = " " + MidicaPLParser.BAR_LINE;
+		String barline = " " + syntax.BAR_LINE;
 		
 		// need to increase tolerance?
 		if (tgtDelta > currentTgtTol) {
@@ -1084,7 +1083,7 @@ public class MidicaPLExporter extends Decompiler {
 		Instrument instr = srcInstrByChannel.get(channel);
 		String oldLength = instr.getNoteLength();
 		if (! oldLength.equals(length)) {
-			output.append(MidicaPLParser.COMPACT_NOTE_SEP + length);
+			output.append(syntax.COMPACT_NOTE_SEP + length);
 			instr.setNoteLength(length);
 		}
 		elementsInCurrentLine++;
@@ -1107,7 +1106,7 @@ public class MidicaPLExporter extends Decompiler {
 			String summandStr = restLength.get(length);
 			lengthSummands.add(summandStr);
 			incrementStats(STAT_REST_SUMMANDS, channel);
-			if (summandStr.endsWith(MidicaPLParser.TRIPLET)) {
+			if (summandStr.endsWith(syntax.TRIPLET)) {
 				incrementStats(STAT_REST_TRIPLETS, channel);
 			}
 		}
@@ -1117,33 +1116,33 @@ public class MidicaPLExporter extends Decompiler {
 		if (syllable != null) {
 			syllable = escapeSyllable(syllable);
 			if (isLowlevelSyntax) {
-				optionsStr = " " + MidicaPLParser.L + MidicaPLParser.OPT_ASSIGNER + syllable;
+				optionsStr = " " + syntax.L + syntax.OPT_ASSIGNER + syllable;
 			}
 			else {
-				optionsStr = " " + MidicaPLParser.COMPACT_OPT_OPEN
-					+ MidicaPLParser.L + MidicaPLParser.OPT_ASSIGNER + syllable
-					+ MidicaPLParser.COMPACT_OPT_CLOSE;
+				optionsStr = " " + syntax.COMPACT_OPT_OPEN
+					+ syntax.L + syntax.OPT_ASSIGNER + syllable
+					+ syntax.COMPACT_OPT_CLOSE;
 				output.append(optionsStr);
 			}
 		}
 		
 		// zero-length?
 		if (0 == ticks && 0 == lengthSummands.size()) {
-			lengthSummands.add(MidicaPLParser.LENGTH_ZERO);
+			lengthSummands.add(syntax.LENGTH_ZERO);
 		}
 		
 		// add line
 		if (lengthSummands.size() > 0) {
-			String length = String.join(MidicaPLParser.LENGTH_PLUS, lengthSummands);
+			String length = String.join(syntax.LENGTH_PLUS, lengthSummands);
 			if (isLowlevelSyntax) {
 				output.append(
 					  String.format(FORMAT_CH_CMD_CHANNEL, channel) + " "
-					+ String.format(FORMAT_CH_CMD_CRD, MidicaPLParser.REST) + " "
+					+ String.format(FORMAT_CH_CMD_CRD, syntax.REST) + " "
 					+ String.format(FORMAT_CH_CMD_LENGTH, length)
 				);
 			}
 			else {
-				createCompactElement(MidicaPLParser.REST, channel, length);
+				createCompactElement(syntax.REST, channel, length);
 			}
 			
 			srcInstrByChannel.get(channel).setCurrentTicks(srcBeginTick + ticks);
@@ -1185,7 +1184,7 @@ public class MidicaPLExporter extends Decompiler {
 		try {
 			Instrument targetInstr = tgtInstrByChannel.get(channel);
 			long currentTicks = targetInstr.getCurrentTicks();
-			long lengthTicks  = MidicaPLParser.parseDuration(length);
+			long lengthTicks  = syntax.parseDuration(length);
 			targetInstr.setCurrentTicks(currentTicks + lengthTicks);
 		}
 		catch (ParseException e) {
@@ -1213,7 +1212,7 @@ public class MidicaPLExporter extends Decompiler {
 		syllable = syllable.replace(" ", "_").replace(",",  "\\\\c");
 		
 		// escape comment symbols
-		syllable = syllable.replace(MidicaPLParser.COMMENT, "/\\\\/");
+		syllable = syllable.replace(syntax.COMMENT, "/\\\\/");
 		
 		return syllable;
 	}
@@ -1224,19 +1223,19 @@ public class MidicaPLExporter extends Decompiler {
 		boolean useDots     = rest ? USE_DOTTED_RESTS     : USE_DOTTED_NOTES;
 		boolean useTriplets = rest ? USE_TRIPLETTED_RESTS : USE_TRIPLETTED_NOTES;
 		
-		String triplet = MidicaPLParser.TRIPLET;
-		String dot     = MidicaPLParser.DOT;
-		String d1      = MidicaPLParser.LENGTH_1;
-		String d2      = MidicaPLParser.LENGTH_2;
-		String d4      = MidicaPLParser.LENGTH_4;
-		String d8      = MidicaPLParser.LENGTH_8;
-		String d16     = MidicaPLParser.LENGTH_16;
-		String d32     = MidicaPLParser.LENGTH_32;
-		String m2      = MidicaPLParser.LENGTH_M2;
-		String m4      = MidicaPLParser.LENGTH_M4;
-		String m8      = MidicaPLParser.LENGTH_M8;
-		String m16     = MidicaPLParser.LENGTH_M16;
-		String m32     = MidicaPLParser.LENGTH_M32;
+		String triplet = syntax.TRIPLET;
+		String dot     = syntax.DOT;
+		String d1      = syntax.LENGTH_1;
+		String d2      = syntax.LENGTH_2;
+		String d4      = syntax.LENGTH_4;
+		String d8      = syntax.LENGTH_8;
+		String d16     = syntax.LENGTH_16;
+		String d32     = syntax.LENGTH_32;
+		String m2      = syntax.LENGTH_M2;
+		String m4      = syntax.LENGTH_M4;
+		String m8      = syntax.LENGTH_M8;
+		String m16     = syntax.LENGTH_M16;
+		String m32     = syntax.LENGTH_M32;
 		if (isCompactSyntax) {
 			d1  = "1";
 			d2  = "2";
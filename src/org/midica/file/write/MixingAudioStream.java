@@ -0,0 +1,338 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Soundbank;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import com.sun.gervill.AudioFloatConverter;
+import com.sun.gervill.SoftAudioBuffer;
+import com.sun.gervill.SoftLimiter;
+import com.sun.gervill.SoftSynthesizer;
+import com.sun.kh.MidiToAudioRenderer;
+
+/**
+ * Base class for audio streams that are rendered by several synthesizers
+ * concurrently.
+ * 
+ * Each synthesizer renders a part of the sequence into a float stream,
+ * without auto gain control. The subclass sums these streams up, chunk by
+ * chunk. This class then does what Gervill's main mixer does at the end of
+ * each control block:
+ * 
+ * - apply the limiter (auto gain control)
+ * - convert the result into the target format
+ * 
+ * Control blocks have the same size as in the synthesizer. So the limiter
+ * runs with the same block boundaries and the same look-ahead as in a
+ * serial rendering.
+ * 
+ * @author Jan Trukenmüller
+ */
+public abstract class MixingAudioStream extends InputStream {
+	
+	private static final float CONTROL_RATE = 147f; // Gervill's default control rate
+	private static final int   CHUNK_BLOCKS = 32;   // control blocks per chunk
+	
+	protected final AudioFormat format;
+	protected final AudioFormat floatFormat;
+	protected final int         channels;
+	protected final int         blockFrames;
+	protected final int         chunkFrames;
+	
+	private final ExecutorService   executor;
+	private final SoftLimiter       limiter  = new SoftLimiter();
+	private final SoftAudioBuffer[] buffers;
+	private final float[]           chunk;
+	private final byte[]            bytes;
+	private       int               bytesPos = 0;
+	private       int               chunkPos = 0;
+	
+	/**
+	 * Creates the stream.
+	 * 
+	 * @param format   the target format
+	 * @param threads  number of threads used to read the sources
+	 */
+	protected MixingAudioStream(AudioFormat format, int threads) {
+		this.format = format;
+		channels    = format.getChannels();
+		floatFormat = new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, format.getSampleRate(), 32, channels, 4 * channels, format.getSampleRate(), false);
+		blockFrames = (int) (format.getSampleRate() / CONTROL_RATE);
+		chunkFrames = blockFrames * CHUNK_BLOCKS;
+		chunk       = new float[chunkFrames * channels];
+		chunkPos    = chunkFrames;
+		executor    = Executors.newFixedThreadPool(threads);
+		
+		// limiter and conversion, like in Gervill's main mixer
+		buffers = new SoftAudioBuffer[channels];
+		for (int c = 0; c < channels; c++) {
+			buffers[c] = new SoftAudioBuffer(blockFrames, format);
+			limiter.setInput(c, buffers[c]);
+			limiter.setOutput(c, buffers[c]);
+		}
+		limiter.init(format.getSampleRate(), CONTROL_RATE);
+		limiter.setMixMode(false);
+		bytes    = new byte[blockFrames * format.getFrameSize()];
+		bytesPos = bytes.length;
+	}
+	
+	/**
+	 * Adds the next chunk of all sources to the given (zeroed) array.
+	 * 
+	 * The samples are interleaved. The array has room for {@link #chunkFrames}
+	 * frames.
+	 * 
+	 * @param chunk  the array to be filled
+	 * @throws IOException if a source cannot be read.
+	 */
+	protected abstract void fillChunk(float[] chunk) throws IOException;
+	
+	/**
+	 * Reads the next chunk of each given source concurrently.
+	 * 
+	 * @param sources  the sources to be read
+	 * @param frames   number of frames to be read from each source
+	 * @throws IOException if a source cannot be read.
+	 */
+	protected void readConcurrently(ArrayList<Source> sources, int frames) throws IOException {
+		ArrayList<Callable<Void>> tasks = new ArrayList<>();
+		for (Source source : sources) {
+			tasks.add(() -> {
+				source.read(frames);
+				return null;
+			});
+		}
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks))
+				future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Starts the given task in the background.
+	 * 
+	 * @param task  the task
+	 * @return the future result of the task.
+	 */
+	protected <T> Future<T> submit(Callable<T> task) {
+		return executor.submit(task);
+	}
+	
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		read(single, 0, 1);
+		return single[0] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int remaining = len;
+		while (remaining > 0) {
+			if (bytesPos == bytes.length)
+				processBlock();
+			int length = Math.min(remaining, bytes.length - bytesPos);
+			System.arraycopy(bytes, bytesPos, b, off, length);
+			bytesPos  += length;
+			off       += length;
+			remaining -= length;
+		}
+		return len;
+	}
+	
+	@Override
+	public int available() {
+		return bytes.length - bytesPos;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Limits and converts the next control block.
+	 * 
+	 * @throws IOException if a source cannot be read.
+	 */
+	private void processBlock() throws IOException {
+		if (chunkPos == chunkFrames) {
+			Arrays.fill(chunk, 0);
+			fillChunk(chunk);
+			chunkPos = 0;
+		}
+		
+		// de-interleave
+		for (int c = 0; c < channels; c++) {
+			float[] buffer = buffers[c].array();
+			int     i      = chunkPos * channels + c;
+			for (int frame = 0; frame < blockFrames; frame++) {
+				buffer[frame] = chunk[i];
+				i += channels;
+			}
+		}
+		chunkPos += blockFrames;
+		
+		limiter.processControlLogic();
+		limiter.processAudio();
+		for (int c = 0; c < channels; c++)
+			buffers[c].get(bytes, c);
+		bytesPos = 0;
+	}
+	
+	/**
+	 * A synthesizer that renders a part of the sequence into a float stream.
+	 */
+	protected static class Source {
+		
+		private final SoftSynthesizer     synth;
+		private final AudioInputStream    stream;
+		private final AudioFloatConverter converter;
+		private       byte[]              bytes   = new byte[0];
+		protected     float[]             samples = new float[0];
+		
+		/**
+		 * Creates and opens a synthesizer.
+		 * 
+		 * @param soundbank    the soundbank
+		 * @param floatFormat  the float format to be rendered
+		 * @throws Exception if the synthesizer cannot be opened.
+		 */
+		protected Source(Soundbank soundbank, AudioFormat floatFormat) throws Exception {
+			this(soundbank, floatFormat, 0);
+		}
+		
+		/**
+		 * Creates and opens a synthesizer that starts at the given position of the sequence.
+		 * 
+		 * The position is needed for effects that depend on the time since the
+		 * synthesizer has been opened (the chorus LFO).
+		 * 
+		 * @param soundbank    the soundbank
+		 * @param floatFormat  the float format to be rendered
+		 * @param startBlock   the control block where the synthesizer starts
+		 * @throws Exception if the synthesizer cannot be opened.
+		 */
+		protected Source(Soundbank soundbank, AudioFormat floatFormat, long startBlock) throws Exception {
+			HashMap<String, Object> info = new HashMap<>();
+			info.put("auto gain control", false);
+			info.put("chorus lfo offset", startBlock);
+			synth     = new SoftSynthesizer();
+			stream    = MidiToAudioRenderer.open(soundbank, floatFormat, synth, info);
+			converter = AudioFloatConverter.getConverter(floatFormat);
+		}
+		
+		/**
+		 * Returns the receiver of the synthesizer.
+		 * 
+		 * @return the receiver.
+		 * @throws MidiUnavailableException if the synthesizer is closed.
+		 */
+		protected Receiver getReceiver() throws MidiUnavailableException {
+			return synth.getReceiver();
+		}
+		
+		/**
+		 * Determines if any voice of the synthesizer is active.
+		 * 
+		 * @return **true** if a voice is active, otherwise **false**.
+		 */
+		protected boolean hasActiveVoices() {
+			return MidiToAudioRenderer.hasActiveVoices(synth);
+		}
+		
+		/**
+		 * Reads the given number of frames into {@link #samples}.
+		 * 
+		 * @param frames  number of frames
+		 * @throws IOException if the stream cannot be read.
+		 */
+		protected void read(int frames) throws IOException {
+			int length = frames * stream.getFormat().getFrameSize();
+			if (bytes.length < length) {
+				bytes   = new byte[length];
+				samples = new float[frames * stream.getFormat().getChannels()];
+			}
+			int pos = 0;
+			while (pos < length) {
+				int count = stream.read(bytes, pos, length - pos);
+				if (count < 0)
+					throw new IOException("Unexpected end of the synthesizer stream.");
+				pos += count;
+			}
+			converter.toFloatArray(bytes, samples, frames * stream.getFormat().getChannels());
+		}
+		
+		/**
+		 * Closes the synthesizer.
+		 */
+		protected void close() {
+			synth.close();
+		}
+	}
+	
+	/**
+	 * Receives the events of a sequence from {@link MidiToAudioRenderer#send(Sequence, MidiToAudioRenderer.EventReceiver)}
+	 * and makes their timestamps unique.
+	 * 
+	 * A synthesizer shifts messages with the same timestamp by one microsecond.
+	 * This is done here for the whole sequence, before the messages are
+	 * distributed to several synthesizers. So each message gets the same
+	 * timestamp as in a serial rendering.
+	 */
+	protected static abstract class EventDistributor implements MidiToAudioRenderer.EventReceiver {
+		
+		private long lastTimeStamp = -1;
+		
+		@Override
+		public void send(MidiMessage msg, long tick, long timeStamp) {
+			
+			// the events arrive in chronological order
+			if (timeStamp <= lastTimeStamp)
+				timeStamp = lastTimeStamp + 1;
+			lastTimeStamp = timeStamp;
+			
+			distribute(msg, tick, timeStamp);
+		}
+		
+		/**
+		 * Distributes an event.
+		 * 
+		 * @param msg        the message
+		 * @param tick       tickstamp of the event
+		 * @param timeStamp  unique timestamp in microseconds
+		 */
+		protected abstract void distribute(MidiMessage msg, long tick, long timeStamp);
+	}
+}
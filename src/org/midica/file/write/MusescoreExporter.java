@@ -12,8 +12,6 @@ import java.io.IOException;
 import java.nio.file.Path;
 
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MidiSystem;
-import javax.sound.midi.Sequence;
 
 import org.midica.config.Config;
 import org.midica.config.Dict;
@@ -98,9 +96,7 @@ public class MusescoreExporter extends MidiExporter {
 			File tempMidiFile = Foreign.createTempMidiFile();
 			
 			// export the MIDI file
-			Sequence seq = cloneSequence();
-			int[] supportedFileTypes = MidiSystem.getMidiFileTypes(seq);
-			MidiSystem.write(seq, supportedFileTypes[0], tempMidiFile);
+			writeSequence(tempMidiFile);
 			
 			// create the convert command
 			String execPath = Config.get(Config.EXEC_PATH_EXP_MSCORE);
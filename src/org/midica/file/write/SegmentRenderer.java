@@ -0,0 +1,551 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Soundbank;
+import javax.sound.midi.SysexMessage;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.midica.midi.ChannelSnapshots;
+import org.midica.midi.MidiDevices;
+
+import com.sun.kh.MidiToAudioRenderer;
+
+/**
+ * Renders a sequence with several synthesizers concurrently, each of them
+ * playing a time segment.
+ * 
+ * Each synthesizer starts a few seconds before its segment (pre-roll).
+ * At the beginning of the pre-roll it receives:
+ * 
+ * - all SysEx messages from before the pre-roll
+ * - the channel states, taken from {@link ChannelSnapshots}
+ * - note-on messages for all notes that are held or sustained at this time
+ * 
+ * Then it receives the events of the pre-roll and of the segment itself.
+ * The audio of the pre-roll is discarded. So it only serves to build up
+ * the voices and reverb tails that are sounding at the beginning of the
+ * segment. Adjacent segments overlap by a short linear crossfade.
+ * 
+ * Each segment is rendered into a temporary file. The segments are read
+ * in order, crossfaded and passed through the limiter. The last segment
+ * ends when the sound has faded out after the last event.
+ * 
+ * The pre-roll starts at a control block and at a whole microsecond. So the
+ * events are placed at the same frames as in a serial rendering. The chorus
+ * LFO is advanced to the phase it would have at this position.
+ * 
+ * Unlike the channel split, this is not equivalent to a serial rendering:
+ * 
+ * - Notes that are held at the beginning of a pre-roll are restarted. So
+ *   their envelope and phase differ, unless they have reached a stable
+ *   state within the pre-roll.
+ * - If the polyphony limit is reached, other voices may be stolen.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class SegmentRenderer extends MixingAudioStream {
+	
+	private static final float PREROLL_SECONDS     = 5;
+	private static final float CROSSFADE_SECONDS   = 0.1f;
+	private static final float MIN_SEGMENT_SECONDS = 20;
+	
+	// controllers
+	private static final int CTRL_SUSTAIN       = 0x40;
+	private static final int CTRL_ALL_SOUND_OFF = 0x78;
+	private static final int CTRL_RESET_ALL     = 0x79;
+	private static final int CTRL_ALL_NOTES_OFF = 0x7B;
+	
+	private Segment[] segments  = null;
+	private int       crossfade = 0;
+	private long      position  = 0; // first frame of the next chunk
+	
+	/**
+	 * Creates the renderer and starts rendering all segments in the background.
+	 * 
+	 * @param soundbank    the soundbank
+	 * @param seq          the sequence to be rendered
+	 * @param format       the target format
+	 * @param numSegments  number of segments
+	 * @param events       all events with their timestamps
+	 * @param frames       number of frames until the last event
+	 * @param tail         detects the end of the last segment
+	 * @throws Exception if the segments cannot be prepared.
+	 */
+	private SegmentRenderer(Soundbank soundbank, Sequence seq, AudioFormat format, int numSegments, EventCollector events, long frames, TailDetector tail) throws Exception {
+		super(format, numSegments);
+		float rate    = format.getFrameRate();
+		long  preroll = (long) (rate * PREROLL_SECONDS) / blockFrames * blockFrames;
+		crossfade     = (int) (rate * CROSSFADE_SECONDS) / blockFrames * blockFrames;
+		
+		// A synthesizer places each event relative to the beginning of the
+		// current control block, rounded to microseconds. If a pre-roll starts
+		// at a whole microsecond and at the beginning of a block, the events
+		// are placed at the same frames as in a serial rendering.
+		long preAlign = blockFrames;
+		if (rate == (long) rate) {
+			long wholeMicros = (long) rate / gcd((long) rate, 1000000); // frames per whole number of microseconds
+			preAlign = blockFrames / gcd(blockFrames, wholeMicros) * wholeMicros;
+		}
+		
+		// chase the state while going through the segments
+		ChannelSnapshots       snapshots = new ChannelSnapshots(seq, true);
+		NoteState              notes     = new NoteState();
+		ArrayList<MidiMessage> sysex     = new ArrayList<>();
+		int                    e         = 0;
+		
+		segments = new Segment[numSegments];
+		try {
+			for (int s = 0; s < numSegments; s++) {
+				Segment segment = new Segment();
+				long boundary = frames * s / numSegments / blockFrames * blockFrames;
+				segment.start    = 0 == s ? 0 : boundary - crossfade;
+				segment.end      = frames * (s + 1) / numSegments / blockFrames * blockFrames;
+				segment.fadeIn   = s > 0;
+				segment.fadeOut  = s < numSegments - 1;
+				if (! segment.fadeOut) {
+					segment.end  = tail.getMaxFrames();
+					segment.tail = tail;
+				}
+				segment.preStart = Math.max(0, segment.start - preroll) / preAlign * preAlign;
+				segments[s]      = segment;
+				
+				// find the first event of the pre-roll - don't split a tick
+				long preStartTime = toMicroseconds(segment.preStart, rate);
+				int  first        = e;
+				while (first < events.size && events.timeStamps[first] < preStartTime)
+					first++;
+				if (first < events.size)
+					while (first > e && events.ticks[first - 1] == events.ticks[first])
+						first--;
+				
+				// apply the events before the pre-roll
+				for (; e < first; e++) {
+					MidiMessage msg = events.messages[e];
+					if (msg instanceof SysexMessage)
+						sysex.add(msg);
+					else if (msg instanceof ShortMessage)
+						notes.apply((ShortMessage) msg);
+				}
+				
+				// restore the state (nothing to restore at the beginning of the sequence)
+				ArrayList<MidiMessage> chase = new ArrayList<>(sysex);
+				if (e > 0) {
+					long chaseTick = e < events.size ? events.ticks[e] : Long.MAX_VALUE;
+					for (int packed : snapshots.getRestoreMessages(chaseTick))
+						chase.add(unpack(packed));
+					chase.addAll(notes.createMessages());
+				}
+				
+				// find the end of the segment
+				long endTime = toMicroseconds(segment.end, rate);
+				int  last    = first;
+				while (last < events.size && events.timeStamps[last] < endTime)
+					last++;
+				
+				segment.file = File.createTempFile("midica-segment-", ".raw");
+				segment.file.deleteOnExit();
+				int firstEvent = first;
+				int lastEvent  = last;
+				segment.future = submit(() -> {
+					renderSegment(soundbank, segment, chase, events, firstEvent, lastEvent, preStartTime);
+					return null;
+				});
+			}
+		}
+		catch (Exception ex) {
+			close();
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Renders the given sequence in up to the given number of time segments.
+	 * 
+	 * Returns **null** if the sequence is too short to be split.
+	 * 
+	 * The stream ends when the sound has faded out after the last event.
+	 * 
+	 * @param soundbank     the soundbank
+	 * @param seq           the sequence to be rendered
+	 * @param format        the target format
+	 * @param threads       maximum number of segments
+	 * @param silenceLevel  silence level in dB below full scale
+	 * @param maxTail       maximum length after the last event, in seconds
+	 * @return the audio stream, or **null**.
+	 * @throws Exception if the sequence cannot be rendered.
+	 */
+	public static AudioInputStream render(Soundbank soundbank, Sequence seq, AudioFormat format, int threads, float silenceLevel, float maxTail) throws Exception {
+		EventCollector events = new EventCollector();
+		double total       = MidiToAudioRenderer.send(seq, events);
+		long   frames      = MidiToAudioRenderer.getFrameLength(format, total);
+		long   numSegments = Math.min(threads, frames / (long) (format.getFrameRate() * MIN_SEGMENT_SECONDS));
+		if (numSegments < 2)
+			return null;
+		
+		TailDetector     tail     = new TailDetector(format, frames, silenceLevel, maxTail);
+		SegmentRenderer  renderer = new SegmentRenderer(soundbank, seq, format, (int) numSegments, events, frames, tail);
+		AudioInputStream stream   = new AudioInputStream(renderer, format, AudioSystem.NOT_SPECIFIED);
+		return new TailDetectingStream(stream, frames, silenceLevel, maxTail, renderer::isRenderingTail);
+	}
+	
+	/**
+	 * Renders one segment into its temporary file.
+	 * 
+	 * @param soundbank     the soundbank
+	 * @param segment       the segment
+	 * @param chase         messages that restore the state at the beginning of the pre-roll
+	 * @param events        all events
+	 * @param first         index of the first event of the pre-roll
+	 * @param last          index after the last event of the segment
+	 * @param preStartTime  beginning of the pre-roll in microseconds
+	 * @throws Exception if the segment cannot be rendered.
+	 */
+	private void renderSegment(Soundbank soundbank, Segment segment, ArrayList<MidiMessage> chase, EventCollector events, int first, int last, long preStartTime) throws Exception {
+		Source source = new Source(soundbank, floatFormat, segment.preStart / blockFrames);
+		try (FileChannel out = FileChannel.open(segment.file.toPath(), StandardOpenOption.WRITE)) {
+			
+			// send the events
+			Receiver receiver = source.getReceiver();
+			for (MidiMessage msg : chase)
+				receiver.send(msg, 0);
+			for (int e = first; e < last; e++)
+				receiver.send(events.messages[e], Math.max(0, events.timeStamps[e] - preStartTime));
+			
+			// discard the pre-roll
+			for (long frames = segment.start - segment.preStart; frames > 0; frames -= chunkFrames)
+				source.read((int) Math.min(chunkFrames, frames));
+			
+			// write the segment - the last one until the sound has faded out
+			ByteBuffer   buffer = ByteBuffer.allocateDirect(chunkFrames * channels * 4).order(ByteOrder.LITTLE_ENDIAN);
+			TailDetector tail   = segment.tail;
+			if (tail != null)
+				tail.skip(segment.start);
+			for (long frames = segment.end - segment.start; frames > 0; frames -= chunkFrames) {
+				int length = (int) Math.min(chunkFrames, frames);
+				source.read(length);
+				if (tail != null)
+					tail.check(source.samples, length, source::hasActiveVoices);
+				buffer.clear();
+				buffer.asFloatBuffer().put(source.samples, 0, length * channels);
+				buffer.limit(length * channels * 4);
+				while (buffer.hasRemaining())
+					out.write(buffer);
+				if (tail != null && tail.isFinished())
+					break;
+			}
+		}
+		finally {
+			source.close();
+		}
+	}
+	
+	@Override
+	protected void fillChunk(float[] chunk) throws IOException {
+		long chunkEnd = position + chunkFrames;
+		for (Segment segment : segments) {
+			long from = Math.max(position, segment.start);
+			long to   = Math.min(chunkEnd, segment.end);
+			if (from < to)
+				segment.addTo(chunk, (int) (from - position), from, to, crossfade, channels);
+			if (segment.end <= chunkEnd)
+				segment.finish();
+		}
+		position = chunkEnd;
+	}
+	
+	/**
+	 * Determines if the last segment is still being rendered.
+	 * 
+	 * @return **true** if the last segment is not yet complete, otherwise **false**.
+	 */
+	private boolean isRenderingTail() {
+		return ! segments[segments.length - 1].future.isDone();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		super.close();
+		for (Segment segment : segments)
+			if (segment != null)
+				segment.finish();
+	}
+	
+	/**
+	 * Calculates the greatest common divisor of two numbers.
+	 * 
+	 * @param a  first number
+	 * @param b  second number
+	 * @return the greatest common divisor.
+	 */
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long rest = a % b;
+			a = b;
+			b = rest;
+		}
+		return a;
+	}
+	
+	/**
+	 * Converts a frame position into microseconds.
+	 * 
+	 * @param frame  frame position
+	 * @param rate   frame rate
+	 * @return the time in microseconds.
+	 */
+	private static long toMicroseconds(long frame, float rate) {
+		return (long) (frame * (1000000.0 / rate));
+	}
+	
+	/**
+	 * Creates a short message from a packed message.
+	 * 
+	 * @param packed  the message, packed like a short message
+	 * @return the message.
+	 * @throws InvalidMidiDataException if the message is invalid.
+	 */
+	private static ShortMessage unpack(int packed) throws InvalidMidiDataException {
+		return new ShortMessage(packed & 0xFF, (packed >> 8) & 0xFF, (packed >> 16) & 0xFF);
+	}
+	
+	/**
+	 * A time segment and its temporary file.
+	 */
+	private static class Segment {
+		
+		private long         preStart = 0;     // first rendered frame
+		private long         start    = 0;     // first frame of the output
+		private long         end      = 0;     // end of the output (exclusive)
+		private boolean      fadeIn   = false;
+		private boolean      fadeOut  = false;
+		private TailDetector tail     = null;  // only for the last segment
+		private File         file     = null;
+		private Future<Void> future   = null;
+		private FileChannel  reader   = null;
+		private ByteBuffer   buffer   = null;
+		private boolean      finished = false;
+		
+		/**
+		 * Adds the given frames of the segment to the chunk.
+		 * 
+		 * Waits until the segment is rendered, if necessary.
+		 * 
+		 * @param chunk      the chunk
+		 * @param offset     first frame in the chunk
+		 * @param from       first frame of the sequence
+		 * @param to         end frame of the sequence (exclusive)
+		 * @param crossfade  crossfade length in frames
+		 * @param channels   number of audio channels
+		 * @throws IOException if the segment cannot be rendered or read.
+		 */
+		private void addTo(float[] chunk, int offset, long from, long to, int crossfade, int channels) throws IOException {
+			if (null == reader) {
+				try {
+					future.get();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				}
+				catch (ExecutionException e) {
+					throw new IOException(e.getCause());
+				}
+				reader = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+				buffer.flip();
+			}
+			
+			int i = offset * channels;
+			for (long frame = from; frame < to; frame++) {
+				float weight = 1;
+				if (fadeIn && frame < start + crossfade)
+					weight = (frame - start + 0.5f) / crossfade;
+				else if (fadeOut && frame >= end - crossfade)
+					weight = (end - frame - 0.5f) / crossfade;
+				for (int c = 0; c < channels; c++) {
+					if (! buffer.hasRemaining()) {
+						buffer.clear();
+						while (buffer.position() < 4 && reader.read(buffer) >= 0) {
+						}
+						buffer.limit(buffer.position() / 4 * 4);
+						buffer.position(0);
+						if (! buffer.hasRemaining()) {
+							
+							// the last segment ends when the sound has faded out
+							if (! fadeOut)
+								return;
+							throw new IOException("Unexpected end of segment file.");
+						}
+					}
+					chunk[i++] += buffer.getFloat() * weight;
+				}
+			}
+		}
+		
+		/**
+		 * Closes and deletes the temporary file.
+		 */
+		private void finish() {
+			if (finished)
+				return;
+			finished = true;
+			if (future != null)
+				future.cancel(true);
+			try {
+				if (reader != null)
+					reader.close();
+			}
+			catch (IOException e) {
+			}
+			if (file != null)
+				file.delete();
+		}
+	}
+	
+	/**
+	 * Collects all events with their unique timestamps.
+	 */
+	private static class EventCollector extends EventDistributor {
+		
+		private int           size       = 0;
+		private long[]        ticks      = new long[1024];
+		private long[]        timeStamps = new long[1024];
+		private MidiMessage[] messages   = new MidiMessage[1024];
+		
+		@Override
+		protected void distribute(MidiMessage msg, long tick, long timeStamp) {
+			if (size == ticks.length) {
+				ticks      = Arrays.copyOf(ticks, 2 * size);
+				timeStamps = Arrays.copyOf(timeStamps, 2 * size);
+				messages   = Arrays.copyOf(messages, 2 * size);
+			}
+			ticks[size]      = tick;
+			timeStamps[size] = timeStamp;
+			messages[size]   = msg;
+			size++;
+		}
+	}
+	
+	/**
+	 * Keeps track of the notes that are held or sustained.
+	 */
+	private static class NoteState {
+		
+		private int[]     velocities = new int[MidiDevices.NUMBER_OF_CHANNELS * 128];
+		private boolean[] released   = new boolean[MidiDevices.NUMBER_OF_CHANNELS * 128];
+		private boolean[] pedal      = new boolean[MidiDevices.NUMBER_OF_CHANNELS];
+		
+		/**
+		 * Applies a channel message.
+		 * 
+		 * @param msg  the message
+		 */
+		private void apply(ShortMessage msg) {
+			int channel = msg.getChannel();
+			int data1   = msg.getData1();
+			int data2   = msg.getData2();
+			int index   = channel * 128 + data1;
+			switch (msg.getCommand()) {
+				case ShortMessage.NOTE_ON:
+					if (data2 > 0) {
+						velocities[index] = data2;
+						released[index]   = false;
+					}
+					else {
+						noteOff(channel, index);
+					}
+					return;
+				case ShortMessage.NOTE_OFF:
+					noteOff(channel, index);
+					return;
+				case ShortMessage.CONTROL_CHANGE:
+					if (CTRL_SUSTAIN == data1) {
+						pedal[channel] = data2 >= 64;
+						if (! pedal[channel])
+							releaseSustained(channel);
+					}
+					else if (CTRL_RESET_ALL == data1) {
+						pedal[channel] = false;
+						releaseSustained(channel);
+					}
+					else if (CTRL_ALL_SOUND_OFF == data1 || data1 >= CTRL_ALL_NOTES_OFF) {
+						Arrays.fill(velocities, channel * 128, channel * 128 + 128, 0);
+					}
+			}
+		}
+		
+		/**
+		 * Releases a note. The note keeps sounding if the sustain pedal is pressed.
+		 * 
+		 * @param channel  MIDI channel
+		 * @param index    index of the note
+		 */
+		private void noteOff(int channel, int index) {
+			if (pedal[channel])
+				released[index] = true;
+			else
+				velocities[index] = 0;
+		}
+		
+		/**
+		 * Stops all notes of the given channel that are only sustained by the pedal.
+		 * 
+		 * @param channel  MIDI channel
+		 */
+		private void releaseSustained(int channel) {
+			for (int index = channel * 128; index < channel * 128 + 128; index++) {
+				if (released[index]) {
+					velocities[index] = 0;
+					released[index]   = false;
+				}
+			}
+		}
+		
+		/**
+		 * Creates the messages that restart all held or sustained notes.
+		 * 
+		 * The sustained notes are released immediately. They are kept
+		 * sounding by the sustain pedal, which is restored before.
+		 * 
+		 * @return the messages.
+		 * @throws InvalidMidiDataException if a message cannot be created.
+		 */
+		private ArrayList<MidiMessage> createMessages() throws InvalidMidiDataException {
+			ArrayList<MidiMessage> messages = new ArrayList<>();
+			for (int index = 0; index < velocities.length; index++) {
+				if (0 == velocities[index])
+					continue;
+				int channel = index / 128;
+				int note    = index % 128;
+				messages.add(new ShortMessage(ShortMessage.NOTE_ON, channel, note, velocities[index]));
+				if (released[index])
+					messages.add(new ShortMessage(ShortMessage.NOTE_OFF, channel, note, 0));
+			}
+			return messages;
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+
+/**
+ * This class writes Standard MIDI Files.
+ * 
+ * It replaces **MidiSystem.write()**, which needs a complete sequence and
+ * buffers each track in memory before writing it.
+ * This writer streams the events, one by one, through a fixed-size buffer
+ * into the file. The length of each track chunk is patched after the track
+ * is finished. So the caller can transform the events on the fly, without
+ * copying the sequence.
+ * 
+ * The written file is the same as the one written by the JDK:
+ * 
+ * - file type 0 for one track, otherwise file type 1
+ * - running status is used for channel messages
+ * - system common and real-time messages are ignored
+ * 
+ * @author Jan Trukenmüller
+ */
+public class SmfWriter implements Closeable {
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int CHUNK_MTHD  = 0x4D546864; // "MThd"
+	private static final int CHUNK_MTRK  = 0x4D54726B; // "MTrk"
+	
+	private FileChannel channel       = null;
+	private ByteBuffer  buffer        = ByteBuffer.allocate(BUFFER_SIZE);
+	private long        trackStart    = -1; // file position of the current track's length field
+	private long        lastTick      = 0;
+	private int         runningStatus = -1;
+	
+	/**
+	 * Creates the file and writes the header chunk.
+	 * 
+	 * @param file          the MIDI file
+	 * @param divisionType  division type of the sequence
+	 * @param resolution    resolution of the sequence
+	 * @param numTracks     number of tracks that will be written
+	 * @throws InvalidMidiDataException  if the division type is unknown.
+	 * @throws IOException               if the file cannot be written.
+	 */
+	public SmfWriter(File file, float divisionType, int resolution, int numTracks) throws InvalidMidiDataException, IOException {
+		
+		// division
+		int division;
+		if (Sequence.PPQ == divisionType) {
+			division = resolution & 0x7FFF;
+		}
+		else {
+			int frames;
+			if (Sequence.SMPTE_24 == divisionType)
+				frames = 24;
+			else if (Sequence.SMPTE_25 == divisionType)
+				frames = 25;
+			else if (Sequence.SMPTE_30DROP == divisionType)
+				frames = 29;
+			else if (Sequence.SMPTE_30 == divisionType)
+				frames = 30;
+			else
+				throw new InvalidMidiDataException("Unknown division type: " + divisionType);
+			division = ((-frames & 0xFF) << 8) | (resolution & 0xFF);
+		}
+		
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer.putInt(CHUNK_MTHD);
+		buffer.putInt(6);
+		buffer.putShort((short) (1 == numTracks ? 0 : 1));
+		buffer.putShort((short) numTracks);
+		buffer.putShort((short) division);
+	}
+	
+	/**
+	 * Starts a new track chunk.
+	 * 
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void startTrack() throws IOException {
+		ensureSpace(8);
+		buffer.putInt(CHUNK_MTRK);
+		trackStart = channel.position() + buffer.position();
+		buffer.putInt(0); // placeholder for the length
+		lastTick      = 0;
+		runningStatus = -1;
+	}
+	
+	/**
+	 * Writes an event into the current track.
+	 * 
+	 * The events of a track must be written in the order of their ticks.
+	 * 
+	 * @param msg   the MIDI message
+	 * @param tick  tickstamp of the event
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void write(MidiMessage msg, long tick) throws IOException {
+		
+		// short message
+		if (msg instanceof ShortMessage) {
+			ShortMessage shortMsg = (ShortMessage) msg;
+			int status = shortMsg.getStatus();
+			int length;
+			switch (status & 0xF0) {
+				case 0x80:
+				case 0x90:
+				case 0xA0:
+				case 0xB0:
+				case 0xE0:
+					length = 2;
+					break;
+				case 0xC0:
+				case 0xD0:
+					length = 1;
+					break;
+				default:
+					return; // not allowed in a MIDI file
+			}
+			ensureSpace(8);
+			putDeltaTime(tick);
+			if (status != runningStatus) {
+				runningStatus = status;
+				buffer.put((byte) status);
+			}
+			buffer.put((byte) shortMsg.getData1());
+			if (2 == length)
+				buffer.put((byte) shortMsg.getData2());
+			return;
+		}
+		
+		// SysEx: status byte, length, data
+		if (msg instanceof SysexMessage) {
+			byte[] data = msg.getMessage();
+			ensureSpace(11);
+			putDeltaTime(tick);
+			runningStatus = msg.getStatus();
+			buffer.put(data[0]);
+			putVarInt(data.length - 1);
+			put(data, 1, data.length - 1);
+			return;
+		}
+		
+		// meta: the message already contains type and length
+		if (msg instanceof MetaMessage) {
+			byte[] data = msg.getMessage();
+			ensureSpace(5);
+			putDeltaTime(tick);
+			runningStatus = msg.getStatus();
+			put(data, 0, data.length);
+		}
+	}
+	
+	/**
+	 * Finishes the current track chunk by writing its length.
+	 * 
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void endTrack() throws IOException {
+		flush();
+		long trackEnd = channel.position();
+		ByteBuffer length = ByteBuffer.allocate(4);
+		length.putInt((int) (trackEnd - trackStart - 4));
+		length.flip();
+		while (length.hasRemaining())
+			channel.write(length, trackStart + length.position());
+		trackStart = -1;
+	}
+	
+	/**
+	 * Writes the remaining buffered bytes and closes the file.
+	 * 
+	 * @throws IOException if the file cannot be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		}
+		finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Writes the delta time of an event.
+	 * 
+	 * @param tick  tickstamp of the event
+	 */
+	private void putDeltaTime(long tick) {
+		putVarInt(tick - lastTick);
+		lastTick = tick;
+	}
+	
+	/**
+	 * Writes a variable-length quantity.
+	 * The buffer must have space for at least 5 bytes.
+	 * 
+	 * @param value  the value to be written
+	 */
+	private void putVarInt(long value) {
+		int shift = 28;
+		while (shift > 0 && 0 == (value >> shift))
+			shift -= 7;
+		for (; shift > 0; shift -= 7)
+			buffer.put((byte) (((value >> shift) & 0x7F) | 0x80));
+		buffer.put((byte) (value & 0x7F));
+	}
+	
+	/**
+	 * Writes a part of a byte array.
+	 * Flushes the buffer as often as needed.
+	 * 
+	 * @param data    the bytes
+	 * @param offset  index of the first byte to be written
+	 * @param length  number of bytes to be written
+	 * @throws IOException if the file cannot be written.
+	 */
+	private void put(byte[] data, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (! buffer.hasRemaining())
+				flush();
+			int chunk = Math.min(length, buffer.remaining());
+			buffer.put(data, offset, chunk);
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+	
+	/**
+	 * Flushes the buffer, if it has less than the given number of free bytes.
+	 * 
+	 * @param bytes  number of bytes that will be written
+	 * @throws IOException if the file cannot be written.
+	 */
+	private void ensureSpace(int bytes) throws IOException {
+		if (buffer.remaining() < bytes)
+			flush();
+	}
+	
+	/**
+	 * Writes the buffered bytes into the file.
+	 * 
+	 * @throws IOException if the file cannot be written.
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
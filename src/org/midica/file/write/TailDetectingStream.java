@@ -0,0 +1,165 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import com.sun.gervill.AudioFloatConverter;
+
+/**
+ * An audio stream that ends when the sound has faded out after the last
+ * event, instead of having a fixed length.
+ * 
+ * The end is found by a {@link TailDetector}. Only the frames after the
+ * last event are converted to float samples and checked. Quiet frames are
+ * held back until the detector confirms them.
+ * 
+ * The length of the stream is not specified in advance.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class TailDetectingStream extends AudioInputStream {
+	
+	private final AudioInputStream    stream;
+	private final TailDetector        detector;
+	private final BooleanSupplier     isActive;
+	private final AudioFloatConverter converter;
+	private final int                 frameSize;
+	private float[]                   samples      = new float[0];
+	private byte[]                    buffer       = new byte[0]; // read but not yet returned
+	private int                       bufferLength = 0;
+	private long                      returned     = 0;           // frames returned so far
+	private boolean                   isEnded      = false;       // end of the rendered stream
+	
+	/**
+	 * Creates the stream.
+	 * 
+	 * @param stream        the rendered stream, beginning with the sequence, without an end
+	 * @param eventFrames   number of frames until the last event
+	 * @param silenceLevel  silence level in dB below full scale
+	 * @param maxTail       maximum length after the last event, in seconds
+	 * @param isActive      tells if any voice of the synthesizer(s) is active
+	 */
+	public TailDetectingStream(AudioInputStream stream, long eventFrames, float silenceLevel, float maxTail, BooleanSupplier isActive) {
+		super(stream, stream.getFormat(), AudioSystem.NOT_SPECIFIED);
+		this.stream   = stream;
+		this.isActive = isActive;
+		detector      = new TailDetector(stream.getFormat(), eventFrames, silenceLevel, maxTail);
+		converter     = AudioFloatConverter.getConverter(stream.getFormat());
+		frameSize     = stream.getFormat().getFrameSize();
+	}
+	
+	/**
+	 * Returns the number of frames until the last event.
+	 * 
+	 * @return the number of frames.
+	 */
+	public long getEventFrames() {
+		return detector.getEventFrames();
+	}
+	
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		return read(single, 0, 1) <= 0 ? -1 : single[0] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int maxFrames = len / frameSize;
+		if (0 == maxFrames)
+			return 0;
+		
+		while (true) {
+			
+			// return confirmed frames
+			long confirmed = isEnded ? returned + bufferLength / frameSize : detector.getConfirmedFrames();
+			if (confirmed > returned) {
+				int length = (int) Math.min(maxFrames, confirmed - returned) * frameSize;
+				System.arraycopy(buffer, 0, b, off, length);
+				System.arraycopy(buffer, length, buffer, 0, bufferLength - length);
+				bufferLength -= length;
+				returned     += length / frameSize;
+				return length;
+			}
+			if (isEnded || detector.isFinished())
+				return -1;
+			
+			fillBuffer(maxFrames);
+		}
+	}
+	
+	/**
+	 * Reads and checks the next frames of the rendered stream.
+	 * 
+	 * @param maxFrames  maximum number of frames to be read
+	 * @throws IOException if the stream cannot be read.
+	 */
+	private void fillBuffer(int maxFrames) throws IOException {
+		int length = (int) Math.min(maxFrames, detector.getRemainingFrames()) * frameSize;
+		if (buffer.length < bufferLength + length)
+			buffer = Arrays.copyOf(buffer, bufferLength + length);
+		
+		// read whole frames
+		int count = 0;
+		while (count < length) {
+			int n = stream.read(buffer, bufferLength + count, length - count);
+			if (n < 0)
+				break;
+			count += n;
+		}
+		int frames = count / frameSize;
+		if (frames < length / frameSize)
+			isEnded = true;
+		
+		// only the tail needs to be converted
+		float[] tail = null;
+		if (detector.isTail(frames)) {
+			int numSamples = frames * format.getChannels();
+			if (samples.length < numSamples)
+				samples = new float[numSamples];
+			converter.toFloatArray(buffer, bufferLength, samples, numSamples);
+			tail = samples;
+		}
+		detector.check(tail, frames, isActive);
+		bufferLength += frames * frameSize;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		byte[] buffer  = new byte[(int) Math.min(64 * 1024, Math.max(frameSize, n))];
+		long   skipped = 0;
+		while (skipped < n) {
+			int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+			if (count <= 0)
+				break;
+			skipped += count;
+		}
+		return skipped;
+	}
+	
+	@Override
+	public int available() throws IOException {
+		return 0;
+	}
+	
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		stream.close();
+	}
+}
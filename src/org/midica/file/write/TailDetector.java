@@ -0,0 +1,185 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import java.util.function.BooleanSupplier;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Detects the end of a rendered audio stream after the last event.
+ * 
+ * The rendered frames are checked chunk by chunk. After the last event,
+ * the stream ends as soon as:
+ * 
+ * - no voice of the synthesizer(s) is active any more, and
+ * - the signal has stayed below the silence level for a while
+ * 
+ * The stream is cut directly after the last frame above the silence level.
+ * It ends at the latest after the maximum tail length. Frames after the
+ * last loud frame are only confirmed when the sound comes back, or after
+ * a while, so that the stream reader can hold them back until then.
+ * 
+ * Active voices are checked at the end of each chunk. A synthesizer may
+ * already have rendered a bit more than that. So the stream only ends if
+ * the voices have been inactive for a while, too.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class TailDetector {
+	
+	private static final float HOLD_SECONDS    = 0.5f; // must exceed the read-ahead of the renderers
+	private static final float PENDING_SECONDS = 2;    // maximum quiet frames to be held back
+	
+	private final int   channels;
+	private final float threshold;
+	private final long  eventFrames;
+	private final long  maxFrames;
+	private final long  holdFrames;
+	private final long  pendingFrames;
+	private long        position   = 0;  // first frame of the next chunk
+	private long        lastLoud   = -1; // last frame above the silence level
+	private long        quietSince = -1; // position since that no voice is active
+	private boolean     isFinished = false;
+	
+	/**
+	 * Creates a detector for a stream that starts at the beginning of the sequence.
+	 * 
+	 * @param format        the audio format
+	 * @param eventFrames   number of frames until the last event
+	 * @param silenceLevel  silence level in dB below full scale
+	 * @param maxTail       maximum length after the last event, in seconds
+	 */
+	public TailDetector(AudioFormat format, long eventFrames, float silenceLevel, float maxTail) {
+		float rate       = format.getFrameRate();
+		channels         = format.getChannels();
+		threshold        = (float) Math.pow(10, -silenceLevel / 20.0);
+		this.eventFrames = eventFrames;
+		maxFrames        = eventFrames + (long) (rate * maxTail);
+		holdFrames       = (long) (rate * HOLD_SECONDS);
+		pendingFrames    = (long) (rate * PENDING_SECONDS);
+	}
+	
+	/**
+	 * Returns the number of frames until the last event.
+	 * 
+	 * @return the number of frames.
+	 */
+	public long getEventFrames() {
+		return eventFrames;
+	}
+	
+	/**
+	 * Returns the maximum number of frames of the stream.
+	 * 
+	 * @return the number of frames.
+	 */
+	public long getMaxFrames() {
+		return maxFrames;
+	}
+	
+	/**
+	 * Returns the number of frames that may still be checked.
+	 * 
+	 * @return the remaining frames, or **0** if the end has been detected.
+	 */
+	public long getRemainingFrames() {
+		return isFinished ? 0 : maxFrames - position;
+	}
+	
+	/**
+	 * Determines if the end of the stream has been detected.
+	 * 
+	 * @return **true** if the stream has ended, otherwise **false**.
+	 */
+	public boolean isFinished() {
+		return isFinished;
+	}
+	
+	/**
+	 * Determines if the next chunk with the given size reaches the tail
+	 * after the last event, so that its samples must be checked.
+	 * 
+	 * @param frames  number of frames of the next chunk
+	 * @return **true** if the samples must be checked, otherwise **false**.
+	 */
+	public boolean isTail(int frames) {
+		return position + frames > eventFrames;
+	}
+	
+	/**
+	 * Moves the position forward without checking the frames.
+	 * 
+	 * Used for streams that don't start at the beginning of the sequence.
+	 * 
+	 * @param frames  number of frames to be skipped
+	 */
+	public void skip(long frames) {
+		position += frames;
+	}
+	
+	/**
+	 * Returns the number of frames that surely belong to the stream.
+	 * 
+	 * After the end has been detected, this is the length of the stream.
+	 * 
+	 * @return the number of confirmed frames.
+	 */
+	public long getConfirmedFrames() {
+		if (position <= eventFrames)
+			return position;
+		long soundEnd = Math.max(eventFrames, lastLoud + 1);
+		if (isFinished)
+			return soundEnd;
+		return Math.max(soundEnd, position - pendingFrames);
+	}
+	
+	/**
+	 * Checks the next chunk of the stream.
+	 * 
+	 * The chunk must not exceed the remaining frames.
+	 * The samples are only needed if {@link #isTail(int)} returns **true**.
+	 * Otherwise they may be **null**.
+	 * 
+	 * @param samples   the interleaved samples of the chunk, or **null**
+	 * @param frames    number of frames in the chunk
+	 * @param isActive  tells if any voice is active at the end of the chunk
+	 */
+	public void check(float[] samples, int frames, BooleanSupplier isActive) {
+		if (isFinished)
+			return;
+		long end = position + frames;
+		
+		if (end > eventFrames) {
+			
+			// find the last loud frame, searching backwards
+			int first = (int) Math.max(0, eventFrames - position);
+			for (int i = frames * channels - 1; i >= first * channels; i--) {
+				if (samples[i] >= threshold || samples[i] <= -threshold) {
+					lastLoud = position + i / channels;
+					break;
+				}
+			}
+			
+			// check the voices
+			if (isActive.getAsBoolean())
+				quietSince = -1;
+			else if (quietSince < 0)
+				quietSince = end;
+			
+			// end after the last loud frame, if it's quiet for long enough
+			long soundEnd = Math.max(eventFrames, lastLoud + 1);
+			if (quietSince >= 0 && end - quietSince >= holdFrames && end - soundEnd >= holdFrames)
+				isFinished = true;
+		}
+		
+		position = end;
+		if (position >= maxFrames)
+			isFinished = true;
+	}
+}
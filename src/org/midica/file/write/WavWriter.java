@@ -0,0 +1,260 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * This class writes WAVE files.
+ * 
+ * It replaces **AudioSystem.write()** for WAVE files. The audio data is
+ * streamed through a large direct buffer into the file. The sizes in the
+ * header are patched after the last block is written.
+ * 
+ * The header reserves space for a **ds64** chunk (as a **JUNK** chunk).
+ * If the file exceeds the 4 GB limit of the RIFF format, the header is
+ * converted into an RF64 header (EBU Tech 3306). Otherwise the file is a
+ * normal WAVE file.
+ * 
+ * Float data is written with a **fact** chunk, as required for formats
+ * other than PCM.
+ * 
+ * Only little-endian PCM and float data can be written. 8-bit PCM must be
+ * unsigned, larger PCM samples must be signed. Use {@link #getFormat(AudioFormat)}
+ * to get the matching format.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class WavWriter implements Closeable {
+	
+	private static final int  BUFFER_SIZE   = 1024 * 1024;
+	private static final long MAX_SIZE      = 0xFFFFFFFFL;
+	private static final int  DS64_SIZE     = 28;
+	private static final int  FORMAT_PCM    = 1;
+	private static final int  FORMAT_FLOAT  = 3;
+	private static final int  POS_RIFF_SIZE = 4;
+	private static final int  POS_DS64      = 12;
+	
+	private FileChannel channel   = null;
+	private ByteBuffer  buffer    = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private long        maxSize   = MAX_SIZE; // RIFF size from which RF64 is used
+	private int         frameSize = 0;
+	private long        factPos   = -1; // file position of the sample length in the fact chunk, or -1
+	private long        dataStart = 0;  // file position of the audio data
+	private long        dataSize  = 0;
+	
+	/**
+	 * Creates the file and writes the header.
+	 * 
+	 * @param file    the WAVE file
+	 * @param format  the audio format, as returned by {@link #getFormat(AudioFormat)}
+	 * @throws IOException if the file cannot be written.
+	 */
+	public WavWriter(File file, AudioFormat format) throws IOException {
+		this(file, format, MAX_SIZE);
+	}
+	
+	/**
+	 * Creates the file and writes the header, using the given RIFF size limit.
+	 * 
+	 * Only used for testing. Files with a bigger RIFF size are written as RF64.
+	 * 
+	 * @param file     the WAVE file
+	 * @param format   the audio format, as returned by {@link #getFormat(AudioFormat)}
+	 * @param maxSize  maximum RIFF size of a normal WAVE file
+	 * @throws IOException if the file cannot be written.
+	 */
+	WavWriter(File file, AudioFormat format, long maxSize) throws IOException {
+		boolean isFloat = AudioFormat.Encoding.PCM_FLOAT.equals(format.getEncoding());
+		int     fmtSize = isFloat ? 18 : 16;
+		frameSize       = format.getFrameSize();
+		this.maxSize    = maxSize;
+		
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		
+		// RIFF header - the size is patched later
+		putId("RIFF");
+		buffer.putInt(0);
+		putId("WAVE");
+		
+		// placeholder for the ds64 chunk
+		putId("JUNK");
+		buffer.putInt(DS64_SIZE);
+		for (int i = 0; i < DS64_SIZE; i++)
+			buffer.put((byte) 0);
+		
+		// format chunk
+		putId("fmt ");
+		buffer.putInt(fmtSize);
+		buffer.putShort((short) (isFloat ? FORMAT_FLOAT : FORMAT_PCM));
+		buffer.putShort((short) format.getChannels());
+		buffer.putInt((int) format.getSampleRate());
+		buffer.putInt((int) format.getSampleRate() * frameSize);
+		buffer.putShort((short) frameSize);
+		buffer.putShort((short) format.getSampleSizeInBits());
+		if (isFloat)
+			buffer.putShort((short) 0); // no extension
+		
+		// fact chunk - the sample length is patched later
+		if (isFloat) {
+			putId("fact");
+			buffer.putInt(4);
+			factPos = buffer.position();
+			buffer.putInt(0);
+		}
+		
+		// data chunk - the size is patched later
+		putId("data");
+		buffer.putInt(0);
+		dataStart = buffer.position();
+	}
+	
+	/**
+	 * Returns the format that must be written into a WAVE file, instead of
+	 * the given format.
+	 * 
+	 * @param format  the format of the audio data
+	 * @return the format to be written.
+	 */
+	public static AudioFormat getFormat(AudioFormat format) {
+		int                  bits     = format.getSampleSizeInBits();
+		AudioFormat.Encoding encoding = AudioFormat.Encoding.PCM_FLOAT;
+		if (! encoding.equals(format.getEncoding()))
+			encoding = bits <= 8 ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED;
+		return new AudioFormat(
+			encoding,
+			format.getSampleRate(),
+			bits,
+			format.getChannels(),
+			format.getFrameSize(),
+			format.getFrameRate(),
+			false
+		);
+	}
+	
+	/**
+	 * Writes audio data.
+	 * 
+	 * @param data    the audio data
+	 * @param offset  index of the first byte to be written
+	 * @param length  number of bytes to be written
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void write(byte[] data, int offset, int length) throws IOException {
+		dataSize += length;
+		while (length > 0) {
+			if (! buffer.hasRemaining())
+				flush();
+			int chunk = Math.min(length, buffer.remaining());
+			buffer.put(data, offset, chunk);
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+	
+	/**
+	 * Returns the number of audio bytes written so far.
+	 * 
+	 * @return the size of the audio data.
+	 */
+	public long getDataSize() {
+		return dataSize;
+	}
+	
+	/**
+	 * Writes the remaining buffered bytes, patches the header and closes the file.
+	 * 
+	 * @throws IOException if the file cannot be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			
+			// chunks must have an even size
+			if (dataSize % 2 != 0) {
+				if (! buffer.hasRemaining())
+					flush();
+				buffer.put((byte) 0);
+			}
+			flush();
+			
+			long riffSize = dataStart + dataSize + dataSize % 2 - 8;
+			long frames   = dataSize / frameSize;
+			if (factPos >= 0) {
+				buffer.putInt((int) Math.min(frames, MAX_SIZE));
+				write(factPos);
+			}
+			if (riffSize <= maxSize) {
+				buffer.putInt((int) riffSize);
+				write(POS_RIFF_SIZE);
+				buffer.putInt((int) dataSize);
+				write(dataStart - 4);
+			}
+			else {
+				putId("RF64");
+				buffer.putInt((int) MAX_SIZE);
+				write(0);
+				putId("ds64");
+				buffer.putInt(DS64_SIZE);
+				buffer.putLong(riffSize);
+				buffer.putLong(dataSize);
+				buffer.putLong(frames);
+				buffer.putInt(0); // no table
+				write(POS_DS64);
+				buffer.putInt((int) MAX_SIZE);
+				write(dataStart - 4);
+			}
+		}
+		finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Puts a chunk ID into the buffer.
+	 * 
+	 * @param id  the chunk ID
+	 */
+	private void putId(String id) {
+		buffer.put(id.getBytes(StandardCharsets.US_ASCII));
+	}
+	
+	/**
+	 * Writes the buffered bytes into the file at the given position.
+	 * 
+	 * @param position  file position
+	 * @throws IOException if the file cannot be written.
+	 */
+	private void write(long position) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer, position + buffer.position());
+		buffer.clear();
+	}
+	
+	/**
+	 * Writes the buffered bytes at the end of the file.
+	 * 
+	 * @throws IOException if the file cannot be written.
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
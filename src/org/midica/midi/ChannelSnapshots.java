@@ -0,0 +1,422 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.midi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/**
+ * This class is an immutable index of the channel states of a sequence.
+ * It is used to restore the synthesizer's channel states after a jump to
+ * another tick position.
+ * 
+ * The state of a channel consists of:
+ * 
+ * - the controller values
+ * - the values of all RPNs and NRPNs that have been set via data entry
+ * - program, pitch bend and channel pressure
+ * 
+ * A snapshot of all channel states is taken at the beginning of each bar
+ * (4 quarter notes). Very long sequences use a bigger interval, so that the
+ * number of snapshots is limited. The snapshot before the target tick is
+ * completed by the channel events between the snapshot and the target tick.
+ * 
+ * Channel volume is only part of the state if requested. By default it's
+ * controlled by the player. Data increment and decrement messages are
+ * ignored. Channel mode messages are ignored, except "reset all controllers".
+ * 
+ * Parts of the state that have not been set before the target tick are
+ * restored with their default values. Otherwise a value set later in the
+ * sequence would survive a jump back to the beginning.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class ChannelSnapshots {
+	
+	private static final int SNAPSHOT_QUARTERS = 4;
+	private static final int MAX_SNAPSHOTS     = 1024;
+	
+	// slots of the state of one channel
+	private static final int SLOT_PROGRAM    = 128; // 0-127: controllers
+	private static final int SLOT_PITCH_BEND = 129;
+	private static final int SLOT_PRESSURE   = 130;
+	private static final int SLOT_PARAM_TYPE = 131; // 1=RPN, 0=NRPN, -1=unknown
+	private static final int STATE_SIZE      = 132;
+	
+	// controllers
+	private static final int CTRL_BANK_MSB       = 0x00;
+	private static final int CTRL_DATA_ENTRY_MSB = 0x06;
+	private static final int CTRL_VOLUME_MSB     = 0x07;
+	private static final int CTRL_PAN            = 0x0A;
+	private static final int CTRL_BANK_LSB       = 0x20;
+	private static final int CTRL_DATA_ENTRY_LSB = 0x26;
+	private static final int CTRL_VOLUME_LSB     = 0x27;
+	private static final int CTRL_REVERB         = 0x5B;
+	private static final int CTRL_CHORUS         = 0x5D;
+	private static final int CTRL_DATA_INCREMENT = 0x60;
+	private static final int CTRL_NRPN_LSB       = 0x62;
+	private static final int CTRL_NRPN_MSB       = 0x63;
+	private static final int CTRL_RPN_LSB        = 0x64;
+	private static final int CTRL_RPN_MSB        = 0x65;
+	private static final int CTRL_ALL_SOUND_OFF  = 0x78; // first channel mode message
+	private static final int CTRL_RESET_ALL      = 0x79;
+	
+	// controllers that are reset by "reset all controllers" (RP-015)
+	private static final int[] RESET_CONTROLLERS = {
+		0x01, 0x0B, 0x40, 0x41, 0x42, 0x43, CTRL_NRPN_LSB, CTRL_NRPN_MSB, CTRL_RPN_LSB, CTRL_RPN_MSB,
+		SLOT_PITCH_BEND, SLOT_PRESSURE, SLOT_PARAM_TYPE,
+	};
+	
+	// registered parameters with their default values (MSB*128+LSB, see gm2, page 12)
+	private static final int[][] DEFAULT_RPNS = {
+		{0x0000, 0x02 << 7}, // pitch bend sensitivity: 2 semitones
+		{0x0001, 0x40 << 7}, // fine tuning: center
+		{0x0002, 0x40 << 7}, // coarse tuning: center
+	};
+	
+	private boolean   withVolume    = false;
+	private long      interval      = 0;
+	private short[][] states        = null; // snapshot -- channel * STATE_SIZE + slot -- value (or -1)
+	private long[][]  params        = null; // snapshot -- sorted packed parameters
+	private int[]     eventStarts   = null; // snapshot -- first event at or after the snapshot tick
+	private long[]    eventTicks    = null;
+	private int[]     eventMessages = null; // packed short messages
+	
+	/**
+	 * Creates the index of the given sequence, without channel volume.
+	 * 
+	 * @param sequence  the sequence to be played
+	 */
+	public ChannelSnapshots(Sequence sequence) {
+		this(sequence, false);
+	}
+	
+	/**
+	 * Creates the index of the given sequence.
+	 * 
+	 * @param sequence    the sequence to be played
+	 * @param withVolume  **true**, if channel volume is part of the state
+	 */
+	public ChannelSnapshots(Sequence sequence, boolean withVolume) {
+		this.withVolume = withVolume;
+		
+		// collect the relevant channel events, sorted by tick
+		ArrayList<long[]> events = new ArrayList<>();
+		for (Track track : sequence.getTracks()) {
+			for (int i = 0; i < track.size(); i++) {
+				MidiEvent   event = track.get(i);
+				MidiMessage msg   = event.getMessage();
+				if (msg instanceof ShortMessage && isRelevant((ShortMessage) msg)) {
+					ShortMessage sMsg   = (ShortMessage) msg;
+					int          packed = sMsg.getStatus() | sMsg.getData1() << 8 | sMsg.getData2() << 16;
+					events.add(new long[] {event.getTick(), packed});
+				}
+			}
+		}
+		events.sort((a, b) -> Long.compare(a[0], b[0])); // stable: keeps the track order
+		eventTicks    = new long[events.size()];
+		eventMessages = new int[events.size()];
+		for (int i = 0; i < eventTicks.length; i++) {
+			eventTicks[i]    = events.get(i)[0];
+			eventMessages[i] = (int) events.get(i)[1];
+		}
+		
+		// snapshot interval
+		long length = sequence.getTickLength();
+		interval = Math.max(1, (long) sequence.getResolution() * SNAPSHOT_QUARTERS);
+		if (length / interval >= MAX_SNAPSHOTS)
+			interval *= length / interval / MAX_SNAPSHOTS + 1;
+		int numSnapshots = (int) (length / interval) + 1;
+		
+		// take the snapshots
+		states      = new short[numSnapshots][];
+		params      = new long[numSnapshots][];
+		eventStarts = new int[numSnapshots];
+		short[]                   state       = createInitialState();
+		TreeMap<Integer, Integer> paramValues = new TreeMap<>();
+		int e = 0;
+		for (int s = 0; s < numSnapshots; s++) {
+			long snapshotTick = s * interval;
+			for (; e < eventTicks.length && eventTicks[e] < snapshotTick; e++)
+				apply(state, paramValues, eventMessages[e]);
+			states[s]      = state.clone();
+			params[s]      = packParams(paramValues);
+			eventStarts[s] = e;
+		}
+	}
+	
+	/**
+	 * Creates the messages that are needed to restore the channel states
+	 * at the given tick.
+	 * 
+	 * All events before the given tick are taken into account.
+	 * 
+	 * @param tick  the target tick
+	 * @return the messages, packed like short messages.
+	 */
+	public int[] getRestoreMessages(long tick) {
+		
+		// get the snapshot before the tick
+		int s = (int) Math.min(Math.max(0, tick) / interval, states.length - 1);
+		short[] state = states[s].clone();
+		TreeMap<Integer, Integer> paramValues = new TreeMap<>();
+		for (long packed : params[s])
+			paramValues.put((int) (packed >> 14), (int) (packed & 0x3FFF));
+		
+		// apply the events after the snapshot
+		for (int e = eventStarts[s]; e < eventTicks.length && eventTicks[e] < tick; e++)
+			apply(state, paramValues, eventMessages[e]);
+		
+		return createMessages(state, paramValues);
+	}
+	
+	/**
+	 * Determines if the given message changes the state of a channel.
+	 * 
+	 * @param msg  the message
+	 * @return **true** if the message is part of the channel state, otherwise **false**.
+	 */
+	private boolean isRelevant(ShortMessage msg) {
+		switch (msg.getCommand()) {
+			case ShortMessage.PROGRAM_CHANGE:
+			case ShortMessage.PITCH_BEND:
+			case ShortMessage.CHANNEL_PRESSURE:
+				return true;
+			case ShortMessage.CONTROL_CHANGE:
+				int ctrl = msg.getData1();
+				if (CTRL_RESET_ALL == ctrl)
+					return true;
+				if (! withVolume && (CTRL_VOLUME_MSB == ctrl || CTRL_VOLUME_LSB == ctrl))
+					return false;
+				return ctrl < CTRL_ALL_SOUND_OFF;
+			default:
+				return false;
+		}
+	}
+	
+	/**
+	 * Creates the state of all channels before the first event.
+	 * 
+	 * @return the initial state.
+	 */
+	private static short[] createInitialState() {
+		short[] state = new short[MidiDevices.NUMBER_OF_CHANNELS * STATE_SIZE];
+		Arrays.fill(state, (short) -1);
+		return state;
+	}
+	
+	/**
+	 * Applies a channel event to the given state.
+	 * 
+	 * The (N)RPN parameters are packed in the following format:
+	 * 
+	 * - bits 0-6: LSB
+	 * - bits 7-13: MSB
+	 * - bit 14: type (1=RPN, 0=NRPN)
+	 * - bits 15-18: channel
+	 * 
+	 * The parameter values are stored as MSB*128+LSB.
+	 * 
+	 * @param state        the state of all channels
+	 * @param paramValues  packed parameter -- value
+	 * @param msg          the event's message, packed like a short message
+	 */
+	private static void apply(short[] state, TreeMap<Integer, Integer> paramValues, int msg) {
+		int channel = msg & 0x0F;
+		int data1   = (msg >> 8) & 0x7F;
+		int data2   = (msg >> 16) & 0x7F;
+		int base    = channel * STATE_SIZE;
+		switch (msg & 0xF0) {
+			case ShortMessage.PROGRAM_CHANGE:
+				state[base + SLOT_PROGRAM] = (short) data1;
+				return;
+			case ShortMessage.PITCH_BEND:
+				state[base + SLOT_PITCH_BEND] = (short) (data2 << 7 | data1);
+				return;
+			case ShortMessage.CHANNEL_PRESSURE:
+				state[base + SLOT_PRESSURE] = (short) data1;
+				return;
+		}
+		
+		// reset all controllers
+		if (CTRL_RESET_ALL == data1) {
+			for (int slot : RESET_CONTROLLERS)
+				state[base + slot] = -1;
+			return;
+		}
+		
+		// other control change
+		state[base + data1] = (short) data2;
+		if (CTRL_RPN_MSB == data1 || CTRL_RPN_LSB == data1)
+			state[base + SLOT_PARAM_TYPE] = 1;
+		else if (CTRL_NRPN_MSB == data1 || CTRL_NRPN_LSB == data1)
+			state[base + SLOT_PARAM_TYPE] = 0;
+		else if (CTRL_DATA_ENTRY_MSB == data1 || CTRL_DATA_ENTRY_LSB == data1) {
+			
+			// get the selected parameter
+			int type = state[base + SLOT_PARAM_TYPE];
+			if (type < 0)
+				return;
+			int msb = state[base + (1 == type ? CTRL_RPN_MSB : CTRL_NRPN_MSB)];
+			int lsb = state[base + (1 == type ? CTRL_RPN_LSB : CTRL_NRPN_LSB)];
+			if (msb < 0 || lsb < 0 || (1 == type && 0x7F == msb && 0x7F == lsb))
+				return;
+			int param = channel << 15 | type << 14 | msb << 7 | lsb;
+			
+			// MSB resets the LSB
+			if (CTRL_DATA_ENTRY_MSB == data1)
+				paramValues.put(param, data2 << 7);
+			else
+				paramValues.put(param, (paramValues.getOrDefault(param, 0) & 0x3F80) | data2);
+		}
+	}
+	
+	/**
+	 * Packs the given parameter values into an array.
+	 * 
+	 * @param paramValues  packed parameter -- value
+	 * @return parameter and value in each element.
+	 */
+	private static long[] packParams(TreeMap<Integer, Integer> paramValues) {
+		long[] packed = new long[paramValues.size()];
+		int    i      = 0;
+		for (Entry<Integer, Integer> entry : paramValues.entrySet())
+			packed[i++] = (long) entry.getKey() << 14 | entry.getValue();
+		return packed;
+	}
+	
+	/**
+	 * Creates the messages that put the synthesizer into the given state.
+	 * 
+	 * For each channel the following messages are created:
+	 * 
+	 * - reset all controllers
+	 * - data entry for each (N)RPN that has been set
+	 * - data entry for each default RPN that has not been set
+	 * - all other controllers, if set or if they have a default value
+	 * - (N)RPN selection (RPN null, if not set)
+	 * - program change (program 0, if not set)
+	 * - pitch bend and channel pressure (if set)
+	 * 
+	 * "Reset all controllers" resets pitch bend, channel pressure and some
+	 * of the controllers. The other parts of the state must be restored
+	 * with their default values explicitly.
+	 * 
+	 * @param state        the state of all channels
+	 * @param paramValues  packed parameter -- value
+	 * @return the messages, packed like short messages.
+	 */
+	private int[] createMessages(short[] state, TreeMap<Integer, Integer> paramValues) {
+		int   numDefaults = MidiDevices.NUMBER_OF_CHANNELS * DEFAULT_RPNS.length;
+		int[] messages    = new int[state.length + 4 * (paramValues.size() + numDefaults)];
+		int   size        = 0;
+		for (int channel = 0; channel < MidiDevices.NUMBER_OF_CHANNELS; channel++) {
+			int base = channel * STATE_SIZE;
+			int cc   = ShortMessage.CONTROL_CHANGE | channel;
+			messages[size++] = cc | CTRL_RESET_ALL << 8;
+			
+			// (N)RPN values
+			int first = channel << 15;
+			for (Entry<Integer, Integer> entry : paramValues.subMap(first, first + (1 << 15)).entrySet())
+				size = addParam(messages, size, cc, entry.getKey(), entry.getValue());
+			for (int[] rpn : DEFAULT_RPNS) {
+				int param = first | 1 << 14 | rpn[0];
+				if (! paramValues.containsKey(param))
+					size = addParam(messages, size, cc, param, rpn[1]);
+			}
+			
+			// other controllers
+			for (int ctrl = 0; ctrl < CTRL_ALL_SOUND_OFF; ctrl++) {
+				if (CTRL_DATA_ENTRY_MSB == ctrl || CTRL_DATA_ENTRY_LSB == ctrl)
+					continue;
+				if (ctrl >= CTRL_DATA_INCREMENT && ctrl <= CTRL_RPN_MSB)
+					continue;
+				int value = state[base + ctrl];
+				if (value < 0)
+					value = getControllerDefault(ctrl);
+				if (value >= 0)
+					messages[size++] = cc | ctrl << 8 | value << 16;
+			}
+			
+			// (N)RPN selection - the last selected type at last
+			int[] selection = 1 == state[base + SLOT_PARAM_TYPE]
+				? new int[] {CTRL_NRPN_MSB, CTRL_NRPN_LSB, CTRL_RPN_MSB, CTRL_RPN_LSB}
+				: new int[] {CTRL_RPN_MSB, CTRL_RPN_LSB, CTRL_NRPN_MSB, CTRL_NRPN_LSB};
+			for (int ctrl : selection) {
+				int value = state[base + ctrl];
+				if (value < 0 && (CTRL_RPN_MSB == ctrl || CTRL_RPN_LSB == ctrl))
+					value = 0x7F; // null
+				if (value >= 0)
+					messages[size++] = cc | ctrl << 8 | value << 16;
+			}
+			
+			// program, pitch bend, pressure
+			int program = Math.max(0, state[base + SLOT_PROGRAM]);
+			messages[size++] = ShortMessage.PROGRAM_CHANGE | channel | program << 8;
+			int pitchBend = state[base + SLOT_PITCH_BEND];
+			if (pitchBend >= 0)
+				messages[size++] = ShortMessage.PITCH_BEND | channel | (pitchBend & 0x7F) << 8 | (pitchBend >> 7) << 16;
+			if (state[base + SLOT_PRESSURE] >= 0)
+				messages[size++] = ShortMessage.CHANNEL_PRESSURE | channel | state[base + SLOT_PRESSURE] << 8;
+		}
+		return Arrays.copyOf(messages, size);
+	}
+	
+	/**
+	 * Adds the messages that set the given (N)RPN value.
+	 * 
+	 * @param messages  the messages to be sent
+	 * @param size      number of messages that have already been added
+	 * @param cc        control change status byte, including the channel
+	 * @param param     packed parameter
+	 * @param value     parameter value (MSB*128+LSB)
+	 * @return the new number of messages.
+	 */
+	private static int addParam(int[] messages, int size, int cc, int param, int value) {
+		boolean isRpn = 0 != (param & (1 << 14));
+		messages[size++] = cc | (isRpn ? CTRL_RPN_MSB : CTRL_NRPN_MSB) << 8 | ((param >> 7) & 0x7F) << 16;
+		messages[size++] = cc | (isRpn ? CTRL_RPN_LSB : CTRL_NRPN_LSB) << 8 | (param & 0x7F) << 16;
+		messages[size++] = cc | CTRL_DATA_ENTRY_MSB << 8 | (value >> 7) << 16;
+		messages[size++] = cc | CTRL_DATA_ENTRY_LSB << 8 | (value & 0x7F) << 16;
+		return size;
+	}
+	
+	/**
+	 * Returns the default value of a controller that is not reset by
+	 * "reset all controllers" (see gm2, page 8).
+	 * 
+	 * Channel volume has only a default value if it's part of the state.
+	 * 
+	 * @param ctrl  controller number
+	 * @return the default value, or **-1** if the controller has no default value.
+	 */
+	private int getControllerDefault(int ctrl) {
+		switch (ctrl) {
+			case CTRL_BANK_MSB:
+			case CTRL_BANK_LSB:
+			case CTRL_CHORUS:
+				return 0;
+			case CTRL_VOLUME_MSB:
+				return withVolume ? 100 : -1;
+			case CTRL_PAN:
+				return 64;
+			case CTRL_REVERB:
+				return 40;
+			default:
+				return -1;
+		}
+	}
+}
@@ -0,0 +1,544 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.midi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeMap;
+
+/**
+ * This class is an index of the analyzed history of one MIDI channel.
+ * 
+ * It is filled by the {@link SequenceAnalyzer} during the channel-specific
+ * analysis. As soon as that analysis is finished, {@link #finish()} is called.
+ * After that the index is not changed any more.
+ * 
+ * Each history is stored as a sorted array of ticks and one or more parallel
+ * arrays of primitive values. While the channel is analyzed, the arrays grow
+ * like in the {@link EventBuffer}. Lookups are done by binary search.
+ * 
+ * Adding an entry with the same tick as an existing entry replaces that entry.
+ * Note events must be added in the order of their ticks, like they appear in
+ * a channel track. The other entries may be added in any order.
+ * 
+ * Packed values are stored in the following formats:
+ * 
+ * - instrument: bank MSB (bits 0-7), bank LSB (bits 8-15), program (bits 16-23)
+ * - parameter config: one byte per index of the (N)RPN config, beginning with bits 0-7
+ * 
+ * @author Jan Trukenmüller
+ */
+public class ChannelTimeline {
+	
+	private static final int INITIAL_CAPACITY = 16;
+	
+	// note history, sorted by tick and note
+	private long[] noteTicks  = new long[INITIAL_CAPACITY];
+	private byte[] notes      = new byte[INITIAL_CAPACITY];
+	private byte[] velocities = new byte[INITIAL_CAPACITY];
+	private int    noteSize   = 0;
+	
+	// note-ON/note-OFF history, sorted by tick
+	private long[]    onOffTicks  = new long[INITIAL_CAPACITY];
+	private byte[]    onOffNotes  = new byte[INITIAL_CAPACITY];
+	private boolean[] onOffStates = new boolean[INITIAL_CAPACITY];
+	private int       onOffSize   = 0;
+	private boolean[] onOffKeys   = null; // keys with on/off events, or null if the channel has no on/off history at all
+	private int[]     lastOnOff   = null; // last on/off index of each key (or -1), only needed during the analysis
+	
+	private History           activity     = new History();
+	private History           instruments  = new History();
+	private History           comments     = new History(); // index in commentTexts
+	private ArrayList<String> commentTexts = new ArrayList<>();
+	private History           params       = new History();
+	private History           pbs          = new History();
+	
+	/**
+	 * Adds a note-ON event.
+	 * 
+	 * Tracks the note-ON/note-OFF history, the channel activity and the note history.
+	 * 
+	 * @param tick      tickstamp of the event
+	 * @param note      note number
+	 * @param velocity  velocity
+	 * @return **false** if the key has already been pressed at the same tick, otherwise **true**.
+	 */
+	boolean addNoteOn(long tick, byte note, byte velocity) {
+		
+		// note on/off tracking
+		int last = touchKey(note);
+		if (last >= 0 && onOffTicks[last] == tick && onOffStates[last])
+			// Key press and/or release conflict.
+			// There was a(nother) ON or OFF event for the same key in the
+			// same tick. It's probably depending on the sequencer or
+			// synthesizer implementation what happens.
+			// Here we just assume that these events will be processed in
+			// the same order as we found them.
+			return false;
+		putOnOff(tick, note, true, last);
+		
+		// channel activity
+		int lastActivity = activity.floor(tick);
+		activity.put(tick, lastActivity < 0 ? 1 : activity.values[lastActivity] + 1);
+		
+		// note history, sorted by note inside of the same tick
+		int i = noteSize;
+		while (i > 0 && noteTicks[i - 1] == tick && notes[i - 1] >= note)
+			i--;
+		if (i < noteSize && noteTicks[i] == tick && notes[i] == note) {
+			velocities[i] = velocity;
+			return true;
+		}
+		if (noteSize == noteTicks.length) {
+			noteTicks  = Arrays.copyOf(noteTicks, noteSize * 2);
+			notes      = Arrays.copyOf(notes, noteSize * 2);
+			velocities = Arrays.copyOf(velocities, noteSize * 2);
+		}
+		System.arraycopy(noteTicks, i, noteTicks, i + 1, noteSize - i);
+		System.arraycopy(notes, i, notes, i + 1, noteSize - i);
+		System.arraycopy(velocities, i, velocities, i + 1, noteSize - i);
+		noteTicks[i]  = tick;
+		notes[i]      = note;
+		velocities[i] = velocity;
+		noteSize++;
+		
+		return true;
+	}
+	
+	/**
+	 * Adds a note-OFF event.
+	 * 
+	 * Tracks the note-ON/note-OFF history and the channel activity.
+	 * 
+	 * @param tick  tickstamp of the event
+	 * @param note  note number
+	 * @return **true** if the channel activity has changed, otherwise **false**.
+	 */
+	boolean addNoteOff(long tick, byte note) {
+		
+		// check if the released key has been pressed before
+		int last = touchKey(note);
+		if (last < 0 || ! onOffStates[last])
+			return false;
+		
+		// mark as released
+		putOnOff(tick, note, false, last);
+		
+		// channel activity
+		int lastActivity = activity.floor(tick);
+		if (lastActivity < 0) {
+			// A key was released before it has been pressed for the very first time.
+			return false;
+		}
+		
+		// decrement activity
+		long lastActivityCount = activity.values[lastActivity];
+		if (lastActivityCount < 1) {
+			// should never happen
+			return false;
+		}
+		activity.put(tick, lastActivityCount - 1);
+		
+		return true;
+	}
+	
+	/**
+	 * Adds an instrument change.
+	 * 
+	 * @param tick  tickstamp of the change
+	 * @param conf  bank MSB, bank LSB and program number
+	 */
+	void addInstrument(long tick, Byte[] conf) {
+		instruments.put(tick, (conf[0] & 0xFF) | (conf[1] & 0xFF) << 8 | (conf[2] & 0xFF) << 16);
+	}
+	
+	/**
+	 * Adds a channel comment.
+	 * 
+	 * @param tick     tickstamp of the comment
+	 * @param comment  the comment
+	 */
+	void addComment(long tick, String comment) {
+		comments.put(tick, commentTexts.size());
+		commentTexts.add(comment);
+	}
+	
+	/**
+	 * Adds an (N)RPN config change.
+	 * 
+	 * @param tick  tickstamp of the change
+	 * @param conf  RPN MSB, RPN LSB, NRPN MSB, NRPN LSB and type (1=RPN, 0=NRPN, -1=unknown)
+	 */
+	void addParamConfig(long tick, Byte[] conf) {
+		long packed = 0;
+		for (int j = 0; j < conf.length; j++)
+			packed |= (conf[j] & 0xFFL) << (8 * j);
+		params.put(tick, packed);
+	}
+	
+	/**
+	 * Adds a change of the pitch bend sensitivity RPN.
+	 * 
+	 * @param tick   tickstamp of the change
+	 * @param value  MSB*256+LSB
+	 */
+	void addPitchBendSensitivity(long tick, int value) {
+		pbs.put(tick, value);
+	}
+	
+	/**
+	 * Finishes the index after the channel-specific analysis.
+	 * 
+	 * Releases the unused capacity of all arrays.
+	 */
+	void finish() {
+		noteTicks   = Arrays.copyOf(noteTicks, noteSize);
+		notes       = Arrays.copyOf(notes, noteSize);
+		velocities  = Arrays.copyOf(velocities, noteSize);
+		onOffTicks  = Arrays.copyOf(onOffTicks, onOffSize);
+		onOffNotes  = Arrays.copyOf(onOffNotes, onOffSize);
+		onOffStates = Arrays.copyOf(onOffStates, onOffSize);
+		lastOnOff   = null;
+		activity.trim();
+		instruments.trim();
+		comments.trim();
+		commentTexts.trimToSize();
+		params.trim();
+		pbs.trim();
+	}
+	
+	/**
+	 * Indicates if at least one note has been played in this channel.
+	 * 
+	 * @return **true** if there are notes, otherwise **false**.
+	 */
+	boolean hasNotes() {
+		return noteSize > 0;
+	}
+	
+	/**
+	 * Indicates if there is any channel activity at all.
+	 * 
+	 * @return **true** if there is any channel activity, otherwise **false**.
+	 */
+	boolean hasActivity() {
+		return activity.size > 0;
+	}
+	
+	/**
+	 * Indicates if the channel activity changes at the given tick.
+	 * 
+	 * @param tick  tickstamp of the sequence
+	 * @return **true** if there is an activity change at exactly this tick, otherwise **false**.
+	 */
+	boolean hasActivityChange(long tick) {
+		return activity.contains(tick);
+	}
+	
+	/**
+	 * Indicates if there is an instrument change at the given tick.
+	 * 
+	 * @param tick  tickstamp of the sequence
+	 * @return **true** if there is an instrument change at exactly this tick, otherwise **false**.
+	 */
+	boolean hasInstrumentChange(long tick) {
+		return instruments.contains(tick);
+	}
+	
+	/**
+	 * Indicates if at least one key is pressed at the given tick by a note-ON event.
+	 * 
+	 * @param tick  tickstamp of the sequence
+	 * @return **true** if a key is pressed at exactly this tick, otherwise **false**.
+	 */
+	boolean hasNoteOn(long tick) {
+		for (int i = floor(onOffTicks, onOffSize, tick); i >= 0 && onOffTicks[i] == tick; i--) {
+			if (onOffStates[i])
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Indicates if at least one key is pressed at the given tick.
+	 * 
+	 * @param tick  tickstamp of the sequence
+	 * @return **true** if the channel is active, otherwise **false**.
+	 */
+	public boolean isActive(long tick) {
+		int i = activity.floor(tick);
+		if (i < 0) {
+			// nothing happened in the channel so far
+			return false;
+		}
+		return activity.values[i] != 0;
+	}
+	
+	/**
+	 * Calculates the note history at the given tick.
+	 * 
+	 * See {@link SequenceAnalyzer#getNoteHistory(byte, long)} for the structure.
+	 * 
+	 * @param tick     tickstamp of the sequence
+	 * @param past     maximum number of past notes (including the current tick)
+	 * @param future   maximum number of future notes
+	 * @return the note history.
+	 */
+	public ArrayList<Long[]> getNoteHistory(long tick, int past, int future) {
+		ArrayList<Long[]> result = new ArrayList<>();
+		
+		// past notes, from the newest to the oldest one
+		int last = floor(noteTicks, noteSize, tick);
+		for (int i = last; i >= 0 && last - i < past; i--) {
+			Long[] row = { (long) notes[i], (long) velocities[i], noteTicks[i], 0L };
+			result.add(row);
+		}
+		
+		// reverse the order of the past notes
+		Collections.reverse(result);
+		
+		// future notes
+		int first = last + 1;
+		for (int i = first; i < noteSize && i - first < future; i++) {
+			Long[] row = { (long) notes[i], (long) velocities[i], noteTicks[i], 1L };
+			result.add(row);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns bank and instrument information at the given tick.
+	 * 
+	 * @param tick  tickstamp of the sequence
+	 * @return bank MSB, bank LSB and program number.
+	 */
+	public Byte[] getInstrument(long tick) {
+		long   packed = instruments.values[instruments.floor(tick)];
+		Byte[] conf   = { (byte) packed, (byte) (packed >> 8), (byte) (packed >> 16) };
+		return conf;
+	}
+	
+	/**
+	 * Returns the channel comment at the given tick.
+	 * 
+	 * @param tick  tickstamp of the sequence
+	 * @return the comment, or **null** if no comment has been set yet.
+	 */
+	public String getComment(long tick) {
+		int i = comments.floor(tick);
+		if (i < 0)
+			return null;
+		return commentTexts.get((int) comments.values[i]);
+	}
+	
+	/**
+	 * Returns the (N)RPN config at the given tick.
+	 * 
+	 * @param tick  tickstamp of the sequence
+	 * @return RPN MSB, RPN LSB, NRPN MSB, NRPN LSB and type (1=RPN, 0=NRPN, -1=unknown).
+	 */
+	public Byte[] getParamConfig(long tick) {
+		long   packed = params.values[params.floor(tick)];
+		Byte[] conf   = new Byte[5];
+		for (int j = 0; j < conf.length; j++)
+			conf[j] = (byte) (packed >> (8 * j));
+		return conf;
+	}
+	
+	/**
+	 * Returns the raw value of the pitch bend sensitivity RPN at the given tick.
+	 * 
+	 * @param tick  tickstamp of the sequence
+	 * @return MSB*256+LSB
+	 */
+	public int getPitchBendSensitivity(long tick) {
+		return (int) pbs.values[pbs.floor(tick)];
+	}
+	
+	/**
+	 * Creates the complete note history as a tree map.
+	 * 
+	 * @return tick -- note -- velocity
+	 */
+	public TreeMap<Long, TreeMap<Byte, Byte>> getNoteHistory() {
+		TreeMap<Long, TreeMap<Byte, Byte>> result = new TreeMap<>();
+		for (int i = 0; i < noteSize; i++)
+			result.computeIfAbsent(noteTicks[i], k -> new TreeMap<>()).put(notes[i], velocities[i]);
+		return result;
+	}
+	
+	/**
+	 * Creates the complete note-ON/note-OFF history as a tree map.
+	 * 
+	 * @return note -- tick -- on/off, or **null** if the channel has no such history.
+	 */
+	public TreeMap<Byte, TreeMap<Long, Boolean>> getOnOffHistory() {
+		if (null == onOffKeys)
+			return null;
+		TreeMap<Byte, TreeMap<Long, Boolean>> result = new TreeMap<>();
+		for (int note = 0; note < onOffKeys.length; note++) {
+			if (onOffKeys[note])
+				result.put((byte) note, new TreeMap<>());
+		}
+		for (int i = 0; i < onOffSize; i++)
+			result.get(onOffNotes[i]).put(onOffTicks[i], onOffStates[i]);
+		return result;
+	}
+	
+	/**
+	 * Creates the complete instrument history as a tree map.
+	 * 
+	 * @return tick -- bank MSB, bank LSB, program
+	 */
+	public TreeMap<Long, Byte[]> getInstrumentHistory() {
+		TreeMap<Long, Byte[]> result = new TreeMap<>();
+		for (int i = 0; i < instruments.size; i++)
+			result.put(instruments.ticks[i], getInstrument(instruments.ticks[i]));
+		return result;
+	}
+	
+	/**
+	 * Creates the complete comment history as a tree map.
+	 * 
+	 * @return tick -- comment
+	 */
+	public TreeMap<Long, String> getCommentHistory() {
+		TreeMap<Long, String> result = new TreeMap<>();
+		for (int i = 0; i < comments.size; i++)
+			result.put(comments.ticks[i], commentTexts.get((int) comments.values[i]));
+		return result;
+	}
+	
+	/**
+	 * Marks the given key as used in the note-ON/note-OFF history.
+	 * 
+	 * @param note  note number
+	 * @return the index of the last on/off entry of the key, or **-1** if there is none.
+	 */
+	private int touchKey(byte note) {
+		if (null == onOffKeys) {
+			onOffKeys = new boolean[128];
+			lastOnOff = new int[128];
+			Arrays.fill(lastOnOff, -1);
+		}
+		onOffKeys[note] = true;
+		return lastOnOff[note];
+	}
+	
+	/**
+	 * Sets the on/off state of a key.
+	 * 
+	 * @param tick   tickstamp of the event
+	 * @param note   note number
+	 * @param state  **true** for on, **false** for off
+	 * @param last   index of the last on/off entry of the key, or **-1**
+	 */
+	private void putOnOff(long tick, byte note, boolean state, int last) {
+		if (last >= 0 && onOffTicks[last] == tick) {
+			onOffStates[last] = state;
+			return;
+		}
+		if (onOffSize == onOffTicks.length) {
+			onOffTicks  = Arrays.copyOf(onOffTicks, onOffSize * 2);
+			onOffNotes  = Arrays.copyOf(onOffNotes, onOffSize * 2);
+			onOffStates = Arrays.copyOf(onOffStates, onOffSize * 2);
+		}
+		onOffTicks[onOffSize]  = tick;
+		onOffNotes[onOffSize]  = note;
+		onOffStates[onOffSize] = state;
+		lastOnOff[note]        = onOffSize++;
+	}
+	
+	/**
+	 * Returns the index of the last element that is not greater than the given tick.
+	 * If several elements have the same tick, the last one of them is returned.
+	 * 
+	 * @param ticks  sorted ticks
+	 * @param size   number of used elements
+	 * @param tick   the tick to search for
+	 * @return the index, or **-1** if all elements are greater than the given tick.
+	 */
+	private static int floor(long[] ticks, int size, long tick) {
+		int low  = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (ticks[mid] <= tick)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low - 1;
+	}
+	
+	/**
+	 * A history with at most one value per tick.
+	 */
+	private static class History {
+		
+		private long[] ticks  = new long[INITIAL_CAPACITY];
+		private long[] values = new long[INITIAL_CAPACITY];
+		private int    size   = 0;
+		
+		/**
+		 * Sets the value at the given tick.
+		 * 
+		 * Appending is cheap. An entry before the last one needs to move
+		 * all following entries.
+		 * 
+		 * @param tick   tickstamp
+		 * @param value  the value
+		 */
+		private void put(long tick, long value) {
+			int i = floor(tick);
+			if (i < 0 || ticks[i] != tick) {
+				i++;
+				if (size == ticks.length) {
+					ticks  = Arrays.copyOf(ticks, size * 2);
+					values = Arrays.copyOf(values, size * 2);
+				}
+				System.arraycopy(ticks, i, ticks, i + 1, size - i);
+				System.arraycopy(values, i, values, i + 1, size - i);
+				ticks[i] = tick;
+				size++;
+			}
+			values[i] = value;
+		}
+		
+		/**
+		 * Returns the index of the last entry that is not greater than the given tick.
+		 * 
+		 * @param tick  tickstamp
+		 * @return the index, or **-1** if all entries are greater than the given tick.
+		 */
+		private int floor(long tick) {
+			return ChannelTimeline.floor(ticks, size, tick);
+		}
+		
+		/**
+		 * Indicates if there is an entry at the given tick.
+		 * 
+		 * @param tick  tickstamp
+		 * @return **true** if there is an entry at exactly this tick, otherwise **false**.
+		 */
+		private boolean contains(long tick) {
+			int i = floor(tick);
+			return i >= 0 && ticks[i] == tick;
+		}
+		
+		/**
+		 * Releases the unused capacity.
+		 */
+		private void trim() {
+			ticks  = Arrays.copyOf(ticks, size);
+			values = Arrays.copyOf(values, size);
+		}
+	}
+}
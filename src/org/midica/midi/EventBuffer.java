@@ -0,0 +1,215 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.midi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/**
+ * This class buffers the events of one channel track while a sequence is created.
+ * 
+ * Adding an event to a {@link Track} needs a backward scan for the right
+ * position if the event's tick is lower than the tick of the last event.
+ * That happens all the time if more than one voice is written into the same
+ * channel. The buffer only appends events in primitive arrays. They are sorted
+ * only once, when the sequence is needed.
+ * 
+ * Short messages are stored as packed integers:
+ * 
+ * - bits 0-7: status byte
+ * - bits 8-15: data byte 1
+ * - bits 16-23: data byte 2
+ * 
+ * Other messages are stored as objects. Their negative index (minus 1) is stored
+ * instead of a packed short message.
+ * 
+ * Events with the same tick keep their insertion order, exactly like
+ * {@link Track#add(MidiEvent)} does it. Therefore each event has a sequence
+ * number. An event that is moved to another tick gets a new sequence number,
+ * like an event that is removed from a track and added again.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class EventBuffer {
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private long[]                 ticks     = new long[INITIAL_CAPACITY];
+	private int[]                  messages  = new int[INITIAL_CAPACITY];
+	private int[]                  sequences = new int[INITIAL_CAPACITY];
+	private int                    size      = 0;
+	private int                    nextSeq   = 0;
+	private ArrayList<MidiMessage> objects   = new ArrayList<>();
+	
+	/**
+	 * Adds a short message.
+	 * 
+	 * The message must be validated by the caller.
+	 * 
+	 * @param status  status byte
+	 * @param data1   first data byte
+	 * @param data2   second data byte
+	 * @param tick    tickstamp of the event
+	 * @return the index of the added event inside of the buffer.
+	 */
+	public int add(int status, int data1, int data2, long tick) {
+		return append(status | (data1 << 8) | (data2 << 16), tick);
+	}
+	
+	/**
+	 * Adds any MIDI message.
+	 * 
+	 * @param msg   the message
+	 * @param tick  tickstamp of the event
+	 * @return the index of the added event inside of the buffer.
+	 */
+	public int add(MidiMessage msg, long tick) {
+		objects.add(msg);
+		return append(-objects.size(), tick);
+	}
+	
+	/**
+	 * Returns the tick of the event with the given index.
+	 * 
+	 * @param index  index inside of the buffer
+	 * @return the tick.
+	 */
+	public long getTick(int index) {
+		return ticks[index];
+	}
+	
+	/**
+	 * Moves the event with the given index to a new tick.
+	 * 
+	 * The event is changed in place. It gets a new sequence number, so that it's
+	 * treated as the latest event of the new tick, like an event that has been
+	 * removed from a {@link Track} and added again.
+	 * 
+	 * @param index  index of the event to be moved
+	 * @param tick   the new tick
+	 */
+	public void move(int index, long tick) {
+		ticks[index]     = tick;
+		sequences[index] = nextSeq++;
+	}
+	
+	/**
+	 * Returns the number of buffered events.
+	 * 
+	 * @return number of events.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Sorts the buffered events by tick and adds them to the given track.
+	 * After that the buffer is empty.
+	 * 
+	 * @param track  the track to be filled
+	 * @throws InvalidMidiDataException if a short message cannot be created.
+	 */
+	public void flushInto(Track track) throws InvalidMidiDataException {
+		
+		// sort
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++)
+			order[i] = i;
+		sort(order, new int[size], 0, size);
+		
+		// create events
+		for (int i : order) {
+			int         packed = messages[i];
+			MidiMessage msg;
+			if (packed < 0)
+				msg = objects.get(-packed - 1);
+			else
+				msg = new ShortMessage(packed & 0xFF, (packed >> 8) & 0xFF, (packed >> 16) & 0xFF);
+			track.add(new MidiEvent(msg, ticks[i]));
+		}
+		
+		// reset
+		ticks     = new long[INITIAL_CAPACITY];
+		messages  = new int[INITIAL_CAPACITY];
+		sequences = new int[INITIAL_CAPACITY];
+		size      = 0;
+		nextSeq   = 0;
+		objects.clear();
+	}
+	
+	/**
+	 * Appends an event.
+	 * 
+	 * @param packed  packed short message or negative object index
+	 * @param tick    tickstamp of the event
+	 * @return the index of the added event.
+	 */
+	private int append(int packed, long tick) {
+		if (size == ticks.length) {
+			ticks     = Arrays.copyOf(ticks, size * 2);
+			messages  = Arrays.copyOf(messages, size * 2);
+			sequences = Arrays.copyOf(sequences, size * 2);
+		}
+		ticks[size]     = tick;
+		messages[size]  = packed;
+		sequences[size] = nextSeq++;
+		return size++;
+	}
+	
+	/**
+	 * Sorts the given range of event indices by tick and sequence number.
+	 * 
+	 * This is a merge sort. Ranges that are already in order are not merged.
+	 * 
+	 * @param order  the event indices to be sorted
+	 * @param tmp    temporary array with the same length
+	 * @param from   first index of the range (inclusive)
+	 * @param to     last index of the range (exclusive)
+	 */
+	private void sort(int[] order, int[] tmp, int from, int to) {
+		if (to - from < 2)
+			return;
+		int mid = (from + to) >>> 1;
+		sort(order, tmp, from, mid);
+		sort(order, tmp, mid, to);
+		
+		// already in order?
+		if (! isAfter(order[mid - 1], order[mid]))
+			return;
+		
+		// merge
+		System.arraycopy(order, from, tmp, from, to - from);
+		int left  = from;
+		int right = mid;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < mid && ! isAfter(tmp[left], tmp[right])))
+				order[i] = tmp[left++];
+			else
+				order[i] = tmp[right++];
+		}
+	}
+	
+	/**
+	 * Determines if the first given event must be placed after the second one.
+	 * 
+	 * @param a  index of the first event
+	 * @param b  index of the second event
+	 * @return **true** if event **a** belongs after event **b**, otherwise **false**.
+	 */
+	private boolean isAfter(int a, int b) {
+		if (ticks[a] != ticks[b])
+			return ticks[a] > ticks[b];
+		return sequences[a] > sequences[b];
+	}
+}
@@ -18,7 +18,6 @@ import javax.sound.midi.SysexMessage;
 import org.midica.config.Dict;
 import org.midica.file.CharsetUtils;
 import org.midica.ui.model.IMessageType;
-import org.midica.ui.model.SingleMessage;
 import org.midica.ui.model.MessageTreeNode;
 import org.midica.ui.model.MidicaTreeModel;
 
@@ -414,27 +413,25 @@ public class MessageClassifier {
 	 * Retrieves general information from short messages.
 	 * 
 	 * - Creates a path and adds it to the given tree model.
-	 * - Adds the created {@link SingleMessage} to the given messages list.
-	 * - Adds the leaf node of the created path to the created message.
+	 * - Stores the leaf node and the message options in the given message store.
 	 * 
-	 * @param msg           Short message
-	 * @param tick          Tickstamp
-	 * @param trackNum      Track number (beginning with 0).
-	 * @param msgNum        Number of the message inside the track.
-	 * @param messages      List of messages where the processed message will be added.
+	 * @param store         Message store containing the short message.
+	 * @param index         Index of the message inside the store.
 	 * @param msgTreeModel  Tree model where the created leaf note will be added.
-	 * @return the created message object
 	 * @throws ReflectiveOperationException if the message cannot be added to the tree model.
 	 */
-	public static final SingleMessage processShortMessage(ShortMessage msg, long tick, int trackNum, int msgNum,
-		ArrayList<SingleMessage> messages, MidicaTreeModel msgTreeModel) throws ReflectiveOperationException {
+	public static final void processShortMessage(MessageStore store, int index, MidicaTreeModel msgTreeModel)
+		throws ReflectiveOperationException {
 		
 		// prepare data structures
 		ArrayList<String[]>      path            = new ArrayList<>();
 		HashMap<Integer, Object> details         = new HashMap<>();
 		HashMap<Integer, Object> distinctDetails = new HashMap<>();
+		ShortMessage msg      = (ShortMessage) store.getMessage(index);
+		long         tick     = store.getTick(index);
+		int          trackNum = store.getTrack(index);
+		int          msgNum   = store.getMsgNum(index);
 		int    msgLength = msg.getLength();
-		byte[] message   = msg.getMessage();
 		int    cmd       = msg.getCommand();
 		int    channel   = msg.getChannel();
 		int    data1     = msg.getData1();
@@ -606,58 +603,35 @@ public class MessageClassifier {
 		distinctDetails.put(IMessageType.OPT_TRACK, trackNum);
 		
 		// add message to the data structures
-		MessageTreeNode leaf          = (MessageTreeNode) msgTreeModel.add(path, null);
-		SingleMessage   singleMessage = new SingleMessage();
-		messages.add(singleMessage);
-		
-		// add details to the leaf node and the message details
-		for (Entry<Integer, Object> detailEntry : details.entrySet()) {
-			leaf.setOption(          detailEntry.getKey(), detailEntry.getValue() );
-			singleMessage.setOption( detailEntry.getKey(), detailEntry.getValue() );
-		}
-		for (Entry<Integer, Object> detailEntry : distinctDetails.entrySet()) {
-			leaf.setDistinctOption(  detailEntry.getKey(), (Comparable<?>) detailEntry.getValue() );
-			singleMessage.setOption( detailEntry.getKey(), detailEntry.getValue()                 );
-		}
-		singleMessage.setOption( IMessageType.OPT_STATUS_BYTE, String.format("%02X", statusByte) );
-		singleMessage.setOption( IMessageType.OPT_LEAF_NODE,   leaf                              );
-		singleMessage.setOption( IMessageType.OPT_MESSAGE,     message                           );
-		String[] desc = getDescription(singleMessage);
-		if (desc[1].length() > 0)
-			singleMessage.setOption(IMessageType.OPT_SUMMARY, desc[1]);
-		
-		return singleMessage;
+		addToStore(store, index, msgTreeModel, path, details, distinctDetails, true);
 	}
 	
 	/**
 	 * Retrieves general information from meta messages.
 	 * 
 	 * - Creates a path and adds it to the given tree model.
-	 * - Adds the created {@link SingleMessage} to the given messages list.
-	 * - Adds the leaf node of the created path to the created message.
+	 * - Stores the leaf node and the message options in the given message store.
 	 * 
-	 * @param msg              Meta message
-	 * @param tick             Tickstamp
-	 * @param trackNum         Track number (beginning with 0).
-	 * @param msgNum           Number of the message inside the track.
-	 * @param messages         List of messages where the processed message will be added.
+	 * @param store            Message store containing the meta message.
+	 * @param index            Index of the message inside the store.
 	 * @param msgTreeModel     Tree model where the created leaf note will be added.
 	 * @param chosenCharset    Charset that has been chosen with the file chooser.
-	 * @param midiFileCharset  The last charset from a charset switch inside of a lyrics message.
-	 * @return the created message object
 	 * @throws ReflectiveOperationException if the message cannot be added to the tree model.
 	 */
-	public static final SingleMessage processMetaMessage(MetaMessage msg, long tick, int trackNum, int msgNum,
-		ArrayList<SingleMessage> messages, MidicaTreeModel msgTreeModel,
-		String chosenCharset, String midiFileCharset) throws ReflectiveOperationException {
+	public static final void processMetaMessage(MessageStore store, int index, MidicaTreeModel msgTreeModel,
+		String chosenCharset) throws ReflectiveOperationException {
 		
 		// prepare data structures for the message tree
 		ArrayList<String[]>      path            = new ArrayList<>();
 		HashMap<Integer, Object> details         = new HashMap<>();
 		HashMap<Integer, Object> distinctDetails = new HashMap<>();
+		MetaMessage msg             = (MetaMessage) store.getMessage(index);
+		long        tick            = store.getTick(index);
+		int         trackNum        = store.getTrack(index);
+		int         msgNum          = store.getMsgNum(index);
+		String      midiFileCharset = store.getFileCharset(index); // last charset switch inside of a lyrics message
 		int    type      = msg.getType();
 		int    msgLength = msg.getLength();
-		byte[] message   = msg.getMessage();
 		byte[] content   = msg.getData();
 		String text      = null;
 		
@@ -729,53 +703,32 @@ public class MessageClassifier {
 		distinctDetails.put(IMessageType.OPT_TRACK, trackNum);
 		
 		// add message to the data structures
-		MessageTreeNode leaf          = (MessageTreeNode) msgTreeModel.add(path, null);
-		SingleMessage   singleMessage = new SingleMessage();
-		messages.add(singleMessage);
-		
-		// add details to the leaf node and the message details
-		for (Entry<Integer, Object> detailEntry : details.entrySet()) {
-			leaf.setOption(          detailEntry.getKey(), detailEntry.getValue() );
-			singleMessage.setOption( detailEntry.getKey(), detailEntry.getValue() );
-		}
-		for (Entry<Integer, Object> detailEntry : distinctDetails.entrySet()) {
-			leaf.setDistinctOption(  detailEntry.getKey(), (Comparable<?>) detailEntry.getValue() );
-			singleMessage.setOption( detailEntry.getKey(), detailEntry.getValue()                 );
-		}
-		singleMessage.setOption( IMessageType.OPT_LEAF_NODE, leaf    );
-		singleMessage.setOption( IMessageType.OPT_MESSAGE,   message );
-		String[] desc = getDescription(singleMessage);
-		if (desc[1].length() > 0)
-			singleMessage.setOption(IMessageType.OPT_SUMMARY, desc[1]);
-		
-		return singleMessage;
+		addToStore(store, index, msgTreeModel, path, details, distinctDetails, true);
 	}
 	
 	/**
 	 * Retrieves general information from SysEx messages.
 	 * 
 	 * - Creates a path and adds it to the given tree model.
-	 * - Adds the created {@link SingleMessage} to the given messages list.
-	 * - Adds the leaf node of the created path to the created message.
+	 * - Stores the leaf node and the message options in the given message store.
 	 * 
-	 * @param msg           SysEx message
-	 * @param tick          Tickstamp
-	 * @param trackNum      Track number (beginning with 0).
-	 * @param msgNum        Number of the message inside the track.
-	 * @param messages      List of messages where the processed message will be added.
+	 * @param store         Message store containing the SysEx message.
+	 * @param index         Index of the message inside the store.
 	 * @param msgTreeModel  Tree model where the created leaf note will be added.
-	 * @return the created message object
 	 * @throws ReflectiveOperationException if the message cannot be added to the tree model.
 	 */
-	public static final SingleMessage processSysexMessage(SysexMessage msg, long tick, int trackNum, int msgNum,
-		ArrayList<SingleMessage> messages, MidicaTreeModel msgTreeModel) throws ReflectiveOperationException {
+	public static final void processSysexMessage(MessageStore store, int index, MidicaTreeModel msgTreeModel)
+		throws ReflectiveOperationException {
 		
 		// prepare data structures
 		ArrayList<String[]>      path            = new ArrayList<>();
 		HashMap<Integer, Object> details         = new HashMap<>();
 		HashMap<Integer, Object> distinctDetails = new HashMap<>();
+		SysexMessage msg      = (SysexMessage) store.getMessage(index);
+		long         tick     = store.getTick(index);
+		int          trackNum = store.getTrack(index);
+		int          msgNum   = store.getMsgNum(index);
 		int    msgLength = msg.getLength();
-		byte[] message   = msg.getMessage();
 		byte[] content   = msg.getData();
 		
 		// level 1 node - All SysEx messages are system common messages
@@ -967,23 +920,57 @@ public class MessageClassifier {
 		distinctDetails.put( IMessageType.OPT_TRACK, trackNum  );
 		
 		// add message to the data structures
-		MessageTreeNode leaf          = (MessageTreeNode) msgTreeModel.add(path, null);
-		SingleMessage   singleMessage = new SingleMessage();
-		messages.add(singleMessage);
+		addToStore(store, index, msgTreeModel, path, details, distinctDetails, false);
+	}
+	
+	/**
+	 * Adds a classified message to the tree model and the message store.
+	 * 
+	 * - Adds the path to the tree model.
+	 * - Adds the details to the leaf node of the path.
+	 * - Stores the leaf node and the message-specific options in the store.
+	 * 
+	 * Options that the store provides anyway (tick, track, message number,
+	 * length and status byte) are not stored again.
+	 * 
+	 * @param store            Message store containing the message.
+	 * @param index            Index of the message inside the store.
+	 * @param msgTreeModel     Tree model where the created leaf note will be added.
+	 * @param path             Path of the message inside the tree.
+	 * @param details          Details for the leaf node and the message.
+	 * @param distinctDetails  Distinct details for the leaf node and the message.
+	 * @param withSummary      **true**, if the summary for the message table shall be added.
+	 * @throws ReflectiveOperationException if the message cannot be added to the tree model.
+	 */
+	private static final void addToStore(MessageStore store, int index, MidicaTreeModel msgTreeModel,
+		ArrayList<String[]> path, HashMap<Integer, Object> details, HashMap<Integer, Object> distinctDetails,
+		boolean withSummary) throws ReflectiveOperationException {
 		
-		// add details to the leaf node and the message details
+		MessageTreeNode leaf = (MessageTreeNode) msgTreeModel.add(path, null);
+		
+		// add details to the leaf node and the message options
+		HashMap<Integer, Object> options = new HashMap<>();
 		for (Entry<Integer, Object> detailEntry : details.entrySet()) {
-			leaf.setOption(          detailEntry.getKey(), detailEntry.getValue() );
-			singleMessage.setOption( detailEntry.getKey(), detailEntry.getValue() );
+			leaf.setOption( detailEntry.getKey(), detailEntry.getValue() );
+			options.put(    detailEntry.getKey(), detailEntry.getValue() );
 		}
 		for (Entry<Integer, Object> detailEntry : distinctDetails.entrySet()) {
-			leaf.setDistinctOption(  detailEntry.getKey(), (Comparable<?>) detailEntry.getValue() );
-			singleMessage.setOption( detailEntry.getKey(), detailEntry.getValue()                 );
+			leaf.setDistinctOption( detailEntry.getKey(), (Comparable<?>) detailEntry.getValue() );
+			options.put(            detailEntry.getKey(), detailEntry.getValue()                 );
+		}
+		options.remove( IMessageType.OPT_TICK        );
+		options.remove( IMessageType.OPT_TRACK       );
+		options.remove( IMessageType.OPT_MSG_NUM     );
+		options.remove( IMessageType.OPT_LENGTH      );
+		options.remove( IMessageType.OPT_STATUS_BYTE );
+		store.setClassification(index, leaf, options);
+		
+		// summary
+		if (withSummary) {
+			String[] desc = getDescription(store.getSingleMessage(index));
+			if (desc[1].length() > 0)
+				store.addOption(index, IMessageType.OPT_SUMMARY, desc[1]);
 		}
-		singleMessage.setOption( IMessageType.OPT_LEAF_NODE, leaf    );
-		singleMessage.setOption( IMessageType.OPT_MESSAGE,   message );
-		
-		return singleMessage;
 	}
 	
 	/**
@@ -0,0 +1,439 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.midi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.midica.ui.model.MessageTreeNode;
+import org.midica.ui.model.SingleMessage;
+
+/**
+ * This class stores the messages of an analyzed MIDI sequence in a compact form.
+ * 
+ * The {@link SequenceAnalyzer} records each message here while analyzing the
+ * sequence. The expensive classification by the {@link MessageClassifier} is
+ * done later, when the messages are needed for the first time.
+ * 
+ * For each message the following information is stored:
+ * 
+ * - tickstamp
+ * - track number
+ * - message number inside the track
+ * - the message itself (the same object as in the sequence)
+ * - the file charset that was active at that time (only for meta messages)
+ * 
+ * The file charset changes only rarely. So only the changes are stored,
+ * by message index.
+ * 
+ * After the classification the store also contains the leaf node of each
+ * message (stored as the ID of a path in the message tree) and all further
+ * message options. Options are stored in one flat list for all messages.
+ * Equal option values are shared between the messages. Then the messages
+ * are sorted for the message table. After that, the index of a message
+ * is the same as its row in the message table.
+ * 
+ * No object is kept per message. A {@link SingleMessage} is only a view on
+ * one index of this store.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class MessageStore {
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private long[]                   ticks          = new long[INITIAL_CAPACITY];
+	private int[]                    tracks         = new int[INITIAL_CAPACITY];
+	private int[]                    msgNums        = new int[INITIAL_CAPACITY];
+	private byte[]                   statuses       = new byte[INITIAL_CAPACITY];
+	private byte[]                   data1s         = new byte[INITIAL_CAPACITY];
+	private MidiMessage[]            messages       = new MidiMessage[INITIAL_CAPACITY];
+	private TreeMap<Integer, String> charsetChanges = new TreeMap<>();
+	private String                   lastCharset    = null;
+	private int                      size           = 0;
+	
+	// classification
+	private int[]                                     leafIds        = null;
+	private ArrayList<MessageTreeNode>                leaves         = new ArrayList<>();
+	private IdentityHashMap<MessageTreeNode, Integer> leafIdByNode   = new IdentityHashMap<>();
+	private int[]                                     optionStarts   = null; // first option of each message, plus the total size
+	private byte[]                                    optionIds      = new byte[INITIAL_CAPACITY];
+	private Object[]                                  optionValues   = new Object[INITIAL_CAPACITY];
+	private int                                       optionCount    = 0;
+	private HashMap<Object, Object>                   internedValues = new HashMap<>();
+	private int                                       classified     = 0;
+	private boolean                                   isFinished     = false;
+	
+	/** identity hash code (upper 32 bits) and index (lower 32 bits), sorted - created on demand */
+	private long[] identityKeys = null;
+	
+	/**
+	 * Adds a message.
+	 * 
+	 * @param msg          the message
+	 * @param tick         tickstamp
+	 * @param trackNum     track number
+	 * @param msgNum       number of the message inside the track
+	 * @param fileCharset  file charset from the last charset switch (only needed for meta messages)
+	 */
+	public void add(MidiMessage msg, long tick, int trackNum, int msgNum, String fileCharset) {
+		if (size == ticks.length) {
+			ticks    = Arrays.copyOf(ticks, size * 2);
+			tracks   = Arrays.copyOf(tracks, size * 2);
+			msgNums  = Arrays.copyOf(msgNums, size * 2);
+			statuses = Arrays.copyOf(statuses, size * 2);
+			data1s   = Arrays.copyOf(data1s, size * 2);
+			messages = Arrays.copyOf(messages, size * 2);
+		}
+		if (! Objects.equals(fileCharset, lastCharset)) {
+			charsetChanges.put(size, fileCharset);
+			lastCharset = fileCharset;
+		}
+		ticks[size]    = tick;
+		tracks[size]   = trackNum;
+		msgNums[size]  = msgNum;
+		statuses[size] = (byte) msg.getStatus();
+		messages[size] = msg;
+		if (msg instanceof ShortMessage)
+			data1s[size] = (byte) ((ShortMessage) msg).getData1();
+		else if (msg instanceof MetaMessage)
+			data1s[size] = (byte) ((MetaMessage) msg).getType();
+		size++;
+	}
+	
+	/**
+	 * Returns the number of stored messages.
+	 * 
+	 * @return number of messages.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the message with the given index.
+	 * 
+	 * @param index  message index
+	 * @return the message.
+	 */
+	public MidiMessage getMessage(int index) {
+		return messages[index];
+	}
+	
+	/**
+	 * Returns the tickstamp of the message with the given index.
+	 * 
+	 * @param index  message index
+	 * @return the tickstamp.
+	 */
+	public long getTick(int index) {
+		return ticks[index];
+	}
+	
+	/**
+	 * Returns the track number of the message with the given index.
+	 * 
+	 * @param index  message index
+	 * @return the track number.
+	 */
+	public int getTrack(int index) {
+		return tracks[index];
+	}
+	
+	/**
+	 * Returns the number of the message with the given index inside of its track.
+	 * 
+	 * @param index  message index
+	 * @return the message number.
+	 */
+	public int getMsgNum(int index) {
+		return msgNums[index];
+	}
+	
+	/**
+	 * Returns the status byte of the message with the given index.
+	 * 
+	 * @param index  message index
+	 * @return the status byte (0-255).
+	 */
+	public int getStatus(int index) {
+		return statuses[index] & 0xFF;
+	}
+	
+	/**
+	 * Returns the file charset that was active when the message with the given
+	 * index was added.
+	 * 
+	 * Only available before the classification is finished.
+	 * 
+	 * @param index  message index
+	 * @return the charset, or **null** if no charset switch has been found so far.
+	 */
+	public String getFileCharset(int index) {
+		Integer changeIndex = charsetChanges.floorKey(index);
+		if (null == changeIndex)
+			return null;
+		return charsetChanges.get(changeIndex);
+	}
+	
+	/**
+	 * Stores the classification of the message with the given index.
+	 * 
+	 * Messages must be classified in the order of their indices.
+	 * 
+	 * @param index    message index
+	 * @param leaf     leaf node of the message in the message tree
+	 * @param options  message options (option ID -- value)
+	 * @throws IllegalStateException if the messages are not classified in the right order.
+	 */
+	public void setClassification(int index, MessageTreeNode leaf, Map<Integer, Object> options) {
+		if (index != classified || isFinished)
+			throw new IllegalStateException("Message " + index + " classified out of order.");
+		if (null == leafIds) {
+			leafIds      = new int[size];
+			optionStarts = new int[size + 1];
+		}
+		
+		// path ID
+		Integer leafId = leafIdByNode.get(leaf);
+		if (null == leafId) {
+			leafId = leaves.size();
+			leaves.add(leaf);
+			leafIdByNode.put(leaf, leafId);
+		}
+		leafIds[index] = leafId;
+		
+		// options
+		optionStarts[index]     = optionCount;
+		optionStarts[index + 1] = optionCount;
+		classified++;
+		for (Entry<Integer, Object> option : options.entrySet()) {
+			addOption(index, option.getKey(), option.getValue());
+		}
+	}
+	
+	/**
+	 * Adds an option to the message that has been classified last.
+	 * 
+	 * @param index  message index
+	 * @param id     option ID
+	 * @param value  option value
+	 * @throws IllegalStateException if the message is not the last classified message.
+	 */
+	public void addOption(int index, int id, Object value) {
+		if (index != classified - 1 || isFinished)
+			throw new IllegalStateException("Option added to message " + index + " out of order.");
+		if (optionCount == optionIds.length) {
+			optionIds    = Arrays.copyOf(optionIds, optionCount * 2);
+			optionValues = Arrays.copyOf(optionValues, optionCount * 2);
+		}
+		
+		// share equal values
+		Object interned = internedValues.putIfAbsent(value, value);
+		if (interned != null)
+			value = interned;
+		
+		optionIds[optionCount]    = (byte) id;
+		optionValues[optionCount] = value;
+		optionCount++;
+		optionStarts[index + 1] = optionCount;
+	}
+	
+	/**
+	 * Finishes the classification.
+	 * 
+	 * Sorts the messages for the message table and releases the data structures
+	 * that are only needed while classifying.
+	 * 
+	 * Sorting criteria are:
+	 * 
+	 * # tickstamp
+	 * # track
+	 * # note (only for NOTE-ON or NOTE-OFF messages)
+	 * # message number inside the track
+	 * 
+	 * @throws IllegalStateException if not all messages have been classified.
+	 */
+	public void finishClassification() {
+		if (classified != size)
+			throw new IllegalStateException("Only " + classified + " of " + size + " messages classified.");
+		if (null == leafIds) {
+			leafIds      = new int[0];
+			optionStarts = new int[1];
+		}
+		
+		// sort
+		// The note criterion does not define a total order. So the sorting algorithm
+		// must stay the same. Otherwise the order of the messages could change.
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++)
+			order[i] = i;
+		Arrays.sort(order, this::compare);
+		
+		// rearrange the columns
+		long[]        newTicks    = new long[size];
+		int[]         newTracks   = new int[size];
+		int[]         newMsgNums  = new int[size];
+		byte[]        newStatuses = new byte[size];
+		byte[]        newData1s   = new byte[size];
+		MidiMessage[] newMessages = new MidiMessage[size];
+		int[]         newLeafIds  = new int[size];
+		int[]         newStarts   = new int[size + 1];
+		byte[]        newOptIds   = new byte[optionCount];
+		Object[]      newOptVals  = new Object[optionCount];
+		int           optPos      = 0;
+		for (int row = 0; row < size; row++) {
+			int i = order[row];
+			newTicks[row]    = ticks[i];
+			newTracks[row]   = tracks[i];
+			newMsgNums[row]  = msgNums[i];
+			newStatuses[row] = statuses[i];
+			newData1s[row]   = data1s[i];
+			newMessages[row] = messages[i];
+			newLeafIds[row]  = leafIds[i];
+			newStarts[row]   = optPos;
+			int from = optionStarts[i];
+			int len  = optionStarts[i + 1] - from;
+			System.arraycopy(optionIds, from, newOptIds, optPos, len);
+			System.arraycopy(optionValues, from, newOptVals, optPos, len);
+			optPos += len;
+		}
+		newStarts[size] = optPos;
+		ticks        = newTicks;
+		tracks       = newTracks;
+		msgNums      = newMsgNums;
+		statuses     = newStatuses;
+		data1s       = newData1s;
+		messages     = newMessages;
+		leafIds      = newLeafIds;
+		optionStarts = newStarts;
+		optionIds    = newOptIds;
+		optionValues = newOptVals;
+		
+		// release temporary structures
+		internedValues = null;
+		leafIdByNode   = null;
+		charsetChanges = null;
+		isFinished     = true;
+	}
+	
+	/**
+	 * Indicates if the classification is finished.
+	 * 
+	 * @return **true** if all messages are classified and sorted, otherwise **false**.
+	 */
+	public boolean isClassified() {
+		return isFinished;
+	}
+	
+	/**
+	 * Returns the leaf node of the message with the given index.
+	 * 
+	 * @param index  message index
+	 * @return the leaf node.
+	 */
+	public MessageTreeNode getLeaf(int index) {
+		return leaves.get(leafIds[index]);
+	}
+	
+	/**
+	 * Returns an option of the message with the given index.
+	 * 
+	 * @param index  message index
+	 * @param id     option ID
+	 * @return the option value, or **null** if the message does not have this option.
+	 */
+	public Object getOption(int index, int id) {
+		if (null == optionStarts || index >= classified)
+			return null;
+		for (int i = optionStarts[index]; i < optionStarts[index + 1]; i++) {
+			if (optionIds[i] == id)
+				return optionValues[i];
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns a view on the message with the given index.
+	 * 
+	 * @param index  message index
+	 * @return the message view.
+	 */
+	public SingleMessage getSingleMessage(int index) {
+		return new SingleMessage(this, index);
+	}
+	
+	/**
+	 * Returns the index of the given MIDI message.
+	 * 
+	 * @param msg  the MIDI message
+	 * @return the index, or **-1** if the message is not stored.
+	 */
+	public synchronized int indexOf(MidiMessage msg) {
+		if (null == identityKeys) {
+			identityKeys = new long[size];
+			for (int i = 0; i < size; i++)
+				identityKeys[i] = ((long) System.identityHashCode(messages[i]) << 32) | i;
+			Arrays.sort(identityKeys);
+		}
+		
+		// find the first key with the same hash code
+		long hash = (long) System.identityHashCode(msg) << 32;
+		int  low  = 0;
+		int  high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (identityKeys[mid] < hash)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		
+		// check all messages with the same hash code
+		for (int i = low; i < size && (identityKeys[i] & 0xFFFFFFFF00000000L) == hash; i++) {
+			int index = (int) identityKeys[i];
+			if (messages[index] == msg)
+				return index;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Compares two messages for sorting.
+	 * 
+	 * See {@link #finishClassification()} for the sorting criteria.
+	 * 
+	 * @param a  index of the first message
+	 * @param b  index of the second message
+	 * @return a negative value, zero or a positive value if message **a** is lesser than,
+	 *         equal to, or greater than message **b**.
+	 */
+	private int compare(int a, int b) {
+		if (ticks[a] != ticks[b])
+			return Long.compare(ticks[a], ticks[b]);
+		if (tracks[a] != tracks[b])
+			return Integer.compare(tracks[a], tracks[b]);
+		
+		// both NOTE-ON or both NOTE-OFF? - sort by note number
+		int cmd = statuses[a] & 0xF0;
+		if (cmd == (statuses[b] & 0xF0) && (0x80 == cmd || 0x90 == cmd) && data1s[a] != data1s[b])
+			return Byte.compare(data1s[a], data1s[b]);
+		
+		return Integer.compare(msgNums[a], msgNums[b]);
+	}
+}
@@ -94,6 +94,15 @@ public final class MidiDevices {
 	// ring buffer for note history
 	private static ArrayList<AbstractTableModel> noteHistoryObservers = null;
 	
+	/** last tick that has been handled by {@link #refreshByTimeline()} */
+	private static long lastRefreshTick = -1;
+	
+	/** channel states of the sequence, needed to restore the synthesizer after a jump */
+	private static ChannelSnapshots channelSnapshots = null;
+	
+	/** tempo changes of the sequence, needed to calculate time positions */
+	private static TempoMap tempoMap = null;
+	
 	/**
 	 * This class is only used statically so a public constructor is not needed.
 	 */
@@ -108,7 +117,9 @@ public final class MidiDevices {
 	 * @param sequence    The sequence to be set.
 	 */
 	public static void setSequence(Sequence sequence) {
-		seq = sequence;
+		seq              = sequence;
+		channelSnapshots = null;
+		tempoMap         = null;
 	}
 	
 	/**
@@ -148,6 +159,10 @@ public final class MidiDevices {
 		
 		// initialize sequencer and get transmitter
 		Transmitter trans = setupSequencer();
+		if (null == channelSnapshots)
+			channelSnapshots = new ChannelSnapshots(seq);
+		if (null == tempoMap)
+			tempoMap = new TempoMap(seq);
 		
 		// initialize synthesizer and get receiver
 		Receiver rec = setupSynthesizer();
@@ -178,6 +193,11 @@ public final class MidiDevices {
 		
 		// initialize lyrics
 		refreshLyrics();
+		
+		// refreshes at tick 0 are done by the refresh timeline
+		synchronized (MidiDevices.class) {
+			lastRefreshTick = -1;
+		}
 	}
 	
 	/**
@@ -523,7 +543,7 @@ public final class MidiDevices {
 	 */
 	public static String getTimePosition() {
 		if (null != sequencer) {
-			long microseconds = sequencer.getMicrosecondPosition();
+			long microseconds = tempoMap.getMicroseconds(sequencer.getTickPosition());
 			return microsecondsToTimeString(microseconds);
 		}
 		else
@@ -550,7 +570,7 @@ public final class MidiDevices {
 	 */
 	public static String getTimeLength() {
 		if (null != sequencer) {
-			long microseconds = sequencer.getMicrosecondLength();
+			long microseconds = tempoMap.getMicroseconds(sequencer.getTickLength());
 			return microsecondsToTimeString(microseconds);
 		}
 		else
@@ -565,7 +585,7 @@ public final class MidiDevices {
 	 */
 	public static String microsecondsToTimeString(long microseconds) {
 		// get number of full seconds ignoring the rest of an opened second
-		int rest    = (int) microseconds / 1000000; // full seconds
+		int rest    = (int) (microseconds / 1000000); // full seconds
 		int seconds = rest % 60;
 		rest        = rest / 60; // full minutes
 		int minutes = rest % 60;
@@ -584,6 +604,12 @@ public final class MidiDevices {
 	public static void setTickPosition(long pos) {
 		if (null != sequencer)
 			sequencer.setTickPosition(pos);
+		synchronized (MidiDevices.class) {
+			lastRefreshTick = pos;
+		}
+		
+		// restore controllers, programs, pitch bend and so on
+		restoreChannelStates(pos);
 		
 		// reload channel activity
 		for (byte channel = 0; channel < NUMBER_OF_CHANNELS; channel++)
@@ -603,6 +629,40 @@ public final class MidiDevices {
 		rememberVolume();
 	}
 	
+	/**
+	 * Puts all channels of the synthesizer into the state that they have at
+	 * the given tick, according to the {@link ChannelSnapshots} of the sequence.
+	 * 
+	 * @param pos  the tick position
+	 */
+	private static void restoreChannelStates(long pos) {
+		if (null == channelSnapshots)
+			return;
+		
+		// find the right receiver
+		Receiver rec = receiver;
+		if (rec == null && synthesizer != null) {
+			try {
+				rec = synthesizer.getReceiver();
+			}
+			catch (MidiUnavailableException e) {
+			}
+		}
+		if (null == rec)
+			return;
+		
+		// send all messages in one batch
+		try {
+			for (int packed : channelSnapshots.getRestoreMessages(pos)) {
+				ShortMessage msg = new ShortMessage(packed & 0xFF, (packed >> 8) & 0xFF, (packed >> 16) & 0xFF);
+				rec.send(msg, -1);
+			}
+		}
+		catch (InvalidMidiDataException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * Restores the volume settings in the sequencer.
 	 *  
@@ -860,6 +920,48 @@ public final class MidiDevices {
 		synthesizer.getChannels()[channel].setSolo(solo);
 	}
 	
+	/**
+	 * Refreshes the player widgets that have changed since the last call,
+	 * according to the {@link RefreshTimeline} of the sequence.
+	 * 
+	 * Called periodically by the player's refresher thread during playback.
+	 * If the position has moved backwards, all refreshes up to the current
+	 * tick are done.
+	 */
+	public static void refreshByTimeline() {
+		RefreshTimeline timeline = SequenceAnalyzer.getRefreshTimeline();
+		if (null == timeline || null == sequencer)
+			return;
+		
+		// get the refreshes since the last call
+		long   tick = getTickPosition();
+		byte[] refreshes;
+		synchronized (MidiDevices.class) {
+			if (tick == lastRefreshTick)
+				return;
+			if (tick < lastRefreshTick)
+				lastRefreshTick = -1;
+			refreshes       = timeline.getRefreshes(lastRefreshTick, tick);
+			lastRefreshTick = tick;
+		}
+		
+		// refresh
+		boolean isLyricsChange = false;
+		for (byte channel = 0; channel < NUMBER_OF_CHANNELS; channel++) {
+			byte bitmask = refreshes[channel];
+			if (0 != (bitmask & RefreshTimeline.BITMASK_ACTIVITY))
+				refreshChannelActivity(channel);
+			if (0 != (bitmask & RefreshTimeline.BITMASK_HISTORY))
+				refreshNoteHistory(channel);
+			if (0 != (bitmask & RefreshTimeline.BITMASK_INSTRUMENT))
+				refreshInstrument(channel);
+			if (0 != (bitmask & RefreshTimeline.BITMASK_LYRICS))
+				isLyricsChange = true;
+		}
+		if (isLyricsChange)
+			refreshLyrics();
+	}
+	
 	/**
 	 * Is called if at least one NOTE-ON event an a channel has occurred.
 	 * Informs the according table model about the change.
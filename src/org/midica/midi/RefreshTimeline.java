@@ -0,0 +1,109 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.midi;
+
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * This class is an immutable index of the ticks where the player UI must be
+ * refreshed during playback.
+ * 
+ * It is built by the {@link SequenceAnalyzer} and consulted by the player's
+ * own refresher thread via {@link MidiDevices#refreshByTimeline()}.
+ * No events are added to the MIDI sequence for that purpose.
+ * 
+ * Each entry is a bitmasked channel byte:
+ * 
+ * - bits 0-3: channel
+ * - bit 4: instrument change
+ * - bit 5: note history change
+ * - bit 6: activity change
+ * - bit 7: lyrics change
+ * 
+ * @author Jan Trukenmüller
+ */
+public class RefreshTimeline {
+	
+	// bitmasks
+	public static final byte BITMASK_LYRICS     = (byte) 0b1000_0000;
+	public static final byte BITMASK_ACTIVITY   = (byte) 0b0100_0000;
+	public static final byte BITMASK_HISTORY    = (byte) 0b0010_0000;
+	public static final byte BITMASK_INSTRUMENT = (byte) 0b0001_0000;
+	public static final byte BITMASK_CHANNEL    = (byte) 0b0000_1111;
+	
+	private long[] ticks   = null;
+	private int[]  starts  = null; // first entry of each tick, plus the total size
+	private byte[] entries = null;
+	
+	/**
+	 * Creates the timeline.
+	 * 
+	 * @param refreshes  tick -- bitmasked channels that must be refreshed at this tick
+	 */
+	public RefreshTimeline(TreeMap<Long, TreeSet<Byte>> refreshes) {
+		int size = 0;
+		for (TreeSet<Byte> channels : refreshes.values())
+			size += channels.size();
+		ticks   = new long[refreshes.size()];
+		starts  = new int[refreshes.size() + 1];
+		entries = new byte[size];
+		int t = 0;
+		int i = 0;
+		for (Entry<Long, TreeSet<Byte>> tickEntry : refreshes.entrySet()) {
+			ticks[t]  = tickEntry.getKey();
+			starts[t] = i;
+			for (byte bitmaskedChannel : tickEntry.getValue())
+				entries[i++] = bitmaskedChannel;
+			t++;
+		}
+		starts[t] = i;
+	}
+	
+	/**
+	 * Collects the refreshes that are due in the given tick range.
+	 * 
+	 * The returned array contains the combined bitmasks of each channel.
+	 * The channel bits are not set.
+	 * 
+	 * @param fromTick  beginning of the range (exclusive)
+	 * @param toTick    end of the range (inclusive)
+	 * @return bitmasks by channel.
+	 */
+	public byte[] getRefreshes(long fromTick, long toTick) {
+		byte[] bitmasks = new byte[MidiDevices.NUMBER_OF_CHANNELS];
+		for (int t = firstAfter(fromTick); t < ticks.length && ticks[t] <= toTick; t++) {
+			for (int i = starts[t]; i < starts[t + 1]; i++) {
+				byte bitmaskedChannel = entries[i];
+				int  channel          = bitmaskedChannel & BITMASK_CHANNEL;
+				bitmasks[channel]    |= bitmaskedChannel & ~BITMASK_CHANNEL;
+			}
+		}
+		return bitmasks;
+	}
+	
+	/**
+	 * Returns the index of the first tick that is greater than the given tick.
+	 * 
+	 * @param tick  the tick to search for
+	 * @return the index, or the number of ticks if all ticks are lower or equal.
+	 */
+	private int firstAfter(long tick) {
+		int low  = 0;
+		int high = ticks.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (ticks[mid] <= tick)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+}
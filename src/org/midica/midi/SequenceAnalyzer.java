@@ -8,20 +8,20 @@
 package org.midica.midi;
 
 import java.text.SimpleDateFormat;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Iterator;
-import java.util.NavigableMap;
-import java.util.Set;
+import java.util.LinkedHashMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
-import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiMessage;
@@ -62,40 +62,36 @@ public class SequenceAnalyzer {
 	private static MidicaTreeModel banksAndInstrTotal      = null;
 	private static MidicaTreeModel msgTreeModel            = null;
 	
-	private static ArrayList<SingleMessage> messages = null;
-	
-	/**                   channel    --     note      --     tick -- on/off */
-	private static TreeMap<Byte, TreeMap<Byte, TreeMap<Long, Boolean>>> noteOnOffByChannel = null;
-	
-	/**                    channel  --   tick    --    note -- velocity */
-	private static TreeMap<Byte, TreeMap<Long, TreeMap<Byte, Byte>>> noteHistory = null;
-	
-	/**                    channel  --   tick -- number of keys pressed at this time */
-	private static TreeMap<Byte, TreeMap<Long, Integer>> activityByChannel = null;
+	/** all messages, classified on demand */
+	private static MessageStore messageStore = null;
 	
 	/**                    tick     --   channel */
 	private static TreeMap<Long, TreeSet<Byte>> markers = null;
 	
+	/** UI refreshes during playback, created from the markers */
+	private static RefreshTimeline refreshTimeline = null;
+	
 	/**                    tick */
 	private static TreeSet<Long> markerTicks = null;
 	
-	/** translates a MIDI message to the derived SingleMessage */
-	private static HashMap<MidiMessage, SingleMessage> midiMsgToSingleMsg = null;
-	
 	/**
-	 * History of the instrument configuration for each channel.
+	 * Marker ticks collected separately for each channel during the channel-specific
+	 * analysis. Merged into {@link #markerTicks} afterwards.
 	 * 
 	 * - channel
 	 * - tick
-	 * - index:
-	 *     - 0: bankMSB
-	 *     - 1: bankLSB
-	 *     - 2: program number
 	 */
-	private static TreeMap<Byte, TreeMap<Long, Byte[]>> instrumentHistory = null;
+	private static TreeMap<Byte, TreeSet<Long>> markerTicksByChannel = null;
 	
-	/**                    channel   --  tick -- comment   */
-	private static TreeMap<Byte, TreeMap<Long, String>> commentHistory = null;
+	/**
+	 * Number of note-ON events by bank, program and note, in the order of their first occurrence.
+	 * Used to fill the bank/instrument/note trees after the channel-specific analysis.
+	 * 
+	 * - channel
+	 * - packed path: bank MSB (bits 0-7), bank LSB (bits 8-15), program (bits 16-23), note (bits 24-31)
+	 * - number of note-ON events
+	 */
+	private static TreeMap<Byte, LinkedHashMap<Integer, Integer>> notesByInstrument = null;
 	
 	/**
 	 * Describes which parameter (RPN/NRPN and MSB/LSB) will be changed in case of a
@@ -112,31 +108,30 @@ public class SequenceAnalyzer {
 	private static TreeMap<Byte, Byte[]> channelParamConfig = null;
 	
 	/**
-	 * History of {@link #channelParamConfig} by tick.
+	 * Current controller values.
 	 * 
 	 * - channel
-	 * - tick
-	 * - index
-	 *     - 0: RPN MSB
-	 *     - 1: RPN LSB
-	 *     - 2: NRPN MSB
-	 *     - 3: NRPN LSB
-	 *     - 4: 1=RPN, 0=NRPN, -1=unknown
+	 * - controller
 	 */
-	private static TreeMap<Byte, TreeMap<Long, Byte[]>> channelParamHistory = null;
-	
-	/**                  channel  --  controller  --  tick -- value */
-	private static TreeMap<Byte, TreeMap<Byte, TreeMap<Long, Byte>>> controllerHistory = null;
+	private static byte[][] controllerValues = null;
 	
 	/**
-	 * RPN history by tick.
+	 * Current RPN values.
 	 * 
 	 * - channel
 	 * - RPN: (MSB*128+LSB)
-	 * - tick
-	 * - value: (MSB*128+LSB)
+	 * - value: (MSB*256+LSB)
 	 */
-	private static TreeMap<Byte, TreeMap<Integer, TreeMap<Long, Integer>>> rpnHistory = null;
+	private static TreeMap<Byte, TreeMap<Integer, Integer>> rpnValues = null;
+	
+	/**
+	 * Lookup index for each channel.
+	 * 
+	 * Filled during the channel-specific analysis. The histories of notes,
+	 * channel activity, instruments, comments, (N)RPN config and pitch bend
+	 * sensitivity are written directly into it.
+	 */
+	private static ChannelTimeline[] timelines = null;
 	
 	/**
 	 * This class is only used statically so a public constructor is not needed.
@@ -150,14 +145,17 @@ public class SequenceAnalyzer {
 	 * getters don't return the information of a former parsing after a later
 	 * parsing failed.
 	 */
-	public static void reset() {
-		sequenceInfo = null;
-		noteHistory  = null;
+	public static synchronized void reset() {
+		sequenceInfo    = null;
+		timelines       = null;
+		refreshTimeline = null;
+		messageStore    = null;
+		msgTreeModel    = null;
 	}
 	
 	/**
 	 * Analyzes the given MIDI sequence and collects information about it.
-	 * Adds marker events for channel activity changes.
+	 * Creates the refresh timeline for channel activity changes.
 	 * 
 	 * @param seq      The MIDI sequence to be analyzed.
 	 * @param charset  The charset that has been chosen in the file chooser.
@@ -176,6 +174,7 @@ public class SequenceAnalyzer {
 			parse();
 		}
 		catch (Exception e) {
+			timelines = null;
 			if (e instanceof ParseException) {
 				throw (ParseException) e;
 			}
@@ -189,33 +188,108 @@ public class SequenceAnalyzer {
 		postprocess();
 	}
 	
+	/**
+	 * Returns the store containing all MIDI messages, sorted for the message table.
+	 * 
+	 * The messages are classified when they are needed for the first time.
+	 * 
+	 * @return the message store, or **null** if no MIDI sequence has been loaded.
+	 */
+	public static synchronized MessageStore getMessageStore() {
+		classifyMessages();
+		return messageStore;
+	}
+	
 	/**
 	 * Returns a list of all MIDI messages.
 	 * 
-	 * @return MIDI messages
+	 * The list contains views on the message store.
+	 * It's created on each call. The message table uses the store directly.
+	 * 
+	 * @return MIDI messages, or **null** if no MIDI sequence has been loaded.
 	 */
-	public static ArrayList<SingleMessage> getMessages() {
+	public static synchronized ArrayList<SingleMessage> getMessages() {
+		classifyMessages();
+		if (null == messageStore)
+			return null;
+		ArrayList<SingleMessage> messages = new ArrayList<>(messageStore.size());
+		for (int i = 0; i < messageStore.size(); i++)
+			messages.add(messageStore.getSingleMessage(i));
 		return messages;
 	}
 	
 	/**
-	 * Searches for the single message in the message list that has been derived by the given MIDI message.
-	 * Returns the message from the list, if found.
+	 * Returns the tree model for the message tree.
+	 * 
+	 * The messages are classified when they are needed for the first time.
+	 * 
+	 * @return the tree model, or **null** if no MIDI sequence has been loaded.
+	 */
+	public static synchronized MidicaTreeModel getMessageTreeModel() {
+		classifyMessages();
+		return msgTreeModel;
+	}
+	
+	/**
+	 * Returns the ticks where the player UI must be refreshed.
+	 * 
+	 * @return the refresh timeline, or **null** if no MIDI sequence has been analyzed.
+	 */
+	public static RefreshTimeline getRefreshTimeline() {
+		return refreshTimeline;
+	}
+	
+	/**
+	 * Searches for the single message in the message store that has been derived by the given MIDI message.
+	 * Returns a view on the message from the store, if found.
 	 * 
 	 * Used by the decompiler to create warnings due to ignored messages.
 	 * 
 	 * @param msg    MIDI message
 	 * @return the retrieved message, or **null** if no message could be retrieved.
 	 */
-	public static SingleMessage getSingleMsgByMidiMsg(MidiMessage msg) {
+	public static synchronized SingleMessage getSingleMsgByMidiMsg(MidiMessage msg) {
 		
-		SingleMessage singleMsg = midiMsgToSingleMsg.get(msg);
-		if (singleMsg != null)
-			return singleMsg;
+		classifyMessages();
+		if (null == messageStore)
+			return null;
+		int index = messageStore.indexOf(msg);
+		if (index >= 0)
+			return messageStore.getSingleMessage(index);
 		
 		return null;
 	}
 	
+	/**
+	 * Classifies the recorded messages, if not yet done.
+	 * 
+	 * Creates the message tree and stores the classification of each
+	 * message in the message store.
+	 */
+	private static void classifyMessages() {
+		if (null == messageStore || messageStore.isClassified())
+			return;
+		
+		try {
+			msgTreeModel = new MidicaTreeModel(Dict.get(Dict.TAB_MESSAGES), MessageTreeNode.class);
+			for (int i = 0; i < messageStore.size(); i++) {
+				MidiMessage msg = messageStore.getMessage(i);
+				if (msg instanceof MetaMessage)
+					MessageClassifier.processMetaMessage(messageStore, i, msgTreeModel, chosenCharset);
+				else if (msg instanceof ShortMessage)
+					MessageClassifier.processShortMessage(messageStore, i, msgTreeModel);
+				else
+					MessageClassifier.processSysexMessage(messageStore, i, msgTreeModel);
+			}
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+		
+		// sort messages for the message table
+		messageStore.finishClassification();
+	}
+	
 	/**
 	 * Returns the information that have been collected while
 	 * analyzing the MIDI sequence.
@@ -241,10 +315,18 @@ public class SequenceAnalyzer {
 	 * - tick
 	 * - 0=bankMSB, 1=bankLSB, 3=program
 	 * 
+	 * The returned structure is a new copy, created from the channel timelines.
+	 * 
 	 * @return the instrument history, or **null** if no MIDI sequence has been loaded.
 	 */
 	public static TreeMap<Byte, TreeMap<Long, Byte[]>> getInstrumentHistory() {
-		return instrumentHistory;
+		if (null == timelines)
+			return null;
+		TreeMap<Byte, TreeMap<Long, Byte[]>> result = new TreeMap<>();
+		for (byte channel = 0; channel < 16; channel++) {
+			result.put(channel, timelines[channel].getInstrumentHistory());
+		}
+		return result;
 	}
 	
 	/**
@@ -256,10 +338,18 @@ public class SequenceAnalyzer {
 	 * - tick
 	 * - comment
 	 * 
+	 * The returned structure is a new copy, created from the channel timelines.
+	 * 
 	 * @return the channel comment history, or **null** if no MIDI sequence has been loaded.
 	 */
 	public static TreeMap<Byte, TreeMap<Long, String>> getCommentHistory() {
-		return commentHistory;
+		if (null == timelines)
+			return null;
+		TreeMap<Byte, TreeMap<Long, String>> result = new TreeMap<>();
+		for (byte channel = 0; channel < 16; channel++) {
+			result.put(channel, timelines[channel].getCommentHistory());
+		}
+		return result;
 	}
 	
 	/**
@@ -272,10 +362,18 @@ public class SequenceAnalyzer {
 	 * - note
 	 * - velocity
 	 * 
+	 * The returned structure is a new copy, created from the channel timelines.
+	 * 
 	 * @return the note history, or **null** if no MIDI sequence has been loaded.
 	 */
 	public static TreeMap<Byte, TreeMap<Long, TreeMap<Byte, Byte>>> getNoteHistory() {
-		return noteHistory;
+		if (null == timelines)
+			return null;
+		TreeMap<Byte, TreeMap<Long, TreeMap<Byte, Byte>>> result = new TreeMap<>();
+		for (byte channel = 0; channel < 16; channel++) {
+			result.put(channel, timelines[channel].getNoteHistory());
+		}
+		return result;
 	}
 	
 	/**
@@ -288,10 +386,20 @@ public class SequenceAnalyzer {
 	 * - tick
 	 * - on/off
 	 * 
+	 * The returned structure is a new copy, created from the channel timelines.
+	 * 
 	 * @return the on/off history, or **null** if no MIDI sequence has been loaded.
 	 */
 	public static TreeMap<Byte, TreeMap<Byte, TreeMap<Long, Boolean>>> getOnOffHistory() {
-		return noteOnOffByChannel;
+		if (null == timelines)
+			return null;
+		TreeMap<Byte, TreeMap<Byte, TreeMap<Long, Boolean>>> result = new TreeMap<>();
+		for (byte channel = 0; channel < 16; channel++) {
+			TreeMap<Byte, TreeMap<Long, Boolean>> channelOnOff = timelines[channel].getOnOffHistory();
+			if (channelOnOff != null)
+				result.put(channel, channelOnOff);
+		}
+		return result;
 	}
 	
 	/**
@@ -313,64 +421,49 @@ public class SequenceAnalyzer {
 		sequenceInfo.put( "ticks", sequence.getTickLength() );
 		banksAndInstrTotal      = new MidicaTreeModel(Dict.get(Dict.TOTAL));
 		banksAndInstrPerChannel = new MidicaTreeModel(Dict.get(Dict.PER_CHANNEL));
-		msgTreeModel            = new MidicaTreeModel(Dict.get(Dict.TAB_MESSAGES), MessageTreeNode.class);
-		messages                = new ArrayList<>();
+		msgTreeModel            = null;
+		messageStore            = new MessageStore();
 		sequenceInfo.put( "banks_total",      banksAndInstrTotal      );
 		sequenceInfo.put( "banks_per_channel",banksAndInstrPerChannel );
-		sequenceInfo.put( "msg_tree_model",   msgTreeModel            );
-		long   microseconds = sequence.getMicrosecondLength();
+		long   microseconds = new TempoMap(sequence).getMicroseconds(sequence.getTickLength());
 		String time         = MidiDevices.microsecondsToTimeString(microseconds);
 		sequenceInfo.put("time_length", time);
+		timelines = new ChannelTimeline[16];
+		for (byte channel = 0; channel < 16; channel++) {
+			timelines[channel] = new ChannelTimeline();
+		}
 		channelParamConfig = new TreeMap<>();
 		for (byte channel = 0; channel < 16; channel++) {
 			// default (N)RPN config: MSB=LSB=127 (no parameter set), -1: neither RPN nor NRPN is active
 			Byte[] conf = {127, 127, 127, 127, -1};
 			channelParamConfig.put(channel, conf);
-		}
-		channelParamHistory = new TreeMap<>();
-		for (byte channel = 0; channel < 16; channel++) {
-			TreeMap<Long, Byte[]> paramHistory = new TreeMap<>();
-			channelParamHistory.put(channel, paramHistory);
 			
-			// default config (same as the default in channelParamConfig)
-			Byte[] conf0 = {127, 127, 127, 127, -1}; // MSB=LSB=127 (no parameter set), -1: neither RPN nor NRPN is active
-			paramHistory.put(0L, conf0);
+			// default config in the history
+			timelines[channel].addParamConfig(0L, conf);
 		}
-		controllerHistory = new TreeMap<>();
+		controllerValues = new byte[16][128];
 		for (byte channel = 0; channel < 16; channel++) {
 			resetAllControllers(channel, 0L);
 		}
-		rpnHistory = new TreeMap<>();
+		rpnValues = new TreeMap<>();
 		for (byte channel = 0; channel < 16; channel++) {
 			resetAllRPNs(channel, 0L);
 		}
 		
-		// init data structures for the channel activity
-		activityByChannel  = new TreeMap<>();
-		noteOnOffByChannel = new TreeMap<>();
-		markerTicks        = new TreeSet<>();
-		markers            = new TreeMap<>();
-		midiMsgToSingleMsg = new HashMap<>();
-		
-		// init data structures for the note history
-		noteHistory = new TreeMap<>();
+		// init data structures for the markers
+		markerTicks          = new TreeSet<>();
+		markerTicksByChannel = new TreeMap<>();
+		notesByInstrument    = new TreeMap<>();
 		for (byte channel = 0; channel < 16; channel++) {
-			noteHistory.put(channel, new TreeMap<>());
+			markerTicksByChannel.put(channel, new TreeSet<>());
+			notesByInstrument.put(channel, new LinkedHashMap<>());
 		}
+		markers = new TreeMap<>();
 		
-		instrumentHistory = new TreeMap<>();
+		// default instrument config
 		for (byte channel = 0; channel < 16; channel++) {
-			TreeMap<Long, Byte[]> channelHistory = new TreeMap<>();
-			instrumentHistory.put(channel, channelHistory);
-			
-			// default config
 			Byte[] conf0 = {0, 0, 0}; // default values: bankMSB=0, bankLSB=0, program=0
-			channelHistory.put(DEFAULT_CHANNEL_CONFIG_TICK, conf0); // this must be configured before the sequence starts
-		}
-		commentHistory = new TreeMap<>();
-		for (byte channel = 0; channel < 16; channel++) {
-			TreeMap<Long, String> channelCommentHistory = new TreeMap<>();
-			commentHistory.put(channel, channelCommentHistory);
+			timelines[channel].addInstrument(DEFAULT_CHANNEL_CONFIG_TICK, conf0); // this must be configured before the sequence starts
 		}
 	}
 	
@@ -378,35 +471,51 @@ public class SequenceAnalyzer {
 	 * Parses the MIDI sequence track by track and event by event and
 	 * collects information.
 	 * @throws ReflectiveOperationException if a tree node cannot be created.
+	 * @throws InterruptedException if the thread is interrupted while waiting for the channel analysis.
 	 */
-	private static void parse() throws ReflectiveOperationException {
+	private static void parse() throws ReflectiveOperationException, InterruptedException {
 		
 		// Analyze for channel activity, note history, banks, instruments, controllers and (N)RPN,
 		// and channel names (instrument names).
 		// Therefore the CREATED sequence is used.
 		// In this sequence tracks match channels. So we know that we will
 		// process the note-related events in the right order.
-		int trackNum = 0;
-		for (Track t : SequenceCreator.getSequence().getTracks()) {
-			for (int i=0; i < t.size(); i++) {
-				MidiEvent   event = t.get(i);
-				long        tick  = event.getTick();
-				MidiMessage msg   = event.getMessage();
-				
-				if (msg instanceof ShortMessage) {
-					processShortMessageByChannel((ShortMessage) msg, tick);
-				}
-				else if (msg instanceof MetaMessage) {
-					processMetaMessageByChannel((MetaMessage) msg, tick, trackNum);
-				}
+		// The meta tracks are processed first. After that, the channel tracks
+		// are processed in parallel because each of them only affects its own channel.
+		Track[] tracks = SequenceCreator.getSequence().getTracks();
+		ArrayList<Callable<Void>> channelTasks = new ArrayList<>();
+		for (int trackNum = 0; trackNum < tracks.length; trackNum++) {
+			Track t   = tracks[trackNum];
+			int   num = trackNum;
+			if (trackNum < SequenceCreator.NUM_META_TRACKS)
+				processTrackByChannel(t, num);
+			else
+				channelTasks.add(() -> {
+					processTrackByChannel(t, num);
+					return null;
+				});
+		}
+		try {
+			for (Future<Void> result : ForkJoinPool.commonPool().invokeAll(channelTasks)) {
+				result.get();
 			}
-			trackNum++;
 		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		}
+		for (TreeSet<Long> channelMarkerTicks : markerTicksByChannel.values()) {
+			markerTicks.addAll(channelMarkerTicks);
+		}
+		fillBankInstrumentTrees();
+		finishTimelines();
 		
 		// Analyze for general statistics.
 		// Therefore the ORIGINAL sequence is used.
 		KaraokeAnalyzer.resetFileCharset();
-		trackNum = 0;
+		int trackNum = 0;
 		for (Track t : sequence.getTracks()) {
 			int msgNum = 0;
 			for (int i=0; i < t.size(); i++) {
@@ -417,21 +526,9 @@ public class SequenceAnalyzer {
 				if (msg instanceof MetaMessage) {
 					processMetaMessage((MetaMessage) msg, tick, trackNum, msgNum);
 				}
-				else if (msg instanceof ShortMessage) {
-					SingleMessage singleMsg = MessageClassifier.processShortMessage(
-						(ShortMessage) msg, tick, trackNum, msgNum,
-						messages,     // add details and leaf node to messages
-						msgTreeModel  // add leaf node
-					);
-					midiMsgToSingleMsg.put(msg, singleMsg);
-				}
-				else if (msg instanceof SysexMessage) {
-					SingleMessage singleMsg = MessageClassifier.processSysexMessage(
-						(SysexMessage) msg, tick, trackNum, msgNum,
-						messages,     // add details and leaf node to messages
-						msgTreeModel  // add leaf node
-					);
-					midiMsgToSingleMsg.put(msg, singleMsg);
+				else if (msg instanceof ShortMessage || msg instanceof SysexMessage) {
+					// classified later, on demand
+					messageStore.add(msg, tick, trackNum, msgNum, KaraokeAnalyzer.getFileCharset());
 				}
 				else {
 				}
@@ -469,6 +566,30 @@ public class SequenceAnalyzer {
 		}
 	}
 	
+	/**
+	 * Retrieves the channel-specific information from one track of the created sequence.
+	 * 
+	 * Channel tracks may be processed in parallel because each of them only
+	 * contains messages for its own channel.
+	 * 
+	 * @param t         the track
+	 * @param trackNum  track number
+	 */
+	private static void processTrackByChannel(Track t, int trackNum) {
+		for (int i=0; i < t.size(); i++) {
+			MidiEvent   event = t.get(i);
+			long        tick  = event.getTick();
+			MidiMessage msg   = event.getMessage();
+			
+			if (msg instanceof ShortMessage) {
+				processShortMessageByChannel((ShortMessage) msg, tick);
+			}
+			else if (msg instanceof MetaMessage) {
+				processMetaMessageByChannel((MetaMessage) msg, tick, trackNum);
+			}
+		}
+	}
+	
 	/**
 	 * Retrieves some channel-specific information from short messages that can affect following messages.
 	 * 
@@ -483,16 +604,14 @@ public class SequenceAnalyzer {
 	 * Stores these information in order to lookup their values later, when other
 	 * (affected) messages are found.
 	 * 
-	 * Fills the trees for the info view tab "Banks, Instruments, Notes".
+	 * Counts the notes for the info view tab "Banks, Instruments, Notes".
 	 * 
 	 * Does **not** fill the tree in the tab "MIDI Messages".
 	 * 
 	 * @param msg   Short message
 	 * @param tick  Tickstamp
-	 * @throws ReflectiveOperationException if the note-on event cannot be
-	 *         added to one of the tree models.
 	 */
-	private static void processShortMessageByChannel(ShortMessage msg, long tick) throws ReflectiveOperationException {
+	private static void processShortMessageByChannel(ShortMessage msg, long tick) {
 		int  cmd     = msg.getCommand();
 		byte channel = (byte) msg.getChannel();
 		
@@ -500,18 +619,16 @@ public class SequenceAnalyzer {
 		if (ShortMessage.PROGRAM_CHANGE == cmd) {
 			
 			// get current config
-			Entry<Long, Byte> bankMsbEntry = controllerHistory.get(channel).get((byte) 0x00).floorEntry(tick);
-			Entry<Long, Byte> bankLsbEntry = controllerHistory.get(channel).get((byte) 0x20).floorEntry(tick);
-			byte bankMsb       = bankMsbEntry.getValue();
-			byte bankLsb       = bankLsbEntry.getValue();
+			byte bankMsb       = controllerValues[channel][0x00];
+			byte bankLsb       = controllerValues[channel][0x20];
 			byte programNumber = (byte) msg.getData1();
 			Byte[] currentConf = {bankMsb, bankLsb, programNumber};
 			
 			// add to history
-			instrumentHistory.get(channel).put(tick, currentConf);
+			timelines[channel].addInstrument(tick, currentConf);
 			
 			// prepare marker event
-			markerTicks.add(tick);
+			markerTicksByChannel.get(channel).add(tick);
 			
 			return;
 		}
@@ -530,7 +647,7 @@ public class SequenceAnalyzer {
 			// 100-101: RPN LSB/MSB
 			// 102-119: single byte (undefined)
 			// 120-127: mode
-			controllerHistory.get(channel).get(controller).put(tick, value);
+			controllerValues[channel][controller] = value;
 			
 			// (N)RPN MSB/LSB
 			if (controller >= 0x62 && controller <= 0x65) {
@@ -567,8 +684,7 @@ public class SequenceAnalyzer {
 				channelParamConfig.get(channel)[4] = rpnNrpnReset;
 				
 				// add history entry
-				Byte[] confAtTick = channelParamConfig.get(channel).clone();
-				channelParamHistory.get(channel).put(tick, confAtTick);
+				timelines[channel].addParamConfig(tick, channelParamConfig.get(channel));
 			}
 			
 			// Data Entry/Increment/Decrement
@@ -578,7 +694,7 @@ public class SequenceAnalyzer {
 			      || 0x61 == controller) { // data button decrement
 				
 				// find out what parameter has to be changed
-				Byte[] paramMsbLsb = getChannelParamMsbLsbType(channel, tick);
+				Byte[] paramMsbLsb = getParamMsbLsbType(channelParamConfig.get(channel));
 				byte msb  = paramMsbLsb[0];
 				byte lsb  = paramMsbLsb[1];
 				byte type = paramMsbLsb[2];
@@ -587,21 +703,16 @@ public class SequenceAnalyzer {
 				if (1 == type) {
 					
 					// get current value
-					int rpn = (128 * (int) msb) + lsb;
-					TreeMap<Long, Integer> paramValueHistory = rpnHistory.get(channel).get(rpn);
-					if (null == paramValueHistory) {
+					int     rpn          = (128 * (int) msb) + lsb;
+					Integer currentValue = rpnValues.get(channel).get(rpn);
+					if (null == currentValue) {
 						
 						// not yet set - get the default
 						byte[] defaultMsbLsb = getRpnDefault(msb, lsb);
-						int    defaultValue  = (defaultMsbLsb[0] << 8) + defaultMsbLsb[1];
-						paramValueHistory = new TreeMap<>();
-						paramValueHistory.put(0L, defaultValue);
-						rpnHistory.get(channel).put(rpn, paramValueHistory);
+						currentValue = (defaultMsbLsb[0] << 8) + defaultMsbLsb[1];
 					}
-					Entry<Long, Integer> paramValueEntry = paramValueHistory.floorEntry(tick);
-					int  currentValue = paramValueEntry.getValue();
-					byte msbVal       = (byte) (currentValue >> 8 & 0xFF);
-					byte lsbVal       = (byte) (currentValue      & 0xFF);
+					byte msbVal = (byte) (currentValue >> 8 & 0xFF);
+					byte lsbVal = (byte) (currentValue      & 0xFF);
 					
 					// change MSB or LSB or both
 					if (0x06 == controller)         // data entry MSB
@@ -629,7 +740,9 @@ public class SequenceAnalyzer {
 					
 					// calculate and set the new value
 					int newValue = (msbVal << 8) + lsbVal;
-					rpnHistory.get(channel).get(rpn).put(tick, newValue);
+					rpnValues.get(channel).put(rpn, newValue);
+					if (0 == rpn)
+						timelines[channel].addPitchBendSensitivity(tick, newValue);
 				}
 			}
 		}
@@ -698,15 +811,8 @@ public class SequenceAnalyzer {
 			metaInfo.put("copyright", copyright);
 		}
 		
-		// fetch tree and detailed message information
-		SingleMessage singleMsg = MessageClassifier.processMetaMessage(
-			(MetaMessage) msg, tick, trackNum, msgNum,
-			messages,                        // add details and leaf node to messages
-			msgTreeModel,                    // add leaf node
-			chosenCharset,                   // charset from the file chooser
-			KaraokeAnalyzer.getFileCharset() // charset from last charset switch in a meta message
-		);
-		midiMsgToSingleMsg.put(msg, singleMsg);
+		// remember the message for the tree and detailed message information
+		messageStore.add(msg, tick, trackNum, msgNum, KaraokeAnalyzer.getFileCharset());
 	}
 	
 	/**
@@ -734,7 +840,7 @@ public class SequenceAnalyzer {
 			
 			// remember the channel comment
 			text = CharsetUtils.getTextFromBytes(data, chosenCharset, KaraokeAnalyzer.getFileCharset());
-			commentHistory.get(channel).put(tick, text);
+			timelines[channel].addComment(tick, text);
 		}
 	}
 	
@@ -744,111 +850,94 @@ public class SequenceAnalyzer {
 	 * - tracks note events for the note history
 	 * - tracks the channel activity
 	 * - prepares markers
-	 * - builds up the tree model for the bank/instrument/note trees
+	 * - counts the note for the bank/instrument/note trees
 	 * 
 	 * @param tick      The tickstamp when this event occurred.
 	 * @param channel   The MIDI channel number.
 	 * @param note      The note number.
 	 * @param velocity  The note's velocity.
-	 * @throws ReflectiveOperationException if the note cannot be added to
-	 *         one of the tree models.
 	 */
-	private static void addNoteOn(long tick, byte channel, byte note, byte velocity) throws ReflectiveOperationException {
+	private static void addNoteOn(long tick, byte channel, byte note, byte velocity) {
 		
-		// note on/off tracking
-		TreeMap<Byte, TreeMap<Long, Boolean>> noteTickOnOff = noteOnOffByChannel.get(channel);
-		if (null == noteTickOnOff) {
-			noteTickOnOff = new TreeMap<>();
-			noteOnOffByChannel.put(channel, noteTickOnOff);
-		}
-		TreeMap<Long, Boolean> pressedAtTick = noteTickOnOff.get(note);
-		if (null == pressedAtTick) {
-			pressedAtTick = new TreeMap<>();
-			noteTickOnOff.put(note, pressedAtTick);
-		}
-		boolean wasPressedBefore = pressedAtTick.containsKey(tick);
-		if (wasPressedBefore)
-			// Key press and/or release conflict.
-			// There was a(nother) ON or OFF event for the same key in the
-			// same tick. It's probably depending on the sequencer or
-			// synthesizer implementation what happens.
-			// Here we just assume that these events will be processed in
-			// the same order as we found them.
-			wasPressedBefore = pressedAtTick.get(tick);
-		if (wasPressedBefore)
+		// note on/off tracking, channel activity and note history
+		if (! timelines[channel].addNoteOn(tick, note, velocity))
 			return;
-		pressedAtTick.put(tick, true);
-		
-		// get last channel activity
-		int lastChannelActivity = 0;
-		TreeMap<Long, Integer> activityAtTick = activityByChannel.get(channel);
-		if (null == activityAtTick) {
-			activityAtTick = new TreeMap<>();
-			activityByChannel.put(channel, activityAtTick);
-		}
-		else {
-			Entry<Long, Integer> lastActivity = activityAtTick.floorEntry(tick);
-			if (lastActivity != null) {
-				lastChannelActivity = lastActivity.getValue();
-			}
-		}
-		activityAtTick.put(tick, lastChannelActivity + 1);
-		
-		// note history by channel
-		TreeMap<Long, TreeMap<Byte, Byte>> noteHistoryForChannel = noteHistory.get(channel);
-		TreeMap<Byte, Byte> noteHistoryAtTick = noteHistoryForChannel.get(tick);
-		if (null == noteHistoryAtTick) {
-			noteHistoryAtTick = new TreeMap<>();
-			noteHistoryForChannel.put(tick, noteHistoryAtTick);
-		}
-		noteHistoryAtTick.put(note, velocity);
 		
 		// prepare marker event
-		markerTicks.add(tick);
-		
-		
-		// bank/instrument/note info for the tree
-		String channelTxt = Dict.get(Dict.CHANNEL) + " " + channel;
-		String channelID  = String.format("%02X", channel);
-		Entry<Long, Byte[]> instrEntry = instrumentHistory.get(channel).floorEntry(tick);
-		Byte[] config     = instrEntry.getValue();
-		int    bankNum    = (config[0] << 7) | config[1]; // bankMSB * 2^7 + bankLSB
-		String bankSyntax = config[0] + ""; // MSB as a string
-		if (config[1] > 0) {  // MSB/LSB
-			bankSyntax    = bankSyntax + Dict.getSyntax(Dict.SYNTAX_PROG_BANK_SEP) + config[1];
-		}
-		String bankTxt    = Dict.get(Dict.BANK)             + " "  + bankNum   + ", "
-		                  + Dict.get(Dict.TOOLTIP_BANK_MSB) + ": " + config[0] + ", "
-				          + Dict.get(Dict.TOOLTIP_BANK_LSB) + ": " + config[1];
-		String bankID     = String.format("%02X%02X", config[0], config[1]);
-		String programStr = config[2] + "";
-		String programID  = String.format("%02X", config[2]);
-		String instrTxt   = 9 == channel ? Dict.getDrumkit(config[2]) : Dict.getInstrument(config[2]);
-		String noteStr    = note + "";
-		String noteTxt    = 9 == channel ? Dict.getPercussionLongId(note) : Dict.getNote(note);
-		String noteID     = String.format("%02X", note);
-		if (9 == channel) {
-			noteID = "Z" + noteID; // give percussion notes have a different (higher) ID
-		}
+		markerTicksByChannel.get(channel).add(tick);
+		
 		
-		// per channel           id         name        number
-		String[] channelOpts = { channelID, channelTxt, null       };
-		String[] bankOpts    = { bankID,    bankTxt,    bankSyntax };
-		String[] programOpts = { programID, instrTxt,   programStr };
-		String[] noteOpts    = { noteID,    noteTxt,    noteStr    };
-		ArrayList<String[]> perChannel = new ArrayList<>();
-		perChannel.add( channelOpts );
-		perChannel.add( bankOpts    );
-		perChannel.add( programOpts );
-		perChannel.add( noteOpts    );
-		banksAndInstrPerChannel.add(perChannel, null);
-		
-		// total
-		ArrayList<String[]> total = new ArrayList<>();
-		total.add( bankOpts    );
-		total.add( programOpts );
-		total.add( noteOpts    );
-		banksAndInstrTotal.add(total, null);
+		// count the note for the bank/instrument/note trees
+		Byte[] config = timelines[channel].getInstrument(tick);
+		int    path   = (config[0] & 0xFF) | (config[1] & 0xFF) << 8 | (config[2] & 0xFF) << 16 | (note & 0xFF) << 24;
+		notesByInstrument.get(channel).merge(path, 1, Integer::sum);
+	}
+	
+	/**
+	 * Fills the trees for the info view tab "Banks, Instruments, Notes" with the
+	 * notes counted during the channel-specific analysis.
+	 * 
+	 * The channels are processed in ascending order, and the notes of each channel
+	 * in the order of their first occurrence. So the trees look exactly as if each
+	 * note had been added directly.
+	 * 
+	 * @throws ReflectiveOperationException if a note cannot be added to
+	 *         one of the tree models.
+	 */
+	private static void fillBankInstrumentTrees() throws ReflectiveOperationException {
+		for (Entry<Byte, LinkedHashMap<Integer, Integer>> channelEntry : notesByInstrument.entrySet()) {
+			byte channel = channelEntry.getKey();
+			for (Entry<Integer, Integer> pathEntry : channelEntry.getValue().entrySet()) {
+				int    path   = pathEntry.getKey();
+				Byte[] config = { (byte) path, (byte) (path >> 8), (byte) (path >> 16) };
+				byte   note   = (byte) (path >> 24);
+				
+				// bank/instrument/note info for the tree
+				String channelTxt = Dict.get(Dict.CHANNEL) + " " + channel;
+				String channelID  = String.format("%02X", channel);
+				int    bankNum    = (config[0] << 7) | config[1]; // bankMSB * 2^7 + bankLSB
+				String bankSyntax = config[0] + ""; // MSB as a string
+				if (config[1] > 0) {  // MSB/LSB
+					bankSyntax    = bankSyntax + Dict.getSyntax(Dict.SYNTAX_PROG_BANK_SEP) + config[1];
+				}
+				String bankTxt    = Dict.get(Dict.BANK)             + " "  + bankNum   + ", "
+				                  + Dict.get(Dict.TOOLTIP_BANK_MSB) + ": " + config[0] + ", "
+				                  + Dict.get(Dict.TOOLTIP_BANK_LSB) + ": " + config[1];
+				String bankID     = String.format("%02X%02X", config[0], config[1]);
+				String programStr = config[2] + "";
+				String programID  = String.format("%02X", config[2]);
+				String instrTxt   = 9 == channel ? Dict.getDrumkit(config[2]) : Dict.getInstrument(config[2]);
+				String noteStr    = note + "";
+				String noteTxt    = 9 == channel ? Dict.getPercussionLongId(note) : Dict.getNote(note);
+				String noteID     = String.format("%02X", note);
+				if (9 == channel) {
+					noteID = "Z" + noteID; // give percussion notes have a different (higher) ID
+				}
+				
+				// per channel           id         name        number
+				String[] channelOpts = { channelID, channelTxt, null       };
+				String[] bankOpts    = { bankID,    bankTxt,    bankSyntax };
+				String[] programOpts = { programID, instrTxt,   programStr };
+				String[] noteOpts    = { noteID,    noteTxt,    noteStr    };
+				ArrayList<String[]> perChannel = new ArrayList<>();
+				perChannel.add( channelOpts );
+				perChannel.add( bankOpts    );
+				perChannel.add( programOpts );
+				perChannel.add( noteOpts    );
+				
+				// total
+				ArrayList<String[]> total = new ArrayList<>();
+				total.add( bankOpts    );
+				total.add( programOpts );
+				total.add( noteOpts    );
+				
+				// add the note once for each occurrence
+				for (int i = 0; i < pathEntry.getValue(); i++) {
+					banksAndInstrPerChannel.add(new ArrayList<>(perChannel), null);
+					banksAndInstrTotal.add(new ArrayList<>(total), null);
+				}
+			}
+		}
 	}
 	
 	/**
@@ -864,63 +953,19 @@ public class SequenceAnalyzer {
 	 */
 	private static void addNoteOff(long tick, byte channel, byte note) {
 		
-		// check if the released key has been pressed before
-		TreeMap<Byte, TreeMap<Long, Boolean>> noteTickOnOff = noteOnOffByChannel.get(channel);
-		if (null == noteTickOnOff) {
-			noteTickOnOff = new TreeMap<>();
-			noteOnOffByChannel.put(channel, noteTickOnOff);
-		}
-		TreeMap<Long, Boolean> pressedAtTick = noteTickOnOff.get(note);
-		if (null == pressedAtTick) {
-			pressedAtTick = new TreeMap<>();
-			noteTickOnOff.put(note, pressedAtTick);
-		}
-		boolean wasPressedBefore = false;
-		Entry<Long, Boolean> wasPressed = pressedAtTick.floorEntry(tick);
-		if (null != wasPressed) {
-			wasPressedBefore = wasPressed.getValue();
-		}
-		if (!wasPressedBefore) {
-			return;
-		}
-		
-		// mark as released
-		pressedAtTick.put(tick, false);
-		
-		// channel activity
-		TreeMap<Long, Integer> activityAtTick = activityByChannel.get(channel);
-		if (null == activityAtTick) {
-			activityAtTick = new TreeMap<>();
-			activityByChannel.put(channel, activityAtTick);
-		}
-		Entry<Long, Integer> lastActivity = activityAtTick.floorEntry(tick);
-		if (null == lastActivity) {
-			// A key was released before it has been pressed for the very first time.
+		// note on/off tracking and channel activity
+		if (! timelines[channel].addNoteOff(tick, note))
 			return;
-		}
-		
-		// decrement activity
-		Integer lastActivityCount = lastActivity.getValue();
-		if (lastActivityCount < 1) {
-			// should never happen
-			return;
-		}
-		activityAtTick.put(tick, lastActivityCount - 1);
 		
 		// prepare marker event
-		markerTicks.add(tick);
+		markerTicksByChannel.get(channel).add(tick);
 	}
 	
 	/**
 	 * Adds last information to the info data structure about the MIDI sequence.
-	 * Adds marker events to the sequence.
-	 * 
-	 * @throws ParseException if the marker events cannot be added to the MIDI sequence.
+	 * Creates the refresh timeline for the player.
 	 */
-	private static void postprocess() throws ParseException {
-		
-		// sort messages for the message table
-		Collections.sort(messages);
+	private static void postprocess() {
 		
 		// average, min and max tempo
 		TreeMap<Long, Integer> tempoMpq = (TreeMap<Long, Integer>) sequenceInfo.get("tempo_mpq");
@@ -987,33 +1032,23 @@ public class SequenceAnalyzer {
 		sequenceInfo.put( "tempo_mpq_min", Integer.toString(minMpq)      );
 		sequenceInfo.put( "tempo_mpq_max", Integer.toString(maxMpq)      );
 		
-		// reset default channel config for unused channels (to avoid confusion in the player UI)
+		// Decide which channel to use for the channel part of the lyrics marker bytes.
+		ArrayList<Byte> activeChannels = new ArrayList<>();
 		for (byte channel = 0; channel < 16; channel++) {
-			
-			// channel unused?
-			TreeMap<Long, TreeMap<Byte, Byte>> channelNoteHistory = noteHistory.get(channel);
-			if (channelNoteHistory.isEmpty()) {
-				TreeMap<Long, Byte[]> channelInstrumentHistory = instrumentHistory.get(channel);
-				
-				Byte[] conf0 = {-1, -1, -1};
-				channelInstrumentHistory.put(-1L, conf0);
-			}
+			if (timelines[channel].hasActivity())
+				activeChannels.add(channel);
 		}
-		
-		// Decide which channel to use for the channel part of the lyrics marker bytes.
-		Set<Byte> activeChannels = activityByChannel.keySet();
-		byte      lyricsChannel  = -1; // channel part for the lyrics marker events
+		byte lyricsChannel = -1; // channel part for the lyrics marker events
 		if (KaraokeAnalyzer.getLyrics().size() > 0) {
-			Iterator<Byte> it = activeChannels.iterator();
-			if (it.hasNext()) {
+			if (activeChannels.size() > 0) {
 				// use one of the active channels for the lyrics
-				lyricsChannel = it.next();
+				lyricsChannel = activeChannels.get(0);
 			}
 			else {
 				// No channel activity at all, only lyrics.
 				// Use channel 0 for lyrics.
 				lyricsChannel = 0;
-				activityByChannel.put(lyricsChannel, new TreeMap<>());
+				activeChannels.add(lyricsChannel);
 			}
 		}
 		
@@ -1038,43 +1073,30 @@ public class SequenceAnalyzer {
 				}
 				
 				// is there an instrument change at the current tick?
-				Byte[] instrChange = instrumentHistory.get(channel).get(tick);
-				if (instrChange != null) {
+				ChannelTimeline timeline = timelines[channel];
+				if (timeline.hasInstrumentChange(tick)) {
 					instrumentChanged = true;
 				}
 				
 				// is there any channel activity at the current tick?
-				if (activityByChannel.get(channel).containsKey(tick)) {
+				if (timeline.hasActivityChange(tick)) {
 					activityChanged = true;
 					
 					// is at least one of the channel events a NOTE-ON?
-					TreeMap<Byte, TreeMap<Long, Boolean>>    noteTickOnOff    = noteOnOffByChannel.get(channel);
-					Set<Entry<Byte, TreeMap<Long, Boolean>>> noteTickOnOffSet = noteTickOnOff.entrySet();
-					for (Entry<Byte, TreeMap<Long, Boolean>> noteTickOnOffEntry : noteTickOnOffSet) {
-						TreeMap<Long, Boolean> tickOnOff = noteTickOnOffEntry.getValue();
-						if (null == tickOnOff) {
-							continue;
-						}
-						Boolean onOff = tickOnOff.get(tick);
-						if (null == onOff) {
-							continue;
-						}
-						if (onOff) {
-							historyChanged = true;
-							break;
-						}
+					if (timeline.hasNoteOn(tick)) {
+						historyChanged = true;
 					}
 				}
 				
 				// apply bitmasks to the channel byte
 				if (lyricsChanged)
-					channel |= MidiListener.MARKER_BITMASK_LYRICS;
+					channel |= RefreshTimeline.BITMASK_LYRICS;
 				if (activityChanged)
-					channel |= MidiListener.MARKER_BITMASK_ACTIVITY;
+					channel |= RefreshTimeline.BITMASK_ACTIVITY;
 				if (historyChanged)
-					channel |= MidiListener.MARKER_BITMASK_HISTORY;
+					channel |= RefreshTimeline.BITMASK_HISTORY;
 				if (instrumentChanged)
-					channel |= MidiListener.MARKER_BITMASK_INSTRUMENT;
+					channel |= RefreshTimeline.BITMASK_INSTRUMENT;
 				
 				// add the channel to the marker
 				if (lyricsChanged || activityChanged || historyChanged || instrumentChanged) {
@@ -1088,15 +1110,37 @@ public class SequenceAnalyzer {
 				markers.put(tick, channelsAtTick);
 			}
 		}
-		try {
-			SequenceCreator.addMarkers(markers);
-		}
-		catch (InvalidMidiDataException e) {
-			throw new ParseException(Dict.get(Dict.ERROR_ANALYZE_POSTPROCESS) + e.getMessage());
-		}
+		refreshTimeline = new RefreshTimeline(markers);
 		
 		// postprocess the lyrics for karaoke
 		KaraokeAnalyzer.postprocess();
+		
+		// release the data structures that are only needed during the analysis
+		markerTicksByChannel = null;
+		markers              = null;
+		notesByInstrument    = null;
+		channelParamConfig   = null;
+		controllerValues     = null;
+		rpnValues            = null;
+	}
+	
+	/**
+	 * Finishes the lookup index for each channel.
+	 * 
+	 * Called after the channel-specific analysis so that the
+	 * {@link MessageClassifier} can already use the index.
+	 */
+	private static void finishTimelines() {
+		for (byte channel = 0; channel < 16; channel++) {
+			
+			// reset default channel config for unused channels (to avoid confusion in the player UI)
+			if (! timelines[channel].hasNotes()) {
+				Byte[] conf0 = {-1, -1, -1};
+				timelines[channel].addInstrument(-1L, conf0);
+			}
+			
+			timelines[channel].finish();
+		}
 	}
 	
 	/**
@@ -1108,27 +1152,7 @@ public class SequenceAnalyzer {
 	 */
 	public static boolean getChannelActivity(byte channel, long tick) {
 		
-		// get ticks of this channel
-		TreeMap<Long, Integer> ticksInChannel = activityByChannel.get(channel);
-		if (null == ticksInChannel) {
-			// channel not used at all
-			return false;
-		}
-		
-		// get the last activity
-		Entry<Long, Integer> activityState = ticksInChannel.floorEntry(tick);
-		if (null == activityState) {
-			// nothing happened in the channel so far
-			return false;
-		}
-		
-		// inactive?
-		if (0 == activityState.getValue()) {
-			return false;
-		}
-		
-		// active
-		return true;
+		return timelines[channel].isActive(tick);
 	}
 	
 	/**
@@ -1147,93 +1171,10 @@ public class SequenceAnalyzer {
 	 * @return   the note history
 	 */
 	public static ArrayList<Long[]> getNoteHistory(byte channel, long tick) {
-		
-		ArrayList<Long[]> result = new ArrayList<>();
-		if (null == noteHistory) {
-			return result;
-		}
-		TreeMap<Long, TreeMap<Byte, Byte>> channelHistory = noteHistory.get(channel);
-		
-		// get past notes
-		long lastTick = tick;
-		int i = 0;
-		PAST:
-		while (i < NOTE_HISTORY_BUFFER_SIZE_PAST) {
-			
-			// get all notes from the last tick
-			Entry<Long, TreeMap<Byte, Byte>> notesAtTickEntry = channelHistory.floorEntry(lastTick);
-			if (null == notesAtTickEntry) {
-				break PAST;
-			}
-			lastTick = notesAtTickEntry.getKey();
-			NavigableMap<Byte, Byte> notesAtTick = notesAtTickEntry.getValue().descendingMap(); // reverse order
-			
-			// each note at lastTick
-			Set<Entry<Byte, Byte>> noteEntrySet = notesAtTick.entrySet();
-			for (Entry<Byte, Byte> noteEntry : noteEntrySet) {
-				byte note     = noteEntry.getKey();
-				byte velocity = noteEntry.getValue();
-				
-				Long[] row = {
-					(long) note,     // note number
-					(long) velocity, // 0 - 127
-					lastTick,        // tick
-					0L,              // 0 = past; 1 = future
-				};
-				result.add(row);
-				
-				i++;
-				if (i >= NOTE_HISTORY_BUFFER_SIZE_PAST) {
-					break PAST;
-				}
-			}
-			
-			// go further into the past
-			lastTick--;
-		}
-		
-		// reverse the order of the past notes
-		Collections.reverse(result);
-		
-		// get future notes
-		long nextTick = tick + 1;
-		i = 0;
-		FUTURE:
-		while (i < NOTE_HISTORY_BUFFER_SIZE_FUTURE) {
-			
-			// get all notes from the next tick
-			Entry<Long, TreeMap<Byte, Byte>> notesAtTickEntry = channelHistory.ceilingEntry(nextTick);
-			if (null == notesAtTickEntry) {
-				break FUTURE;
-			}
-			nextTick = notesAtTickEntry.getKey();
-			TreeMap<Byte, Byte> notesAtTick = notesAtTickEntry.getValue();
-			
-			// each note at nextTick
-			Set<Entry<Byte, Byte>> noteEntrySet = notesAtTick.entrySet();
-			for (Entry<Byte, Byte> noteEntry : noteEntrySet) {
-				byte note     = noteEntry.getKey();
-				byte velocity = noteEntry.getValue();
-				
-				Long[] row = {
-					(long) note,     // note number
-					(long) velocity, // 0 - 127
-					nextTick,        // tick
-					1L,              // 0 = past; 1 = future
-				};
-				result.add(row);
-				
-				i++;
-				if (i >= NOTE_HISTORY_BUFFER_SIZE_FUTURE) {
-					break FUTURE;
-				}
-			}
-			
-			// go further into the future
-			nextTick++;
+		if (null == timelines) {
+			return new ArrayList<>();
 		}
-		
-		return result;
+		return timelines[channel].getNoteHistory(tick, NOTE_HISTORY_BUFFER_SIZE_PAST, NOTE_HISTORY_BUFFER_SIZE_FUTURE);
 	}
 	
 	/**
@@ -1250,8 +1191,7 @@ public class SequenceAnalyzer {
 	 * @return         instrument description as described above
 	 */
 	public static Byte[] getInstrument(byte channel, long tick) {
-		Entry<Long, Byte[]> entry = instrumentHistory.get(channel).floorEntry(tick);
-		return entry.getValue();
+		return timelines[channel].getInstrument(tick);
 	}
 	
 	/**
@@ -1262,13 +1202,13 @@ public class SequenceAnalyzer {
 	 * @return         channel comment
 	 */
 	public static String getChannelComment(byte channel, long tick) {
-		Entry<Long, String> entry = commentHistory.get(channel).floorEntry(tick);
+		String comment = timelines[channel].getComment(tick);
 		
-		if (null == entry) {
+		if (null == comment) {
 			return "";
 		}
 		
-		return entry.getValue();
+		return comment;
 	}
 	
 	/**
@@ -1288,10 +1228,18 @@ public class SequenceAnalyzer {
 	 * @return         MSB/LSB/type as described above
 	 */
 	public static Byte[] getChannelParamMsbLsbType(byte channel, long tick) {
-		
-		// get all params at the given tick
-		Entry<Long, Byte[]> entry = channelParamHistory.get(channel).floorEntry(tick);
-		Byte[] confAtTick = entry.getValue();
+		return getParamMsbLsbType(timelines[channel].getParamConfig(tick));
+	}
+	
+	/**
+	 * Calculates RPN/NRPN info from the given (N)RPN config.
+	 * 
+	 * See {@link #getChannelParamMsbLsbType(byte, long)} for the returned structure.
+	 * 
+	 * @param confAtTick  (N)RPN config, like in {@link #channelParamConfig}
+	 * @return MSB/LSB/type
+	 */
+	private static Byte[] getParamMsbLsbType(Byte[] confAtTick) {
 		
 		// get current type (0=RPN, 1=NRPN or -1=none)
 		byte type = confAtTick[4];
@@ -1322,8 +1270,7 @@ public class SequenceAnalyzer {
 	 * @return         pitch bend sensitivity
 	 */
 	public static final float getPitchBendSensitivity(byte channel, long tick) {
-		Entry<Long, Integer> entry = rpnHistory.get(channel).get(0).floorEntry(tick);
-		int  paramValue = entry.getValue();
+		int  paramValue = timelines[channel].getPitchBendSensitivity(tick);
 		byte msb        = (byte) (paramValue >> 8 & 0xFF);
 		byte lsb        = (byte) (paramValue      & 0xFF);
 		
@@ -1361,20 +1308,15 @@ public class SequenceAnalyzer {
 	 */
 	private static final void resetAllControllers(byte channel, long tick) {
 		
-		TreeMap<Byte, TreeMap<Long, Byte>> channelCtrlHistory = new TreeMap<>();
 		if (0L == tick) {
 			// initialize ALL controllers by their default values
 			for (int ctrl = 0; ctrl < 128; ctrl++) {
-				TreeMap<Long, Byte> ctrlHistoryEntry = new TreeMap<>();
-				byte defaultValue = getControllerDefault(ctrl);
-				ctrlHistoryEntry.put(tick, defaultValue);
-				channelCtrlHistory.put((byte) ctrl, ctrlHistoryEntry);
+				controllerValues[channel][ctrl] = getControllerDefault(ctrl);
 			}
 		}
 		else {
 			// TODO: only reset the controllers mentioned in gm2, page 14
 		}
-		controllerHistory.put(channel, channelCtrlHistory);
 		
 		// TODO: reset modes:
 		// omni on / poly (page 11)
@@ -1422,7 +1364,7 @@ public class SequenceAnalyzer {
 		// implies: reset all controllers
 		// implies: stop all ongoing notes
 		// see: MPE docu, page 5
-		
+	
 	}
 	
 	/**
@@ -1590,7 +1532,8 @@ public class SequenceAnalyzer {
 	 * @param tick     tickstamp of the sequence
 	 */
 	private static final void resetAllRPNs(byte channel, long tick) {
-		TreeMap<Integer, TreeMap<Long, Integer>> channelRpnHistory = new TreeMap<>();
+		TreeMap<Integer, Integer> channelRpnValues = new TreeMap<>();
+		rpnValues.put(channel, channelRpnValues);
 		
 		byte msb = 0x00;
 		byte lsb = 0x00;
@@ -1598,12 +1541,11 @@ public class SequenceAnalyzer {
 		// normal RPNs
 		while (lsb <= 0x06) {
 			int rpn = msb * 128 + lsb;
-			TreeMap<Long, Integer> rpnHistoryEntry = new TreeMap<>();
 			byte[] defaultMsbLsb = getRpnDefault(msb, lsb);
 			int    defaultValue  = (defaultMsbLsb[0] << 8) + defaultMsbLsb[1];
-			rpnHistoryEntry.put(tick, defaultValue);
-			channelRpnHistory.put(rpn, rpnHistoryEntry);
-			rpnHistory.put(channel, channelRpnHistory);
+			channelRpnValues.put(rpn, defaultValue);
+			if (0 == rpn)
+				timelines[channel].addPitchBendSensitivity(tick, defaultValue);
 			lsb++;
 		}
 		
@@ -1612,12 +1554,9 @@ public class SequenceAnalyzer {
 		lsb = 0x00;
 		while (lsb <= 0x08) {
 			int rpn = msb * 128 + lsb;
-			TreeMap<Long, Integer> rpnHistoryEntry = new TreeMap<>();
 			byte[] defaultMsbLsb = getRpnDefault(msb, lsb);
 			int    defaultValue  = (defaultMsbLsb[0] << 8) + defaultMsbLsb[1];
-			rpnHistoryEntry.put(tick, defaultValue);
-			channelRpnHistory.put(rpn, rpnHistoryEntry);
-			rpnHistory.put(channel, channelRpnHistory);
+			channelRpnValues.put(rpn, defaultValue);
 			lsb++;
 		}
 	}
@@ -7,10 +7,8 @@
 
 package org.midica.midi;
 
-import java.util.Map.Entry;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MetaMessage;
@@ -47,24 +45,26 @@ public class SequenceCreator {
 	public static final int IMPORT_FORMAT_LY        =  5;
 	public static final int IMPORT_FORMAT_MUSESCORE =  6;
 	
-	private static boolean  isSuccess    = false;              // last parsing attempt successful?
-	private static int      importFormat = IMPORT_FORMAT_NONE; // last parsing attempt
-	private static int      resolution   = DEFAULT_RESOLUTION;
-	private static String   charset      = null;  // chosen (or assumed) charset of the source file
-	private static Track[]  tracks       = null;
-	private static Sequence seq;
+	/** creator of the last published sequence, or **null** */
+	private static volatile SequenceCreator published = null;
 	
-	/**                    channel   --     note  -- event      */
-	private static HashMap<Integer, HashMap<Integer, MidiEvent>> lastNoteOffEvent = null;
+	/** last parsing attempt successful? */
+	private static volatile boolean isSuccess = false;
 	
-	/**
-	 * This class is only used statically so a public constructor is not needed.
-	 */
-	private SequenceCreator() {
-	}
+	private final int      importFormat; // file type of the import file
+	private final int      resolution;
+	private final String   charset;      // chosen (or assumed) charset of the source file
+	private final Track[]  tracks;
+	private final Sequence seq;
+	
+	/** buffered events of the channel tracks (**null** for the meta tracks) */
+	private final EventBuffer[] buffers;
+	
+	/** buffer index of the last note-off event, by (channel * 128 + note), or **-1** */
+	private final int[] lastNoteOffEvent = new int[16 * 128];
 	
 	/**
-	 * Creates a new sequence and sets it's resolution to the default value.
+	 * Creates a new sequence with the default resolution.
 	 * Initiates all necessary data structures.
 	 * 
 	 * Only called by {@link MidicaPLParser}.
@@ -73,18 +73,19 @@ public class SequenceCreator {
 	 * @throws InvalidMidiDataException if {@link Sequence#PPQ} is not a valid division type.
 	 *                                  This should never happen.
 	 */
-	public static void reset(String chosenCharset) throws InvalidMidiDataException {
-		if (null == chosenCharset) {
-			chosenCharset = Config.get(Config.CHARSET_MPL);
-		}
-		
-		reset(DEFAULT_RESOLUTION, chosenCharset, IMPORT_FORMAT_MIDICAPL);
+	public SequenceCreator(String chosenCharset) throws InvalidMidiDataException {
+		this(DEFAULT_RESOLUTION, null == chosenCharset ? Config.get(Config.CHARSET_MPL) : chosenCharset, IMPORT_FORMAT_MIDICAPL);
 	}
 	
 	/**
-	 * Creates a new sequence and sets it's resolution to the given value.
+	 * Creates a new sequence with the given resolution.
 	 * Initiates all necessary data structures.
-	 * This method is called by the {@link MidiParser}.
+	 * This constructor is called by the {@link MidiParser}.
+	 * 
+	 * Each parsing process uses its own creator. So different files can be
+	 * parsed in different threads at the same time. The result becomes
+	 * visible for the rest of the application only after it has been
+	 * published by {@link #publish(SequenceCreator)}.
 	 * 
 	 * @param res            Resolution of the new sequence.
 	 * @param chosenCharset  Charset to be used for text-based messages.
@@ -92,37 +93,85 @@ public class SequenceCreator {
 	 * @throws InvalidMidiDataException    if {@link Sequence}.PPQ is not a valid division type.
 	 *                                     This should never happen.
 	 */
-	public static void reset(int res, String chosenCharset, int importFormat) throws InvalidMidiDataException {
+	public SequenceCreator(int res, String chosenCharset, int importFormat) throws InvalidMidiDataException {
 		
 		// create a new sequence
-		resolution       = res;
-		charset          = chosenCharset;
-		seq              = new Sequence(Sequence.PPQ, resolution);
-		tracks           = new Track[NUM_TRACKS];
-		lastNoteOffEvent = new HashMap<>();
+		resolution = res;
+		charset    = chosenCharset;
+		seq        = new Sequence(Sequence.PPQ, resolution);
+		tracks     = new Track[NUM_TRACKS];
+		buffers    = new EventBuffer[NUM_TRACKS];
 		for (int i = 0; i < NUM_TRACKS; i++) {
 			tracks[i] = seq.createTrack();
-			lastNoteOffEvent.put(i, new HashMap<Integer, MidiEvent>());
+			if (i >= NUM_META_TRACKS)
+				buffers[i] = new EventBuffer();
 		}
-		SequenceCreator.importFormat = importFormat;
-		SequenceCreator.isSuccess    = false;
-		
-		return;
+		Arrays.fill(lastNoteOffEvent, -1);
+		this.importFormat = importFormat;
+	}
+	
+	/**
+	 * Forgets the last published sequence.
+	 * 
+	 * Called before a new file is parsed for the player.
+	 */
+	public static void reset() {
+		published = null;
+		isSuccess = false;
+	}
+	
+	/**
+	 * Makes the sequence of the given creator available for the rest of
+	 * the application (player, analyzer, exporters).
+	 * 
+	 * @param creator  the creator of the parsed sequence
+	 */
+	public static void publish(SequenceCreator creator) {
+		isSuccess = false;
+		published = creator;
 	}
 	
 	/**
 	 * Remembers that this parsing attempt was successful.
 	 */
 	public static void postprocess() {
-		SequenceCreator.isSuccess = true;
+		isSuccess = true;
 	}
 	
 	/**
-	 * Returns the created MIDI sequence from the last import attempt, if any.
+	 * Returns the published MIDI sequence from the last import attempt, if any.
 	 * 
 	 * @return    MIDI sequence or **null**.
 	 */
 	public static Sequence getSequence() {
+		SequenceCreator creator = published;
+		if (null == creator)
+			return null;
+		return creator.getCreatedSequence();
+	}
+	
+	/**
+	 * Returns the created MIDI sequence.
+	 * 
+	 * Before the sequence is returned, all buffered channel events are sorted
+	 * and added to their tracks.
+	 * 
+	 * @return    MIDI sequence.
+	 */
+	public synchronized Sequence getCreatedSequence() {
+		try {
+			for (int i = NUM_META_TRACKS; i < NUM_TRACKS; i++) {
+				if (buffers[i].size() > 0)
+					buffers[i].flushInto(tracks[i]);
+			}
+		}
+		catch (InvalidMidiDataException e) {
+			throw new IllegalStateException("Invalid buffered event. This should not happen. Please report.", e);
+		}
+		
+		// buffer indices are not valid any more
+		Arrays.fill(lastNoteOffEvent, -1);
+		
 		return seq;
 	}
 	
@@ -130,12 +179,15 @@ public class SequenceCreator {
 	 * Returns the import format of the last attempted import.
 	 * 
 	 * The import format is one of the IMPORT_FILE_* constants.
-	 * If the last import attempt failed, {@link #IMPORT_FORMAT_NONE} is returned.
+	 * If no sequence has been published, {@link #IMPORT_FORMAT_NONE} is returned.
 	 * 
 	 * @return the import format, as described above.
 	 */
 	public static int getImportFormat() {
-		return importFormat;
+		SequenceCreator creator = published;
+		if (null == creator)
+			return IMPORT_FORMAT_NONE;
+		return creator.importFormat;
 	}
 	
 	/**
@@ -146,8 +198,9 @@ public class SequenceCreator {
 	 * @return the charset.
 	 */
 	public static String getCharset() {
-		if (isSuccess)
-			return charset;
+		SequenceCreator creator = published;
+		if (isSuccess && creator != null)
+			return creator.charset;
 		return null;
 	}
 	
@@ -161,7 +214,7 @@ public class SequenceCreator {
 	 * @param value      The value to set.
 	 * @param isLSB      **false**: set the MSB; **true**: set the LSB
 	 */
-	public static void setBank(int channel, long tick, int value, boolean isLSB) throws InvalidMidiDataException {
+	public void setBank(int channel, long tick, int value, boolean isLSB) throws InvalidMidiDataException {
 		
 		// choose the right controller
 		int controller = 0x00;
@@ -175,7 +228,7 @@ public class SequenceCreator {
 		// set bank MSB or LSB
 		ShortMessage msg = new ShortMessage();
 		msg.setMessage(ShortMessage.CONTROL_CHANGE, channel, controller, value);
-		tracks[channel + NUM_META_TRACKS].add( new MidiEvent(msg, tick) );
+		add(channel + NUM_META_TRACKS, msg, tick);
 	}
 	
 	/**
@@ -194,18 +247,18 @@ public class SequenceCreator {
 	 *                    during initialization.
 	 * @throws InvalidMidiDataException if invalid MIDI data is used to create a MIDI message.
 	 */
-	public static void initChannel(int channel, int instrNum, String comment, long tick) throws InvalidMidiDataException {
+	public void initChannel(int channel, int instrNum, String comment, long tick) throws InvalidMidiDataException {
 		
 		// meta message: instrument name
 		MetaMessage metaMsg = new MetaMessage();
 		byte[] data = CharsetUtils.getBytesFromText(comment, charset);
 		metaMsg.setMessage(MidiListener.META_INSTRUMENT_NAME, data, data.length);
-		tracks[channel + NUM_META_TRACKS].add( new MidiEvent(metaMsg, tick) );
+		add(channel + NUM_META_TRACKS, metaMsg, tick);
 		
 		// program change
 		ShortMessage msg = new ShortMessage();
 		msg.setMessage(ShortMessage.PROGRAM_CHANGE, channel, instrNum, 0);
-		tracks[channel + NUM_META_TRACKS].add( new MidiEvent(msg, tick) );
+		add(channel + NUM_META_TRACKS, msg, tick);
 	}
 	
 	/**
@@ -218,7 +271,7 @@ public class SequenceCreator {
 	 * @param velocity     Velocity of the key stroke.
 	 * @throws InvalidMidiDataException if invalid MIDI data is used to create a MIDI message.
 	 */
-	public static void addMessageKeystroke(int channel, int note, long startTick, long endTick, int velocity) throws InvalidMidiDataException {
+	public void addMessageKeystroke(int channel, int note, long startTick, long endTick, int velocity) throws InvalidMidiDataException {
 		addMessageNoteON(channel, note, startTick, velocity);
 		addMessageNoteOFF(channel, note, endTick);
 	}
@@ -232,11 +285,9 @@ public class SequenceCreator {
 	 * @param velocity    Velocity of the key stroke.
 	 * @throws InvalidMidiDataException if invalid MIDI data is used to create a MIDI message.
 	 */
-	public static void addMessageNoteON(int channel, int note, long tick, int velocity) throws InvalidMidiDataException {
-		ShortMessage msg = new ShortMessage();
-		msg.setMessage(ShortMessage.NOTE_ON, channel, note, velocity);
-		MidiEvent event = new MidiEvent(msg, tick);
-		tracks[channel + NUM_META_TRACKS].add(event);
+	public void addMessageNoteON(int channel, int note, long tick, int velocity) throws InvalidMidiDataException {
+		checkShortMessage(channel, note, velocity);
+		buffers[channel + NUM_META_TRACKS].add(ShortMessage.NOTE_ON | channel, note, velocity, tick);
 	}
 	
 	/**
@@ -247,14 +298,32 @@ public class SequenceCreator {
 	 * @param tick       Tickstamp of the event.
 	 * @throws InvalidMidiDataException if invalid MIDI data is used to create a MIDI message.
 	 */
-	public static void addMessageNoteOFF(int channel, int note, long tick) throws InvalidMidiDataException {
-		ShortMessage msg = new ShortMessage();
-		msg.setMessage(ShortMessage.NOTE_OFF, channel, note, 0);
-		MidiEvent event = new MidiEvent(msg, tick);
-		tracks[channel + NUM_META_TRACKS].add(event);
+	public void addMessageNoteOFF(int channel, int note, long tick) throws InvalidMidiDataException {
+		checkShortMessage(channel, note, 0);
+		int index = buffers[channel + NUM_META_TRACKS].add(ShortMessage.NOTE_OFF | channel, note, 0, tick);
 		
 		// remember event, in case a correction is necessary later
-		lastNoteOffEvent.get(channel).put(note, event);
+		lastNoteOffEvent[channel * 128 + note] = index;
+	}
+	
+	/**
+	 * Checks if a channel message with the given values can be created.
+	 * 
+	 * Needed because buffered short messages are created only after parsing,
+	 * but invalid values must be reported immediately.
+	 * 
+	 * @param channel  Channel number from 0 to 15.
+	 * @param data1    First data byte.
+	 * @param data2    Second data byte.
+	 * @throws InvalidMidiDataException if one of the values is out of range.
+	 */
+	private void checkShortMessage(int channel, int data1, int data2) throws InvalidMidiDataException {
+		if ((channel & 0xFFFFFFF0) != 0)
+			throw new InvalidMidiDataException("channel out of range: " + channel);
+		if (data1 < 0 || data1 > 127)
+			throw new InvalidMidiDataException("data1 out of range: " + data1);
+		if (data2 < 0 || data2 > 127)
+			throw new InvalidMidiDataException("data2 out of range: " + data2);
 	}
 	
 	/**
@@ -268,34 +337,32 @@ public class SequenceCreator {
 	 * 
 	 * This can happen if a note is played twice in a row in the same channel, with a legato value of more than 100%.
 	 * 
+	 * The event is still buffered at this time, so it's corrected in place.
+	 * 
 	 * @param channel     Channel number from 0 to 15.
 	 * @param note        Note number.
 	 * @param fromTick    Tick from where the event shall be moved away.
 	 * @param toTick      Tick where the event shall be moved to.
 	 * @throws Exception if the event to be moved was not found or has a different tick than expected.
 	 */
-	public static void moveNoteOffMessage(int channel, int note, long fromTick, long toTick) throws Exception {
-		Track track = tracks[channel + NUM_META_TRACKS];
+	public void moveNoteOffMessage(int channel, int note, long fromTick, long toTick) throws Exception {
+		EventBuffer buffer = buffers[channel + NUM_META_TRACKS];
 		
 		// get the event to be corrected
-		MidiEvent event = lastNoteOffEvent.get(channel).get(note);
-		if (event == null) {
+		int index = -1;
+		if (0 == (channel & 0xFFFFFFF0) && note >= 0 && note < 128)
+			index = lastNoteOffEvent[channel * 128 + note];
+		if (index < 0) {
 			throw new Exception("Cannot move note-off: event not found. This should not happen. Please report.");
 		}
 		
-		// remove the event
-		track.remove(event);
-		
 		// check
-		if (event.getTick() != fromTick) {
+		if (buffer.getTick(index) != fromTick) {
 			throw new Exception("cannot move note-off - wrong 'from' tick. This should not happen. Please report.");
 		}
 		
 		// change tick
-		event.setTick(toTick);
-		
-		// re-add the event
-		track.add(event);
+		buffer.move(index, toTick);
 	}
 	
 	/**
@@ -305,7 +372,7 @@ public class SequenceCreator {
 	 * @param tick    Tickstamp of the tempo change event.
 	 * @throws InvalidMidiDataException if invalid MIDI data is used to create a MIDI message.
 	 */
-	public static void addMessageTempo(int bpm, long tick) throws InvalidMidiDataException {
+	public void addMessageTempo(int bpm, long tick) throws InvalidMidiDataException {
 		// bpm (beats per minute) --> mpq (microseconds per quarter)
 		int mpq = Tempo.bpmToMpq(bpm);
 		int cmd = MidiListener.META_SET_TEMPO;
@@ -329,7 +396,7 @@ public class SequenceCreator {
 	 * @param tick         Tickstamp of the time signature event
 	 * @throws InvalidMidiDataException if invalid MIDI data is used to create a MIDI message.
 	 */
-	public static void addMessageTimeSignature(int numerator, int denominator, long tick) throws InvalidMidiDataException {
+	public void addMessageTimeSignature(int numerator, int denominator, long tick) throws InvalidMidiDataException {
 		int cmd = MidiListener.META_TIME_SIGNATURE;
 		
 		// calculate valid denominators
@@ -369,7 +436,7 @@ public class SequenceCreator {
 	 * @param preferFlat    **true** use flat symbols, if both is possible; **false**: use sharp
 	 * @throws InvalidMidiDataException if invalid MIDI data is used to create a MIDI message.
 	 */
-	public static void addMessageKeySignature(int note, boolean isMajor, long tick, boolean preferFlat) throws InvalidMidiDataException {
+	public void addMessageKeySignature(int note, boolean isMajor, long tick, boolean preferFlat) throws InvalidMidiDataException {
 		int cmd = MidiListener.META_KEY_SIGNATURE;
 		
 		// calculate sharps or flats
@@ -435,7 +502,7 @@ public class SequenceCreator {
 	 * @param copyright The message to be added to the sequence.
 	 * @throws InvalidMidiDataException if invalid MIDI data is used to create a MIDI message.
 	 */
-	public static void addMessageCopyright(String copyright) throws InvalidMidiDataException {
+	public void addMessageCopyright(String copyright) throws InvalidMidiDataException {
 		MetaMessage metaMsg = new MetaMessage();
 		byte[] data = CharsetUtils.getBytesFromText(copyright, charset);
 		metaMsg.setMessage(MidiListener.META_COPYRIGHT, data, data.length);
@@ -451,7 +518,7 @@ public class SequenceCreator {
 	 * @param isRp26    **true** in case of a RP-026 message, otherwis: **false**
 	 * @throws InvalidMidiDataException if invalid MIDI data is used to create a MIDI message.
 	 */
-	public static void addMessageLyrics(String lyrics, long tick, boolean isRp26) throws InvalidMidiDataException {
+	public void addMessageLyrics(String lyrics, long tick, boolean isRp26) throws InvalidMidiDataException {
 		MetaMessage metaMsg = new MetaMessage();
 		byte[] data = CharsetUtils.getBytesFromText(lyrics, charset);
 		metaMsg.setMessage(MidiListener.META_LYRICS, data, data.length);
@@ -473,7 +540,7 @@ public class SequenceCreator {
 	 * @param skType  Soft Karaoke text type: **0**, **1** or **2** - as described above.
 	 * @throws InvalidMidiDataException
 	 */
-	public static void addMessageText(String text, long tick, int skType) throws InvalidMidiDataException {
+	public void addMessageText(String text, long tick, int skType) throws InvalidMidiDataException {
 		MetaMessage metaMsg = new MetaMessage();
 		byte[] data = CharsetUtils.getBytesFromText(text, charset);
 		metaMsg.setMessage(MidiListener.META_TEXT, data, data.length);
@@ -490,9 +557,8 @@ public class SequenceCreator {
 	 * @param channel    Channel number from 0 to 15.
 	 * @param tick       Tickstamp of the event.
 	 */
-	public static void addMessageGeneric(MidiMessage msg, int channel, long tick) {
-		MidiEvent event = new MidiEvent(msg, tick);
-		tracks[channel + NUM_META_TRACKS].add(event);
+	public void addMessageGeneric(MidiMessage msg, int channel, long tick) {
+		add(channel + NUM_META_TRACKS, msg, tick);
 	}
 	
 	/**
@@ -505,7 +571,7 @@ public class SequenceCreator {
 	 * @param msg     Generic MIDI message.
 	 * @param tick    Tickstamp of the event.
 	 */
-	public static void addMessageGeneric(MidiMessage msg, long tick) {
+	public void addMessageGeneric(MidiMessage msg, long tick) {
 		MidiEvent event = new MidiEvent(msg, tick);
 		tracks[0].add(event);
 	}
@@ -522,57 +588,34 @@ public class SequenceCreator {
 	 * @param track  Track number.
 	 * @param tick   Tickstamp of the event.
 	 */
-	public static void addMessageToTrack(MidiMessage msg, int track, long tick) {
-		MidiEvent event = new MidiEvent(msg, tick);
-		tracks[track].add(event);
+	public void addMessageToTrack(MidiMessage msg, int track, long tick) {
+		add(track, msg, tick);
 	}
 	
 	/**
-	 * Returns the resolution of the MIDI sequence in ticks per quarter note.
+	 * Adds a MIDI message to the given track or to the track's buffer, if the
+	 * track is buffered.
 	 * 
-	 * @return Resolution in ticks per quarter note.
+	 * @param msg    MIDI message.
+	 * @param track  Track number.
+	 * @param tick   Tickstamp of the event.
 	 */
-	public static int getResolution() {
-		return resolution;
+	private void add(int track, MidiMessage msg, long tick) {
+		if (buffers[track] != null)
+			buffers[track].add(msg, tick);
+		else
+			tracks[track].add(new MidiEvent(msg, tick));
 	}
 	
 	/**
-	 * Adds meta events of the type **marker** to the sequence. These events
-	 * show that the activity state of some channels change at this point.
+	 * Returns the resolution of the published MIDI sequence in ticks per quarter note.
 	 * 
-	 * This is called by the {@link SequenceAnalyzer} after all other analyzing
-	 * is done.
-	 * 
-	 * The markers are always added to track 0.
-	 * 
-	 * @param markers  First dimension: **tick**; Second dimension: **bitmasked channels**
-	 *                 that change their activity (and/or other properties) at this tick.
-	 * @throws InvalidMidiDataException if one of the marker messages cannot be created.
+	 * @return Resolution in ticks per quarter note.
 	 */
-	public static void addMarkers(TreeMap<Long, TreeSet<Byte>> markers) throws InvalidMidiDataException {
-		
-		for (Entry<Long, TreeSet<Byte>> eventData : markers.entrySet()) {
-			
-			// get general parameters for the event to be created
-			long          tick              = eventData.getKey();
-			TreeSet<Byte> bitmaskedChannels = eventData.getValue();
-			int           length            = bitmaskedChannels.size();
-			
-			// message part (all channels in the current tick's marker)
-			byte[] content = new byte[length];
-			int i = 0;
-			for (Object channelObj : bitmaskedChannels.toArray()) {
-				byte bitmaskedChannel = (byte) channelObj;
-				byte channel          = (byte) (bitmaskedChannel & MidiListener.MARKER_BITMASK_CHANNEL);
-				content[i]            = bitmaskedChannel;
-				i++;
-			}
-			
-			// create and add the event
-			MetaMessage metaMsg = new MetaMessage();
-			metaMsg.setMessage(MidiListener.META_MARKER, content, length);
-			MidiEvent event = new MidiEvent(metaMsg, tick);
-			tracks[0].add(event);
-		}
+	public static int getResolution() {
+		SequenceCreator creator = published;
+		if (null == creator)
+			return DEFAULT_RESOLUTION;
+		return creator.resolution;
 	}
 }
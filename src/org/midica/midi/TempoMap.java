@@ -0,0 +1,130 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.midi;
+
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+/**
+ * This class converts between ticks and microseconds of a sequence.
+ * 
+ * The tempo changes of all tracks are collected once. If several tempo
+ * changes have the same tick, the last one (in track order) is used.
+ * 
+ * The time of each tempo change is stored as microseconds multiplied by
+ * the resolution. So the conversion is exact and rounding errors don't
+ * accumulate over many tempo changes. Lookups are done by binary search.
+ * 
+ * Sequences with an SMPTE based division type have a constant tempo.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class TempoMap {
+	
+	private static final int DEFAULT_MPQ = 500000; // 120 BPM
+	
+	private final boolean isPpq;
+	private final double  ticksPerSecond; // only for SMPTE
+	private final long    resolution;
+	private long[]        ticks = null; // tick of each tempo change, beginning with tick 0
+	private long[]        times = null; // time of each tempo change in microseconds * resolution
+	private int[]         mpqs  = null; // tempo after each tempo change
+	
+	/**
+	 * Creates the tempo map of the given sequence.
+	 * 
+	 * @param sequence  the MIDI sequence
+	 */
+	public TempoMap(Sequence sequence) {
+		isPpq          = Sequence.PPQ == sequence.getDivisionType();
+		resolution     = Math.max(1, sequence.getResolution());
+		ticksPerSecond = sequence.getDivisionType() * resolution;
+		
+		// collect tempo changes
+		TreeMap<Long, Integer> changes = new TreeMap<>();
+		changes.put(0L, DEFAULT_MPQ);
+		if (isPpq) {
+			for (Track track : sequence.getTracks()) {
+				for (int i = 0; i < track.size(); i++) {
+					MidiMessage msg = track.get(i).getMessage();
+					if (msg instanceof MetaMessage && MidiListener.META_SET_TEMPO == ((MetaMessage) msg).getType()) {
+						byte[] data = ((MetaMessage) msg).getData();
+						if (data.length < 3)
+							continue;
+						int mpq = ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+						if (mpq > 0)
+							changes.put(track.get(i).getTick(), mpq);
+					}
+				}
+			}
+		}
+		
+		// calculate the time of each change
+		ticks = new long[changes.size()];
+		times = new long[changes.size()];
+		mpqs  = new int[changes.size()];
+		int i = 0;
+		for (Entry<Long, Integer> entry : changes.entrySet()) {
+			ticks[i] = entry.getKey();
+			mpqs[i]  = entry.getValue();
+			if (i > 0)
+				times[i] = times[i - 1] + (ticks[i] - ticks[i - 1]) * mpqs[i - 1];
+			i++;
+		}
+	}
+	
+	/**
+	 * Returns the time of the given tick.
+	 * 
+	 * @param tick  the tickstamp
+	 * @return the time in microseconds, rounded down.
+	 */
+	public long getMicroseconds(long tick) {
+		if (! isPpq)
+			return (long) (tick * 1000000.0 / ticksPerSecond);
+		
+		int i = getIndexByTick(tick);
+		return (times[i] + (tick - ticks[i]) * mpqs[i]) / resolution;
+	}
+	
+	/**
+	 * Returns the tick at the given time.
+	 * 
+	 * @param microseconds  the time in microseconds
+	 * @return the last tick at or before the given time.
+	 */
+	public long getTick(long microseconds) {
+		if (! isPpq)
+			return (long) (microseconds * ticksPerSecond / 1000000.0);
+		
+		long time = microseconds * resolution;
+		int  i    = Arrays.binarySearch(times, time);
+		if (i < 0)
+			i = Math.max(0, -i - 2);
+		return ticks[i] + (time - times[i]) / mpqs[i];
+	}
+	
+	/**
+	 * Returns the index of the last tempo change at or before the given tick.
+	 * 
+	 * @param tick  the tickstamp
+	 * @return the index.
+	 */
+	private int getIndexByTick(long tick) {
+		int i = Arrays.binarySearch(ticks, tick);
+		if (i < 0)
+			i = Math.max(0, -i - 2);
+		return i;
+	}
+}
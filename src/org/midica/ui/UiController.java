@@ -96,7 +96,7 @@ public class UiController implements ActionListener, WindowListener, ItemListene
 	 * and the parser classes.
 	 */
 	public UiController() {
-		mplParser       = new MidicaPLParser(true);
+		mplParser       = new MidicaPLParser();
 		midiParser      = new MidiParser();
 		aldaImporter    = new AldaImporter();
 		abcImporter     = new AbcImporter();
@@ -570,7 +570,10 @@ public class UiController implements ActionListener, WindowListener, ItemListene
 		WaitView     waitView = new WaitView(view);
 		ExportWorker worker   = new ExportWorker(waitView, exporter, file);
 		worker.execute();
-		waitView.init(Dict.get(Dict.WAIT_EXPORT));
+		if (exporter.isCancellable())
+			waitView.init(Dict.get(Dict.WAIT_EXPORT), worker::cancelExport);
+		else
+			waitView.init(Dict.get(Dict.WAIT_EXPORT));
 		
 		// wait until the file is exported and than evaluate the export result
 		try {
@@ -1007,6 +1010,6 @@ public class UiController implements ActionListener, WindowListener, ItemListene
 		}
 		
 		// refresh syntax in the parser
-		MidicaPLParser.refreshSyntax();
+		mplParser.refreshSyntax();
 	}
 }
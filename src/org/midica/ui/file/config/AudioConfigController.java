@@ -75,6 +75,9 @@ public class AudioConfigController extends FileConfigController {
 		initWidgetConfig( Config.AU_SAMPLE_RATE,      view.fldSampleRate,     Float.class,   fromConfig );
 		initWidgetConfig( Config.AU_CHANNELS,         view.cbxChannels,       Integer.class, fromConfig );
 		initWidgetConfig( Config.AU_IS_BIG_ENDIAN,    view.cbxIsBigEndian,    Boolean.class, fromConfig );
+		initWidgetConfig( Config.AU_RENDER_MODE,      view.cbxRenderMode,     Integer.class, fromConfig );
+		initWidgetConfig( Config.AU_SILENCE_LEVEL,    view.fldSilenceLevel,   Float.class,   fromConfig );
+		initWidgetConfig( Config.AU_MAX_TAIL,         view.fldMaxTail,        Float.class,   fromConfig );
 	}
 	
 	@Override
@@ -152,4 +155,18 @@ public class AudioConfigController extends FileConfigController {
 		
 		return model;
 	}
+	
+	/**
+	 * Returns the model for the render mode combobox.
+	 * 
+	 * @return the combobox model
+	 */
+	public static DefaultComboBoxModel<NamedInteger> getComboboxModelRenderMode() {
+		DefaultComboBoxModel<NamedInteger> model = new DefaultComboBoxModel<>();
+		model.addElement(new NamedInteger(Dict.get(Dict.AU_RENDER_SERIAL),   AudioExporter.RENDER_SERIAL,   true));
+		model.addElement(new NamedInteger(Dict.get(Dict.AU_RENDER_CHANNELS), AudioExporter.RENDER_CHANNELS, true));
+		model.addElement(new NamedInteger(Dict.get(Dict.AU_RENDER_SEGMENTS), AudioExporter.RENDER_SEGMENTS, true));
+		
+		return model;
+	}
 }
@@ -47,6 +47,9 @@ public class AudioConfigView extends FileConfigView {
 	JTextField              fldSampleRate;
 	JComboBox<NamedInteger> cbxChannels;
 	JCheckBox               cbxIsBigEndian;
+	JComboBox<NamedInteger> cbxRenderMode;
+	JTextField              fldSilenceLevel;
+	JTextField              fldMaxTail;
 	
 	/**
 	 * Creates the window for the decompile configuration.
@@ -76,8 +79,12 @@ public class AudioConfigView extends FileConfigView {
 		fldSampleRate     = new JTextField();
 		cbxChannels       = new JComboBox<>();
 		cbxIsBigEndian    = new JCheckBox();
+		cbxRenderMode     = new JComboBox<>();
+		fldSilenceLevel   = new JTextField();
+		fldMaxTail        = new JTextField();
 		cbxEncoding.setModel(AudioConfigController.getComboboxModelEncoding());
 		cbxChannels.setModel(AudioConfigController.getComboboxModelChannels());
+		cbxRenderMode.setModel(AudioConfigController.getComboboxModelRenderMode());
 		
 		// create controller
 		return AudioConfigController.getInstance(this, icon);
@@ -212,6 +219,60 @@ public class AudioConfigView extends FileConfigView {
 		JLabel descIsBigEndian = new JLabel(Dict.get(Dict.AUDIO_IS_BIG_ENDIAN_D));
 		area.add(descIsBigEndian, constrRight);
 		
+		// render mode
+		// label
+		constrLeft.gridy++;
+		JLabel lblRenderMode = new JLabel(Dict.get(Dict.AUDIO_RENDER_MODE));
+		Laf.makeBold(lblRenderMode);
+		area.add(lblRenderMode, constrLeft);
+		
+		// combobox
+		constrCenter.gridy++;
+		cbxRenderMode.addActionListener(controller);
+		constrCenter.gridwidth = 1;
+		area.add(cbxRenderMode, constrCenter);
+		
+		// description
+		constrRight.gridy++;
+		JLabel descRenderMode = new JLabel(Dict.get(Dict.AUDIO_RENDER_MODE_D));
+		area.add(descRenderMode, constrRight);
+		
+		// silence level
+		// label
+		constrLeft.gridy++;
+		JLabel lblSilenceLevel = new JLabel(Dict.get(Dict.AUDIO_SILENCE_LEVEL));
+		Laf.makeBold(lblSilenceLevel);
+		area.add(lblSilenceLevel, constrLeft);
+		
+		// text field
+		constrCenter.gridy++;
+		fldSilenceLevel.getDocument().addDocumentListener(controller);
+		fldSilenceLevel.setPreferredSize(new Dimension(TEXT_FIELD_WIDTH, TEXT_FIELD_HEIGHT));
+		area.add(fldSilenceLevel, constrCenter);
+		
+		// description
+		constrRight.gridy++;
+		JLabel descSilenceLevel = new JLabel(Dict.get(Dict.AUDIO_SILENCE_LEVEL_D));
+		area.add(descSilenceLevel, constrRight);
+		
+		// maximum tail
+		// label
+		constrLeft.gridy++;
+		JLabel lblMaxTail = new JLabel(Dict.get(Dict.AUDIO_MAX_TAIL));
+		Laf.makeBold(lblMaxTail);
+		area.add(lblMaxTail, constrLeft);
+		
+		// text field
+		constrCenter.gridy++;
+		fldMaxTail.getDocument().addDocumentListener(controller);
+		fldMaxTail.setPreferredSize(new Dimension(TEXT_FIELD_WIDTH, TEXT_FIELD_HEIGHT));
+		area.add(fldMaxTail, constrCenter);
+		
+		// description
+		constrRight.gridy++;
+		JLabel descMaxTail = new JLabel(Dict.get(Dict.AUDIO_MAX_TAIL_D));
+		area.add(descMaxTail, constrRight);
+		
 		// separator
 		constrLeft.gridy++;
 		constrFull.gridy = constrLeft.gridy;
@@ -249,5 +310,8 @@ public class AudioConfigView extends FileConfigView {
 		keyBindingManager.addBindingsForFocus(        fldSampleRate,     Dict.KEY_AU_CONF_FLD_SAMPLE_RATE      );
 		keyBindingManager.addBindingsForComboboxOpen( cbxChannels,       Dict.KEY_AU_CONF_CHANNELS             );
 		keyBindingManager.addBindingsForCheckbox(     cbxIsBigEndian,    Dict.KEY_AU_CONF_IS_BIG_ENDIAN        );
+		keyBindingManager.addBindingsForComboboxOpen( cbxRenderMode,     Dict.KEY_AU_CONF_RENDER_MODE          );
+		keyBindingManager.addBindingsForFocus(        fldSilenceLevel,   Dict.KEY_AU_CONF_FLD_SILENCE_LEVEL    );
+		keyBindingManager.addBindingsForFocus(        fldMaxTail,        Dict.KEY_AU_CONF_FLD_MAX_TAIL         );
 	}
 }
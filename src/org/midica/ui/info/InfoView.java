@@ -43,10 +43,12 @@ import org.midica.config.Dict;
 import org.midica.config.KeyBinding;
 import org.midica.config.KeyBindingManager;
 import org.midica.config.Laf;
+import org.midica.file.read.ParseProfiler;
 import org.midica.file.read.SequenceParser;
 import org.midica.file.read.SoundbankParser;
 import org.midica.midi.KaraokeAnalyzer;
 import org.midica.midi.MessageClassifier;
+import org.midica.midi.MessageStore;
 import org.midica.midi.SequenceAnalyzer;
 import org.midica.ui.model.DrumkitTableModel;
 import org.midica.ui.model.IMessageType;
@@ -1087,6 +1089,31 @@ public class InfoView extends JDialog {
 		FlowLabel lblNumTracksContent = new FlowLabel(numTracks, CPL_MIDI_INFO, PWIDTH_GENERAL_INFO_VALUE);
 		area.add(lblNumTracksContent, constraints);
 		
+		// parser profile
+		if (ParseProfiler.hasReport()) {
+			
+			// spacer
+			constraints.gridy++;
+			constraints.gridx = 0;
+			area.add(new JLabel(" "), constraints);
+			
+			// headline
+			constraints.insets    = Laf.INSETS_WE;
+			constraints.gridwidth = 2; // colspan
+			constraints.gridy++;
+			constraints.gridx     = 0;
+			constraints.anchor    = GridBagConstraints.NORTHWEST;
+			JLabel lblProfileHeadline = new JLabel(Dict.get(Dict.PARSER_PROFILE));
+			Laf.makeBold(lblProfileHeadline);
+			area.add(lblProfileHeadline, constraints);
+			
+			// report
+			constraints.gridy++;
+			FlowLabel lblProfileContent = new FlowLabel(ParseProfiler.getReport(), CPL_MIDI_INFO, PWIDTH_GENERAL_INFO_VALUE);
+			area.add(lblProfileContent, constraints);
+			constraints.gridwidth = 1; // end of colspan
+		}
+		
 		// spacer
 		constraints.gridy++;
 		constraints.gridx  = 0;
@@ -1959,11 +1986,8 @@ public class InfoView extends JDialog {
 		constraints.anchor     = GridBagConstraints.CENTER;
 		
 		// get tree model and inform the controller
-		HashMap<String, Object> sequenceInfo = SequenceAnalyzer.getSequenceInfo();
-		Object          modelObj = sequenceInfo.get("msg_tree_model");
-		MidicaTreeModel model    = null;
-		if (modelObj != null && modelObj instanceof MidicaTreeModel) {
-			model = (MidicaTreeModel) modelObj;
+		MidicaTreeModel model = SequenceAnalyzer.getMessageTreeModel();
+		if (model != null) {
 			model.postprocess();
 		}
 		else {
@@ -2082,18 +2106,15 @@ public class InfoView extends JDialog {
 		constraints.anchor     = GridBagConstraints.NORTHWEST;
 		
 		// get messages
-		ArrayList<SingleMessage> messages = SequenceAnalyzer.getMessages();
+		MessageStore messages = SequenceAnalyzer.getMessageStore();
 		
 		// filter
 		long minTick = 0;
 		long maxTick = 0;
-		if (null == messages) {
-			messages = new ArrayList<>();
-		}
-		int last = messages.size() - 1;
+		int  last    = null == messages ? -1 : messages.size() - 1;
 		if (last > 0) {
-			minTick = (long) messages.get( 0    ).getOption(IMessageType.OPT_TICK);
-			maxTick = (long) messages.get( last ).getOption(IMessageType.OPT_TICK);
+			minTick = messages.getTick( 0    );
+			maxTick = messages.getTick( last );
 		}
 		Container filter = createMsgFilterArea(minTick, maxTick);
 		area.add(filter, constraints);
@@ -7,9 +7,8 @@
 
 package org.midica.ui.model;
 
-import java.util.ArrayList;
-
 import org.midica.config.Dict;
+import org.midica.midi.MessageStore;
 import org.midica.ui.tablesorter.OptionalNumber;
 
 /**
@@ -20,6 +19,9 @@ import org.midica.ui.tablesorter.OptionalNumber;
  * (To be picky it represents a MIDI event, because an event is a message
  * occurring at a certain tick.)
  * 
+ * The rows are read directly from the {@link MessageStore}. The row index
+ * is the same as the message index inside the store.
+ * 
  * @author Jan Trukenmüller
  */
 public class MessageTableModel extends MidicaTableModel {
@@ -28,8 +30,8 @@ public class MessageTableModel extends MidicaTableModel {
 	
 	private static final long serialVersionUID = 1L;
 	
-	private ArrayList<SingleMessage> messages = null;
-    
+	private MessageStore messages = null;
+	
 	/**
 	 * Creates a new instance of the message table data model.
 	 * 
@@ -41,14 +43,11 @@ public class MessageTableModel extends MidicaTableModel {
 	 * @param messages  All messages found in the MIDI sequence -- or **null**,
 	 *                  if no sequence has been loaded yet.
 	 */
-	public MessageTableModel(ArrayList<SingleMessage> messages) {
+	public MessageTableModel(MessageStore messages) {
 		
 		// store messages
 		this.messages = messages;
-		if ( null == this.messages ) {
-			this.messages = new ArrayList<>();
-		}
-		msgCount = messages.size();
+		msgCount      = null == messages ? 0 : messages.size();
 		
 		// table header
 		columnNames = new String[ 7 ];
@@ -106,11 +105,11 @@ public class MessageTableModel extends MidicaTableModel {
 		if ( rowIndex < 0 || messages.size() < rowIndex + 1 )
 			return "";
 		
-		SingleMessage singleMessage = messages.get(rowIndex);
+		SingleMessage singleMessage = messages.getSingleMessage(rowIndex);
 		
 		// tick
 		if ( 0 == colIndex ) {
-			return singleMessage.getOption( IMessageType.OPT_TICK );
+			return messages.getTick(rowIndex);
 		}
 		
 		// status byte
@@ -120,7 +119,7 @@ public class MessageTableModel extends MidicaTableModel {
 		
 		// track
 		else if ( 2 == colIndex ) {
-			return singleMessage.getOption( IMessageType.OPT_TRACK );
+			return messages.getTrack(rowIndex);
 		}
 		
 		// channel
@@ -136,7 +135,7 @@ public class MessageTableModel extends MidicaTableModel {
 		
 		// length
 		else if ( 4 == colIndex ) {
-			return singleMessage.getOption( IMessageType.OPT_LENGTH );
+			return messages.getMessage(rowIndex).getLength();
 		}
 		
 		// summary
@@ -161,10 +160,50 @@ public class MessageTableModel extends MidicaTableModel {
 	public SingleMessage getMsg(int row) {
 		
 		// invalid row?
-		if ( row < 0 || row > messages.size() - 1 )
+		if ( null == messages || row < 0 || row > messages.size() - 1 )
 			return null;
 		
-		return messages.get(row);
+		return messages.getSingleMessage(row);
+	}
+	
+	/**
+	 * Returns the tickstamp of the message in the given row.
+	 * 
+	 * @param row  Table row (beginning with 0)
+	 * @return the tickstamp.
+	 */
+	public long getTick(int row) {
+		return messages.getTick(row);
+	}
+	
+	/**
+	 * Returns the track number of the message in the given row.
+	 * 
+	 * @param row  Table row (beginning with 0)
+	 * @return the track number.
+	 */
+	public int getTrack(int row) {
+		return messages.getTrack(row);
+	}
+	
+	/**
+	 * Returns the channel of the message in the given row.
+	 * 
+	 * @param row  Table row (beginning with 0)
+	 * @return the channel, or **null** if the message is channel-independent.
+	 */
+	public Integer getChannel(int row) {
+		return (Integer) messages.getOption(row, IMessageType.OPT_CHANNEL);
+	}
+	
+	/**
+	 * Returns the leaf node of the message in the given row.
+	 * 
+	 * @param row  Table row (beginning with 0)
+	 * @return the leaf node.
+	 */
+	public MessageTreeNode getLeaf(int row) {
+		return messages.getLeaf(row);
 	}
 	
 	/**
@@ -174,6 +213,8 @@ public class MessageTableModel extends MidicaTableModel {
 	 * @return the row index, or **-1**, if the row is not visible.
 	 */
 	public int getTableRow(SingleMessage singleMessage) {
-		return messages.indexOf(singleMessage);
+		if (null == messages || singleMessage.getStore() != messages)
+			return -1;
+		return singleMessage.getIndex();
 	}
 }
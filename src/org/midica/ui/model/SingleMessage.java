@@ -9,33 +9,59 @@ package org.midica.ui.model;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.SysexMessage;
 import javax.swing.tree.TreeNode;
 
 import org.midica.config.Laf;
+import org.midica.midi.MessageStore;
 import org.midica.midi.SequenceAnalyzer;
 
 /**
  * This class represents one single MIDI message.
  * It's used for the messages in the messages table, produced by the {@link SequenceAnalyzer}.
  * 
+ * The message data is not stored here but in a {@link MessageStore}.
+ * Objects of this class are only lightweight views on one message of the store.
+ * They are created on demand. Two views on the same message are equal.
+ * 
  * Jan Trukenmüller
  */
 public class SingleMessage implements IMessageType, Comparable<SingleMessage> {
 	
-	/** can be used to store custom options */
-	private HashMap<Integer, Object> options = new HashMap<>();
+	private final MessageStore store;
+	private final int          index;
+	
+	/**
+	 * Creates a view on one message of the given store.
+	 * 
+	 * @param store  the message store
+	 * @param index  index of the message inside the store
+	 */
+	public SingleMessage(MessageStore store, int index) {
+		this.store = store;
+		this.index = index;
+	}
+	
+	/**
+	 * Returns the store containing the message.
+	 * 
+	 * @return the message store.
+	 */
+	public MessageStore getStore() {
+		return store;
+	}
 	
 	/**
-	 * Sets the custom option with the given ID.
+	 * Returns the index of the message inside of the store.
 	 * 
-	 * @param id     The option ID.
-	 * @param value  The option value.
+	 * @return the message index.
 	 */
-	public void setOption(int id, Object value) {
-		options.put(id, value);
+	public int getIndex() {
+		return index;
 	}
 	
 	/**
@@ -48,7 +74,24 @@ public class SingleMessage implements IMessageType, Comparable<SingleMessage> {
 	 */
 	@Override
 	public Object getOption(int id) {
-		return options.get(id);
+		switch (id) {
+			case IMessageType.OPT_TICK:
+				return store.getTick(index);
+			case IMessageType.OPT_TRACK:
+				return store.getTrack(index);
+			case IMessageType.OPT_MSG_NUM:
+				return store.getMsgNum(index);
+			case IMessageType.OPT_LEAF_NODE:
+				return store.getLeaf(index);
+			case IMessageType.OPT_MESSAGE:
+				return store.getMessage(index).getMessage();
+			case IMessageType.OPT_LENGTH:
+				return store.getMessage(index).getLength();
+			case IMessageType.OPT_STATUS_BYTE:
+				return getStatusByte();
+			default:
+				return store.getOption(index, id);
+		}
 	}
 	
 	/**
@@ -80,10 +123,11 @@ public class SingleMessage implements IMessageType, Comparable<SingleMessage> {
 	 */
 	@Override
 	public String getDistinctOptions(int id) {
-		if ( ! options.containsKey(id) )
+		Object value = getOption(id);
+		if (null == value)
 			return null;
 		
-		return options.get(id) + "";
+		return value + "";
 	}
 	
 	/**
@@ -102,6 +146,35 @@ public class SingleMessage implements IMessageType, Comparable<SingleMessage> {
 		return getDistinctOptions(id);
 	}
 	
+	/**
+	 * Returns the status byte as a hex string.
+	 * 
+	 * Meta messages are represented by **FF** and SysEx messages by **F0**.
+	 * 
+	 * @return the status byte.
+	 */
+	private String getStatusByte() {
+		MidiMessage msg = store.getMessage(index);
+		if (msg instanceof MetaMessage)
+			return "FF";
+		if (msg instanceof SysexMessage)
+			return "F0";
+		return String.format("%02X", store.getStatus(index));
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (! (other instanceof SingleMessage))
+			return false;
+		SingleMessage otherMsg = (SingleMessage) other;
+		return store == otherMsg.store && index == otherMsg.index;
+	}
+	
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(store) * 31 + index;
+	}
+	
 	/**
 	 * Compares this message with the given one. This is needed for sorting.
 	 * 
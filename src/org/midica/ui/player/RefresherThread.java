@@ -7,10 +7,16 @@
 
 package org.midica.ui.player;
 
+import org.midica.midi.MidiDevices;
+
 /**
  * The thread defined by this class is responsible to for refreshing the progress bar while
  * a midi stream is being played.
  * 
+ * It also refreshes the other player widgets (channel activity, note history,
+ * instruments and lyrics) according to the {@link org.midica.midi.RefreshTimeline} of the sequence.
+ * That is done more often than refreshing the progress bar.
+ * 
  * @author Jan Trukenmüller
  */
 public class RefresherThread extends Thread {
@@ -18,6 +24,9 @@ public class RefresherThread extends Thread {
 	/** Waiting time in milli seconds between the refreshes of the progress bar. */
 	public static final int WAITING_TIME = 50;
 	
+	/** Waiting time in milli seconds between the refreshes according to the refresh timeline. */
+	public static final int TIMELINE_WAITING_TIME = 10;
+	
 	private PlayerController controller = null;
 	private volatile boolean isAlive    = true;
 	
@@ -31,16 +40,21 @@ public class RefresherThread extends Thread {
 	}
 	
 	/**
-	 * Refreshes the player window's progress bar in an endless loop every 50 milliseconds.
+	 * Refreshes the player window's progress bar in an endless loop every 50 milliseconds
+	 * and the other widgets every 10 milliseconds.
 	 * 
 	 * Stops refreshing if {@link #die()} is called.
 	 */
 	@Override
 	public void run() {
+		int cycles = 0;
 		while (isAlive) {
-			controller.refreshProgressBar();
+			MidiDevices.refreshByTimeline();
+			if (0 == cycles % (WAITING_TIME / TIMELINE_WAITING_TIME))
+				controller.refreshProgressBar();
+			cycles++;
 			try {
-				sleep( WAITING_TIME );
+				sleep( TIMELINE_WAITING_TIME );
 			}
 			catch ( InterruptedException e ) {
 			}
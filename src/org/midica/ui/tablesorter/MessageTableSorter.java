@@ -16,7 +16,6 @@ import javax.swing.RowFilter;
 import org.midica.ui.info.InfoView;
 import org.midica.ui.model.MessageTableModel;
 import org.midica.ui.model.MessageTreeNode;
-import org.midica.ui.model.SingleMessage;
 
 /**
  * This class provides table filtering (and sorting) for message tables.
@@ -91,7 +90,7 @@ public class MessageTableSorter<M> extends MidicaSorter<M> {
 			channelFilters.add(new RowFilter<MessageTableModel, Integer>() {
 				@Override
 				public boolean include(Entry<? extends MessageTableModel, ? extends Integer> entry) {
-					Integer channel = (Integer) entry.getModel().getMsg( entry.getIdentifier() ).getOption( SingleMessage.OPT_CHANNEL );
+					Integer channel = entry.getModel().getChannel( entry.getIdentifier() );
 					if (null == channel)
 						return true;
 					return false;
@@ -111,7 +110,7 @@ public class MessageTableSorter<M> extends MidicaSorter<M> {
 					
 					@Override
 					public boolean include(Entry<? extends MessageTableModel, ? extends Integer> entry) {
-						Integer channel = (Integer) entry.getModel().getMsg( entry.getIdentifier() ).getOption( SingleMessage.OPT_CHANNEL );
+						Integer channel = entry.getModel().getChannel( entry.getIdentifier() );
 						if (null == channel)
 							return false;
 						if (channel == filteredChannel)
@@ -131,7 +130,7 @@ public class MessageTableSorter<M> extends MidicaSorter<M> {
 			andFilters.add(new RowFilter<MessageTableModel, Integer>() {
 				@Override
 				public boolean include(Entry<? extends MessageTableModel, ? extends Integer> entry) {
-					long tick = (long) entry.getModel().getMsg( entry.getIdentifier() ).getOption( SingleMessage.OPT_TICK );
+					long tick = entry.getModel().getTick( entry.getIdentifier() );
 					if (tick < filterFrom)
 						return false;
 					if (tick > filterTo)
@@ -149,7 +148,7 @@ public class MessageTableSorter<M> extends MidicaSorter<M> {
 				public boolean include(Entry<? extends MessageTableModel, ? extends Integer> entry) {
 					
 					// get leaf node of the message
-					MessageTreeNode leaf = (MessageTreeNode) entry.getModel().getMsg( entry.getIdentifier() ).getOption( SingleMessage.OPT_LEAF_NODE );
+					MessageTreeNode leaf = entry.getModel().getLeaf( entry.getIdentifier() );
 					
 					// check if the leaf node is a descendant of one of the selected nodes
 					for ( MessageTreeNode node : filterNodes ) {
@@ -168,7 +167,7 @@ public class MessageTableSorter<M> extends MidicaSorter<M> {
 			andFilters.add(new RowFilter<MessageTableModel, Integer>() {
 				@Override
 				public boolean include(Entry<? extends MessageTableModel, ? extends Integer> entry) {
-					Integer track = (Integer) entry.getModel().getMsg( entry.getIdentifier() ).getOption( SingleMessage.OPT_TRACK );
+					int track = entry.getModel().getTrack( entry.getIdentifier() );
 					if ( filterTracks.contains(track) )
 						return true;
 					return false;
@@ -9,6 +9,8 @@ package org.midica.worker;
 
 import java.io.File;
 
+import javax.swing.SwingUtilities;
+
 import org.midica.file.write.ExportException;
 import org.midica.file.write.Exporter;
 import org.midica.ui.file.ExportResult;
@@ -25,6 +27,9 @@ import org.midica.ui.file.ExportResult;
  * After the export work is finished, {@link MidicaWorker#done()} is called and
  * closes the waiting dialog.
  * 
+ * If the exporter is cancellable, the waiting dialog shows the export
+ * progress and a cancel button.
+ * 
  * @author Jan Trukenmüller
  */
 public class ExportWorker extends MidicaWorker {
@@ -45,6 +50,21 @@ public class ExportWorker extends MidicaWorker {
 		super(view);
 		this.exporter = exporter;
 		this.file     = file;
+		
+		// show the progress in the waiting dialog
+		exporter.setProgressListener((percent, info) -> {
+			SwingUtilities.invokeLater(() -> view.setProgress(percent, info));
+		});
+	}
+	
+	/**
+	 * Requests to cancel the export.
+	 * 
+	 * The export result will then be unsuccessful and the incomplete
+	 * file will be deleted.
+	 */
+	public void cancelExport() {
+		exporter.cancel();
 	}
 	
 	/**
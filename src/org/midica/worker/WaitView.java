@@ -15,10 +15,12 @@ import java.awt.Window;
 
 import javax.swing.JDialog;
 import javax.swing.JLabel;
+import javax.swing.JProgressBar;
 
 import org.midica.config.Cli;
 import org.midica.config.Dict;
 import org.midica.config.Laf;
+import org.midica.ui.widget.MidicaButton;
 
 
 /**
@@ -29,13 +31,19 @@ import org.midica.config.Laf;
  * @author Jan Trukenmüller
  */
 public class WaitView extends JDialog {
-
+	
 	private static final long serialVersionUID = 1L;
 	
 	public static final int MIN_WIDTH  = 250;
 	public static final int MIN_HEIGHT = 150;
 	
-	private Container content = null;
+	// size with progress bar
+	public static final int PROGRESS_WIDTH  = 400;
+	public static final int PROGRESS_HEIGHT = 200;
+	
+	private Container    content      = null;
+	private JLabel       progressInfo = null;
+	private JProgressBar progressBar  = null;
 	
 	/**
 	 * Creates a new 'please wait' window.
@@ -61,6 +69,19 @@ public class WaitView extends JDialog {
 	 * @param msg    Message to be displayed.
 	 */
 	public void init(String msg) {
+		init(msg, null);
+	}
+	
+	/**
+	 * Initializes the window, writes the message and shows the window.
+	 * 
+	 * If a cancel action is given, also shows a progress bar and a
+	 * cancel button.
+	 * 
+	 * @param msg           Message to be displayed.
+	 * @param cancelAction  Action to be executed by the cancel button, or **null**.
+	 */
+	public void init(String msg, Runnable cancelAction) {
 		// content
 		content = getContentPane();
 		
@@ -81,16 +102,55 @@ public class WaitView extends JDialog {
 		JLabel label = new JLabel(msg);
 		content.add(label, constraints);
 		
+		// progress and cancel button
+		if (cancelAction != null) {
+			setPreferredSize(new Dimension(PROGRESS_WIDTH, PROGRESS_HEIGHT));
+			constraints.gridy++;
+			progressBar = new JProgressBar(0, 100);
+			progressBar.setStringPainted(true);
+			content.add(progressBar, constraints);
+			
+			constraints.gridy++;
+			progressInfo = new JLabel(" ");
+			content.add(progressInfo, constraints);
+			
+			constraints.gridy++;
+			constraints.fill = GridBagConstraints.NONE;
+			MidicaButton cancelButton = new MidicaButton(Dict.get(Dict.WAIT_CANCEL));
+			cancelButton.addActionListener(e -> {
+				cancelButton.setEnabled(false);
+				cancelAction.run();
+			});
+			content.add(cancelButton, constraints);
+		}
+		
 		if (Cli.isCliMode) {
 			return;
 		}
 		
 		// show the window
 		pack();
+		setLocationRelativeTo(getOwner());
 		setModal(true);
 		setVisible(true); // this method is blocking
 	}
 	
+	/**
+	 * Shows the progress of the time-consuming process.
+	 * 
+	 * Has only an effect if the window has been initialized with a cancel action.
+	 * Must be called in the event dispatch thread.
+	 * 
+	 * @param percent  progress in percent
+	 * @param info     description of the progress
+	 */
+	public void setProgress(int percent, String info) {
+		if (null == progressBar)
+			return;
+		progressBar.setValue(percent);
+		progressInfo.setText(info);
+	}
+	
 	/**
 	 * Closes the window.
 	 */
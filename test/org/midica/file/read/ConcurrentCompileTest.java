@@ -0,0 +1,147 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.read;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.midica.config.Cli;
+import org.midica.config.Config;
+import org.midica.config.Dict;
+
+/**
+ * This is the test class for compiling several MidicaPL files with several
+ * {@link MidicaPLParser} objects at the same time.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class ConcurrentCompileTest {
+	
+	private static final String[] NOTES      = {"c", "d", "e", "f", "g", "a", "b", "c+"};
+	private static final int[]    NUMBERS    = {60, 62, 64, 65, 67, 69, 71, 72};
+	private static final int      INCL_LINES = 50;
+	private static final int      COMPILES   = 400;
+	
+	/**
+	 * Initializes the configuration and the dictionary, needed for the
+	 * MidicaPL syntax.
+	 */
+	@BeforeAll
+	static void setUpBeforeClass() {
+		Cli.parseArguments(new String[] {"--ignore-local-config"});
+		Config.init();
+		Dict.init();
+	}
+	
+	/**
+	 * Compiles root files that define the same constant differently and include
+	 * the same file, using that constant. Each compiled sequence must contain
+	 * only the notes of its own root file.
+	 * 
+	 * @throws IOException if the test files cannot be written.
+	 * @throws InterruptedException if the test is interrupted.
+	 * @throws ExecutionException if a file cannot be compiled.
+	 */
+	@Test
+	void testSharedInclude() throws IOException, InterruptedException, ExecutionException {
+		File dir = Files.createTempDirectory("midica-concurrent-test").toFile();
+		try {
+			// shared include file
+			StringBuilder incl = new StringBuilder();
+			for (int i = 0; i < INCL_LINES; i++) {
+				incl.append("0  $note  /32\n");
+			}
+			write(new File(dir, "shared.midica"), incl.toString());
+			
+			// root files
+			File[] roots = new File[NOTES.length];
+			for (int i = 0; i < NOTES.length; i++) {
+				roots[i] = new File(dir, "root-" + i + ".midica");
+				write(roots[i], "INSTRUMENTS\n\t0  ACOUSTIC_GRAND_PIANO  Piano\nEND\n"
+					+ "CONST $note = " + NOTES[i] + "\nINCLUDE shared.midica\n");
+			}
+			
+			// compile
+			ExecutorService     executor = Executors.newFixedThreadPool(NOTES.length);
+			List<Future<int[]>> results = new ArrayList<>();
+			try {
+				for (int i = 0; i < COMPILES; i++) {
+					File root = roots[i % roots.length];
+					results.add(executor.submit(() -> getNotes(new MidicaPLParser().compile(root, "UTF-8"))));
+				}
+				for (int i = 0; i < COMPILES; i++) {
+					int[] notes = results.get(i).get();
+					assertEquals(INCL_LINES, notes.length);
+					for (int note : notes) {
+						assertEquals(NUMBERS[i % roots.length], note, "compile " + i);
+					}
+				}
+			}
+			finally {
+				executor.shutdownNow();
+			}
+		}
+		finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+	
+	/**
+	 * Writes a source file.
+	 * 
+	 * @param file     the file
+	 * @param content  the file content
+	 * @throws IOException if the file cannot be written.
+	 */
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Returns the note numbers of all NOTE-ON messages of the given sequence.
+	 * 
+	 * @param sequence  the sequence
+	 * @return the note numbers.
+	 */
+	private static int[] getNotes(Sequence sequence) {
+		ArrayList<Integer> notes = new ArrayList<>();
+		for (Track track : sequence.getTracks()) {
+			for (int i = 0; i < track.size(); i++) {
+				MidiEvent   event = track.get(i);
+				MidiMessage msg   = event.getMessage();
+				if (msg instanceof ShortMessage) {
+					ShortMessage shortMsg = (ShortMessage) msg;
+					if (ShortMessage.NOTE_ON == shortMsg.getCommand() && shortMsg.getData2() > 0)
+						notes.add(shortMsg.getData1());
+				}
+			}
+		}
+		return notes.stream().mapToInt(Integer::intValue).toArray();
+	}
+}
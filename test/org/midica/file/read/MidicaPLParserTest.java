@@ -46,7 +46,7 @@ class MidicaPLParserTest extends MidicaPLParser {
 	private static JComboBox<?>[] cbxs;
 	
 	public MidicaPLParserTest() {
-		super(true);
+		super();
 	}
 
 	/**
@@ -0,0 +1,102 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This is the test class for writing the files of the {@link AudioExporter}.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class AudioExporterTest {
+	
+	/**
+	 * Tests that a finished export leaves the file.
+	 * 
+	 * @throws IOException if something went wrong.
+	 */
+	@Test
+	void testFinished() throws IOException {
+		AudioExporter exporter = new AudioExporter();
+		File          file     = File.createTempFile("midica-audio-test", ".wav");
+		try {
+			assertTrue(exporter.write(createStream(exporter, -1), AudioFileFormat.Type.WAVE, file));
+			assertTrue(file.length() > 1000000);
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Tests that a cancelled export doesn't leave a partial file.
+	 * 
+	 * @throws IOException if something went wrong.
+	 */
+	@Test
+	void testCancelled() throws IOException {
+		AudioFileFormat.Type[] types = {AudioFileFormat.Type.WAVE, AudioFileFormat.Type.AU};
+		for (AudioFileFormat.Type type : types) {
+			AudioExporter exporter = new AudioExporter();
+			File          file     = File.createTempFile("midica-audio-test", "." + type.getExtension());
+			try {
+				assertFalse(exporter.write(createStream(exporter, 10), type, file));
+				assertFalse(file.exists(), type.toString());
+			}
+			finally {
+				file.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Creates an audio stream of silence, about 6 seconds long.
+	 * 
+	 * @param exporter     the exporter to be cancelled
+	 * @param cancelAfter  number of reads after which the export is cancelled, or -1
+	 * @return the stream.
+	 */
+	private static AudioInputStream createStream(AudioExporter exporter, int cancelAfter) {
+		AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+		long        frames = 256 * 1024;
+		InputStream source = new InputStream() {
+			private long remaining = frames * format.getFrameSize();
+			private int  reads     = 0;
+			
+			@Override
+			public int read() throws IOException {
+				byte[] single = new byte[1];
+				return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (++reads == cancelAfter)
+					exporter.cancel();
+				if (remaining <= 0)
+					return -1;
+				int length = (int) Math.min(len, remaining);
+				remaining -= length;
+				return length;
+			}
+		};
+		return new AudioInputStream(source, format, frames);
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Soundbank;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.midica.TestUtil;
+
+import com.sun.gervill.SF2Soundbank;
+import com.sun.gervill.SoftSynthesizer;
+import com.sun.kh.MidiToAudioRenderer;
+
+/**
+ * This is the test class for {@link ChannelSplitRenderer} and {@link MixingAudioStream}.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class ChannelSplitRendererTest {
+	
+	static final AudioFormat FORMAT        = new AudioFormat(44100, 16, 2, true, false);
+	static final float       SILENCE_LEVEL = AudioExporter.DEFAULT_SILENCE_LEVEL;
+	static final float       MAX_TAIL      = AudioExporter.DEFAULT_MAX_TAIL;
+	static final int         RESOLUTION    = 480; // ticks per quarter note (0.5 seconds)
+	
+	static Soundbank soundbank;
+	
+	/**
+	 * Loads the soundbank.
+	 * 
+	 * @throws IOException if the soundbank cannot be loaded.
+	 */
+	@BeforeAll
+	static void setUpBeforeClass() throws IOException {
+		soundbank = new SF2Soundbank(new File(TestUtil.getTestfileDirectory() + "working" + File.separator + "java-emergency-soundfont.sf2"));
+	}
+	
+	/**
+	 * Renders a short sequence with a few channels serially and split by
+	 * channels. Both must be equal, apart from rounding.
+	 * 
+	 * @throws Exception if the sequence cannot be rendered.
+	 */
+	@Test
+	void testEquivalence() throws Exception {
+		Sequence seq   = new Sequence(Sequence.PPQ, RESOLUTION);
+		Track    track = seq.createTrack();
+		addShort(track, 0, ShortMessage.PROGRAM_CHANGE, 0, 0, 0);
+		addShort(track, 0, ShortMessage.PROGRAM_CHANGE, 1, 48, 0);
+		addShort(track, 0, ShortMessage.PROGRAM_CHANGE, 2, 73, 0);
+		addShort(track, 0, ShortMessage.CONTROL_CHANGE, 1, 10, 20);  // pan
+		addShort(track, 0, ShortMessage.CONTROL_CHANGE, 2, 7, 90);   // volume
+		addShort(track, 0, ShortMessage.CONTROL_CHANGE, 2, 91, 100); // reverb
+		for (int i = 0; i < 8; i++) {
+			long tick = i * RESOLUTION / 2;
+			addNote(track, 0, 60 + i, tick, RESOLUTION / 2);
+			if (0 == i % 2)
+				addNote(track, 1, 48 + i, tick, RESOLUTION);
+			if (i > 3)
+				addNote(track, 2, 72 + i, tick, RESOLUTION / 4);
+		}
+		addShort(track, RESOLUTION, ShortMessage.PITCH_BEND, 2, 0, 80);
+		addNote(track, 9, 38, 3 * RESOLUTION, RESOLUTION / 4);
+		
+		byte[] serial = renderSerial(seq);
+		byte[] split  = readAll(ChannelSplitRenderer.render(soundbank, seq, FORMAT, 3, SILENCE_LEVEL, MAX_TAIL));
+		assertEquivalent(serial, split);
+	}
+	
+	/**
+	 * Tests that a sequence with only one channel is not split.
+	 * 
+	 * @throws Exception if the sequence cannot be rendered.
+	 */
+	@Test
+	void testSingleChannel() throws Exception {
+		Sequence seq   = new Sequence(Sequence.PPQ, RESOLUTION);
+		Track    track = seq.createTrack();
+		addNote(track, 0, 60, 0, RESOLUTION);
+		addNote(track, 0, 64, 0, RESOLUTION);
+		assertNull(ChannelSplitRenderer.render(soundbank, seq, FORMAT, 4, SILENCE_LEVEL, MAX_TAIL));
+	}
+	
+	/**
+	 * Renders the given sequence with one synthesizer.
+	 * 
+	 * @param seq  the sequence
+	 * @return the rendered audio data.
+	 * @throws Exception if the sequence cannot be rendered.
+	 */
+	static byte[] renderSerial(Sequence seq) throws Exception {
+		SoftSynthesizer synth = new SoftSynthesizer();
+		try {
+			return readAll(MidiToAudioRenderer.render(soundbank, seq, FORMAT, synth, SILENCE_LEVEL, MAX_TAIL));
+		}
+		finally {
+			synth.close();
+		}
+	}
+	
+	/**
+	 * Reads and closes the given stream.
+	 * 
+	 * @param stream  the stream
+	 * @return the audio data.
+	 * @throws IOException if the stream cannot be read.
+	 */
+	static byte[] readAll(AudioInputStream stream) throws IOException {
+		assertNotNull(stream);
+		try {
+			return stream.readAllBytes();
+		}
+		finally {
+			stream.close();
+		}
+	}
+	
+	/**
+	 * Checks that both audio data have the same frame length and that each
+	 * sample differs by 1 LSB at most.
+	 * 
+	 * @param expected  the serially rendered data
+	 * @param actual    the concurrently rendered data
+	 */
+	static void assertEquivalent(byte[] expected, byte[] actual) {
+		assertEquals(expected.length / FORMAT.getFrameSize(), actual.length / FORMAT.getFrameSize(), "frame length");
+		boolean isSilent = true;
+		for (int i = 0; i < expected.length; i += 2) {
+			short exp = (short) ((expected[i] & 0xFF) | (expected[i + 1] << 8));
+			short act = (short) ((actual[i] & 0xFF) | (actual[i + 1] << 8));
+			assertTrue(Math.abs(exp - act) <= 1, "sample " + i / 2 + ": " + exp + " != " + act);
+			if (Math.abs(exp) > 1000)
+				isSilent = false;
+		}
+		assertFalse(isSilent, "silent");
+	}
+	
+	/**
+	 * Adds a short message to the track.
+	 * 
+	 * @param track    the track
+	 * @param tick     tickstamp
+	 * @param command  the command
+	 * @param channel  MIDI channel
+	 * @param data1    first data byte
+	 * @param data2    second data byte
+	 * @throws InvalidMidiDataException if the message is invalid.
+	 */
+	static void addShort(Track track, long tick, int command, int channel, int data1, int data2) throws InvalidMidiDataException {
+		track.add(new MidiEvent(new ShortMessage(command, channel, data1, data2), tick));
+	}
+	
+	/**
+	 * Adds a note-on and a note-off message to the track.
+	 * 
+	 * @param track     the track
+	 * @param channel   MIDI channel
+	 * @param note      note number
+	 * @param tick      tickstamp of the note-on message
+	 * @param duration  ticks until the note-off message
+	 * @throws InvalidMidiDataException if a message is invalid.
+	 */
+	static void addNote(Track track, int channel, int note, long tick, long duration) throws InvalidMidiDataException {
+		addShort(track, tick, ShortMessage.NOTE_ON, channel, note, 100);
+		addShort(track, tick + duration, ShortMessage.NOTE_OFF, channel, note, 0);
+	}
+}
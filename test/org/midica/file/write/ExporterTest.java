@@ -196,7 +196,7 @@ public class ExporterTest {
 		if ("mid".equals(type))
 			return new MidiParser();
 		if ("mpl".equals(type))
-			return new MidicaPLParser(true);
+			return new MidicaPLParser();
 		if ("alda".equals(type))
 			return new AldaImporter();
 		
@@ -0,0 +1,123 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.midica.file.write.ChannelSplitRendererTest.FORMAT;
+import static org.midica.file.write.ChannelSplitRendererTest.MAX_TAIL;
+import static org.midica.file.write.ChannelSplitRendererTest.RESOLUTION;
+import static org.midica.file.write.ChannelSplitRendererTest.SILENCE_LEVEL;
+import static org.midica.file.write.ChannelSplitRendererTest.addNote;
+import static org.midica.file.write.ChannelSplitRendererTest.addShort;
+import static org.midica.file.write.ChannelSplitRendererTest.assertEquivalent;
+import static org.midica.file.write.ChannelSplitRendererTest.readAll;
+import static org.midica.file.write.ChannelSplitRendererTest.renderSerial;
+
+import java.io.IOException;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * This is the test class for {@link SegmentRenderer}.
+ * 
+ * Uses the sequence helpers of {@link ChannelSplitRendererTest}.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class SegmentRendererTest {
+	
+	private static final int BEAT = RESOLUTION; // 0.5 seconds
+	
+	/**
+	 * Loads the soundbank.
+	 * 
+	 * @throws IOException if the soundbank cannot be loaded.
+	 */
+	@BeforeAll
+	static void setUpBeforeClass() throws IOException {
+		ChannelSplitRendererTest.setUpBeforeClass();
+	}
+	
+	/**
+	 * Renders a sequence serially and in two segments. Both must be equal,
+	 * apart from rounding.
+	 * 
+	 * The last event is at 44 seconds. So the segment boundary is at 22
+	 * seconds and the pre-roll of the second segment starts at 16 seconds.
+	 * 
+	 * - Before the pre-roll: SysEx, program changes, controllers, RPN and
+	 *   pitch bend that must be restored at the beginning of the pre-roll.
+	 *   All notes are silent before the pre-roll starts.
+	 * - In the pre-roll: a long note and notes held by the sustain pedal,
+	 *   both sounding across the boundary. They must be built up by the
+	 *   pre-roll.
+	 * 
+	 * @throws Exception if the sequence cannot be rendered.
+	 */
+	@Test
+	void testEquivalence() throws Exception {
+		Sequence seq   = new Sequence(Sequence.PPQ, RESOLUTION);
+		Track    track = seq.createTrack();
+		byte[]   sysex = {(byte) 0xF0, 0x7F, 0x7F, 0x04, 0x01, 0x00, 0x60, (byte) 0xF7}; // master volume
+		track.add(new MidiEvent(new SysexMessage(sysex, sysex.length), 0));
+		addShort(track, 0, ShortMessage.PROGRAM_CHANGE, 0, 0, 0);
+		addShort(track, 0, ShortMessage.PROGRAM_CHANGE, 1, 48, 0);
+		addShort(track, 0, ShortMessage.PROGRAM_CHANGE, 2, 73, 0);
+		addShort(track, 0, ShortMessage.CONTROL_CHANGE, 0, 91, 100); // reverb
+		addShort(track, 0, ShortMessage.CONTROL_CHANGE, 1, 10, 20);  // pan
+		addShort(track, 0, ShortMessage.CONTROL_CHANGE, 2, 7, 90);   // volume
+		addShort(track, 0, ShortMessage.CONTROL_CHANGE, 2, 101, 0);  // RPN: pitch bend sensitivity
+		addShort(track, 0, ShortMessage.CONTROL_CHANGE, 2, 100, 0);
+		addShort(track, 0, ShortMessage.CONTROL_CHANGE, 2, 6, 4);
+		addShort(track, 2 * BEAT, ShortMessage.PITCH_BEND, 2, 0, 80);
+		
+		// before the pre-roll (0-10 seconds)
+		for (int b = 0; b < 20; b++) {
+			addNote(track, 0, 60 + b % 12, b * BEAT, BEAT);
+			if (0 == b % 2)
+				addNote(track, 2, 72 + b % 5, b * BEAT, BEAT / 2);
+		}
+		
+		// across the boundary (18-25 seconds)
+		addNote(track, 1, 55, 36 * BEAT, 14 * BEAT);
+		addShort(track, 38 * BEAT, ShortMessage.CONTROL_CHANGE, 0, 64, 127);
+		for (int b = 38; b < 41; b++)
+			addNote(track, 0, 64 + b - 38, b * BEAT, BEAT / 2);
+		addShort(track, 46 * BEAT, ShortMessage.CONTROL_CHANGE, 0, 64, 0);
+		for (int b = 40; b < 60; b++)
+			addNote(track, 2, 70 + b % 7, b * BEAT, BEAT / 2);
+		
+		// until the end (30-44 seconds)
+		for (int b = 60; b < 88; b++)
+			addNote(track, 0, 60 + b % 9, b * BEAT, BEAT);
+		
+		byte[] serial   = renderSerial(seq);
+		byte[] segments = readAll(SegmentRenderer.render(ChannelSplitRendererTest.soundbank, seq, FORMAT, 2, SILENCE_LEVEL, MAX_TAIL));
+		assertEquivalent(serial, segments);
+	}
+	
+	/**
+	 * Tests that a short sequence is not split.
+	 * 
+	 * @throws Exception if the sequence cannot be rendered.
+	 */
+	@Test
+	void testShortSequence() throws Exception {
+		Sequence seq   = new Sequence(Sequence.PPQ, RESOLUTION);
+		Track    track = seq.createTrack();
+		addNote(track, 0, 60, 0, 60 * BEAT);
+		assertNull(SegmentRenderer.render(ChannelSplitRendererTest.soundbank, seq, FORMAT, 4, SILENCE_LEVEL, MAX_TAIL));
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+import org.junit.jupiter.api.Test;
+import org.midica.TestUtil;
+import org.midica.file.read.SmfReader;
+
+/**
+ * This is the test class for {@link SmfWriter} and {@link SmfReader}.
+ * 
+ * The files written by them must be the same as the ones written by the JDK.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class SmfWriterTest {
+	
+	/**
+	 * Reads each MIDI test file with the {@link SmfReader}, writes it again with
+	 * the {@link SmfWriter}, and compares the result with the file written by
+	 * **MidiSystem.write()** from the sequence read by the JDK.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 * @throws IOException if something went wrong.
+	 */
+	@Test
+	void testRoundTripTestFiles() throws InvalidMidiDataException, IOException {
+		File dir   = new File(TestUtil.getTestfileDirectory() + "midi");
+		int  count = 0;
+		for (File file : dir.listFiles()) {
+			if (! file.getName().endsWith(".mid"))
+				continue;
+			byte[] expected = writeWithJdk(MidiSystem.getSequence(file));
+			byte[] actual   = writeWithSmfWriter(SmfReader.read(file));
+			assertArrayEquals(expected, actual, file.getName());
+			count++;
+		}
+		assertTrue(count > 0, "no MIDI test files found");
+	}
+	
+	/**
+	 * Tests a sequence with running status, a SysEx message that is bigger
+	 * than the write buffer, and long delta times.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 * @throws IOException if something went wrong.
+	 */
+	@Test
+	void testBigEvents() throws InvalidMidiDataException, IOException {
+		Sequence seq   = new Sequence(Sequence.PPQ, 480);
+		Track    track = seq.createTrack();
+		
+		// running status
+		for (int i = 0; i < 10; i++) {
+			track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60 + i, 100), i * 10));
+			track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, 60 + i, 0), i * 10 + 5));
+		}
+		
+		// SysEx with more than 64 KB
+		byte[] sysex = new byte[100000];
+		sysex[0] = (byte) SysexMessage.SYSTEM_EXCLUSIVE;
+		for (int i = 1; i < sysex.length - 1; i++)
+			sysex[i] = (byte) (i & 0x7F);
+		sysex[sysex.length - 1] = (byte) ShortMessage.END_OF_EXCLUSIVE;
+		track.add(new MidiEvent(new SysexMessage(sysex, sysex.length), 200));
+		
+		// delta time that needs 4 bytes
+		byte[] text = "end".getBytes();
+		track.add(new MidiEvent(new MetaMessage(0x01, text, text.length), 0x0FFFFFFF));
+		
+		// second track
+		Track track2 = seq.createTrack();
+		track2.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE, 1, 5, 0), 0));
+		track2.add(new MidiEvent(new ShortMessage(ShortMessage.PITCH_BEND, 1, 0, 64), 480));
+		
+		byte[] expected = writeWithJdk(seq);
+		assertArrayEquals(expected, writeWithSmfWriter(seq));
+		
+		// read the written file again
+		File file = File.createTempFile("midica-smf-test", ".mid");
+		try {
+			Files.write(file.toPath(), expected);
+			Sequence read = SmfReader.read(file);
+			assertEquals(2, read.getTracks().length);
+			assertEquals(seq.getTracks()[0].size(), read.getTracks()[0].size());
+			assertArrayEquals(sysex, read.getTracks()[0].get(20).getMessage().getMessage());
+			assertArrayEquals(expected, writeWithSmfWriter(read));
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Tests a sequence with an SMPTE based division type.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 * @throws IOException if something went wrong.
+	 */
+	@Test
+	void testSmpte() throws InvalidMidiDataException, IOException {
+		Sequence seq   = new Sequence(Sequence.SMPTE_25, 40);
+		Track    track = seq.createTrack();
+		track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 9, 36, 127), 0));
+		track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 9, 36, 0), 1000));
+		
+		byte[] expected = writeWithJdk(seq);
+		assertArrayEquals(expected, writeWithSmfWriter(seq));
+		
+		File file = File.createTempFile("midica-smf-test", ".mid");
+		try {
+			Files.write(file.toPath(), expected);
+			Sequence read = SmfReader.read(file);
+			assertEquals(Sequence.SMPTE_25, read.getDivisionType());
+			assertEquals(40, read.getResolution());
+			assertEquals(1000, read.getTickLength());
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Writes the given sequence with the JDK.
+	 * 
+	 * @param seq  the sequence
+	 * @return the file content.
+	 * @throws IOException if something went wrong.
+	 */
+	private static byte[] writeWithJdk(Sequence seq) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MidiSystem.write(seq, 1 == seq.getTracks().length ? 0 : 1, out);
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Writes the given sequence with the {@link SmfWriter}.
+	 * 
+	 * @param seq  the sequence
+	 * @return the file content.
+	 * @throws InvalidMidiDataException if something went wrong.
+	 * @throws IOException if something went wrong.
+	 */
+	private static byte[] writeWithSmfWriter(Sequence seq) throws InvalidMidiDataException, IOException {
+		File file = File.createTempFile("midica-smf-test", ".mid");
+		try {
+			Track[] tracks = seq.getTracks();
+			try (SmfWriter writer = new SmfWriter(file, seq.getDivisionType(), seq.getResolution(), tracks.length)) {
+				for (Track track : tracks) {
+					writer.startTrack();
+					for (int i = 0; i < track.size(); i++)
+						writer.write(track.get(i).getMessage(), track.get(i).getTick());
+					writer.endTrack();
+				}
+			}
+			return Files.readAllBytes(file.toPath());
+		}
+		finally {
+			file.delete();
+		}
+	}
+}
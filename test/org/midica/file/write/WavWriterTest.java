@@ -0,0 +1,196 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.file.write;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This is the test class for {@link WavWriter}.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class WavWriterTest {
+	
+	private static final int POS_JUNK = 12;
+	private static final int POS_FMT  = 48;
+	private static final int POS_DATA = 80; // audio data of a PCM file
+	
+	/**
+	 * Tests a normal WAVE file below the RF64 threshold.
+	 * 
+	 * @throws IOException if something went wrong.
+	 * @throws UnsupportedAudioFileException if something went wrong.
+	 */
+	@Test
+	void testRiff() throws IOException, UnsupportedAudioFileException {
+		AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+		byte[]      data   = createData(1000);
+		File        file   = write(format, data, 0xFFFFFFFFL);
+		try {
+			ByteBuffer wav = read(file);
+			assertEquals("RIFF", getId(wav, 0));
+			assertEquals(wav.limit() - 8, wav.getInt(4));
+			assertEquals("WAVE", getId(wav, 8));
+			
+			// the ds64 placeholder
+			assertEquals("JUNK", getId(wav, POS_JUNK));
+			assertEquals(28, wav.getInt(POS_JUNK + 4));
+			
+			// format and data
+			assertEquals("fmt ", getId(wav, POS_FMT));
+			assertEquals(16, wav.getInt(POS_FMT + 4));
+			assertEquals(1, wav.getShort(POS_FMT + 8));
+			assertEquals("data", getId(wav, POS_DATA - 8));
+			assertEquals(data.length, wav.getInt(POS_DATA - 4));
+			assertEquals(POS_DATA + data.length, wav.limit());
+			assertEquals(data[999], wav.get(POS_DATA + 999));
+			
+			// readable by the audio system
+			assertEquals(250, AudioSystem.getAudioFileFormat(file).getFrameLength());
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Tests an RF64 file, with the RF64 threshold forced below the file size.
+	 * 
+	 * @throws IOException if something went wrong.
+	 */
+	@Test
+	void testRf64() throws IOException {
+		AudioFormat format = new AudioFormat(8000, 8, 1, false, false);
+		byte[]      data   = createData(1001); // odd size: needs a pad byte
+		File        file   = write(format, data, 100);
+		try {
+			ByteBuffer wav = read(file);
+			assertEquals("RF64", getId(wav, 0));
+			assertEquals(-1, wav.getInt(4));
+			assertEquals("WAVE", getId(wav, 8));
+			
+			// the JUNK chunk has been converted into ds64
+			assertEquals("ds64", getId(wav, POS_JUNK));
+			assertEquals(28, wav.getInt(POS_JUNK + 4));
+			assertEquals(wav.limit() - 8, wav.getLong(POS_JUNK + 8)); // RIFF size
+			assertEquals(data.length, wav.getLong(POS_JUNK + 16));    // data size
+			assertEquals(data.length, wav.getLong(POS_JUNK + 24));    // sample count
+			assertEquals(0, wav.getInt(POS_JUNK + 32));               // table length
+			
+			// the 32-bit data size is a placeholder
+			assertEquals("data", getId(wav, POS_DATA - 8));
+			assertEquals(-1, wav.getInt(POS_DATA - 4));
+			assertEquals(POS_DATA + data.length + 1, wav.limit());
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Tests the fact chunk of a float file.
+	 * 
+	 * @throws IOException if something went wrong.
+	 */
+	@Test
+	void testFloat() throws IOException {
+		AudioFormat format = WavWriter.getFormat(new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, 44100, 32, 2, 8, 44100, true));
+		byte[]      data   = createData(800);
+		File        file   = write(format, data, 0xFFFFFFFFL);
+		try {
+			ByteBuffer wav = read(file);
+			assertEquals("fmt ", getId(wav, POS_FMT));
+			assertEquals(18, wav.getInt(POS_FMT + 4));
+			assertEquals(3, wav.getShort(POS_FMT + 8));
+			
+			// fact chunk with the number of sample frames
+			int posFact = POS_FMT + 8 + 18;
+			assertEquals("fact", getId(wav, posFact));
+			assertEquals(4, wav.getInt(posFact + 4));
+			assertEquals(100, wav.getInt(posFact + 8));
+			
+			// data
+			int posData = posFact + 12 + 8;
+			assertEquals("data", getId(wav, posData - 8));
+			assertEquals(data.length, wav.getInt(posData - 4));
+			assertEquals(wav.limit() - 8, wav.getInt(4));
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Writes a WAVE file into a temporary file.
+	 * 
+	 * @param format   the audio format
+	 * @param data     the audio data
+	 * @param maxSize  RIFF size from which RF64 is used
+	 * @return the file.
+	 * @throws IOException if something went wrong.
+	 */
+	private static File write(AudioFormat format, byte[] data, long maxSize) throws IOException {
+		File file = File.createTempFile("midica-wav-test", ".wav");
+		try (WavWriter writer = new WavWriter(file, format, maxSize)) {
+			
+			// write in several parts
+			writer.write(data, 0, 10);
+			writer.write(data, 10, data.length - 10);
+			assertEquals(data.length, writer.getDataSize());
+		}
+		return file;
+	}
+	
+	/**
+	 * Creates audio data.
+	 * 
+	 * @param length  number of bytes
+	 * @return the audio data.
+	 */
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++)
+			data[i] = (byte) i;
+		return data;
+	}
+	
+	/**
+	 * Reads the whole file.
+	 * 
+	 * @param file  the file
+	 * @return the file content, in little-endian order.
+	 * @throws IOException if something went wrong.
+	 */
+	private static ByteBuffer read(File file) throws IOException {
+		return ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Returns the chunk ID at the given position.
+	 * 
+	 * @param wav       the file content
+	 * @param position  the position
+	 * @return the ID.
+	 */
+	private static String getId(ByteBuffer wav, int position) {
+		return new String(wav.array(), position, 4, StandardCharsets.US_ASCII);
+	}
+}
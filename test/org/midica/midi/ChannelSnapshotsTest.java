@@ -0,0 +1,185 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.midi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This is the test class for {@link ChannelSnapshots}.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class ChannelSnapshotsTest {
+	
+	private static final int CC      = ShortMessage.CONTROL_CHANGE;
+	private static final int PROGRAM = ShortMessage.PROGRAM_CHANGE;
+	
+	/**
+	 * Tests the restored state before and after the channel events.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	@Test
+	void testRestore() throws InvalidMidiDataException {
+		Sequence seq   = new Sequence(Sequence.PPQ, 480);
+		Track    track = seq.createTrack();
+		add(track, 1920, CC, 0, 0x00, 1);  // bank MSB
+		add(track, 1920, PROGRAM, 0, 5, 0);
+		add(track, 1920, CC, 0, 0x0A, 20); // pan
+		add(track, 1920, CC, 0, 0x01, 30); // modulation
+		add(track, 2000, CC, 0, 0x01, 40); // modulation, after the snapshot
+		add(track, 9600, ShortMessage.NOTE_OFF, 0, 60, 0);
+		ChannelSnapshots snapshots = new ChannelSnapshots(seq);
+		
+		// before: defaults
+		ArrayList<String> messages = getMessages(snapshots, 0, 0);
+		assertEquals("b0 79 00", messages.get(0));
+		assertTrue(messages.contains("b0 00 00"));
+		assertTrue(messages.contains("b0 0a 40"));
+		assertTrue(messages.contains("c0 00 00"));
+		assertEquals(-1, messages.indexOf("b0 01 00")); // reset by "reset all controllers"
+		
+		// after the snapshot: events between snapshot and target tick are applied
+		messages = getMessages(snapshots, 0, 2001);
+		assertTrue(messages.contains("b0 00 01"));
+		assertTrue(messages.contains("b0 0a 14"));
+		assertTrue(messages.contains("b0 01 28"));
+		assertTrue(messages.contains("c0 05 00"));
+		assertTrue(messages.indexOf("b0 00 01") < messages.indexOf("c0 05 00"));
+		
+		// events at the target tick are not applied
+		messages = getMessages(snapshots, 0, 2000);
+		assertTrue(messages.contains("b0 01 1e"));
+	}
+	
+	/**
+	 * Tests "reset all controllers" and channel volume.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	@Test
+	void testResetAndVolume() throws InvalidMidiDataException {
+		Sequence seq   = new Sequence(Sequence.PPQ, 480);
+		Track    track = seq.createTrack();
+		add(track, 10, CC, 1, 0x01, 30);  // modulation
+		add(track, 10, CC, 1, 0x07, 50);  // volume
+		add(track, 10, CC, 1, 0x0A, 20);  // pan
+		add(track, 20, CC, 1, 0x79, 0);   // reset all controllers
+		add(track, 30, ShortMessage.NOTE_OFF, 1, 60, 0);
+		
+		// volume is controlled by the player
+		ArrayList<String> messages = getMessages(new ChannelSnapshots(seq), 1, 15);
+		assertTrue(messages.contains("b1 01 1e"));
+		assertEquals(-1, messages.indexOf("b1 07 32"));
+		assertEquals(-1, messages.indexOf("b1 07 64"));
+		
+		// volume as part of the state
+		ChannelSnapshots withVolume = new ChannelSnapshots(seq, true);
+		assertTrue(getMessages(withVolume, 1, 15).contains("b1 07 32"));
+		assertTrue(getMessages(withVolume, 1, 0).contains("b1 07 64"));
+		
+		// modulation is reset, pan is not
+		messages = getMessages(withVolume, 1, 25);
+		assertEquals(-1, messages.indexOf("b1 01 1e"));
+		assertTrue(messages.contains("b1 0a 14"));
+		assertTrue(messages.contains("b1 07 32"));
+	}
+	
+	/**
+	 * Tests the restored (N)RPN values and the (N)RPN selection.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	@Test
+	void testParameters() throws InvalidMidiDataException {
+		Sequence seq   = new Sequence(Sequence.PPQ, 480);
+		Track    track = seq.createTrack();
+		add(track, 10, CC, 2, 0x65, 0x00); // RPN MSB
+		add(track, 10, CC, 2, 0x64, 0x00); // RPN LSB: pitch bend sensitivity
+		add(track, 10, CC, 2, 0x06, 0x0C); // data entry MSB
+		add(track, 10, CC, 2, 0x26, 0x05); // data entry LSB
+		add(track, 20, CC, 2, 0x63, 0x01); // NRPN MSB
+		add(track, 20, CC, 2, 0x62, 0x02); // NRPN LSB
+		add(track, 20, CC, 2, 0x06, 0x03); // data entry MSB
+		add(track, 30, ShortMessage.NOTE_OFF, 2, 60, 0);
+		ChannelSnapshots snapshots = new ChannelSnapshots(seq);
+		
+		// before: default sensitivity, RPN null selected
+		ArrayList<String> messages = getMessages(snapshots, 2, 0);
+		assertSequence(messages, "b2 65 00", "b2 64 00", "b2 06 02", "b2 26 00");
+		assertSequence(messages, "b2 65 7f", "b2 64 7f");
+		
+		// RPN set and selected
+		messages = getMessages(snapshots, 2, 15);
+		assertSequence(messages, "b2 65 00", "b2 64 00", "b2 06 0c", "b2 26 05");
+		assertTrue(messages.lastIndexOf("b2 64 00") > messages.indexOf("b2 26 05"));
+		
+		// NRPN selected at last
+		messages = getMessages(snapshots, 2, 25);
+		assertSequence(messages, "b2 63 01", "b2 62 02", "b2 06 03", "b2 26 00");
+		assertEquals("b2 62 02", messages.get(messages.size() - 2));
+	}
+	
+	/**
+	 * Returns the restore messages of one channel, formatted as hex strings.
+	 * 
+	 * @param snapshots  the snapshots
+	 * @param channel    the channel
+	 * @param tick       the target tick
+	 * @return the messages.
+	 */
+	private static ArrayList<String> getMessages(ChannelSnapshots snapshots, int channel, long tick) {
+		ArrayList<String> messages = new ArrayList<>();
+		for (int packed : snapshots.getRestoreMessages(tick)) {
+			if ((packed & 0x0F) == channel)
+				messages.add(String.format("%02x %02x %02x", packed & 0xFF, (packed >> 8) & 0xFF, (packed >> 16) & 0xFF));
+		}
+		return messages;
+	}
+	
+	/**
+	 * Checks that the given messages are contained directly one after another.
+	 * 
+	 * @param messages  all messages
+	 * @param expected  the expected sequence of messages
+	 */
+	private static void assertSequence(ArrayList<String> messages, String... expected) {
+		for (int i = 0; i + expected.length <= messages.size(); i++) {
+			if (messages.subList(i, i + expected.length).equals(Arrays.asList(expected)))
+				return;
+		}
+		throw new AssertionError("sequence not found: " + String.join(", ", expected) + " in: " + messages);
+	}
+	
+	/**
+	 * Adds a short message to the given track.
+	 * 
+	 * @param track    the track
+	 * @param tick     tickstamp
+	 * @param command  command
+	 * @param channel  channel
+	 * @param data1    first data byte
+	 * @param data2    second data byte
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	private static void add(Track track, long tick, int command, int channel, int data1, int data2) throws InvalidMidiDataException {
+		track.add(new MidiEvent(new ShortMessage(command, channel, data1, data2), tick));
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.midi;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This is the test class for {@link ChannelTimeline}.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class ChannelTimelineTest {
+	
+	/**
+	 * Tests the lookups of a channel with notes, instrument changes, comments
+	 * and (N)RPN changes.
+	 */
+	@Test
+	void testLookups() {
+		ChannelTimeline timeline = createTimeline();
+		
+		// activity
+		assertFalse(timeline.isActive(0));
+		assertTrue(timeline.isActive(10));
+		assertTrue(timeline.isActive(15));
+		assertFalse(timeline.isActive(20));
+		assertTrue(timeline.isActive(40));
+		
+		// instrument: bank MSB, bank LSB, program
+		assertArrayEquals(new Byte[] {0, 0, 0},  timeline.getInstrument(0));
+		assertArrayEquals(new Byte[] {0, 0, 0},  timeline.getInstrument(29));
+		assertArrayEquals(new Byte[] {1, 2, 42}, timeline.getInstrument(30));
+		assertArrayEquals(new Byte[] {1, 2, 42}, timeline.getInstrument(1000));
+		
+		// comment
+		assertNull(timeline.getComment(4));
+		assertEquals("piano", timeline.getComment(5));
+		assertEquals("piano", timeline.getComment(1000));
+		
+		// (N)RPN config and pitch bend sensitivity
+		assertArrayEquals(new Byte[] {-1, -1, -1, -1, -1}, timeline.getParamConfig(0));
+		assertArrayEquals(new Byte[] {0, 0, -1, -1, 1},    timeline.getParamConfig(12));
+		assertEquals(0x0200, timeline.getPitchBendSensitivity(0));
+		assertEquals(0x0C00, timeline.getPitchBendSensitivity(12));
+	}
+	
+	/**
+	 * Tests the note history around a tick.
+	 */
+	@Test
+	void testNoteHistory() {
+		ChannelTimeline timeline = createTimeline();
+		
+		// 2 past notes (including the current tick), 2 future notes
+		ArrayList<Long[]> history = timeline.getNoteHistory(10, 2, 2);
+		assertEquals(4, history.size());
+		assertArrayEquals(new Long[] {60L, 100L, 10L, 0L}, history.get(0));
+		assertArrayEquals(new Long[] {64L, 90L,  10L, 0L}, history.get(1));
+		assertArrayEquals(new Long[] {67L, 80L,  40L, 1L}, history.get(2));
+		assertArrayEquals(new Long[] {72L, 70L,  50L, 1L}, history.get(3));
+		
+		// limits
+		history = timeline.getNoteHistory(45, 1, 0);
+		assertEquals(1, history.size());
+		assertArrayEquals(new Long[] {67L, 80L, 40L, 0L}, history.get(0));
+		
+		// before the first note
+		history = timeline.getNoteHistory(0, 5, 1);
+		assertEquals(1, history.size());
+		assertArrayEquals(new Long[] {60L, 100L, 10L, 1L}, history.get(0));
+	}
+	
+	/**
+	 * Tests that the complete histories can be restored as tree maps.
+	 */
+	@Test
+	void testHistories() {
+		ChannelTimeline timeline = createTimeline();
+		
+		TreeMap<Long, TreeMap<Byte, Byte>> noteHistory = timeline.getNoteHistory();
+		assertEquals(3, noteHistory.size());
+		assertEquals(2, noteHistory.get(10L).size());
+		assertEquals((byte) 90, noteHistory.get(10L).get((byte) 64));
+		
+		TreeMap<Byte, TreeMap<Long, Boolean>> onOffHistory = timeline.getOnOffHistory();
+		assertEquals(4, onOffHistory.size());
+		assertTrue(onOffHistory.get((byte) 60).get(10L));
+		assertFalse(onOffHistory.get((byte) 60).get(20L));
+		
+		assertEquals(2, timeline.getInstrumentHistory().size());
+		assertEquals("piano", timeline.getCommentHistory().get(5L));
+		
+		// channel without on/off history
+		ChannelTimeline empty = createEmptyTimeline();
+		empty.finish();
+		assertNull(empty.getOnOffHistory());
+		assertFalse(empty.isActive(100));
+		assertEquals(0, empty.getNoteHistory(100, 10, 10).size());
+	}
+	
+	/**
+	 * Tests conflicting note events and entries that are not appended at the end.
+	 */
+	@Test
+	void testConflicts() {
+		ChannelTimeline timeline = createEmptyTimeline();
+		
+		// released before being pressed
+		assertFalse(timeline.addNoteOff(5, (byte) 60));
+		
+		// pressed twice, released and pressed again in the same tick
+		assertTrue(timeline.addNoteOn(10, (byte) 60, (byte) 100));
+		assertFalse(timeline.addNoteOn(10, (byte) 60, (byte) 90));
+		assertTrue(timeline.addNoteOff(10, (byte) 60));
+		assertTrue(timeline.addNoteOn(10, (byte) 60, (byte) 80));
+		
+		// pressed and released in the same tick
+		assertTrue(timeline.addNoteOn(20, (byte) 62, (byte) 100));
+		assertTrue(timeline.addNoteOff(20, (byte) 62));
+		assertTrue(timeline.addNoteOff(30, (byte) 60));
+		assertFalse(timeline.addNoteOff(40, (byte) 60));
+		
+		// instrument change inserted before an existing one
+		timeline.addInstrument(30, new Byte[] {0, 0, 5});
+		timeline.addInstrument(-1, new Byte[] {-1, -1, -1});
+		timeline.finish();
+		
+		assertTrue(timeline.isActive(10));
+		assertTrue(timeline.isActive(20));
+		assertFalse(timeline.isActive(30));
+		assertTrue(timeline.hasNoteOn(10));
+		assertTrue(timeline.hasActivityChange(20));
+		assertFalse(timeline.hasNoteOn(20));
+		assertFalse(timeline.hasActivityChange(40));
+		
+		// the last velocity of a tick wins
+		TreeMap<Long, TreeMap<Byte, Byte>> noteHistory = timeline.getNoteHistory();
+		assertEquals((byte) 80, noteHistory.get(10L).get((byte) 60));
+		
+		// one on/off entry per key and tick
+		TreeMap<Long, Boolean> tickOnOff = timeline.getOnOffHistory().get((byte) 60);
+		assertEquals(2, tickOnOff.size());
+		assertTrue(tickOnOff.get(10L));
+		assertFalse(tickOnOff.get(30L));
+		
+		// instruments
+		assertArrayEquals(new Byte[] {0, 0, 0},    timeline.getInstrument(-2));
+		assertArrayEquals(new Byte[] {-1, -1, -1}, timeline.getInstrument(29));
+		assertArrayEquals(new Byte[] {0, 0, 5},    timeline.getInstrument(30));
+		assertTrue(timeline.hasInstrumentChange(-1));
+		assertFalse(timeline.hasInstrumentChange(0));
+	}
+	
+	/**
+	 * Creates a timeline with four notes.
+	 * 
+	 * - tick 10: notes 60 and 64, until tick 20
+	 * - tick 40: note 67, until tick 45
+	 * - tick 50: note 72, until tick 55
+	 * 
+	 * @return the finished timeline.
+	 */
+	private static ChannelTimeline createTimeline() {
+		ChannelTimeline timeline = createEmptyTimeline();
+		timeline.addComment(5, "piano");
+		timeline.addNoteOn(10, (byte) 64, (byte) 90);
+		timeline.addNoteOn(10, (byte) 60, (byte) 100);
+		timeline.addParamConfig(11, new Byte[] {0, 0, -1, -1, 1});
+		timeline.addPitchBendSensitivity(12, 0x0C00);
+		timeline.addNoteOff(20, (byte) 60);
+		timeline.addNoteOff(20, (byte) 64);
+		timeline.addInstrument(30, new Byte[] {1, 2, 42});
+		timeline.addNoteOn(40, (byte) 67, (byte) 80);
+		timeline.addNoteOff(45, (byte) 67);
+		timeline.addNoteOn(50, (byte) 72, (byte) 70);
+		timeline.addNoteOff(55, (byte) 72);
+		timeline.finish();
+		
+		return timeline;
+	}
+	
+	/**
+	 * Creates a timeline with the default instrument, no selected (N)RPN
+	 * and the default pitch bend sensitivity.
+	 * 
+	 * @return the timeline, not yet finished.
+	 */
+	private static ChannelTimeline createEmptyTimeline() {
+		ChannelTimeline timeline = new ChannelTimeline();
+		timeline.addInstrument(-100, new Byte[] {0, 0, 0});
+		timeline.addParamConfig(0, new Byte[] {-1, -1, -1, -1, -1});
+		timeline.addPitchBendSensitivity(0, 0x0200);
+		
+		return timeline;
+	}
+}
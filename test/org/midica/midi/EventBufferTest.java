@@ -0,0 +1,128 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.midi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This is the test class for {@link EventBuffer}.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class EventBufferTest {
+	
+	/**
+	 * Tests that the events are sorted by tick, and that events with the same
+	 * tick keep their insertion order.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	@Test
+	void testOrder() throws InvalidMidiDataException {
+		EventBuffer buffer = new EventBuffer();
+		MetaMessage meta   = new MetaMessage(0x01, new byte[] {'x'}, 1);
+		buffer.add(ShortMessage.NOTE_ON, 62, 100, 20);
+		buffer.add(ShortMessage.NOTE_ON, 60, 100, 10);
+		buffer.add(meta, 20);
+		buffer.add(ShortMessage.NOTE_ON, 61, 100, 10);
+		assertEquals(4, buffer.size());
+		
+		Track track = flush(buffer);
+		assertEquals(5, track.size()); // including END-OF-TRACK
+		assertShortEvent(track, 0, 10, 60);
+		assertShortEvent(track, 1, 10, 61);
+		assertShortEvent(track, 2, 20, 62);
+		assertEquals(20, track.get(3).getTick());
+		assertSame(meta, track.get(3).getMessage());
+		
+		// the buffer is empty after flushing
+		assertEquals(0, buffer.size());
+	}
+	
+	/**
+	 * Tests that a moved event is placed after the other events of its new tick.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	@Test
+	void testMove() throws InvalidMidiDataException {
+		EventBuffer buffer = new EventBuffer();
+		int moved = buffer.add(ShortMessage.NOTE_OFF, 60, 0, 5);
+		buffer.add(ShortMessage.NOTE_ON, 61, 100, 30);
+		buffer.add(ShortMessage.NOTE_ON, 62, 100, 30);
+		buffer.move(moved, 30);
+		assertEquals(30, buffer.getTick(moved));
+		
+		Track track = flush(buffer);
+		assertShortEvent(track, 0, 30, 61);
+		assertShortEvent(track, 1, 30, 62);
+		assertShortEvent(track, 2, 30, 60);
+	}
+	
+	/**
+	 * Tests more events than the initial capacity, added in reverse order.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	@Test
+	void testGrowAndSort() throws InvalidMidiDataException {
+		EventBuffer buffer = new EventBuffer();
+		int         num    = 3000;
+		for (int i = num - 1; i >= 0; i--) {
+			buffer.add(ShortMessage.NOTE_ON, i % 128, 1, i / 2);
+		}
+		
+		Track track = flush(buffer);
+		assertEquals(num + 1, track.size());
+		for (int i = 0; i < num; i++) {
+			long tick = track.get(i).getTick();
+			assertEquals(i / 2, tick);
+			
+			// same tick: insertion order (higher note first)
+			int expectedNote = (0 == i % 2 ? i + 1 : i - 1) % 128;
+			assertShortEvent(track, i, tick, expectedNote);
+		}
+	}
+	
+	/**
+	 * Flushes the given buffer into a new track.
+	 * 
+	 * @param buffer  the buffer
+	 * @return the track.
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	private static Track flush(EventBuffer buffer) throws InvalidMidiDataException {
+		Track track = new Sequence(Sequence.PPQ, 480).createTrack();
+		buffer.flushInto(track);
+		return track;
+	}
+	
+	/**
+	 * Checks tick and note of a note event.
+	 * 
+	 * @param track  the track
+	 * @param index  event index inside of the track
+	 * @param tick   expected tick
+	 * @param note   expected note number
+	 */
+	private static void assertShortEvent(Track track, int index, long tick, int note) {
+		MidiMessage msg = track.get(index).getMessage();
+		assertEquals(tick, track.get(index).getTick());
+		assertEquals(note, ((ShortMessage) msg).getData1());
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * This Source Code Form is subject to the terms of the
+ * Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.midica.midi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This is the test class for {@link TempoMap}.
+ * 
+ * @author Jan Trukenmüller
+ */
+public class TempoMapTest {
+	
+	/**
+	 * Tests a sequence without tempo changes (120 BPM).
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	@Test
+	void testDefaultTempo() throws InvalidMidiDataException {
+		TempoMap map = new TempoMap(new Sequence(Sequence.PPQ, 480));
+		
+		assertEquals(0,       map.getMicroseconds(0));
+		assertEquals(500000,  map.getMicroseconds(480));
+		assertEquals(1041,    map.getMicroseconds(1)); // rounded down
+		assertEquals(0,       map.getTick(0));
+		assertEquals(480,     map.getTick(500000));
+		assertEquals(480,     map.getTick(500001));
+		assertEquals(479,     map.getTick(499999));
+	}
+	
+	/**
+	 * Tests tempo changes in several tracks.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	@Test
+	void testTempoChanges() throws InvalidMidiDataException {
+		Sequence seq    = new Sequence(Sequence.PPQ, 480);
+		Track    track0 = seq.createTrack();
+		Track    track1 = seq.createTrack();
+		track0.add(createTempoEvent(250000, 960));  // 240 BPM
+		track1.add(createTempoEvent(1000000, 1920)); // 60 BPM
+		TempoMap map = new TempoMap(seq);
+		
+		// before, at and after the first change
+		assertEquals(500000,  map.getMicroseconds(480));
+		assertEquals(1000000, map.getMicroseconds(960));
+		assertEquals(1250000, map.getMicroseconds(1440));
+		
+		// after the second change
+		assertEquals(1500000, map.getMicroseconds(1920));
+		assertEquals(2500000, map.getMicroseconds(2400));
+		
+		// back to ticks
+		assertEquals(960,  map.getTick(1000000));
+		assertEquals(1440, map.getTick(1250000));
+		assertEquals(1920, map.getTick(1500000));
+		assertEquals(2400, map.getTick(2500000));
+	}
+	
+	/**
+	 * Tests several tempo changes at the same tick.
+	 * The last one in track order must be used.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	@Test
+	void testSameTick() throws InvalidMidiDataException {
+		Sequence seq    = new Sequence(Sequence.PPQ, 480);
+		Track    track0 = seq.createTrack();
+		Track    track1 = seq.createTrack();
+		track0.add(createTempoEvent(600000, 0));
+		track1.add(createTempoEvent(400000, 0));
+		TempoMap map = new TempoMap(seq);
+		
+		assertEquals(400000, map.getMicroseconds(480));
+		assertEquals(480,    map.getTick(400000));
+	}
+	
+	/**
+	 * Tests that rounding errors don't accumulate over many tempo changes.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	@Test
+	void testNoAccumulatedRounding() throws InvalidMidiDataException {
+		Sequence seq   = new Sequence(Sequence.PPQ, 480);
+		Track    track = seq.createTrack();
+		for (int tick = 0; tick < 1000; tick++)
+			track.add(createTempoEvent(500001, tick));
+		TempoMap map = new TempoMap(seq);
+		
+		// 1000 * 500001 / 480 = 1041668.75
+		assertEquals(1041668, map.getMicroseconds(1000));
+		assertEquals(1000,    map.getTick(1041669));
+	}
+	
+	/**
+	 * Tests a sequence with an SMPTE based division type.
+	 * Tempo changes must be ignored.
+	 * 
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	@Test
+	void testSmpte() throws InvalidMidiDataException {
+		Sequence seq = new Sequence(Sequence.SMPTE_25, 40); // 1000 ticks per second
+		seq.createTrack().add(createTempoEvent(250000, 0));
+		TempoMap map = new TempoMap(seq);
+		
+		assertEquals(1000000, map.getMicroseconds(1000));
+		assertEquals(500,     map.getTick(500000));
+	}
+	
+	/**
+	 * Creates a tempo change event.
+	 * 
+	 * @param mpq   microseconds per quarter note
+	 * @param tick  tickstamp of the event
+	 * @return the event.
+	 * @throws InvalidMidiDataException if something went wrong.
+	 */
+	private static MidiEvent createTempoEvent(int mpq, long tick) throws InvalidMidiDataException {
+		byte[] data = { (byte) (mpq >> 16), (byte) (mpq >> 8), (byte) mpq };
+		return new MidiEvent(new MetaMessage(MidiListener.META_SET_TEMPO, data, data.length), tick);
+	}
+}